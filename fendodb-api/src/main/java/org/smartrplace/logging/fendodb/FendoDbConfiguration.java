@@ -36,6 +36,9 @@ public class FendoDbConfiguration implements Serializable {
 	private final long reloadDaysInterval;
 	private final TemporalUnit unit;
 	private final boolean useCompatibilityMode;
+	private final boolean useCompression;
+	private final boolean useWriteAheadLog;
+	private final int valueCacheSize;
 
 	/*
 	 * Minimum Size for SLOTSDB (in MB).
@@ -67,7 +70,7 @@ public class FendoDbConfiguration implements Serializable {
 	 * Specify all configuration options.
 	 * @param readFolders
 	 * 		On start, try to interprete all subfolders of the database folder as persistent data? If false,
-	 * 		only configurations stored in the file slotsDbStorageIDs.ser are created.
+	 * 		only configurations stored in the metadata file are created.
 	 * @param maxOpenFolders
 	 * @param flushPeriodMs
 	 * @param dataLifetimeDays
@@ -77,7 +80,8 @@ public class FendoDbConfiguration implements Serializable {
 	 */
 	@Deprecated
 	public FendoDbConfiguration(boolean readFolders, int maxOpenFolders, long flushPeriodMs, int dataLifetimeDays, int maxDbSizeMB, long dataExpirationCheckItvMs) {
-		this(false, readFolders, maxOpenFolders, flushPeriodMs, dataLifetimeDays, maxDbSizeMB, dataExpirationCheckItvMs, 0, ChronoUnit.DAYS, false);
+		this(false, readFolders, maxOpenFolders, flushPeriodMs, dataLifetimeDays, maxDbSizeMB, dataExpirationCheckItvMs, 0, ChronoUnit.DAYS, false, false, false, 
+				FendoDbConfigurationBuilder.DEFAULT_VALUE_CACHE_SIZE);
 	}
 
 	FendoDbConfiguration(
@@ -90,7 +94,10 @@ public class FendoDbConfiguration implements Serializable {
 			long dataExpirationCheckItvMs,
 			long reloadDaysInterval,
 			TemporalUnit unit,
-			boolean useCompatibilityMode) {
+			boolean useCompatibilityMode,
+			boolean useCompression,
+			boolean useWriteAheadLog,
+			int valueCacheSize) {
 		this.readOnlyMode = readOnlyMode;
 		if (maxOpenFolders <= 0)
 			throw new IllegalArgumentException("MaxOpenFolders must be a positive number");
@@ -107,6 +114,11 @@ public class FendoDbConfiguration implements Serializable {
 			this.dataExpirationCheckInterval = dataExpirationCheckItvMs;
 		this.unit = Objects.requireNonNull(unit);
 		this.useCompatibilityMode = useCompatibilityMode;
+		this.useCompression = useCompression;
+		this.useWriteAheadLog = readOnlyMode ? false : useWriteAheadLog;
+		if (valueCacheSize < 0)
+			throw new IllegalArgumentException("Value cache size must not be negative: " + valueCacheSize);
+		this.valueCacheSize = valueCacheSize;
 		this.reloadDaysInterval = reloadDaysInterval;
 		if (useCompatibilityMode && !unit.equals(ChronoUnit.DAYS))
 			throw new IllegalArgumentException("Temporal unit " + unit + " cannot be used in compatibility mode; requires DAYS.");
@@ -173,10 +185,39 @@ public class FendoDbConfiguration implements Serializable {
 		return readOnlyMode;
 	}
 	
+	/**
+	 * Write new data files in the compressed format? Existing files remain readable
+	 * irrespective of this setting.
+	 * @return
+	 */
+	public boolean useCompression() {
+		return useCompression;
+	}
+	
+	/**
+	 * Log all new data points to a write ahead log, which is synced to disk before 
+	 * the append operation returns? Data files are then updated lazily, with the 
+	 * {@link #getFlushPeriod() flush period}.
+	 * @return
+	 */
+	public boolean useWriteAheadLog() {
+		return useWriteAheadLog;
+	}
+	
+	/**
+	 * Memory budget for cached data points, in MB. The budget is shared by all time series 
+	 * of the database, and measured by the size of the cached values. 0 disables the cache.
+	 * @return
+	 */
+	public int getValueCacheSize() {
+		return valueCacheSize;
+	}
+	
 	@Override
 	public String toString() {
 		return "SlotsDB configuration; time unit: " + unit + ", data lifetime " + dataLifetimeInDays + " days, flush period: " + flushPeriod
-				+ " max data size: " + maxDatabaseSize + " MB, max open folders: " + maxOpenFolders + ", compat mode: " + useCompatibilityMode;
+				+ " max data size: " + maxDatabaseSize + " MB, max open folders: " + maxOpenFolders + ", compat mode: " + useCompatibilityMode + ", compression: " + useCompression
+				+ ", write ahead log: " + useWriteAheadLog + ", value cache: " + valueCacheSize + " MB";
 	}
 	
 	@Override
@@ -195,10 +236,13 @@ public class FendoDbConfiguration implements Serializable {
 			&& this.readOnlyMode == other.readOnlyMode
 			&& this.readFolders == other.readFolders
 			&& this.useCompatibilityMode == other.useCompatibilityMode
+			&& this.useCompression == other.useCompression
+			&& this.useWriteAheadLog == other.useWriteAheadLog
 			&& this.dataExpirationCheckInterval == other.dataExpirationCheckInterval
 			&& this.dataLifetimeInDays == other.dataLifetimeInDays
 			&& this.maxDatabaseSize == other.maxDatabaseSize
-			&& this.maxOpenFolders == other.maxOpenFolders;
+			&& this.maxOpenFolders == other.maxOpenFolders
+			&& this.valueCacheSize == other.valueCacheSize;
 	}
 	
 	
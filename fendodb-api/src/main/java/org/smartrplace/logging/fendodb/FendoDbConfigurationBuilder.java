@@ -29,6 +29,9 @@ public class FendoDbConfigurationBuilder {
 	final static int DEFAULT_MAX_DATABASE_SIZE; // 0 (unrestricted)
 	final static long DEFAULT_DATA_EXPIRATION_CHECK_INTERVAL; // = 24 * 60 * 60 * 1000; // 1d
 	final static long DEFAULT_RELOAD_DAYS_INTERVAL; // = 0 // disabled
+	final static boolean DEFAULT_USE_COMPRESSION; // false
+	final static boolean DEFAULT_USE_WRITE_AHEAD_LOG; // false
+	final static int DEFAULT_VALUE_CACHE_SIZE; // 16 MB
 
 	static {
 		// BundleContext; avoid explicit class usage, to avoid NoClassDefFoundError when used without OSGi
@@ -43,6 +46,9 @@ public class FendoDbConfigurationBuilder {
 		DEFAULT_MAX_DATABASE_SIZE = getIntValue(ctx, "org.smartrplace.logging.fendo.limit_size", 0, 0);
 		DEFAULT_DATA_EXPIRATION_CHECK_INTERVAL = getLongValue(ctx, "org.smartrplace.logging.fendo.scanning_interval", 24 * 60 * 60 * 1000, 5 * 60 * 1000);
 		DEFAULT_RELOAD_DAYS_INTERVAL = getLongValue(ctx, "org.smartrplace.logging.fendo.reloaddays_interval", 0L, 0L);
+		DEFAULT_USE_COMPRESSION = Boolean.parseBoolean(getProperty(ctx, "org.smartrplace.logging.fendo.compression"));
+		DEFAULT_USE_WRITE_AHEAD_LOG = Boolean.parseBoolean(getProperty(ctx, "org.smartrplace.logging.fendo.wal"));
+		DEFAULT_VALUE_CACHE_SIZE = getIntValue(ctx, "org.smartrplace.logging.fendo.cache_size", 16, 0);
 	}
 
 	private final static int getIntValue(final Object ctx, final String property, final int defaultVal, final int minValue) {
@@ -152,6 +158,12 @@ public class FendoDbConfigurationBuilder {
 
 	private boolean readOnlyMode = false;
 
+	private boolean useCompression = DEFAULT_USE_COMPRESSION;
+
+	private boolean useWriteAheadLog = DEFAULT_USE_WRITE_AHEAD_LOG;
+
+	private int valueCacheSize = DEFAULT_VALUE_CACHE_SIZE;
+
 	private FendoDbConfigurationBuilder() {}
 
 	/**
@@ -179,7 +191,10 @@ public class FendoDbConfigurationBuilder {
 			.setReadOnlyMode(copyConfig.isReadOnlyMode())
 			.setTemporalUnit(copyConfig.getFolderCreationTimeUnit())
 			.setUseCompatibilityMode(copyConfig.useCompatibilityMode())
-			.setReloadDaysInterval(copyConfig.getReloadDaysInterval());
+			.setReloadDaysInterval(copyConfig.getReloadDaysInterval())
+			.setUseCompression(copyConfig.useCompression())
+			.setUseWriteAheadLog(copyConfig.useWriteAheadLog())
+			.setValueCacheSize(copyConfig.getValueCacheSize());
 	}
 
 	public FendoDbConfiguration build() {
@@ -193,7 +208,10 @@ public class FendoDbConfigurationBuilder {
 				dataExpirationCheckInterval,
 				reloadDaysInterval,
 				unit,
-				useCompatibilityMode);
+				useCompatibilityMode,
+				useCompression,
+				useWriteAheadLog,
+				valueCacheSize);
 	}
 
 	/**
@@ -259,7 +277,7 @@ public class FendoDbConfigurationBuilder {
 
 	/**
 	 * On start, try to interprete all subfolders of the database folder as persistent data? If false,
-	 * 		only configurations stored in the file slotsDbStorageIDs.ser are created. Default: false.
+	 * 		only configurations stored in the metadata file are created. Default: false.
 	 */
 	public FendoDbConfigurationBuilder setParseFoldersOnInit(boolean doParse) {
 		this.parseFoldersOnInit = doParse;
@@ -300,4 +318,43 @@ public class FendoDbConfigurationBuilder {
 		return this;
 	}
 
+	/**
+	 * Write new data files in a compressed format (delta-of-delta encoded timestamps, XOR encoded values)? 
+	 * Files written previously remain readable, irrespective of this setting.
+	 * Default: false, or the value of the system property (or OSGi framework property) "org.smartrplace.logging.fendo.compression"
+	 * @param useCompression
+	 * @return
+	 */
+	public FendoDbConfigurationBuilder setUseCompression(boolean useCompression) {
+		this.useCompression = useCompression;
+		return this;
+	}
+
+	/**
+	 * Log all new data points to a write ahead log before they are written to the data files? The log is synced
+	 * to disk before an append operation returns, where concurrent appends for all time series share a single sync.
+	 * The data files are then flushed lazily, with the flush period (or every 10s, if the flush period is 0), 
+	 * and the log is replayed when the database is opened after a crash.
+	 * Default: false, or the value of the system property (or OSGi framework property) "org.smartrplace.logging.fendo.wal"
+	 * @param useWriteAheadLog
+	 * @return
+	 */
+	public FendoDbConfigurationBuilder setUseWriteAheadLog(boolean useWriteAheadLog) {
+		this.useWriteAheadLog = useWriteAheadLog;
+		return this;
+	}
+
+	/**
+	 * Memory budget for cached data points, in MB, shared by all time series of the database. When the 
+	 * budget is exceeded, the least recently used values are evicted. Set to 0 to disable the cache.
+	 * This is a setting of the running instance, it is not taken over from the persisted configuration.
+	 * Default: 16, or the value of the system property (or OSGi framework property) "org.smartrplace.logging.fendo.cache_size"
+	 * @param valueCacheSize
+	 * @return
+	 */
+	public FendoDbConfigurationBuilder setValueCacheSize(int valueCacheSize) {
+		this.valueCacheSize = valueCacheSize;
+		return this;
+	}
+
 }
@@ -81,4 +81,40 @@ public interface FendoTimeSeries extends RecordedDataStorage {
 		return StreamSupport.stream(iterable.spliterator(), false);
 	};
 
+	/**
+	 * Read data points into a primitive, columnar chunk, without creating a {@link SampledValue} object
+	 * per data point. The chunk is cleared first and filled up to its capacity; if it is full 
+	 * upon return, there may be further points in the requested interval, which can be read by
+	 * a subsequent call with <tt>start = chunk.getLastTimestamp() + 1</tt>. Typical usage:
+	 * <code>
+	 * 	final TimeSeriesChunk chunk = new TimeSeriesChunk();
+	 *	long t = start;
+	 *	do {
+	 *		timeSeries.readChunk(t, end, chunk);
+	 *		for (int i = 0; i &lt; chunk.size(); i++) {
+	 *			// process chunk.getTimestamps()[i], chunk.getValues()[i]
+	 *		}
+	 *		if (chunk.isFull())
+	 *			t = chunk.getLastTimestamp() + 1;
+	 *	} while (chunk.isFull());
+	 * </code>
+	 * 
+	 * @param start
+	 * 		inclusive
+	 * @param end
+	 * 		exclusive, as in {@link #getValues(long, long)}
+	 * @param chunk
+	 * 		the chunk to be filled; must not be null
+	 * @return
+	 * 		the chunk passed as argument
+	 */
+	default TimeSeriesChunk readChunk(long start, long end, TimeSeriesChunk chunk) {
+		chunk.clear();
+		for (SampledValue sv : getValues(start, end)) {
+			if (!chunk.add(sv.getTimestamp(), sv.getValue().getDoubleValue(), sv.getQuality()))
+				break;
+		}
+		return chunk;
+	}
+
 }
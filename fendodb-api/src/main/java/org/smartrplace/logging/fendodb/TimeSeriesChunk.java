@@ -0,0 +1,159 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb;
+
+import java.util.Arrays;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+
+/**
+ * A reusable, columnar block of data points, filled by {@link FendoTimeSeries#readChunk(long, long, TimeSeriesChunk)}.
+ * Timestamps, values and quality flags are kept in parallel primitive arrays, so that 
+ * a scan over a time series does not need to create a {@link org.ogema.core.channelmanager.measurements.SampledValue}
+ * per data point. Not thread-safe.
+ */
+public class TimeSeriesChunk {
+	
+	public static final int DEFAULT_CAPACITY = 4096;
+	
+	private final long[] timestamps;
+	private final double[] values;
+	private final byte[] qualities;
+	private int size;
+	
+	public TimeSeriesChunk() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	public TimeSeriesChunk(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+		this.timestamps = new long[capacity];
+		this.values = new double[capacity];
+		this.qualities = new byte[capacity];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int capacity() {
+		return timestamps.length;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public boolean isFull() {
+		return size == timestamps.length;
+	}
+	
+	public long getTimestamp(int idx) {
+		checkIndex(idx);
+		return timestamps[idx];
+	}
+	
+	public double getValue(int idx) {
+		checkIndex(idx);
+		return values[idx];
+	}
+	
+	public Quality getQuality(int idx) {
+		return Quality.getQuality(getQualityFlag(idx));
+	}
+	
+	/**
+	 * @param idx
+	 * @return
+	 * 		the quality as stored in the database, 1 for {@link Quality#GOOD}, 0 for {@link Quality#BAD}
+	 */
+	public byte getQualityFlag(int idx) {
+		checkIndex(idx);
+		return qualities[idx];
+	}
+	
+	/**
+	 * @return
+	 * 		the backing array; only the first {@link #size()} entries are valid
+	 */
+	public long[] getTimestamps() {
+		return timestamps;
+	}
+	
+	/**
+	 * @return
+	 * 		the backing array; only the first {@link #size()} entries are valid
+	 */
+	public double[] getValues() {
+		return values;
+	}
+	
+	/**
+	 * @return
+	 * 		the backing array; only the first {@link #size()} entries are valid
+	 */
+	public byte[] getQualityFlags() {
+		return qualities;
+	}
+	
+	/**
+	 * @return
+	 * 		the timestamp of the last data point in the chunk
+	 * @throws IllegalStateException if the chunk is empty
+	 */
+	public long getLastTimestamp() {
+		if (size == 0)
+			throw new IllegalStateException("Chunk is empty");
+		return timestamps[size - 1];
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+	
+	/**
+	 * @param timestamp
+	 * @param value
+	 * @param quality
+	 * @return
+	 * 		false if the chunk is full, in which case the point has not been added
+	 */
+	public boolean add(long timestamp, double value, byte quality) {
+		if (size == timestamps.length)
+			return false;
+		timestamps[size] = timestamp;
+		values[size] = value;
+		qualities[size++] = quality;
+		return true;
+	}
+	
+	public boolean add(long timestamp, double value, Quality quality) {
+		return add(timestamp, value, (byte) quality.getQuality());
+	}
+	
+	private void checkIndex(int idx) {
+		if (idx < 0 || idx >= size)
+			throw new IndexOutOfBoundsException("Index " + idx + ", size " + size);
+	}
+	
+	@Override
+	public String toString() {
+		return "TimeSeriesChunk[size=" + size + ", timestamps=" + Arrays.toString(Arrays.copyOf(timestamps, Math.min(size, 10))) 
+			+ (size > 10 ? "..." : "") + "]";
+	}
+
+}
@@ -0,0 +1,82 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.stats;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+
+/**
+ * Aggregated information about a block of consecutive data points of a time series, 
+ * maintained by the database alongside the raw data. Data points with quality 
+ * {@link Quality#BAD} are included in {@link #getCount()}, but do not contribute
+ * to the value statistics min, max and sum.
+ */
+public interface BlockSummary {
+
+	/**
+	 * @return
+	 * 		the number of data points in the block, including those of bad quality
+	 */
+	int getCount();
+	
+	/**
+	 * @return
+	 * 		the number of data points with quality {@link Quality#GOOD}
+	 */
+	int getGoodCount();
+	
+	/**
+	 * @return
+	 * 		the minimum value of all good quality data points; undefined if {@link #getGoodCount()} is 0
+	 */
+	double getMin();
+	
+	/**
+	 * @return
+	 * 		the maximum value of all good quality data points; undefined if {@link #getGoodCount()} is 0
+	 */
+	double getMax();
+	
+	/**
+	 * @return
+	 * 		the sum of all good quality values; 0 if {@link #getGoodCount()} is 0
+	 */
+	double getSum();
+	
+	/**
+	 * @return
+	 * 		the timestamp of the first occurrence of the minimum value
+	 */
+	long getMinTimestamp();
+	
+	/**
+	 * @return
+	 * 		the timestamp of the first occurrence of the maximum value
+	 */
+	long getMaxTimestamp();
+	
+	/**
+	 * @return
+	 * 		the timestamp of the first data point in the block
+	 */
+	long getFirstTimestamp();
+	
+	/**
+	 * @return
+	 * 		the timestamp of the last data point in the block
+	 */
+	long getLastTimestamp();
+	
+}
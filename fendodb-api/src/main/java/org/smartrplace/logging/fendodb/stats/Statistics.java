@@ -15,6 +15,8 @@
  */
 package org.smartrplace.logging.fendodb.stats;
 
+import org.ogema.core.channelmanager.measurements.DoubleValue;
+import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 
 public interface Statistics<Result> {
@@ -22,6 +24,18 @@ public interface Statistics<Result> {
 	// TODO allow passing multiple values from multiple time series at once?
 	void step(SampledValue sv);
 	
+	/**
+	 * Primitive variant of {@link #step(SampledValue)}, used when the data points are read
+	 * in columnar chunks. Implementations should override this to avoid the allocation of a 
+	 * {@link SampledValue} per data point.
+	 * @param timestamp
+	 * @param value
+	 * @param quality
+	 */
+	default void step(long timestamp, double value, Quality quality) {
+		step(new SampledValue(new DoubleValue(value), timestamp, quality));
+	}
+	
 	/**
 	 * @param finalTimestamp
 	 * 		equal to or greater than the timestamp of the last value passed to {@link #step(SampledValue)}
@@ -29,4 +43,22 @@ public interface Statistics<Result> {
 	 */
 	Result finish(long finalTimestamp);
 	
+	/**
+	 * If this returns true, the caller may pass precomputed {@link BlockSummary block summaries}
+	 * to {@link #step(BlockSummary)} instead of the individual data points they cover. 
+	 * Summaries and individual points are always passed in chronological order.
+	 * @return
+	 */
+	default boolean supportsSummaries() {
+		return false;
+	}
+	
+	/**
+	 * Process a block of data points at once. Only called if {@link #supportsSummaries()} returns true.
+	 * @param summary
+	 */
+	default void step(BlockSummary summary) {
+		throw new UnsupportedOperationException("Block summaries not supported by " + getClass().getName());
+	}
+	
 }
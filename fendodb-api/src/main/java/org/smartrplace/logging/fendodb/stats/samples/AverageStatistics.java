@@ -18,6 +18,7 @@ package org.smartrplace.logging.fendodb.stats.samples;
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.timeseries.InterpolationMode;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 import org.smartrplace.logging.fendodb.stats.Statistics;
 
 public class AverageStatistics implements Statistics<Float> {
@@ -27,7 +28,10 @@ public class AverageStatistics implements Statistics<Float> {
 	// state
 	private float integral = 0;
 	private float length = 0;
-	private SampledValue previous = null;
+	private boolean hasPrevious = false;
+	private long previousT;
+	private float previousV;
+	private boolean previousValid;
 	
 	public AverageStatistics(InterpolationMode mode) {
 		this.mode = mode;
@@ -35,41 +39,72 @@ public class AverageStatistics implements Statistics<Float> {
 
 	@Override
 	public void step(final SampledValue sv) {
-		if (sv != null && previous != null && sv.getTimestamp() <= previous.getTimestamp())
-			throw new IllegalArgumentException("Timestamps not chronological, got " + previous.getTimestamp() + " followed by " + sv.getTimestamp());
-		final boolean valid = sv != null && sv.getQuality() == Quality.GOOD;
-		final boolean previousValid = previous != null && previous.getQuality() == Quality.GOOD;
+		if (sv == null) {
+			hasPrevious = false;
+			return;
+		}
+		final Quality q = sv.getQuality();
+		step(sv.getTimestamp(), q == Quality.GOOD ? sv.getValue().getFloatValue() : Float.NaN, q);
+	}
+	
+	@Override
+	public void step(final long t, final double value, final Quality quality) {
+		if (hasPrevious && t <= previousT)
+			throw new IllegalArgumentException("Timestamps not chronological, got " + previousT + " followed by " + t);
+		final boolean valid = quality == Quality.GOOD;
+		final boolean previousValid = hasPrevious && this.previousValid;
 		if (!valid) {
-			if (sv != null && previousValid && mode == InterpolationMode.STEPS) {
-				final long diff = sv.getTimestamp() - previous.getTimestamp();
-				integral += previous.getValue().getFloatValue() * diff;
+			if (previousValid && mode == InterpolationMode.STEPS) {
+				final long diff = t - previousT;
+				integral += previousV * diff;
 				length += diff;
 			}
-			previous = sv;
+			setPrevious(t, Float.NaN, false);
 			return;
 		}
+		final float v = (float) value;
 		if (mode == InterpolationMode.NONE) {
-			integral += sv.getValue().getFloatValue();
+			integral += v;
 			length++;
 			return;
 		}
 		if (!previousValid) {
-			previous = sv;
+			setPrevious(t, v, true);
 			return;
 		}
 		if (mode == InterpolationMode.STEPS) {
-			final long diff = sv.getTimestamp() - previous.getTimestamp();
-			integral += previous.getValue().getFloatValue() * diff;
+			final long diff = t - previousT;
+			integral += previousV * diff;
 			length += diff;
 		} else { // LINEAR or NEAREST
-			final long t0 = previous.getTimestamp();
-			final long t1 = sv.getTimestamp();
-			final float v0 = previous.getValue().getFloatValue();
-			final float v1 = sv.getValue().getFloatValue();
-			integral += (v0 + v1) * (t1 - t0) / 2;
-			length += t1 - t0;
+			integral += (previousV + v) * (t - previousT) / 2;
+			length += t - previousT;
 		}
-		previous = sv;
+		setPrevious(t, v, true);
+	}
+	
+	private void setPrevious(final long t, final float v, final boolean valid) {
+		this.hasPrevious = true;
+		this.previousT = t;
+		this.previousV = v;
+		this.previousValid = valid;
+	}
+	
+	/**
+	 * Only the plain average without interpolation (mode {@link InterpolationMode#NONE}) can be 
+	 * determined from block summaries, the time-weighted averages require the individual points. 
+	 */
+	@Override
+	public boolean supportsSummaries() {
+		return mode == InterpolationMode.NONE;
+	}
+	
+	@Override
+	public void step(BlockSummary summary) {
+		if (mode != InterpolationMode.NONE)
+			throw new UnsupportedOperationException("Block summaries only supported for interpolation mode NONE");
+		integral += summary.getSum();
+		length += summary.getGoodCount();
 	}
 
 	@Override
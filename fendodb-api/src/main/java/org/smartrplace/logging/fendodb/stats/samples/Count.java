@@ -15,7 +15,9 @@
  */
 package org.smartrplace.logging.fendodb.stats.samples;
 
+import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 import org.smartrplace.logging.fendodb.stats.Statistics;
 
 public class Count implements Statistics<Integer> {
@@ -26,6 +28,21 @@ public class Count implements Statistics<Integer> {
 	public void step(final SampledValue sv) {
 		cnt++;
 	}
+	
+	@Override
+	public void step(long timestamp, double value, Quality quality) {
+		cnt++;
+	}
+	
+	@Override
+	public boolean supportsSummaries() {
+		return true;
+	}
+	
+	@Override
+	public void step(BlockSummary summary) {
+		cnt += summary.getCount();
+	}
 
 	@Override
 	public Integer finish(long finalT) {
@@ -17,6 +17,7 @@ package org.smartrplace.logging.fendodb.stats.samples;
 
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 import org.smartrplace.logging.fendodb.stats.Statistics;
 
 public class MaxMinTimestamp implements Statistics<Long> {
@@ -43,6 +44,33 @@ public class MaxMinTimestamp implements Statistics<Long> {
 		}
 		
 	}
+	
+	@Override
+	public void step(long timestamp, double value, Quality quality) {
+		if (quality == Quality.BAD)
+			return;
+		final float current = (float) value;
+		if ((!minOrMax && current > max) || (minOrMax && current < max)) {
+			max = current;
+			t = timestamp;
+		}
+	}
+	
+	@Override
+	public boolean supportsSummaries() {
+		return true;
+	}
+	
+	@Override
+	public void step(BlockSummary summary) {
+		if (summary.getGoodCount() == 0)
+			return;
+		final float current = (float) (minOrMax ? summary.getMin() : summary.getMax());
+		if ((!minOrMax && current > max) || (minOrMax && current < max)) {
+			max = current;
+			t = minOrMax ? summary.getMinTimestamp() : summary.getMaxTimestamp();
+		}
+	}
 
 	@Override
 	public Long finish(long tEnd) {
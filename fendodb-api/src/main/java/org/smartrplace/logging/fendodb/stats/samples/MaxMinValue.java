@@ -17,6 +17,7 @@ package org.smartrplace.logging.fendodb.stats.samples;
 
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 import org.smartrplace.logging.fendodb.stats.Statistics;
 
 public class MaxMinValue implements Statistics<Float> {
@@ -39,6 +40,29 @@ public class MaxMinValue implements Statistics<Float> {
 		if ((!minOrMax && current > max) || (minOrMax && current < max))
 			max = current;
 	}
+	
+	@Override
+	public void step(long timestamp, double value, Quality quality) {
+		if (quality == Quality.BAD)
+			return;
+		final float current = (float) value;
+		if ((!minOrMax && current > max) || (minOrMax && current < max))
+			max = current;
+	}
+	
+	@Override
+	public boolean supportsSummaries() {
+		return true;
+	}
+	
+	@Override
+	public void step(BlockSummary summary) {
+		if (summary.getGoodCount() == 0)
+			return;
+		final float current = (float) (minOrMax ? summary.getMin() : summary.getMax());
+		if ((!minOrMax && current > max) || (minOrMax && current < max))
+			max = current;
+	}
 
 	@Override
 	public Float finish(long t) {
@@ -0,0 +1,356 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Off-heap cache for decoded blocks of compressed slots files (see {@link CompressedFileObject}), 
+ * shared by all databases of a factory. Memory is allocated lazily in direct buffer slabs, each
+ * divided into slots of {@link #SLOT_SIZE} bytes, up to the configured budget; a slot holds the 
+ * timestamps, values and quality flags of one block as primitive columns.<br>
+ * Readers {@link #acquire(Key) acquire} an entry and must {@link Entry#release() release} it 
+ * after use; the slot of an evicted entry is only reused once all readers have released it. 
+ * If all slots are in use, blocks are not cached.<br>
+ * Entries are keyed by file path and block position, so they survive the file object; 
+ * blocks of files which are rewritten or deleted must be {@link #invalidate(String) invalidated}. 
+ * Since keys include the block header, a block replaced by other means is not served from the cache.
+ */
+final class BlockCache {
+	
+	static final int SLOT_SIZE = CompressedFileObject.MAX_BLOCK_SIZE * (Long.BYTES + Double.BYTES + Byte.BYTES);
+	private static final int VALUES_OFFSET = CompressedFileObject.MAX_BLOCK_SIZE * Long.BYTES;
+	private static final int QUALITIES_OFFSET = CompressedFileObject.MAX_BLOCK_SIZE * (Long.BYTES + Double.BYTES);
+	private static final int SLOTS_PER_SLAB = 64;
+	
+	private final int maxSlots;
+	private final EvictionPolicy<Key> policy;
+	// all guarded by this
+	private final List<ByteBuffer> slabs = new ArrayList<>();
+	private final Map<Key, Entry> entries = new HashMap<>();
+	private int[] freeSlots = new int[SLOTS_PER_SLAB];
+	private int nrFreeSlots;
+	private int allocatedSlots;
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	/**
+	 * Replacement strategy. Only called while the cache lock is held.
+	 */
+	interface EvictionPolicy<K> {
+		
+		void recordInsertion(K key);
+		
+		void recordAccess(K key);
+		
+		void recordRemoval(K key);
+		
+		/**
+		 * @return
+		 * 		the entry to be evicted next, or null if there are no entries
+		 */
+		K selectVictim();
+		
+	}
+	
+	/**
+	 * Least recently used entries are evicted first
+	 */
+	static final class LruPolicy<K> implements EvictionPolicy<K> {
+		
+		private final LinkedHashMap<K, Boolean> order = new LinkedHashMap<>(16, 0.75F, true);
+
+		@Override
+		public void recordInsertion(K key) {
+			order.put(key, Boolean.TRUE);
+		}
+
+		@Override
+		public void recordAccess(K key) {
+			order.get(key);
+		}
+
+		@Override
+		public void recordRemoval(K key) {
+			order.remove(key);
+		}
+
+		@Override
+		public K selectVictim() {
+			final Iterator<K> it = order.keySet().iterator();
+			return it.hasNext() ? it.next() : null;
+		}
+		
+	}
+	
+	/**
+	 * @param maxBytes
+	 * 		memory budget; must be large enough for at least one block
+	 */
+	BlockCache(final long maxBytes) {
+		this(maxBytes, new LruPolicy<>());
+	}
+	
+	BlockCache(final long maxBytes, final EvictionPolicy<Key> policy) {
+		if (maxBytes < SLOT_SIZE)
+			throw new IllegalArgumentException("Block cache size too small: " + maxBytes + " bytes");
+		this.maxSlots = (int) Math.min(maxBytes / SLOT_SIZE, Integer.MAX_VALUE);
+		this.policy = Objects.requireNonNull(policy);
+	}
+	
+	/**
+	 * @param key
+	 * @return
+	 * 		the entry, which must be released after use, or null if the block is not cached
+	 */
+	synchronized Entry acquire(final Key key) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		policy.recordAccess(key);
+		entry.refs++;
+		return entry;
+	}
+	
+	/**
+	 * Decode a block into a free slot, and add it to the cache.
+	 * @param key
+	 * @param reader
+	 * 		a reader positioned at the start of the block
+	 * @return
+	 * 		the entry, which must be released after use, or null if the block could not be cached 
+	 */
+	Entry put(final Key key, final CompressedFileObject.BlockReader reader) {
+		final int slot;
+		synchronized (this) {
+			slot = allocateSlot();
+		}
+		if (slot < 0)
+			return null;
+		final ByteBuffer slab = getSlab(slot);
+		final int base = (slot % SLOTS_PER_SLAB) * SLOT_SIZE;
+		int count = 0;
+		while (count < CompressedFileObject.MAX_BLOCK_SIZE && reader.next()) {
+			slab.putLong(base + count * Long.BYTES, reader.getTimestamp());
+			slab.putDouble(base + VALUES_OFFSET + count * Double.BYTES, reader.getValue());
+			slab.put(base + QUALITIES_OFFSET + count, reader.getQuality());
+			count++;
+		}
+		final Entry entry = new Entry(key, slot, slab, base, count);
+		synchronized (this) {
+			final Entry existing = entries.get(key);
+			if (existing != null) { // concurrently added by another reader
+				freeSlot(slot);
+				existing.refs++;
+				return existing;
+			}
+			entries.put(key, entry);
+			policy.recordInsertion(key);
+			entry.refs++;
+			return entry;
+		}
+	}
+	
+	/**
+	 * Remove all blocks of a file, or of all files in a folder.
+	 * @param path
+	 * 		absolute path of a file or folder
+	 */
+	synchronized void invalidate(final String path) {
+		final String folderPrefix = path.endsWith(File.separator) ? path : path + File.separator;
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			final Entry entry = it.next();
+			if (!entry.key.file.equals(path) && !entry.key.file.startsWith(folderPrefix))
+				continue;
+			it.remove();
+			policy.recordRemoval(entry.key);
+			entry.evict();
+		}
+	}
+	
+	synchronized void clear() {
+		for (Entry entry : entries.values()) {
+			policy.recordRemoval(entry.key);
+			entry.evict();
+		}
+		entries.clear();
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return "BlockCache[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", blocks=" + entries.size() 
+			+ ", allocated=" + ((long) allocatedSlots * SLOT_SIZE / 1024) + " kB, budget=" + ((long) maxSlots * SLOT_SIZE / 1024) + " kB]";
+	}
+	
+	synchronized long getHitCount() {
+		return hits;
+	}
+	
+	synchronized long getMissCount() {
+		return misses;
+	}
+	
+	synchronized long getEvictionCount() {
+		return evictions;
+	}
+	
+	synchronized int size() {
+		return entries.size();
+	}
+	
+	// requires the lock
+	private int allocateSlot() {
+		while (nrFreeSlots == 0) {
+			if (allocatedSlots < maxSlots) {
+				if (allocatedSlots % SLOTS_PER_SLAB == 0) 
+					slabs.add(ByteBuffer.allocateDirect(Math.min(SLOTS_PER_SLAB, maxSlots - allocatedSlots) * SLOT_SIZE));
+				return allocatedSlots++;
+			}
+			final Key victim = policy.selectVictim();
+			if (victim == null) // all slots are held by evicted entries still in use
+				return -1;
+			policy.recordRemoval(victim);
+			entries.remove(victim).evict();
+			evictions++;
+		}
+		return freeSlots[--nrFreeSlots];
+	}
+	
+	// requires the lock
+	private void freeSlot(final int slot) {
+		if (nrFreeSlots == freeSlots.length) {
+			final int[] newSlots = new int[freeSlots.length * 2];
+			System.arraycopy(freeSlots, 0, newSlots, 0, nrFreeSlots);
+			freeSlots = newSlots;
+		}
+		freeSlots[nrFreeSlots++] = slot;
+	}
+	
+	private synchronized ByteBuffer getSlab(final int slot) {
+		return slabs.get(slot / SLOTS_PER_SLAB);
+	}
+	
+	static final class Key {
+		
+		private final String file;
+		private final long position;
+		private final long first;
+		private final int bitLength;
+		private final int hashCode;
+		
+		/**
+		 * @param file
+		 * 		absolute path of the file
+		 * @param position
+		 * 		position of the block in the file
+		 * @param first
+		 * 		first timestamp of the block, from the block header
+		 * @param bitLength
+		 * 		length of the block body, from the block header
+		 */
+		Key(String file, long position, long first, int bitLength) {
+			this.file = file;
+			this.position = position;
+			this.first = first;
+			this.bitLength = bitLength;
+			this.hashCode = file.hashCode() * 31 + Long.hashCode(position);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return position == other.position && first == other.first && bitLength == other.bitLength 
+					&& file.equals(other.file);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+	}
+	
+	/**
+	 * A cached block. Only absolute get operations are used on the slab, so it can be shared by readers. 
+	 */
+	final class Entry {
+		
+		private final Key key;
+		private final int slot;
+		private final ByteBuffer slab;
+		private final int base;
+		private final int count;
+		// guarded by the cache lock
+		private int refs;
+		private boolean evicted;
+		
+		private Entry(Key key, int slot, ByteBuffer slab, int base, int count) {
+			this.key = key;
+			this.slot = slot;
+			this.slab = slab;
+			this.base = base;
+			this.count = count;
+		}
+		
+		int size() {
+			return count;
+		}
+		
+		long getTimestamp(int idx) {
+			return slab.getLong(base + idx * Long.BYTES);
+		}
+		
+		double getValue(int idx) {
+			return slab.getDouble(base + VALUES_OFFSET + idx * Double.BYTES);
+		}
+		
+		byte getQuality(int idx) {
+			return slab.get(base + QUALITIES_OFFSET + idx);
+		}
+		
+		void release() {
+			synchronized (BlockCache.this) {
+				if (--refs == 0 && evicted)
+					freeSlot(slot);
+			}
+		}
+		
+		// requires the cache lock
+		private void evict() {
+			evicted = true;
+			if (refs == 0)
+				freeSlot(slot);
+		}
+		
+	}
+	
+}
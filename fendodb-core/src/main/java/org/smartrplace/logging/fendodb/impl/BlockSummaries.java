@@ -0,0 +1,336 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+
+/**
+ * Summaries of the data points of a single slots file, on several levels: rollup tiers for 
+ * the time resolutions {@link #RESOLUTIONS}, aligned to the epoch, and consecutive blocks 
+ * of {@value #BLOCK_SIZE} data points. Each level is persisted in a side file next to the data 
+ * file, with the same name but extension {@value #FILE_EXTENSION} for the blocks and 
+ * <code>.&lt;resolution&gt;{@value #FILE_EXTENSION}</code> for the time tiers, respectively. 
+ * Only complete summaries are persisted, new ones are appended to the side files; the remaining 
+ * data points are summarized again from the data file when the summaries are loaded. 
+ * Tiers whose summaries would cover less than {@value #MIN_POINTS_PER_SUMMARY} data points on average
+ * are skipped, since they are not cheaper to read than the data points. The sampling interval is the 
+ * storage period for files with a fixed interval, otherwise it is determined from the first block; 
+ * until then the tiers are only kept in memory.
+ * Not thread-safe, guarded by the owning {@link FileObject}.
+ */
+class BlockSummaries {
+	
+	static final int BLOCK_SIZE = 1024;
+	/**
+	 * Time resolutions of the rollup tiers in ms, from coarse to fine
+	 */
+	static final long[] RESOLUTIONS = {60 * 60 * 1000, 15 * 60 * 1000, 60 * 1000};
+	static final String FILE_EXTENSION = ".summary";
+	static final int MIN_POINTS_PER_SUMMARY = 4;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 20;
+	private static final int RECORD_SIZE = 64;
+
+	/*
+	 * Ordered from coarse to fine, the blocks come last. Skipped tiers are null.
+	 */
+	private final Level[] levels;
+	// true once the tiers to be skipped are known
+	private boolean tiersSelected;
+	
+	/**
+	 * @param storagePeriod
+	 * 		the fixed interval of the file, or a non-positive value if it is not known
+	 */
+	BlockSummaries(final long storagePeriod) {
+		levels = new Level[RESOLUTIONS.length + 1];
+		for (int i = 0; i < RESOLUTIONS.length; i++) {
+			levels[i] = new Level(RESOLUTIONS[i]);
+		}
+		levels[RESOLUTIONS.length] = new Level(0);
+		if (storagePeriod > 0)
+			selectTiers(storagePeriod);
+	}
+	
+	private void selectTiers(final long samplingInterval) {
+		for (int i = 0; i < RESOLUTIONS.length; i++) {
+			if (RESOLUTIONS[i] < MIN_POINTS_PER_SUMMARY * samplingInterval)
+				levels[i] = null;
+		}
+		tiersSelected = true;
+	}
+	
+	// select the tiers based on the average sampling interval in the first block
+	private void selectTiersIfPossible() {
+		if (tiersSelected)
+			return;
+		final List<ValueSummary> blocks = levels[RESOLUTIONS.length].complete;
+		if (blocks.isEmpty())
+			return;
+		final ValueSummary first = blocks.get(0);
+		selectTiers(Math.max(1, (first.getLastTimestamp() - first.getFirstTimestamp()) / Math.max(1, first.getCount() - 1)));
+	}
+	
+	void add(final long timestamp, final double value, final byte flag) {
+		if (Double.isNaN(value)) // not visible to readers
+			return;
+		final boolean good = Quality.getQuality(flag) == Quality.GOOD;
+		for (Level level : levels) {
+			if (level != null)
+				level.add(timestamp, value, good);
+		}
+		selectTiersIfPossible();
+	}
+	
+	/**
+	 * @return
+	 * 		a snapshot of the complete summaries per level, from coarse to fine, each in chronological order. 
+	 * 		The last entry contains the blocks. The summaries must not be modified.
+	 */
+	List<List<ValueSummary>> getLevels() {
+		final List<List<ValueSummary>> result = new ArrayList<>(levels.length);
+		for (Level level : levels) {
+			if (level != null)
+				result.add(level.complete.isEmpty() ? Collections.emptyList() : new ArrayList<>(level.complete));
+		}
+		return result;
+	}
+	
+	/**
+	 * @return
+	 * 		true if complete summaries have been added since the summaries were last stored
+	 */
+	boolean isDirty() {
+		for (Level level : levels) {
+			if (level != null && (tiersSelected || level.resolution <= 0) && level.complete.size() > level.persisted)
+				return true;
+		}
+		return false;
+	}
+	
+	static Path getSummaryFile(final FileObject file) {
+		return getSummaryFile(file, 0);
+	}
+	
+	static Path getSummaryFile(final FileObject file, final long resolution) {
+		final String name = file.dataFile.getName();
+		final String base = name.endsWith(SlotsDb.FILE_EXTENSION) ? name.substring(0, name.length() - SlotsDb.FILE_EXTENSION.length()) : name;
+		final String suffix = resolution > 0 ? "." + resolution + FILE_EXTENSION : FILE_EXTENSION;
+		return file.dataFile.toPath().resolveSibling(base + suffix);
+	}
+	
+	static void deleteSummaryFiles(final FileObject file) throws IOException {
+		Files.deleteIfExists(getSummaryFile(file));
+		for (long resolution : RESOLUTIONS) {
+			Files.deleteIfExists(getSummaryFile(file, resolution));
+		}
+	}
+	
+	/**
+	 * Write the complete summaries that have not been stored yet to the side files
+	 * @param file
+	 * @throws IOException
+	 */
+	void persist(final FileObject file) throws IOException {
+		for (Level level : levels) {
+			// tiers that may still be skipped are not stored
+			if (level != null && (tiersSelected || level.resolution <= 0))
+				level.persist(file);
+		}
+	}
+	
+	/**
+	 * Read the persisted summaries, if available, and summarize the remaining data points
+	 * of the data file.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	static BlockSummaries load(final FileObject file) throws IOException {
+		final BlockSummaries summaries = new BlockSummaries(file.getStoringPeriod());
+		final Level[] levels = summaries.levels;
+		// blocks first, they determine the tiers to be skipped
+		levels[RESOLUTIONS.length].load(file);
+		summaries.selectTiersIfPossible();
+		for (int i = 0; i < RESOLUTIONS.length; i++) {
+			if (levels[i] != null) {
+				if (summaries.tiersSelected)
+					levels[i].load(file);
+			} else {
+				// possibly created by a previous version
+				Files.deleteIfExists(getSummaryFile(file, RESOLUTIONS[i]));
+			}
+		}
+		final long[] lastTimestamps = new long[levels.length];
+		long last = Long.MAX_VALUE;
+		for (int i = 0; i < levels.length; i++) {
+			if (levels[i] == null)
+				continue;
+			lastTimestamps[i] = levels[i].getLastTimestamp();
+			last = Math.min(last, lastTimestamps[i]);
+		}
+		final List<SampledValue> remainder = file.readUncached(last == Long.MIN_VALUE ? Long.MIN_VALUE : last + 1);
+		for (SampledValue sv : remainder) {
+			final double value = sv.getValue().getDoubleValue();
+			if (Double.isNaN(value))
+				continue;
+			for (int i = 0; i < levels.length; i++) {
+				// fixed interval files may round the start time
+				if (levels[i] != null && sv.getTimestamp() > lastTimestamps[i]) 
+					levels[i].add(sv.getTimestamp(), value, sv.getQuality() == Quality.GOOD);
+			}
+			summaries.selectTiersIfPossible();
+		}
+		return summaries;
+	}
+	
+	private static final class Level {
+		
+		/*
+		 * 0 for the blocks of fixed size
+		 */
+		private final long resolution;
+		private final List<ValueSummary> complete = new ArrayList<>();
+		private ValueSummary open;
+		private long openBucket;
+		private int persisted;
+		
+		Level(long resolution) {
+			this.resolution = resolution;
+		}
+		
+		void add(final long timestamp, final double value, final boolean good) {
+			if (resolution > 0) {
+				final long bucket = Math.floorDiv(timestamp, resolution);
+				if (open != null && bucket != openBucket) {
+					complete.add(open);
+					open = null;
+				}
+				openBucket = bucket;
+			}
+			if (open == null)
+				open = new ValueSummary();
+			open.add(timestamp, value, good);
+			if (resolution <= 0 && open.getCount() >= BLOCK_SIZE) {
+				complete.add(open);
+				open = null;
+			}
+		}
+		
+		long getLastTimestamp() {
+			if (open != null)
+				return open.getLastTimestamp();
+			if (!complete.isEmpty())
+				return complete.get(complete.size()-1).getLastTimestamp();
+			return Long.MIN_VALUE;
+		}
+		
+		void persist(final FileObject file) throws IOException {
+			final int size = complete.size();
+			if (size <= persisted)
+				return;
+			final Path target = getSummaryFile(file, resolution);
+			final boolean append = persisted > 0;
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream((append ? 0 : HEADER_SIZE) + (size - persisted) * RECORD_SIZE);
+			try (final DataOutputStream dos = new DataOutputStream(bytes)) {
+				if (!append) {
+					dos.writeInt(VERSION);
+					dos.writeLong(file.getStartTimeStamp());
+					dos.writeLong(resolution);
+				}
+				for (int i = persisted; i < size; i++) {
+					final ValueSummary summary = complete.get(i);
+					dos.writeInt(summary.getCount());
+					dos.writeInt(summary.getGoodCount());
+					dos.writeDouble(summary.getMin());
+					dos.writeDouble(summary.getMax());
+					dos.writeDouble(summary.getSum());
+					dos.writeLong(summary.getMinTimestamp());
+					dos.writeLong(summary.getMaxTimestamp());
+					dos.writeLong(summary.getFirstTimestamp());
+					dos.writeLong(summary.getLastTimestamp());
+				}
+			}
+			if (!append) {
+				FileUtils.writeBytes(target.getParent(), target.getFileName().toString(), bytes.toByteArray());
+			} else {
+				final long position = HEADER_SIZE + (long) persisted * RECORD_SIZE;
+				try (final FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+					final ByteBuffer bb = ByteBuffer.wrap(bytes.toByteArray());
+					while (bb.hasRemaining()) {
+						channel.write(bb, position + bb.position());
+					}
+					// drop a partial record left over from an interrupted write
+					channel.truncate(position + bb.limit());
+				}
+			}
+			persisted = size;
+		}
+		
+		/**
+		 * Read the persisted summaries; an invalid side file is deleted.
+		 */
+		void load(final FileObject file) throws IOException {
+			final Path summaryFile = getSummaryFile(file, resolution);
+			if (!Files.isRegularFile(summaryFile))
+				return;
+			try {
+				if (read(summaryFile, file))
+					return;
+			} catch (IOException | RuntimeException e) {
+				file.logger.warn("Invalid summary file {}, will be recreated",summaryFile, e);
+			}
+			complete.clear();
+			Files.deleteIfExists(summaryFile);
+		}
+		
+		/**
+		 * @return
+		 * 		false if the summary file does not match the data file
+		 */
+		private boolean read(final Path summaryFile, final FileObject file) throws IOException {
+			final ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(summaryFile));
+			if (bb.limit() < HEADER_SIZE || bb.getInt() != VERSION || bb.getLong() != file.getStartTimeStamp() 
+					|| bb.getLong() != resolution)
+				return false;
+			final int size = bb.remaining() / RECORD_SIZE;
+			for (int i = 0; i < size; i++) {
+				complete.add(new ValueSummary(bb.getInt(), bb.getInt(), bb.getDouble(), bb.getDouble(), bb.getDouble(),
+						bb.getLong(), bb.getLong(), bb.getLong(), bb.getLong()));
+			}
+			// the data file must not be older than the summaries
+			if (size > 0 && getLastTimestamp() > file.getTimestampForLatestValue())
+				return false;
+			persisted = size;
+			return true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,39 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
+
+/**
+ * Receives the data points of a time series in chronological order, where rollup intervals 
+ * and complete blocks may be replaced by their summary.
+ */
+interface BlockSummaryVisitor {
+
+	/**
+	 * @param summary
+	 * @return
+	 * 		true if the summary shall be passed to {@link #visit(BlockSummary)}, false 
+	 * 		to receive finer grained summaries or the individual data points instead
+	 */
+	boolean useSummary(BlockSummary summary);
+	
+	void visit(BlockSummary summary);
+	
+	void visit(long timestamp, double value, Quality quality);
+	
+}
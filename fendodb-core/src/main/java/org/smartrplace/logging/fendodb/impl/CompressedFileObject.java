@@ -0,0 +1,790 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+import org.smartrplace.logging.fendodb.impl.SlotsDbCache.RecordedDataCache;
+
+/**
+ * Compressed slots file, file name prefix "z". Used for fixed interval as well as flexible interval 
+ * time series; the file header is the same as for the uncompressed formats (start time stamp, 
+ * followed by the storage period, or -1 for flexible interval), the data section consists of independently 
+ * decodable blocks of up to {@link #MAX_BLOCK_SIZE} data sets. A block starts with a {@link #BLOCK_HEADER_SIZE} byte
+ * header (int: number of data sets, int: length of the body in bits, long: first timestamp, long: last timestamp),
+ * followed by a bit stream which stores timestamps as delta-of-deltas and values XOR-ed with their predecessor 
+ * (see T. Pelkonen et al., "Gorilla: A Fast, Scalable, In-Memory Time Series Database", VLDB 2015).
+ * The quality is stored as a single bit, unless it changes.<br>
+ * The last block of a file may be incomplete. It is kept in memory and rewritten in place on flush; since
+ * data is only ever appended to its body, and the body is written before the header, readers always
+ * find a consistent block.
+ */
+public class CompressedFileObject extends FileObject {
+
+	static final int BLOCK_HEADER_SIZE = 24;
+	static final int MAX_BLOCK_SIZE = 1024;
+	private static final long headerend = 16;
+
+	// all guarded by this
+	private volatile Block[] blocks = new Block[0]; // complete blocks
+	private long sealedLength = headerend; // file position of the incomplete block
+	private BlockWriter openBlock;
+	private Block openBlockCopy; // may be null even if openBlock is not
+	private int writtenBytes; // bytes of the incomplete block body written to disk
+	private boolean dirty;
+	private FileChannel channel;
+	private volatile long lastTimestamp;
+	private volatile int dataSetCount;
+	// shared cache for decoded blocks; may be null
+	private final BlockCache blockCache;
+	// key for the block cache
+	private final String absolutePath;
+
+	protected CompressedFileObject(File file, RecordedDataCache cache) throws IOException {
+		super(file, cache);
+		this.blockCache = cache != null ? cache.getBlockCache() : null;
+		this.absolutePath = dataFile.getAbsolutePath();
+		loadBlocks();
+	}
+
+	protected CompressedFileObject(String fileName, RecordedDataCache cache) throws IOException {
+		super(fileName, cache);
+		this.blockCache = cache != null ? cache.getBlockCache() : null;
+		this.absolutePath = dataFile.getAbsolutePath();
+		loadBlocks();
+	}
+
+	@Override
+	void readHeader(DataInputStream dis) throws IOException {
+		startTimeStamp = dis.readLong();
+		storagePeriod = dis.readLong(); /* is -1 for flexible interval */
+		lastTimestamp = startTimeStamp;
+	}
+
+	/**
+	 * Parses the block headers and reads the incomplete last block into memory, if present. An invalid
+	 * block, which may result from an interrupted write operation, terminates the data section.
+	 * @throws IOException
+	 */
+	private void loadBlocks() throws IOException {
+		if (length <= headerend)
+			return;
+		final List<Block> list = new ArrayList<>();
+		long pos = headerend;
+		int cnt = 0;
+		try (final FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+			final long size = ch.size();
+			final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+			while (pos + BLOCK_HEADER_SIZE <= size) {
+				// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
+				((Buffer) header).clear();
+				readFully(ch, header, pos);
+				final int count = header.getInt(0);
+				final int bitLength = header.getInt(4);
+				final long first = header.getLong(8);
+				final long last = header.getLong(16);
+				final int bodyBytes = (bitLength + 7) >>> 3;
+				if (count <= 0 || count > MAX_BLOCK_SIZE || bitLength <= 0 || last < first 
+						|| pos + BLOCK_HEADER_SIZE + bodyBytes > size
+						|| (!list.isEmpty() && first <= list.get(list.size()-1).last)) {
+					logger.warn("Invalid block at position {} in file {}, ignoring the remainder of the file", pos, dataFile.getPath());
+					break;
+				}
+				cnt += count;
+				if (count < MAX_BLOCK_SIZE) {
+					final ByteBuffer body = ByteBuffer.allocate(bodyBytes);
+					readFully(ch, body, pos + BLOCK_HEADER_SIZE);
+					openBlock = BlockWriter.restore(body.array(), bitLength, count, first);
+					writtenBytes = bodyBytes;
+					break;
+				}
+				list.add(new Block(pos, count, bitLength, first, last, null));
+				pos += BLOCK_HEADER_SIZE + bodyBytes;
+			}
+		}
+		sealedLength = pos;
+		blocks = list.toArray(new Block[list.size()]);
+		dataSetCount = cnt;
+		if (openBlock != null)
+			lastTimestamp = openBlock.timestamp;
+		else if (!list.isEmpty())
+			lastTimestamp = list.get(list.size()-1).last;
+	}
+
+	private static void readFully(final FileChannel ch, final ByteBuffer buffer, final long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (ch.read(buffer, position + buffer.position()) < 0)
+				throw new EOFException();
+		}
+	}
+
+	@Override
+	public void createFileAndHeader(long startTimeStamp, long stepIntervall) throws IOException {
+		super.createFileAndHeader(startTimeStamp, stepIntervall);
+		// blocks are written via the file channel
+		if (dos != null) {
+			dos.close();
+			dos = null;
+		}
+	}
+
+	@Override
+	public synchronized void append(double value, long timestamp, byte flag) throws IOException {
+		if (dataSetCount > 0 && timestamp <= lastTimestamp)
+			return;
+		writeRow(dos, timestamp, value, flag);
+		summarize(value, timestamp, flag);
+	}
+	
+	/**
+	 * Rows are not buffered in the memtable, but encoded in the open block, which is written
+	 * via the file channel; the stream is not used.
+	 */
+	@Override
+	protected synchronized void writeRow(DataOutputStream out, long timestamp, double value, byte flag) throws IOException {
+		if (openBlock == null)
+			openBlock = new BlockWriter();
+		openBlock.append(timestamp, value, flag);
+		openBlockCopy = null;
+		dirty = true;
+		lastTimestamp = timestamp;
+		dataSetCount++;
+		if (openBlock.count >= MAX_BLOCK_SIZE)
+			sealBlock();
+	}
+
+	// requires the monitor
+	private void sealBlock() throws IOException {
+		writeOpenBlock();
+		final int bodyBytes = openBlock.getByteLength();
+		final Block[] newBlocks = Arrays.copyOf(blocks, blocks.length + 1);
+		newBlocks[blocks.length] = new Block(sealedLength, openBlock.count, openBlock.bitLength, openBlock.first, openBlock.timestamp, null);
+		blocks = newBlocks;
+		sealedLength += BLOCK_HEADER_SIZE + bodyBytes;
+		openBlock = null;
+		openBlockCopy = null;
+		writtenBytes = 0;
+	}
+
+	// requires the monitor
+	private void writeOpenBlock() throws IOException {
+		if (!dirty || openBlock == null)
+			return;
+		final FileChannel channel = getChannel();
+		final int bodyBytes = openBlock.getByteLength();
+		// the last byte written previously may have been incomplete 
+		final int from = Math.max(writtenBytes - 1, 0);
+		write(channel, ByteBuffer.wrap(openBlock.buffer, from, bodyBytes - from), sealedLength + BLOCK_HEADER_SIZE + from);
+		final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+		header.putInt(openBlock.count).putInt(openBlock.bitLength).putLong(openBlock.first).putLong(openBlock.timestamp);
+		((Buffer) header).flip();
+		write(channel, header, sealedLength);
+		writtenBytes = bodyBytes;
+		length = Math.max(length, sealedLength + BLOCK_HEADER_SIZE + bodyBytes);
+		dirty = false;
+		invalidateCache();
+	}
+
+	private static void write(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		long pos = position;
+		while (buffer.hasRemaining()) {
+			pos += channel.write(buffer, pos);
+		}
+	}
+
+	// requires the monitor
+	private FileChannel getChannel() throws IOException {
+		if (channel == null) {
+			if (!dataFile.exists())
+				throw new IOException("File " + dataFile + " does not exist");
+			channel = openChannel();
+			// remove the remainders of an interrupted write operation, if any
+			final long end = sealedLength + (writtenBytes > 0 ? BLOCK_HEADER_SIZE + writtenBytes : 0);
+			if (channel.size() > end) {
+				channel.truncate(end);
+				length = end;
+			}
+			canWrite = true;
+		}
+		return channel;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		writeOpenBlock();
+		super.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			writeOpenBlock();
+		} finally {
+			// the channel is shared with the base class, and closed there
+			channel = null;
+			// cached blocks remain valid, sealed blocks are never modified
+			super.close();
+		}
+	}
+
+	@Override
+	protected long getReadableLength() {
+		return sealedLength;
+	}
+
+	/**
+	 * Get a consistent view on the file, including the incomplete last block.
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized Snapshot snapshot() throws IOException {
+		final ByteBuffer file = getReadBuffer();
+		if (openBlock != null && openBlockCopy == null) {
+			openBlockCopy = new Block(-1, openBlock.count, openBlock.bitLength, openBlock.first, openBlock.timestamp,
+					ByteBuffer.wrap(Arrays.copyOf(openBlock.buffer, openBlock.getByteLength())));
+		}
+		return new Snapshot(file, blocks, openBlock != null ? openBlockCopy : null, blockCache, absolutePath);
+	}
+
+	@Override
+	protected List<SampledValue> readInternal(long start, long end) throws IOException {
+		final Snapshot snapshot = snapshot();
+		final List<SampledValue> toReturn = new ArrayList<>();
+		for (int i = snapshot.indexOfFirstBlockEndingAtOrAfter(start); i < snapshot.size(); i++) {
+			if (snapshot.get(i).first > end)
+				break;
+			try (final BlockCursor reader = snapshot.reader(i)) {
+				while (reader.next()) {
+					final long t = reader.getTimestamp();
+					if (t > end)
+						break;
+					if (t >= start && !Double.isNaN(reader.getValue()))
+						toReturn.add(reader.getSampledValue());
+				}
+			}
+		}
+		return toReturn;
+	}
+
+	@Override
+	protected int readChunkInternal(long start, long end, TimeSeriesChunk chunk) throws IOException {
+		final Snapshot snapshot = snapshot();
+		final int size = chunk.size();
+		for (int i = snapshot.indexOfFirstBlockEndingAtOrAfter(start); i < snapshot.size(); i++) {
+			if (snapshot.get(i).first > end)
+				break;
+			try (final BlockCursor reader = snapshot.reader(i)) {
+				while (reader.next()) {
+					final long t = reader.getTimestamp();
+					if (t > end)
+						break;
+					if (t < start)
+						continue;
+					final double value = reader.getValue();
+					if (!Double.isNaN(value) && !chunk.add(t, value, reader.getQuality()))
+						return chunk.size() - size;
+				}
+			}
+		}
+		return chunk.size() - size;
+	}
+
+	@Override
+	protected SampledValue readInternal(long timestamp) throws IOException {
+		final Snapshot snapshot = snapshot();
+		final int idx = snapshot.indexOfFirstBlockEndingAtOrAfter(timestamp);
+		if (idx >= snapshot.size() || snapshot.get(idx).first > timestamp)
+			return null;
+		try (final BlockCursor reader = snapshot.reader(idx)) {
+			while (reader.next()) {
+				final long t = reader.getTimestamp();
+				if (t > timestamp)
+					return null;
+				if (t == timestamp)
+					return Double.isNaN(reader.getValue()) ? null : reader.getSampledValue();
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected SampledValue readNextValueInternal(long timestamp) throws IOException {
+		final Snapshot snapshot = snapshot();
+		for (int i = snapshot.indexOfFirstBlockEndingAtOrAfter(timestamp); i < snapshot.size(); i++) {
+			try (final BlockCursor reader = snapshot.reader(i)) {
+				while (reader.next()) {
+					if (reader.getTimestamp() >= timestamp && !Double.isNaN(reader.getValue()))
+						return reader.getSampledValue();
+				}
+			}
+		}
+		return null;
+	}
+
+	@Override
+	protected SampledValue readPreviousValueInternal(long timestamp) throws IOException {
+		final Snapshot snapshot = snapshot();
+		for (int i = snapshot.indexOfFirstBlockEndingAtOrAfter(timestamp); i >= 0; i--) {
+			if (i >= snapshot.size() || snapshot.get(i).first > timestamp)
+				continue;
+			boolean found = false;
+			long t = 0;
+			double v = 0;
+			byte q = 0;
+			try (final BlockCursor reader = snapshot.reader(i)) {
+				while (reader.next() && reader.getTimestamp() <= timestamp) {
+					if (!Double.isNaN(reader.getValue())) {
+						found = true;
+						t = reader.getTimestamp();
+						v = reader.getValue();
+						q = reader.getQuality();
+					}
+				}
+			}
+			if (found)
+				return new SampledValue(DoubleValues.of(v), t, Quality.getQuality(q));
+		}
+		return null;
+	}
+
+	@Override
+	protected long getTimestampForLatestValueInternal() {
+		return lastTimestamp;
+	}
+
+	@Override
+	protected int getDataSetCountInternal() {
+		return dataSetCount;
+	}
+
+	@Override
+	protected int getDataSetCountInternal(long start, long end) throws IOException {
+		if (start > lastTimestamp || end < startTimeStamp)
+			return 0;
+		final Snapshot snapshot = snapshot();
+		int cnt = 0;
+		for (int i = snapshot.indexOfFirstBlockEndingAtOrAfter(start); i < snapshot.size(); i++) {
+			if (snapshot.get(i).first > end)
+				break;
+			try (final BlockCursor reader = snapshot.reader(i)) {
+				while (reader.next()) {
+					final long t = reader.getTimestamp();
+					if (t > end)
+						break;
+					if (t >= start && !Double.isNaN(reader.getValue()))
+						cnt++;
+				}
+			}
+		}
+		return cnt;
+	}
+
+	@Override
+	public long getStoringPeriod() {
+		return storagePeriod;
+	}
+
+	/**
+	 * Immutable block descriptor
+	 */
+	static final class Block {
+
+		final long position; // position of the block header in the file; -1 for the in-memory copy of the incomplete block
+		final int count;
+		final int bitLength;
+		final long first;
+		final long last;
+		private final ByteBuffer body; // null for blocks read from the file
+
+		Block(long position, int count, int bitLength, long first, long last, ByteBuffer body) {
+			this.position = position;
+			this.count = count;
+			this.bitLength = bitLength;
+			this.first = first;
+			this.last = last;
+			this.body = body;
+		}
+
+		BlockReader reader(final ByteBuffer file) {
+			return body != null ? new BlockReader(body, 0, count, first) 
+					: new BlockReader(file, (int) position + BLOCK_HEADER_SIZE, count, first);
+		}
+
+	}
+
+	private static final class Snapshot {
+
+		private final ByteBuffer file;
+		private final Block[] blocks;
+		private final Block openBlock;
+		private final BlockCache blockCache;
+		private final String path;
+
+		Snapshot(ByteBuffer file, Block[] blocks, Block openBlock, BlockCache blockCache, String path) {
+			this.file = file;
+			this.blocks = blocks;
+			this.openBlock = openBlock;
+			this.blockCache = blockCache;
+			this.path = path;
+		}
+
+		int size() {
+			return openBlock != null ? blocks.length + 1 : blocks.length;
+		}
+
+		Block get(int idx) {
+			return idx < blocks.length ? blocks[idx] : openBlock;
+		}
+
+		/**
+		 * @param idx
+		 * @return
+		 * 		a reader for the block, which must be closed after use
+		 */
+		BlockCursor reader(int idx) {
+			final Block block = get(idx);
+			if (blockCache == null || block.position < 0)
+				return block.reader(file);
+			final BlockCache.Key key = new BlockCache.Key(path, block.position, block.first, block.bitLength);
+			BlockCache.Entry entry = blockCache.acquire(key);
+			if (entry == null)
+				entry = blockCache.put(key, block.reader(file));
+			return entry != null ? new CachedBlockReader(entry) : block.reader(file);
+		}
+
+		/**
+		 * Binary search for the first block containing data at or after the passed timestamp.
+		 * @param timestamp
+		 * @return
+		 * 		the index of the block, or {@link #size()} if no such block exists
+		 */
+		int indexOfFirstBlockEndingAtOrAfter(final long timestamp) {
+			int low = 0;
+			int high = size();
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (get(mid).last < timestamp)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+
+	}
+
+	/**
+	 * Iterates over the data sets of a block.
+	 */
+	interface BlockCursor extends AutoCloseable {
+		
+		/**
+		 * Move to the next data set
+		 * @return
+		 * 		false if the end of the block has been reached
+		 */
+		boolean next();
+		
+		long getTimestamp();
+		
+		double getValue();
+		
+		byte getQuality();
+		
+		default SampledValue getSampledValue() {
+			return new SampledValue(DoubleValues.of(getValue()), getTimestamp(), Quality.getQuality(getQuality()));
+		}
+		
+		@Override
+		default void close() {}
+		
+	}
+	
+	/**
+	 * Reads a block decoded by the {@link BlockCache}, and releases it on close.
+	 */
+	private static final class CachedBlockReader implements BlockCursor {
+		
+		private final BlockCache.Entry entry;
+		private int idx = -1;
+		private boolean closed;
+		
+		CachedBlockReader(BlockCache.Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public boolean next() {
+			if (idx + 1 >= entry.size())
+				return false;
+			idx++;
+			return true;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return entry.getTimestamp(idx);
+		}
+
+		@Override
+		public double getValue() {
+			return entry.getValue(idx);
+		}
+
+		@Override
+		public byte getQuality() {
+			return entry.getQuality(idx);
+		}
+		
+		@Override
+		public void close() {
+			if (closed)
+				return;
+			closed = true;
+			entry.release();
+		}
+		
+	}
+
+	/**
+	 * Encoder/decoder state, shared by {@link BlockWriter} and {@link BlockReader}.
+	 */
+	static abstract class BlockState {
+
+		int count;
+		long first;
+		long timestamp;
+		long delta;
+		long valueBits;
+		// leading and trailing zeros of the last XOR-ed value with explicitly stored length; -1: none yet
+		int leading = -1;
+		int trailing;
+		byte quality;
+
+	}
+
+	/**
+	 * Encodes the incomplete last block.
+	 */
+	static final class BlockWriter extends BlockState {
+
+		private byte[] buffer = new byte[256];
+		private int bitLength;
+
+		int getByteLength() {
+			return (bitLength + 7) >>> 3;
+		}
+
+		static BlockWriter restore(final byte[] body, final int bitLength, final int count, final long first) {
+			final BlockReader reader = new BlockReader(ByteBuffer.wrap(body), 0, count, first);
+			while (reader.next()) {}
+			final BlockWriter writer = new BlockWriter();
+			writer.buffer = Arrays.copyOf(body, Math.max(body.length * 2, 256));
+			writer.bitLength = bitLength;
+			writer.count = count;
+			writer.first = first;
+			writer.timestamp = reader.timestamp;
+			writer.delta = reader.delta;
+			writer.valueBits = reader.valueBits;
+			writer.leading = reader.leading;
+			writer.trailing = reader.trailing;
+			writer.quality = reader.quality;
+			return writer;
+		}
+
+		void append(final long t, final double value, final byte q) {
+			final long bits = Double.doubleToRawLongBits(value);
+			if (count == 0) {
+				first = t;
+				writeBits(bits, 64);
+				writeBits(q & 0xFF, 8);
+			} else {
+				final long newDelta = t - timestamp;
+				final long dod = newDelta - delta;
+				if (dod == 0) {
+					writeBits(0, 1);
+				} else if (dod >= -63 && dod <= 64) {
+					writeBits(0b10, 2);
+					writeBits(dod + 63, 7);
+				} else if (dod >= -255 && dod <= 256) {
+					writeBits(0b110, 3);
+					writeBits(dod + 255, 9);
+				} else if (dod >= -2047 && dod <= 2048) {
+					writeBits(0b1110, 4);
+					writeBits(dod + 2047, 12);
+				} else {
+					writeBits(0b1111, 4);
+					writeBits(dod, 64);
+				}
+				delta = newDelta;
+				final long xor = bits ^ valueBits;
+				if (xor == 0) {
+					writeBits(0, 1);
+				} else {
+					final int lead = Math.min(Long.numberOfLeadingZeros(xor), 31);
+					final int trail = Long.numberOfTrailingZeros(xor);
+					if (leading >= 0 && lead >= leading && trail >= trailing) {
+						writeBits(0b10, 2);
+						writeBits(xor >>> trailing, 64 - leading - trailing);
+					} else {
+						final int meaningful = 64 - lead - trail;
+						writeBits(0b11, 2);
+						writeBits(lead, 5);
+						writeBits(meaningful - 1, 6);
+						writeBits(xor >>> trail, meaningful);
+						leading = lead;
+						trailing = trail;
+					}
+				}
+				if (q == quality) {
+					writeBits(0, 1);
+				} else {
+					writeBits(1, 1);
+					writeBits(q & 0xFF, 8);
+				}
+			}
+			timestamp = t;
+			valueBits = bits;
+			quality = q;
+			count++;
+		}
+
+		/**
+		 * Append the n lowest bits of value, most significant first.
+		 */
+		private void writeBits(final long value, int n) {
+			final int required = (bitLength + n + 7) >>> 3;
+			if (required > buffer.length)
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, required));
+			while (n > 0) {
+				final int free = 8 - (bitLength & 7);
+				final int k = Math.min(free, n);
+				final int bits = (int) (value >>> (n - k)) & ((1 << k) - 1);
+				buffer[bitLength >>> 3] |= bits << (free - k);
+				bitLength += k;
+				n -= k;
+			}
+		}
+
+	}
+
+	/**
+	 * Sequential decoder for a single block. Only absolute get operations are used on the
+	 * underlying buffer, so it may be shared between readers.
+	 */
+	static final class BlockReader extends BlockState implements BlockCursor {
+
+		private final ByteBuffer buffer;
+		private final int offset;
+		private final int size;
+		private int bitPosition;
+
+		BlockReader(ByteBuffer buffer, int offset, int size, long first) {
+			this.buffer = buffer;
+			this.offset = offset;
+			this.size = size;
+			this.first = first;
+		}
+
+		/**
+		 * Decode the next data set
+		 * @return
+		 * 		false if the end of the block has been reached
+		 */
+		@Override
+		public boolean next() {
+			if (count >= size)
+				return false;
+			if (count == 0) {
+				timestamp = first;
+				valueBits = readBits(64);
+				quality = (byte) readBits(8);
+			} else {
+				final long dod;
+				if (readBits(1) == 0)
+					dod = 0;
+				else if (readBits(1) == 0)
+					dod = readBits(7) - 63;
+				else if (readBits(1) == 0)
+					dod = readBits(9) - 255;
+				else if (readBits(1) == 0)
+					dod = readBits(12) - 2047;
+				else
+					dod = readBits(64);
+				delta += dod;
+				timestamp += delta;
+				if (readBits(1) == 1) {
+					if (readBits(1) == 0) {
+						valueBits ^= readBits(64 - leading - trailing) << trailing;
+					} else {
+						leading = (int) readBits(5);
+						final int meaningful = (int) readBits(6) + 1;
+						trailing = 64 - leading - meaningful;
+						valueBits ^= readBits(meaningful) << trailing;
+					}
+				}
+				if (readBits(1) == 1)
+					quality = (byte) readBits(8);
+			}
+			count++;
+			return true;
+		}
+
+		@Override
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		@Override
+		public double getValue() {
+			return Double.longBitsToDouble(valueBits);
+		}
+
+		@Override
+		public byte getQuality() {
+			return quality;
+		}
+
+		private long readBits(int n) {
+			long result = 0;
+			while (n > 0) {
+				final int b = buffer.get(offset + (bitPosition >>> 3)) & 0xFF;
+				final int available = 8 - (bitPosition & 7);
+				final int k = Math.min(available, n);
+				result = (result << k) | ((b >>> (available - k)) & ((1 << k) - 1));
+				bitPosition += k;
+				n -= k;
+			}
+			return result;
+		}
+
+	}
+
+}
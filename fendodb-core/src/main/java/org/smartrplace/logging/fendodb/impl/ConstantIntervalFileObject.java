@@ -16,10 +16,9 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.DataInputStream;
-import java.io.EOFException;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -27,9 +26,16 @@ import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 import org.smartrplace.logging.fendodb.impl.SlotsDbCache.RecordedDataCache;
 
 public class ConstantIntervalFileObject extends FileObject {
+	
+	/**
+	 * Gaps which would require more NaN padding than this are not padded; instead, the 
+	 * proxy starts a new file after the gap, see {@link #requiresNewFile(long)}.
+	 */
+	static final long MAX_PADDING_BYTES = 8 * 1024;
 
 	protected ConstantIntervalFileObject(File file, RecordedDataCache cache) throws IOException {
 		super(file, cache);
@@ -61,13 +67,9 @@ public class ConstantIntervalFileObject extends FileObject {
 			/*
 			 * value for this timeslot has not been saved yet "AND" some value has been stored in last timeslot
 			 */
-			if (!canWrite) {
-				enableOutput();
-			}
-
-			dos.writeDouble(value);
-			dos.writeByte(flag);
+			appendRow(getTimestamp(writePosition), value, flag);
 			length += 9;
+			summarize(value, getTimestamp(writePosition), flag);
 		}
 		else {
 			if (length > writePosition) {
@@ -79,26 +81,11 @@ public class ConstantIntervalFileObject extends FileObject {
 				/*
 				 * there are missing some values missing -> fill up with NaN!
 				 */
-				if (!canWrite) {
-					enableOutput();
-				}
-				long rowsToFillWithNan = (writePosition - length) / 9;// TODO:
-				// stimmt
-				// Berechnung?
-				for (int i = 0; i < rowsToFillWithNan; i++) {
-					dos.writeDouble(Double.NaN); // TODO: festlegen welcher Wert
-					// undefined sein soll NaN
-					// ok?
-					dos.writeByte(Quality.BAD.getQuality()); // TODO:
-					// festlegen
-					// welcher Wert
-					// undefined sein
-					// soll 00 ok?
-					length += 9;
-				}
-				dos.writeDouble(value);
-				dos.writeByte(flag);
+				appendRows(getPadding((int) ((writePosition - length) / 9)));
+				length = writePosition;
+				appendRow(getTimestamp(writePosition), value, flag);
 				length += 9;
+				summarize(value, getTimestamp(writePosition), flag);
 			}
 		}
 		/*
@@ -106,7 +93,52 @@ public class ConstantIntervalFileObject extends FileObject {
 		 * method.
 		 */
 	}
+	
+	@Override
+	protected void writeRow(DataOutputStream out, long timestamp, double value, byte flag) throws IOException {
+		out.writeDouble(value);
+		out.writeByte(flag);
+	}
+	
+	/**
+	 * @param slots
+	 * @return
+	 * 		the serialized rows for the given number of empty slots
+	 */
+	private static byte[] getPadding(final int slots) {
+		final ByteBuffer padding = ByteBuffer.allocate(slots * 9);
+		final byte bad = (byte) Quality.BAD.getQuality();
+		for (int i = 0; i < slots; i++) {
+			padding.putDouble(Double.NaN).put(bad);
+		}
+		return padding.array();
+	}
 
+	/**
+	 * @param timestamp
+	 * 		a rounded timestamp after the latest value in the file
+	 * @return
+	 * 		true if appending a value at the passed timestamp would require more than
+	 * 		{@link #MAX_PADDING_BYTES} of NaN padding
+	 */
+	boolean requiresNewFile(long timestamp) {
+		return getBytePosition(timestamp) - length > MAX_PADDING_BYTES;
+	}
+	
+	/**
+	 * @param previous
+	 * 		a rounded timestamp
+	 * @param next
+	 * 		a rounded timestamp after previous
+	 * @param storagePeriod
+	 * @return
+	 * 		true if the slots between previous and next would require more than {@link #MAX_PADDING_BYTES} 
+	 * 		of NaN padding
+	 */
+	static boolean requiresNewFile(long previous, long next, long storagePeriod) {
+		return ((next - previous) / storagePeriod - 1) * 9 > MAX_PADDING_BYTES;
+	}
+	
 	@Override
 	public long getTimestampForLatestValue() {
 		return startTimeStamp + (((length - 16) / 9) - 1) * storagePeriod;
@@ -140,6 +172,15 @@ public class ConstantIntervalFileObject extends FileObject {
 		}
 	}
 
+	/**
+	 * Inverse of {@link #getBytePosition(long)}
+	 * @param position
+	 * @return timestamp
+	 */
+	private long getTimestamp(long position) {
+		return startTimeStamp + (position - 16) / 9 * storagePeriod;
+	}
+
 	/*
 	 * Calculates the closest timestamp to wanted timestamp getByteposition does a similar thing (Math.round()), for
 	 * byte position.
@@ -157,21 +198,19 @@ public class ConstantIntervalFileObject extends FileObject {
 	}
 
 	@Override
-	public SampledValue read(long timestamp) throws IOException {
+	protected SampledValue readInternal(long timestamp) throws IOException {
 
 		if ((timestamp - startTimeStamp) % storagePeriod == 0) {
 			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				enableInput();
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
+				final ByteBuffer bb = getReadBuffer();
+				final int pos = (int) getBytePosition(timestamp);
+				if (pos + 9 > bb.limit()) {
+					logger.warn("Data set for timestamp {} missing in file {}", timestamp, dataFile.getPath());
+					return null;
+				}
+				final double toReturn = bb.getDouble(pos);
 				if (!Double.isNaN(toReturn)) {
-					try {
-						return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-					} catch(EOFException e) {
-						System.out.println("Caught EOFException reafing from "+dataFile.getPath());
-						//e.printStackTrace();
-						return null;
-					}
+					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(bb.get(pos + 8)));
 				}
 			}
 		}
@@ -205,26 +244,16 @@ public class ConstantIntervalFileObject extends FileObject {
 				endRounded = getTimestampForLatestValueInternal();
 			}
 
-			enableInput();
+			final ByteBuffer bb = getReadBuffer();
 			long timestampcounter = start;
-			long startPos = getBytePosition(start);
-			long endPos = getBytePosition(endRounded);
-
-			fis.getChannel().position(startPos);
-
-			byte[] b = new byte[(int) (endPos - startPos) + 9];
-			dis.read(b, 0, b.length);
-			ByteBuffer bb = ByteBuffer.wrap(b);
-			// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-			// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-			((Buffer) bb).rewind();
+			int startPos = (int) getBytePosition(start);
+			int endPos = (int) Math.min(getBytePosition(endRounded), bb.limit() - 9);
 
-			for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-				double d = bb.getDouble();
-				Quality s = Quality.getQuality(bb.get());
+			for (int pos = startPos; pos <= endPos; pos += 9) {
+				double d = bb.getDouble(pos);
 				if (!Double.isNaN(d)) {
 					if (timestampcounter <= end) {
-						toReturn.add(new SampledValue(DoubleValues.of(d), timestampcounter, s));
+						toReturn.add(new SampledValue(DoubleValues.of(d), timestampcounter, Quality.getQuality(bb.get(pos + 8))));
 					}
 				}
 				timestampcounter += storagePeriod;
@@ -232,58 +261,84 @@ public class ConstantIntervalFileObject extends FileObject {
 
 		}
 		else if (start == end) {
-			toReturn.add(read(start));
+			toReturn.add(readInternal(start));
 			toReturn.removeAll(Collections.singleton(null)); // ?
 		}
 		return toReturn; // Always return a list -> might be empty -> never is
 		// null, to avoid NP's
 	}
 
+	/**
+	 * Unlike {@link #readInternal(long, long)}, the boundaries are not rounded to the closest slot,
+	 * only data points with timestamps in the interval [start, end] are added.
+	 */
 	@Override
-	protected List<SampledValue> readFullyInternal() throws IOException {
-		return readInternal(startTimeStamp, getTimestampForLatestValueInternal());
+	protected int readChunkInternal(long start, long end, TimeSeriesChunk chunk) throws IOException {
+		if (end < startTimeStamp || start > end)
+			return 0;
+		final ByteBuffer bb = getReadBuffer();
+		final long countOfDataSets = getRowCount(bb);
+		long idx = start <= startTimeStamp ? 0 : (start - startTimeStamp + storagePeriod - 1) / storagePeriod;
+		long t = startTimeStamp + idx * storagePeriod;
+		final int size = chunk.size();
+		for (; idx < countOfDataSets && t <= end && !chunk.isFull(); idx++, t += storagePeriod) {
+			final int pos = getRowPosition(idx);
+			final double d = bb.getDouble(pos);
+			if (!Double.isNaN(d))
+				chunk.add(t, d, bb.get(pos + 8));
+		}
+		return chunk.size() - size;
 	}
 
+	/**
+	 * Scans the mapped file for the first non-NaN slot at or after the passed timestamp.
+	 */
 	@Override
-	public SampledValue readNextValue(long timestamp) throws IOException {
-		// Calculate next Value, round Timestamp to next Value
-		timestamp = timestamp + (storagePeriod - ((timestamp - startTimeStamp) % storagePeriod));
-		long startPos = getBytePosition(timestamp);
-		long endPos = getBytePosition(getTimestampForLatestValueInternal());
-		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				enableInput();
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-				}
-				timestamp += storagePeriod;
-			}
+	protected SampledValue readNextValueInternal(long timestamp) throws IOException {
+		final ByteBuffer bb = getReadBuffer();
+		final long rows = getRowCount(bb);
+		final long first = timestamp <= startTimeStamp ? 0 : (timestamp - startTimeStamp - 1) / storagePeriod + 1;
+		if (first >= rows)
+			return null;
+		int pos = getRowPosition(first);
+		for (long idx = first; idx < rows; idx++, pos += 9) {
+			final double value = bb.getDouble(pos);
+			if (!Double.isNaN(value))
+				return new SampledValue(DoubleValues.of(value), startTimeStamp + idx * storagePeriod, Quality.getQuality(bb.get(pos + 8)));
 		}
 		return null;
 	}
 
+	/**
+	 * Scans the mapped file backwards for the last non-NaN slot at or before the passed timestamp.
+	 */
 	@Override
-	public SampledValue readPreviousValue(long timestamp) throws IOException {
-		// Calculate next Value, round Timestamp to next Value
-		timestamp = timestamp + (storagePeriod - ((timestamp - startTimeStamp) % storagePeriod)); // what if storagePeriod changes?
-		long startPos = getBytePosition(startTimeStamp);
-		long endPos = getBytePosition(timestamp);
-
-		for (int i = 0; i <= (endPos - startPos) / 9; i++) {
-			if (timestamp >= startTimeStamp && timestamp <= getTimestampForLatestValueInternal()) {
-				enableInput();
-				fis.getChannel().position(getBytePosition(timestamp));
-				Double toReturn = dis.readDouble();
-				if (!Double.isNaN(toReturn)) {
-					return new SampledValue(DoubleValues.of(toReturn), timestamp, Quality.getQuality(dis.readByte()));
-				}
-				timestamp -= storagePeriod;
-			}
+	protected SampledValue readPreviousValueInternal(long timestamp) throws IOException {
+		if (timestamp < startTimeStamp)
+			return null;
+		final ByteBuffer bb = getReadBuffer();
+		final long last = Math.min((timestamp - startTimeStamp) / storagePeriod, getRowCount(bb) - 1);
+		if (last < 0)
+			return null;
+		int pos = getRowPosition(last);
+		for (long idx = last; idx >= 0; idx--, pos -= 9) {
+			final double value = bb.getDouble(pos);
+			if (!Double.isNaN(value))
+				return new SampledValue(DoubleValues.of(value), startTimeStamp + idx * storagePeriod, Quality.getQuality(bb.get(pos + 8)));
 		}
 		return null;
 	}
+	
+	/**
+	 * Number of complete rows contained in the buffer
+	 */
+	private static long getRowCount(final ByteBuffer bb) {
+		return Math.max(bb.limit() - 16, 0) / 9;
+	}
+	
+	private static int getRowPosition(final long idx) {
+		return (int) (16 + idx * 9);
+	}
 
     @Override
     public int getDataSetCount() {
@@ -29,6 +29,8 @@ public @interface FendoInitConfig {
 	
 	boolean readOnly() default false;
 	boolean useCompatibilityMode() default false;
+	boolean useCompression() default false;
+	boolean useWriteAheadLog() default false;
 	boolean parseFoldersOnInit() default false;
 	/**
 	 * Database flush period in ms.
@@ -54,5 +56,11 @@ public @interface FendoInitConfig {
 	long dataExpirationCheckInterval() default 24 * 60 * 60 * 1000; 
 	
 	int maxOpenFolders() default 512;
+	
+	/**
+	 * Memory budget for cached data points in MB. Set to 0 to disable the cache.
+	 * @return
+	 */
+	int valueCacheSize() default 16;
 
 }
@@ -75,6 +75,8 @@ public class FendoInitImpl {
 			try {
 				final FendoDbConfiguration cfg = FendoDbConfigurationBuilder.getInstance()
 						.setUseCompatibilityMode(config.useCompatibilityMode())
+						.setUseCompression(config.useCompression())
+						.setUseWriteAheadLog(config.useWriteAheadLog())
 						.setMaxOpenFolders(config.maxOpenFolders())
 						.setFlushPeriod(config.flushPeriod())
 						.setDataLifetimeInDays(config.dataLifeTimeDays())
@@ -82,6 +84,7 @@ public class FendoInitImpl {
 						.setReadOnlyMode(config.readOnly())
 						.setMaxDatabaseSize(config.dataLimitSize())
 						.setParseFoldersOnInit(config.parseFoldersOnInit())
+						.setValueCacheSize(config.valueCacheSize())
 						.build();
 				if (!config.constructEagerly()) {
 					((SlotsDbFactoryImpl) factory).addClosedInstance(path, cfg);
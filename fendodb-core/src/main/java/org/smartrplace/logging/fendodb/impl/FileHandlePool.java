@@ -0,0 +1,269 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounds the number of open folder lists ({@link FileObjectList}) of a database. If the limit is exceeded, 
+ * the least recently used lists are closed.<br>
+ * Lists obtained within a scope ({@link #enterScope()}, {@link #exitScope()}), which is bound to the folder 
+ * read lock, are pinned until the scope is left; pinned lists are never closed by the pool. Eviction only 
+ * requires the folder read lock, so readers and writers of other time series are not blocked. Callers 
+ * holding the folder write lock do not need a scope.
+ */
+final class FileHandlePool {
+	
+	interface ListTask {
+		
+		void run(FileObjectList list) throws IOException;
+		
+	}
+	
+	private final ConcurrentMap<String, FileObjectList> lists;
+	private final int maxOpen;
+	private final ListTask closer;
+	private final ThreadLocal<Scope> scopes = ThreadLocal.withInitial(Scope::new);
+	// only one thread evicts at a time; others simply go on
+	private final Lock evictionLock = new ReentrantLock();
+	private final AtomicLong opened = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	/**
+	 * @param lists
+	 * 		the open lists, by id
+	 * @param maxOpen
+	 * 		maximum number of open lists; may be exceeded temporarily if all lists are pinned
+	 * @param closer
+	 * 		closes an evicted list
+	 */
+	FileHandlePool(ConcurrentMap<String, FileObjectList> lists, int maxOpen, ListTask closer) {
+		this.lists = lists;
+		this.maxOpen = maxOpen;
+		this.closer = closer;
+	}
+	
+	private static final class Scope {
+		
+		private int depth;
+		private final List<FileObjectList> pinned = new ArrayList<>(4);
+		
+	}
+	
+	void enterScope() {
+		scopes.get().depth++;
+	}
+	
+	/**
+	 * Releases all lists pinned in the current scope, unless it is nested in another one. 
+	 * Must be called before the folder read lock is released.
+	 */
+	void exitScope() {
+		final Scope scope = scopes.get();
+		if (--scope.depth > 0)
+			return;
+		for (FileObjectList list : scope.pinned) {
+			list.unpin();
+		}
+		scope.pinned.clear();
+		// the limit may have been exceeded while the lists were pinned
+		if (lists.size() > maxOpen)
+			evict(null);
+	}
+	
+	/**
+	 * Get the list for the id, opening it if necessary. Requires the folder read lock and a scope, 
+	 * or the folder write lock.
+	 * @param id
+	 * @param factory
+	 * @return
+	 * 		the list, pinned until the current scope is left; null if it could not be opened
+	 */
+	FileObjectList acquire(final String id, final Function<String, FileObjectList> factory) {
+		final FileObjectList list = get(id, factory);
+		if (list != null && lists.size() > maxOpen)
+			evict(list);
+		return list;
+	}
+	
+	/**
+	 * Like {@link #acquire(String, Function)}, but does not open the list.
+	 * @param id
+	 * @return
+	 * 		the list, pinned until the current scope is left; null if it is not open
+	 */
+	FileObjectList get(final String id) {
+		return get(id, null);
+	}
+	
+	/**
+	 * Pins a list obtained earlier in another scope, without looking it up. Requires an open scope.
+	 * @param list
+	 * @return
+	 * 		false if the list has been evicted meanwhile, or is currently used exclusively
+	 */
+	boolean pin(final FileObjectList list) {
+		if (!list.pin())
+			return false;
+		scopes.get().pinned.add(list);
+		list.lastAccess = System.nanoTime();
+		return true;
+	}
+	
+	private FileObjectList get(final String id, final Function<String, FileObjectList> factory) {
+		final Scope scope = scopes.get();
+		while (true) {
+			FileObjectList list = lists.get(id);
+			if (list == null) {
+				if (factory == null)
+					return null;
+				list = lists.computeIfAbsent(id, key -> {
+					final FileObjectList newList = factory.apply(key);
+					if (newList != null)
+						opened.incrementAndGet();
+					return newList;
+				});
+				if (list == null)
+					return null;
+			}
+			if (scope.depth == 0 || list.pin()) {
+				if (scope.depth > 0)
+					scope.pinned.add(list);
+				list.lastAccess = System.nanoTime();
+				return list;
+			}
+			// the list is being evicted; it is removed from the map once it has been closed
+			synchronized (list) {}
+		}
+	}
+	
+	/*
+	 * Closes the least recently used unpinned lists, leaving some headroom below the limit, 
+	 * so that eviction does not run on every new list
+	 */
+	private void evict(final FileObjectList current) {
+		if (!evictionLock.tryLock())
+			return;
+		try {
+			final int target = maxOpen - maxOpen / 4;
+			final List<Map.Entry<String, FileObjectList>> candidates = new ArrayList<>(lists.size());
+			for (Map.Entry<String, FileObjectList> entry : lists.entrySet()) {
+				if (entry.getValue() != current && !entry.getValue().isPinned())
+					candidates.add(entry);
+			}
+			candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+			FileObjectProxy.logger.debug("More than {} folders open, closing the least recently used ones", maxOpen);
+			for (Map.Entry<String, FileObjectList> entry : candidates) {
+				if (lists.size() <= target)
+					break;
+				if (close(entry.getKey(), entry.getValue()))
+					evictions.incrementAndGet();
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+	
+	/**
+	 * Close all unpinned lists matching the filter, such as the lists of past partitions. 
+	 * Requires the folder read lock.
+	 * @param filter
+	 */
+	void closeIf(final Predicate<FileObjectList> filter) {
+		for (Map.Entry<String, FileObjectList> entry : lists.entrySet()) {
+			if (!entry.getValue().isPinned() && filter.test(entry.getValue()))
+				close(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	/**
+	 * Run a task with exclusive access to a list, unless it is in use. Threads requesting
+	 * the list meanwhile wait for the task to finish. Requires the folder read lock.
+	 * @param id
+	 * @param task
+	 * @return
+	 * 		false if the list is not open or in use
+	 * @throws IOException
+	 */
+	boolean runExclusive(final String id, final ListTask task) throws IOException {
+		final FileObjectList list = lists.get(id);
+		if (list == null || !list.markEvicted())
+			return false;
+		synchronized (list) {
+			try {
+				task.run(list);
+			} finally {
+				list.unmarkEvicted();
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Closes the list and removes it from the map, unless it is pinned
+	 */
+	private boolean close(final String id, final FileObjectList list) {
+		if (!list.markEvicted())
+			return false;
+		synchronized (list) {
+			try {
+				closer.run(list);
+			} catch (IOException e) {
+				FileObjectProxy.logger.error("Failed to close folder {}", list.getFolderName(), e);
+			} finally {
+				lists.remove(id, list);
+			}
+		}
+		return true;
+	}
+	
+	int size() {
+		return lists.size();
+	}
+	
+	/**
+	 * @return
+	 * 		the number of lists opened by the pool
+	 */
+	long getOpenedCount() {
+		return opened.get();
+	}
+	
+	/**
+	 * @return
+	 * 		the number of lists closed because the limit had been exceeded
+	 */
+	long getEvictionCount() {
+		return evictions.get();
+	}
+	
+	@Override
+	public String toString() {
+		return "FileHandlePool[open=" + lists.size() + ", max=" + maxOpen + ", opened=" + opened.get() 
+			+ ", evictions=" + evictions.get() + "]";
+	}
+	
+}
@@ -16,36 +16,91 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 import org.smartrplace.logging.fendodb.impl.SlotsDbCache.RecordedDataCache;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 
 public abstract class FileObject {
 
+	private static final int VISITOR_CHUNK_SIZE = 1024;
+	// memory used by a ReadCopy in addition to its array, approximate
+	private static final int READ_COPY_OVERHEAD = 64;
+	/**
+	 * Number of rows kept in memory before they are written to disk, independently of flush.
+	 */
+	static final int MAX_MEMTABLE_SIZE = 4096;
+	// granularity of the in-memory copy of files open for writing
+	private static final int READ_COPY_INCREMENT = 4096;
 	protected Logger logger = LoggerFactory.getLogger(getClass());
 	protected long startTimeStamp = Long.MIN_VALUE; // byte 0-7 in file (cached)
 	protected long storagePeriod; // byte 8-15 in file (cached)
 	protected final File dataFile;
 	protected DataOutputStream dos;
-	protected BufferedOutputStream bos;
-	protected FileOutputStream fos;
-	protected DataInputStream dis;
-	protected FileInputStream fis;
 	protected boolean canWrite;
-	protected volatile boolean canRead;
 	
 	private final RecordedDataCache cache;
+	
+	/*
+	 * The single channel of this file, opened on the first write access and shared by the writer 
+	 * and by readers mapping the file. Appends are written at an explicit position (appendPosition), 
+	 * independently of the channel position. Files that are only read do not keep a channel open. 
+	 * Guarded by this.
+	 */
+	private FileChannel channel;
+	// file position up to which appended data has been passed to the channel
+	private long appendPosition;
+	
+	/*
+	 * Rows appended but not yet written to disk, see #appendRow. Readers merge them with the 
+	 * data on disk. Replaced when written. Guarded by this.
+	 */
+	private MemTable memTable = new MemTable();
+	
+	/*
+	 * Read-only mapping of the complete file (including the header), shared by all readers. Files
+	 * that are not open for writing are mapped once; files open for writing only if they are too large 
+	 * for a read copy (see #getReadBuffer). The mapping is released on close, when it is replaced, and when 
+	 * the file is opened for writing, as soon as no reader is accessing it any more. 
+	 * Guarded by this.
+	 */
+	private MappedByteBuffer mappedBuffer;
+	private long mappedLength = -1;
+	// mappings to be released once the active readers have finished
+	private List<MappedByteBuffer> retiredMappings;
+	// number of readers accessing the buffer returned by #getReadBuffer
+	private int activeReaders;
+	/*
+	 * Incremented whenever the data on disk changes and the cached values are invalidated. Values read 
+	 * from disk are only cached if the generation has not changed meanwhile. Guarded by this.
+	 */
+	private long generation;
+	
+	/*
+	 * Rollup tiers and summaries of blocks of data points; loaded on first access, kept up to date by append. 
+	 * Guarded by this.
+	 */
+	private BlockSummaries summaries;
 
 	/*
 	 * File length will be cached to avoid system calls and improve I/O Performance
@@ -53,40 +108,29 @@ public abstract class FileObject {
 	protected long length = 0;
 
 	public FileObject(String filename, RecordedDataCache cache) throws IOException {
+		this(new File(filename), cache);
+	}
+
+	public FileObject(File file, RecordedDataCache cache) throws IOException {
 		this.cache = cache;
 		canWrite = false;
-		canRead = false;
-		dataFile = new File(filename);
+		dataFile = file;
 		length = dataFile.length();
+		appendPosition = length;
 		if (dataFile.exists() && length >= 16) {
 			/*
-			 * File already exists -> get file Header (startTime and step-frequency) TODO: compare to starttime and
-			 * frequency in constructor! new file needed? update to file-array!
+			 * File already exists -> get file Header (startTime and step-frequency)
 			 */
-			try {
-				fis = new FileInputStream(dataFile);
-				try {
-					dis = new DataInputStream(fis);
-					try {
-						readHeader(dis);
-					} finally {
-						if (dis != null) {
-							dis.close();
-							dis = null;
-						}
-					}
-				} finally {
-					if (dis != null) {
-						dis.close();
-						dis = null;
-					}
-				}
-			} finally {
-				if (fis != null) {
-					fis.close();
-					fis = null;
+			final ByteBuffer header = ByteBuffer.allocate(16);
+			try (final FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+				while (header.hasRemaining()) {
+					if (ch.read(header, header.position()) < 0)
+						throw new EOFException("Unexpected end of file " + dataFile.getPath());
 				}
 			}
+			try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(header.array()))) {
+				readHeader(dis);
+			}
 		}
 	}
 
@@ -97,98 +141,247 @@ public abstract class FileObject {
 	 */
 	abstract void readHeader(DataInputStream dis) throws IOException;
 
-	public FileObject(File file, RecordedDataCache cache) throws IOException {
-		this.cache = cache;
-		canWrite = false;
-		canRead = false;
-		dataFile = file;
-		length = dataFile.length();
-		if (dataFile.exists() && length >= 16) {
-			/*
-			 * File already exists -> get file Header (startTime and step-frequency)
-			 */
-			fis = new FileInputStream(dataFile);
-			try {
-				dis = new DataInputStream(fis);
-				try {
-					readHeader(dis);
-				} finally {
-					if (dis != null) {
-						dis.close();
-						dis = null;
-					}
-				}
-			} finally {
-				if (fis != null) {
-					fis.close();
-					fis = null;
-				}
+	protected synchronized void enableOutput() throws IOException {
+		if (dos == null) {
+			openChannel();
+			appendPosition = length;
+			dos = new DataOutputStream(new BufferedOutputStream(new ChannelAppender()));
+		}
+		canWrite = true;
+	}
+	
+	/**
+	 * @return
+	 * 		the channel of this file, opened for reading and writing if necessary. It is closed by {@link #close()}.
+	 * @throws IOException
+	 */
+	protected synchronized FileChannel openChannel() throws IOException {
+		if (channel == null) {
+			channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			releaseMapping();
+		}
+		return channel;
+	}
+	
+	/**
+	 * Writes the appended data at the current append position of the channel.
+	 */
+	private final class ChannelAppender extends OutputStream {
+		
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+			while (buffer.hasRemaining()) {
+				appendPosition += channel.write(buffer, appendPosition);
 			}
-
 		}
+		
 	}
 
-	protected void enableOutput() throws IOException {
-		/*
-		 * Close Input Streams, for enabling output.
-		 */
-		if (dis != null) {
-			dis.close();
-			dis = null;
-		}
-		if (fis != null) {
-			fis.close();
-			fis = null;
+	/**
+	 * Returns a read-only buffer covering the complete file, including the 16 byte header, so that
+	 * absolute buffer positions correspond to file positions. Rows held in the {@link MemTable} are not 
+	 * included. The buffer is shared by concurrent readers, hence callers
+	 * must only use the absolute get methods, or work on a {@link ByteBuffer#duplicate() duplicate}.
+	 * It must only be accessed between {@link #beginRead()} and {@link #endRead()}.<br>
+	 * Files that are not open for writing are mapped; for files open for writing, the buffer is 
+	 * a copy of the data on disk, to which only the bytes appended since the last call are read.
+	 * The copy is held in the values cache, so it counts against the cache budget and may be evicted;
+	 * files too large to be copied are mapped again whenever they have grown.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	protected synchronized ByteBuffer getReadBuffer() throws IOException {
+		final long readableLength = getReadableLength();
+		if (channel != null) {
+			if (readableLength < 16)
+				return ByteBuffer.allocate(0);
+			final long maxCopySize = cache.getMaxReadCopySize();
+			if (readableLength <= maxCopySize)
+				return getReadCopy((int) readableLength, (int) maxCopySize);
+			discardReadCopy();
 		}
-
-		/*
-		 * enabling output
-		 */
-		if (fos == null || dos == null || bos == null) {
-			fos = new FileOutputStream(dataFile, true);
-			bos = new BufferedOutputStream(fos);
-			dos = new DataOutputStream(bos);
-		}
-		canRead = false;
-		canWrite = true;
+		if (mappedBuffer != null && mappedLength == readableLength)
+			return mappedBuffer;
+		releaseMapping();
+		if (readableLength < 16 || !dataFile.exists()) 
+			return ByteBuffer.allocate(0);
+		if (channel != null) {
+			mappedBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, readableLength);
+		} else {
+			try (final FileChannel ch = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+				// the mapping remains valid after the channel has been closed
+				mappedBuffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(readableLength, ch.size()));
+			}
+		}
+		mappedLength = readableLength;
+		return mappedBuffer;
 	}
-
-	protected void enableInput() throws IOException {
-		if (canRead)
+	
+	// requires the monitor
+	private ByteBuffer getReadCopy(final int length, final int maxSize) throws IOException {
+		// the mapping used before the file has become small enough, or before it was opened for writing
+		releaseMapping();
+		ReadCopy copy = cache.getReadCopy();
+		// a copy of a previous instance for the same file must not be reused
+		if (copy != null && (copy.owner != this || copy.length > length))
+			copy = null;
+		boolean resized = false;
+		if (copy == null || copy.data.length < length) {
+			final long capacity = Math.max(length, copy == null ? 0 : 2L * copy.data.length);
+			final int rounded = (int) Math.min((capacity + READ_COPY_INCREMENT - 1) / READ_COPY_INCREMENT * READ_COPY_INCREMENT, 
+					Math.max(maxSize, length));
+			// buffers returned previously keep the old array
+			if (copy == null)
+				copy = new ReadCopy(this, new byte[rounded]);
+			else
+				copy.data = Arrays.copyOf(copy.data, rounded);
+			resized = true;
+		}
+		final ByteBuffer target = ByteBuffer.wrap(copy.data, copy.length, length - copy.length);
+		while (target.hasRemaining()) {
+			if (channel.read(target, target.position()) < 0)
+				throw new EOFException("Unexpected end of file " + dataFile.getPath());
+		}
+		copy.length = length;
+		if (resized) // update the weight
+			cache.cacheReadCopy(copy);
+		return ByteBuffer.wrap(copy.data, 0, length).asReadOnlyBuffer();
+	}
+	
+	// requires the monitor
+	private void discardReadCopy() {
+		final ReadCopy copy = cache.getReadCopy();
+		if (copy != null && copy.owner == this)
+			cache.invalidateReadCopy();
+	}
+	
+	/**
+	 * Release the mapping, or defer this until the active readers have finished. 
+	 * Requires the monitor.
+	 */
+	private void releaseMapping() {
+		if (mappedBuffer == null)
 			return;
-		synchronized (this) {
-			if (canRead)
-				return;
-			/*
-			 * Close Output Streams for enabling input.
-			 */
-			if (dos != null) {
-				cache.invalidate();
-				assert cache.getCache() == null : "Invalidated cache is still alive";
-				dos.flush();
-				dos.close();
-				dos = null;
-			}
-			if (bos != null) {
-				bos.close();
-				bos = null;
-			}
-			if (fos != null) {
-				fos.close();
-				fos = null;
-			}
+		if (activeReaders == 0) {
+			FileUtils.unmap(mappedBuffer);
+		} else {
+			if (retiredMappings == null)
+				retiredMappings = new ArrayList<>(2);
+			retiredMappings.add(mappedBuffer);
+		}
+		mappedBuffer = null;
+		mappedLength = -1;
+	}
 	
-			/*
-			 * enabling input
-			 */
-			if (fis == null || dis == null) {
-				fis = new FileInputStream(dataFile);
-				dis = new DataInputStream(fis);
+	/**
+	 * To be called before accessing the buffer returned by {@link #getReadBuffer()}, 
+	 * which is not released until the matching call to {@link #endRead()}.
+	 */
+	private synchronized void beginRead() {
+		activeReaders++;
+	}
+	
+	private synchronized void endRead() {
+		if (--activeReaders == 0 && retiredMappings != null) {
+			for (MappedByteBuffer buffer : retiredMappings) {
+				FileUtils.unmap(buffer);
 			}
-			canWrite = false;
-			canRead = true;
+			retiredMappings = null;
 		}
 	}
+	
+	/**
+	 * The number of bytes covered by {@link #getReadBuffer()}. By default, this is the length of the 
+	 * data written to disk, excluding the rows held in memory.
+	 * @return
+	 */
+	protected long getReadableLength() {
+		return appendPosition;
+	}
+	
+	/**
+	 * To be called by subclasses for every row appended to the file, including NaN padding. The row
+	 * is kept in memory, and written to disk on the next {@link #flush()}, or when 
+	 * {@link #MAX_MEMTABLE_SIZE} rows have accumulated. Timestamps must be strictly increasing. 
+	 * @param timestamp
+	 * @param value
+	 * @param flag
+	 * @throws IOException
+	 */
+	protected synchronized void appendRow(long timestamp, double value, byte flag) throws IOException {
+		if (!canWrite) {
+			enableOutput();
+		}
+		memTable.add(timestamp, value, flag);
+		if (memTable.size() >= MAX_MEMTABLE_SIZE)
+			writeMemTable();
+	}
+	
+	/**
+	 * Write a block of serialized rows to disk in one go, after the rows held in memory, bypassing 
+	 * the {@link MemTable}. For NaN padding, which is not worth buffering row by row.
+	 * @param rows
+	 * @throws IOException
+	 */
+	protected synchronized void appendRows(byte[] rows) throws IOException {
+		if (!canWrite) {
+			enableOutput();
+		}
+		writeMemTable();
+		dos.write(rows);
+		dos.flush();
+		invalidateCache();
+	}
+	
+	/**
+	 * Serialize a row appended via {@link #appendRow(long, double, byte)}.
+	 * @param out
+	 * @param timestamp
+	 * @param value
+	 * @param flag
+	 * @throws IOException
+	 */
+	protected abstract void writeRow(DataOutputStream out, long timestamp, double value, byte flag) throws IOException;
+	
+	// requires the monitor
+	private void writeMemTable() throws IOException {
+		if (memTable.isEmpty())
+			return;
+		final MemTable rows = memTable;
+		// readers may still be working on a snapshot of the old table
+		memTable = new MemTable();
+		final int size = rows.size();
+		for (int i = 0; i < size; i++) {
+			writeRow(dos, rows.getTimestamp(i), rows.getValue(i), rows.getFlag(i));
+		}
+		dos.flush();
+		invalidateCache();
+		assert cache.getCache() == null : "Invalidated cache is still alive";
+	}
+	
+	/**
+	 * @return
+	 * 		a snapshot of the rows not yet written to disk, or null if there are none
+	 */
+	private synchronized MemTable getMemTable() {
+		return memTable.isEmpty() ? null : memTable.snapshot();
+	}
+	
+	/**
+	 * Drop the cached values of this file; to be called by subclasses that modify the file
+	 * without going through the output streams.
+	 */
+	protected synchronized void invalidateCache() {
+		generation++;
+		cache.invalidate();
+	}
 
 	/**
 	 * creates the file, if it doesn't exist.
@@ -213,87 +406,364 @@ public abstract class FileObject {
 			this.storagePeriod = stepIntervall;
 
 			/*
-			 * Do not close Output streams, because after writing the header -> data will follow!
+			 * Do not close the writer, because after writing the header -> data will follow!
 			 */
-			fos = new FileOutputStream(dataFile);
-			bos = new BufferedOutputStream(fos);
-			dos = new DataOutputStream(bos);
+			length = 0;
+			enableOutput();
 			dos.writeLong(this.startTimeStamp);
 			dos.writeLong(stepIntervall);
 			dos.flush();
 			length += 16; /* wrote 2*8 Bytes */
-			canWrite = true;
-			canRead = false;
+			BlockSummaries.deleteSummaryFiles(this);
+			synchronized (this) {
+				summaries = new BlockSummaries(getStoringPeriod());
+				// the file has been written from scratch
+				discardReadCopy();
+			}
 		}
 	}
 	
+	/**
+	 * @return
+	 * 		a read-only list
+	 * @throws IOException
+	 */
 	public List<SampledValue> readFully() throws IOException {
-		List<SampledValue> values = cache.getCache();
+		final MemTable pending = getMemTable();
+		final SampledValueList values = readStored();
+		if (pending == null)
+			return values;
+		return merge(values, pending, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * @return
+	 * 		all values on disk, possibly cached
+	 * @throws IOException
+	 */
+	private SampledValueList readStored() throws IOException {
+		SampledValueList values = cache.getCache();
 		if (values != null)
 			return values;
-		values = readFullyInternal();
-		// store until next write access
-		cache.cache(Collections.unmodifiableList(values));
+		final long generation;
+		synchronized (this) {
+			generation = this.generation;
+		}
+		beginRead();
+		try {
+			values = readFullyInternal();
+		} finally {
+			endRead();
+		}
+		synchronized (this) {
+			// store until the memtable is written to disk, unless it has been written meanwhile
+			if (generation == this.generation)
+				cache.cache(values);
+		}
 		return values;
 	}
 	
-	public List<SampledValue> read(long start, long end) throws IOException {
-		if (start <= startTimeStamp && end >= getTimestampForLatestValue()) {
-			return readFully(); // caches values
-		}
-		final List<SampledValue> values = cache.getCache();
-		if (values != null) {
-			final List<SampledValue> copy = new ArrayList<>(values.size());
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				copy.add(sv);
+	/**
+	 * Append the rows of the memtable between start and end to the values on disk, which must 
+	 * precede the memtable. 
+	 */
+	private static SampledValueList merge(final List<SampledValue> stored, final MemTable pending, final long start, final long end) {
+		final TimeSeriesChunk chunk = new TimeSeriesChunk(stored.size() + pending.count(start, end));
+		if (stored instanceof SampledValueList) {
+			((SampledValueList) stored).readChunk(Long.MIN_VALUE, Long.MAX_VALUE, chunk);
+		} else {
+			for (SampledValue sv : stored) {
+				chunk.add(sv.getTimestamp(), sv.getValue().getDoubleValue(), sv.getQuality());
 			}
-			return copy;
 		}
-		return readInternal(start, end);
+		pending.readChunk(start, end, chunk);
+		return SampledValueList.of(chunk);
+	}
+	
+	/**
+	 * @param start
+	 * @param end
+	 * @return
+	 * 		a list that must not be modified; if the values are cached this is a view 
+	 * 		of the cached values
+	 * @throws IOException
+	 */
+	public List<SampledValue> read(long start, long end) throws IOException {
+		final MemTable pending = getMemTable();
+		if (pending == null)
+			return readStored(start, end);
+		final long first = pending.getFirstTimestamp();
+		if (end < first)
+			return readStored(start, end);
+		// the data on disk may meanwhile include rows of the snapshot
+		final List<SampledValue> stored = start < first ? readStored(start, first - 1) : Collections.<SampledValue> emptyList();
+		return merge(stored, pending, start, end);
 	};
+	
+	private List<SampledValue> readStored(long start, long end) throws IOException {
+		if (start <= startTimeStamp && end >= getTimestampForLatestValueInternal()) {
+			return readStored(); // caches values
+		}
+		final SampledValueList values = cache.getCache();
+		if (values != null)
+			return values.between(start, end);
+		beginRead();
+		try {
+			return readInternal(start, end);
+		} finally {
+			endRead();
+		}
+	}
+	
+	/**
+	 * Append the data points between start and end (both inclusive) to the chunk, until it is full. 
+	 * Timestamps are not rounded, also for fixed interval files.
+	 * @param start
+	 * @param end
+	 * @param chunk
+	 * @return
+	 * 		the number of data points added
+	 * @throws IOException
+	 */
+	public int readChunk(long start, long end, TimeSeriesChunk chunk) throws IOException {
+		final MemTable pending = getMemTable();
+		if (pending == null)
+			return readStoredChunk(start, end, chunk);
+		final long first = pending.getFirstTimestamp();
+		int cnt = 0;
+		if (start < first)
+			cnt = readStoredChunk(start, Math.min(end, first - 1), chunk);
+		return cnt + pending.readChunk(start, end, chunk);
+	}
+	
+	private int readStoredChunk(long start, long end, TimeSeriesChunk chunk) throws IOException {
+		final SampledValueList values = cache.getCache();
+		if (values != null)
+			return values.readChunk(start, end, chunk);
+		beginRead();
+		try {
+			return readChunkInternal(start, end, chunk);
+		} finally {
+			endRead();
+		}
+	}
+	
+	public SampledValue read(long timestamp) throws IOException {
+		final MemTable pending = getMemTable();
+		if (pending != null && timestamp >= pending.getFirstTimestamp())
+			return pending.read(timestamp);
+		beginRead();
+		try {
+			return readInternal(timestamp);
+		} finally {
+			endRead();
+		}
+	}
+	
+	public SampledValue readNextValue(long timestamp) throws IOException {
+		final MemTable pending = getMemTable();
+		if (pending == null || timestamp < pending.getFirstTimestamp()) {
+			final SampledValue next;
+			beginRead();
+			try {
+				next = readNextValueInternal(timestamp);
+			} finally {
+				endRead();
+			}
+			if (next != null || pending == null)
+				return next;
+		}
+		return pending.readNextValue(timestamp);
+	}
+	
+	public SampledValue readPreviousValue(long timestamp) throws IOException {
+		final MemTable pending = getMemTable();
+		if (pending != null) {
+			final SampledValue previous = pending.readPreviousValue(timestamp);
+			if (previous != null)
+				return previous;
+		}
+		beginRead();
+		try {
+			return readPreviousValueInternal(timestamp);
+		} finally {
+			endRead();
+		}
+	}
+	
+	/**
+	 * Bypasses the values cache, which is not updated on append.
+	 * @param start
+	 * @return
+	 * 		all values at or after start, including those not written to disk yet
+	 * @throws IOException
+	 */
+	List<SampledValue> readUncached(long start) throws IOException {
+		final MemTable pending = getMemTable();
+		final long end = pending == null ? getTimestampForLatestValueInternal() : pending.getFirstTimestamp() - 1;
+		final List<SampledValue> stored;
+		beginRead();
+		try {
+			stored = start == Long.MIN_VALUE && pending == null ? readFullyInternal() 
+					: start <= end ? readInternal(start, end) : Collections.<SampledValue> emptyList();
+		} finally {
+			endRead();
+		}
+		if (pending == null)
+			return stored;
+		return merge(stored, pending, start, Long.MAX_VALUE);
+	}
+
 
+	/**
+	 * Pass all data points between start and end (inclusive) to the visitor, in chronological order, using 
+	 * the precomputed summaries where possible. The coarsest rollup tier is tried first, the gaps left 
+	 * are filled from the finer tiers, the blocks, and finally the individual data points.
+	 * @param start
+	 * @param end
+	 * @param visitor
+	 * @throws IOException
+	 */
+	public void read(final long start, final long end, final BlockSummaryVisitor visitor) throws IOException {
+		read(start, end, getSummaryLevels(), 0, visitor, new TimeSeriesChunk(VISITOR_CHUNK_SIZE));
+	}
+	
+	private void read(final long start, final long end, final List<? extends List<? extends BlockSummary>> levels,
+			final int level, final BlockSummaryVisitor visitor, final TimeSeriesChunk chunk) throws IOException {
+		if (level >= levels.size()) {
+			visitValues(start, end, visitor, chunk);
+			return;
+		}
+		final List<? extends BlockSummary> summaries = levels.get(level);
+		long from = start;
+		for (int i = getFirstIndex(summaries, start); i < summaries.size(); i++) {
+			final BlockSummary summary = summaries.get(i);
+			if (summary.getLastTimestamp() > end)
+				break;
+			if (!visitor.useSummary(summary))
+				continue;
+			if (summary.getFirstTimestamp() > from)
+				read(from, summary.getFirstTimestamp() - 1, levels, level + 1, visitor, chunk);
+			visitor.visit(summary);
+			if (summary.getLastTimestamp() == Long.MAX_VALUE)
+				return;
+			from = summary.getLastTimestamp() + 1;
+		}
+		if (from <= end)
+			read(from, end, levels, level + 1, visitor, chunk);
+	}
+	
+	/**
+	 * @return
+	 * 		the index of the first summary starting at or after timestamp
+	 */
+	private static int getFirstIndex(final List<? extends BlockSummary> summaries, final long timestamp) {
+		int low = 0;
+		int high = summaries.size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (summaries.get(mid).getFirstTimestamp() < timestamp)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	private void visitValues(long start, final long end, final BlockSummaryVisitor visitor, final TimeSeriesChunk chunk) throws IOException {
+		while (true) {
+			chunk.clear();
+			readChunk(start, end, chunk);
+			final int size = chunk.size();
+			final long[] timestamps = chunk.getTimestamps();
+			final double[] values = chunk.getValues();
+			final byte[] qualities = chunk.getQualityFlags();
+			for (int i = 0; i < size; i++) {
+				visitor.visit(timestamps[i], values[i], Quality.getQuality(qualities[i]));
+			}
+			if (!chunk.isFull())
+				return;
+			start = chunk.getLastTimestamp() + 1;
+		}
+	}
+	
+	/**
+	 * @return
+	 * 		the complete summaries per level, from the coarsest rollup tier to the blocks
+	 * @throws IOException
+	 */
+	synchronized List<? extends List<? extends BlockSummary>> getSummaryLevels() throws IOException {
+		if (summaries == null) {
+			summaries = BlockSummaries.load(this);
+			persistSummaries();
+		}
+		return summaries.getLevels();
+	}
+	
+	/**
+	 * To be called by subclasses for every data point appended to the file.
+	 * @param value
+	 * @param timestamp
+	 * @param flag
+	 * @throws IOException 
+	 */
+	protected synchronized void summarize(double value, long timestamp, byte flag) throws IOException {
+		if (summaries == null) // includes the new data point
+			summaries = BlockSummaries.load(this);
+		else
+			summaries.add(timestamp, value, flag);
+	}
+	
+	// requires the monitor
+	private void persistSummaries() {
+		if (summaries == null || !summaries.isDirty() || !dataFile.exists())
+			return;
+		try {
+			summaries.persist(this);
+		} catch (IOException e) {
+			logger.warn("Failed to store summaries for {}", dataFile, e);
+		}
+	}
 
 	public int getDataSetCount() {
-		final List<SampledValue> values = cache.getCache();
-		if (values != null) {	
-			return values.size();
+		final MemTable pending;
+		final int stored;
+		synchronized (this) {
+			pending = getMemTable();
+			final SampledValueList values = cache.getCache();
+			stored = values != null ? values.size() : getDataSetCountInternal();
 		}
-		return getDataSetCountInternal();
+		return pending == null ? stored : stored + pending.count(Long.MIN_VALUE, Long.MAX_VALUE);
 	};
 	
 	public int getDataSetCount(long start, long end) throws IOException {
-		final List<SampledValue> values = cache.getCache();
-		if (values != null) {
-			if (start <= startTimeStamp && !values.isEmpty()) {
-				long endTimeStamp = values.get(values.size()-1).getTimestamp();
-				if (end >= endTimeStamp) {
-					return values.size();
-				}
-			}
-			int cnt = 0;
-			for (final SampledValue sv : values) {
-				final long t = sv.getTimestamp();
-				if (t < start)
-					continue;
-				if (t > end)
-					break;
-				cnt++;
-			}
-			return cnt;
-		}
-		return getDataSetCountInternal(start, end);
+		final MemTable pending = getMemTable();
+		if (pending == null)
+			return getStoredDataSetCount(start, end);
+		final long first = pending.getFirstTimestamp();
+		final int stored = start < first ? getStoredDataSetCount(start, Math.min(end, first - 1)) : 0;
+		return stored + pending.count(start, end);
 	};
-
+	
+	private int getStoredDataSetCount(long start, long end) throws IOException {
+		final SampledValueList values = cache.getCache();
+		if (values != null)
+			return values.between(start, end).size();
+		beginRead();
+		try {
+			return getDataSetCountInternal(start, end);
+		} finally {
+			endRead();
+		}
+	}
 
 	public long getTimestampForLatestValue() {
-		final List<SampledValue> values = cache.getCache();
+		final MemTable pending = getMemTable();
+		if (pending != null)
+			return pending.getLastTimestamp();
+		final SampledValueList values = cache.getCache();
 		if (values != null && !values.isEmpty()) {
-			return values.get(values.size()-1).getTimestamp();
+			return values.getTimestamp(values.size()-1);
 		}
 		return getTimestampForLatestValueInternal();
 	};
@@ -302,13 +772,35 @@ public abstract class FileObject {
 
 	protected abstract List<SampledValue> readInternal(long start, long end) throws IOException;
 
-	protected abstract List<SampledValue> readFullyInternal() throws IOException;
+	/**
+	 * Bypasses the values cache.
+	 * @return
+	 * @throws IOException
+	 */
+	protected SampledValueList readFullyInternal() throws IOException {
+		int capacity = getDataSetCountInternal() + 1;
+		while (true) {
+			final TimeSeriesChunk chunk = new TimeSeriesChunk(capacity);
+			readChunkInternal(Long.MIN_VALUE, Long.MAX_VALUE, chunk);
+			if (!chunk.isFull())
+				return SampledValueList.of(chunk);
+			capacity = (int) Math.min(2L * capacity, Integer.MAX_VALUE - 8);
+		}
+	}
+	
+	/**
+	 * @see #readChunk(long, long, TimeSeriesChunk)
+	 */
+	protected abstract int readChunkInternal(long start, long end, TimeSeriesChunk chunk) throws IOException;
 	
-	public abstract SampledValue read(long timestamp) throws IOException;
+	/**
+	 * The read methods ending on Internal bypass the values cache, and only cover the data written to disk.
+	 */
+	protected abstract SampledValue readInternal(long timestamp) throws IOException;
 
-	public abstract SampledValue readNextValue(long timestamp) throws IOException;
+	protected abstract SampledValue readNextValueInternal(long timestamp) throws IOException;
 	
-	public abstract SampledValue readPreviousValue(long timestamp) throws IOException;
+	protected abstract SampledValue readPreviousValueInternal(long timestamp) throws IOException;
 	
 	protected abstract long getTimestampForLatestValueInternal();
 	
@@ -322,27 +814,20 @@ public abstract class FileObject {
 	 * 
 	 * @throws IOException
 	 */
-	public void close() throws IOException {
-		canRead = false;
+	public synchronized void close() throws IOException {
 		canWrite = false;
-		if (dos != null) {
-			cache.invalidate();
-			assert cache.getCache() == null : "Invalidated cache is still alive";
-			dos.flush();
-			dos.close();
+		releaseMapping();
+		discardReadCopy();
+		try {
+			if (dos != null) 
+				writeMemTable();
+			persistSummaries();
+		} finally {
 			dos = null;
-		}
-		if (fos != null) {
-			fos.close();
-			fos = null;
-		}
-		if (dis != null) {
-			dis.close();
-			dis = null;
-		}
-		if (fis != null) {
-			fis.close();
-			fis = null;
+			if (channel != null) {
+				channel.close();
+				channel = null;
+			}
 		}
 	}
 
@@ -351,12 +836,11 @@ public abstract class FileObject {
 	 * 
 	 * @throws IOException
 	 */
-	public void flush() throws IOException {
-		if (dos != null) {
-			cache.invalidate();
-			assert cache.getCache() == null : "Invalidated cache is still alive";
-			dos.flush();
-		}
+	public synchronized void flush() throws IOException {
+		// the cached values remain valid if nothing has been appended
+		if (dos != null)
+			writeMemTable();
+		persistSummaries();
 	}
 
 	/**
@@ -373,6 +857,9 @@ public abstract class FileObject {
 		else if (fileName.startsWith("f")) {
 			return new FlexibleIntervalFileObject(fileName, cache);
 		}
+		else if (fileName.startsWith("z")) {
+			return new CompressedFileObject(fileName, cache);
+		}
 		else {
 			throw new IOException("Invalid filename for SlotsDB-File");
 		}
@@ -385,8 +872,35 @@ public abstract class FileObject {
 		else if (file.getName().startsWith("f")) {
 			return new FlexibleIntervalFileObject(file, cache);
 		}
+		else if (file.getName().startsWith("z")) {
+			return new CompressedFileObject(file, cache);
+		}
 		else {
 			throw new IOException("Invalid file for SlotsDB-File. Invalid filename.");
 		}
 	}
+	
+	/**
+	 * Copy of the data on disk of a file open for writing, used by readers instead of a mapping 
+	 * (see {@link #getReadBuffer()}). Held in the values cache, so that it counts against the cache budget.
+	 * Only modified by its owner, holding the owner's monitor.
+	 */
+	static final class ReadCopy {
+		
+		private final FileObject owner;
+		private byte[] data;
+		// number of bytes copied from the file
+		private int length;
+		
+		private ReadCopy(FileObject owner, byte[] data) {
+			this.owner = owner;
+			this.data = data;
+		}
+		
+		int getMemorySize() {
+			return data.length + READ_COPY_OVERHEAD;
+		}
+		
+	}
+
 }
@@ -15,11 +15,30 @@
  */
 package org.smartrplace.logging.fendodb.impl;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
 
 /**
  * Class representing a folder in a SlotsDatabase.<br>
@@ -37,13 +56,42 @@ import java.util.Vector;
  */
 public final class FileObjectList {
 
-	// synchronized by read-write lock of the respective SlotsDbStorage
-	// adding a file requires a write lock, reading requires a read lock
-	private List<FileObject> files;
+	/**
+	 * Side file in the label folder holding the late values that have not been merged into the 
+	 * data files yet; a sequence of 17 byte records (timestamp, value, flag).
+	 */
+	static final String LATE_VALUES_FILE = "late.values";
+	private static final int LATE_VALUE_SIZE = 17;
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final Comparator<FileObject> START_TIME_ORDER = Comparator.comparingLong(FileObject::getStartTimeStamp);
+
+	/*
+	 * Sorted by start time stamp; the time ranges of the files do not overlap. The list is not 
+	 * modified after publication, adding files replaces it, so readers holding the folder read lock 
+	 * may access it concurrently to the writer holding the series lock.
+	 */
+	private volatile List<FileObject> files;
 	private String foldername;
 	private long firstTS;
-	private int size;
 	private final boolean useCompatibilityMode;
+	private final SlotsDbCache cache;
+	private final String encodedId;
+	/*
+	 * Values older than the latest value of the respective file, sorted by timestamp. The first value
+	 * per timestamp wins. Guarded by this.
+	 */
+	private final NavigableMap<Long, SampledValue> lateValues = new TreeMap<>();
+	/*
+	 * Late values not written to the side file yet. Guarded by this.
+	 */
+	private final List<SampledValue> unspilled = new ArrayList<>();
+	/*
+	 * Number of pins held by readers and writers (see FileHandlePool), or -1 if the list 
+	 * has been evicted, or is used exclusively
+	 */
+	private final AtomicInteger pins = new AtomicInteger();
+	// System.nanoTime() of the last access via the FileHandlePool
+	volatile long lastAccess;
 	
 	/**
 	 * Creates a FileObjectList<br>
@@ -56,7 +104,10 @@ public final class FileObjectList {
 		// File folder = new File(foldername);
 		this.foldername = foldername;
 		this.useCompatibilityMode = useCompatibilityMode;
+		this.cache = cache;
+		this.encodedId = encodedId;
 		reLoadFolder(cache, encodedId);
+		loadLateValues();
 	}
 	
 	public String getFolderName() {
@@ -72,32 +123,33 @@ public final class FileObjectList {
 
 		File folder = new File(foldername);
 
-		files = new ArrayList<>(1);
+		final List<FileObject> files = new ArrayList<>(1);
 		if (folder.isDirectory()) {
+			final List<File> dataFiles = new ArrayList<>();
 			for (File file : folder.listFiles()) {
+				final String filename = file.getName();
+				String[] split = filename.split("\\.");
+				if (!("." + split[split.length - 1]).equals(SlotsDb.FILE_EXTENSION)) // e.g. block summaries
+					continue;
 				if (file.length() >= 16) { // otherwise is corrupted or empty
 					// file.
-					final String filename = file.getName();
-					String[] split = filename.split("\\.");
-					if (("." + split[split.length - 1]).equals(SlotsDb.FILE_EXTENSION)) {
-						files.add(FileObject.getFileObject(file, cache.getCache(encodedId, filename)));
-					}
+					dataFiles.add(file);
 				}
 				else {
 					file.delete();
 				}
 			}
+			// headers are read in parallel
+			files.addAll(ParallelTasks.map(dataFiles, file -> FileObject.getFileObject(file, cache.getCache(encodedId, file.getName()))));
 			if (files.size() > 1) {
-				sortList(files);
+				files.sort(START_TIME_ORDER);
 			}
 		}
 
-		size = files.size();
-
 		/*
 		 * set first Timestamp for this FileObjectList if there are no files -> first TS = TS@ 00:00:00 o'clock.
 		 */
-		if (size == 0) {
+		if (files.isEmpty()) {
 			firstTS = !useCompatibilityMode ? Long.parseLong(folder.getParentFile().getName())
 					: TimeUtils.parseCompatibilityFolderName(folder.getParentFile().getName());
 //			
@@ -113,36 +165,33 @@ public final class FileObjectList {
 		else {
 			firstTS = files.get(0).getStartTimeStamp();
 		}
+		this.files = files;
 		folder = null;
 	}
-
-	/*
-	 * bubble sort to sort files in directory. usually there is only 1 file, might be 2... will also work for more. but
-	 * not very fast.
+	
+	/**
+	 * Adds a file which has been created in the folder, without reloading the other files. 
+	 * Requires the folder read lock and the series lock.
+	 * @param file
 	 */
-	private static final void sortList(final List<FileObject> toSort) {
-		int j = 0;
-		FileObject tmp;
-		boolean switched = true;
-		while (switched) {
-			switched = false;
-			j++;
-			for (int i = 0; i < toSort.size() - j; i++) {
-				if (toSort.get(i).getStartTimeStamp() > toSort.get(i + 1).getStartTimeStamp()) {
-					tmp = toSort.get(i);
-					toSort.set(i, toSort.get(i + 1));
-					toSort.set(i + 1, tmp);
-					switched = true;
-				}
-			}
-		}
+	final void addFileObject(final FileObject file) {
+		final List<FileObject> files = this.files;
+		final List<FileObject> newFiles = new ArrayList<>(files.size() + 1);
+		newFiles.addAll(files);
+		newFiles.add(file);
+		// a new file usually starts after the existing ones
+		if (!files.isEmpty() && file.getStartTimeStamp() < files.get(files.size() - 1).getStartTimeStamp())
+			newFiles.sort(START_TIME_ORDER);
+		firstTS = newFiles.get(0).getStartTimeStamp();
+		this.files = newFiles;
 	}
 
 	/**
 	 * Returns the last created FileObject
 	 */
 	public FileObject getCurrentFileObject() {
-		return get(size - 1);
+		final List<FileObject> files = this.files;
+		return files.get(files.size() - 1);
 	}
 
 	/**
@@ -158,7 +207,7 @@ public final class FileObjectList {
 	 * Returns the size (Number of Files in this Folder/FileObjectList)
 	 */
 	public int size() {
-		return size;
+		return files.size();
 	}
 
 	/**
@@ -166,7 +215,8 @@ public final class FileObjectList {
 	 * 
 	 * @throws IOException
 	 */
-	public void closeAllFiles() throws IOException {
+	public synchronized void closeAllFiles() throws IOException {
+		spillLateValues();
 		for (FileObject f : files) {
 			f.close();
 		}
@@ -179,24 +229,12 @@ public final class FileObjectList {
 	 * @param timestamp
 	 */
 	public FileObject getFileObjectForTimestamp(long timestamp) {
-		if (files.size() > 1) {
-			for (FileObject f : files) {
-				if (f.getStartTimeStamp() <= timestamp && f.getTimestampForLatestValue() >= timestamp) {
-					// File
-					// found!
-					return f;
-				}
-			}
-		}
-		else if (files.size() == 1) {
-			if (files.get(0).getStartTimeStamp() <= timestamp && files.get(0).getTimestampForLatestValue() >= timestamp) {
-				// contains
-				// this
-				// TS
-				return files.get(0);
-			}
-		}
-		return null;
+		final List<FileObject> files = this.files;
+		final int idx = indexOfLastFileStartingAtOrBefore(files, timestamp);
+		if (idx < 0)
+			return null;
+		final FileObject f = files.get(idx);
+		return f.getTimestampForLatestValue() >= timestamp ? f : null;
 	}
 
 	/**
@@ -205,21 +243,43 @@ public final class FileObjectList {
 	 * @param timestamp
 	 */
 	public List<FileObject> getFileObjectsStartingAt(long timestamp) {
-		List<FileObject> toReturn = new ArrayList<>(1);
-		for (int i = 0; i < files.size(); i++) {
-			FileObject fo = files.get(i);
+		final List<FileObject> files = this.files;
+		final List<FileObject> toReturn = new ArrayList<>(1);
+		// earlier files end before the start of this one
+		for (int i = Math.max(indexOfLastFileStartingAtOrBefore(files, timestamp), 0); i < files.size(); i++) {
+			final FileObject fo = files.get(i);
 			if (fo.getTimestampForLatestValue() >= timestamp) {
 				toReturn.add(fo);
 			}
 		}
 		return toReturn;
 	}
+	
+	/**
+	 * Binary search by start time stamp.
+	 * @param files
+	 * @param timestamp
+	 * @return
+	 * 		the index of the last file starting at or before the timestamp, or -1 if there is none
+	 */
+	private static int indexOfLastFileStartingAtOrBefore(final List<FileObject> files, final long timestamp) {
+		int low = 0;
+		int high = files.size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (files.get(mid).getStartTimeStamp() <= timestamp)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low - 1;
+	}
 
 	/**
 	 * Returns all FileObjects in this List.
 	 */
 	public List<FileObject> getAllFileObjects() {
-		return files;
+		return Collections.unmodifiableList(files);
 	}
 
 	/**
@@ -228,13 +288,8 @@ public final class FileObjectList {
 	 * @param timestamp
 	 */
 	public List<FileObject> getFileObjectsUntil(long timestamp) {
-		List<FileObject> toReturn = new Vector<FileObject>(1);
-		for (int i = 0; i < files.size(); i++) {
-			if (files.get(i).getStartTimeStamp() <= timestamp) {
-				toReturn.add(files.get(i));
-			}
-		}
-		return toReturn;
+		final List<FileObject> files = this.files;
+		return new ArrayList<>(files.subList(0, indexOfLastFileStartingAtOrBefore(files, timestamp) + 1));
 	}
 
 	/**
@@ -244,24 +299,12 @@ public final class FileObjectList {
 	 * @param end
 	 */
 	public List<FileObject> getFileObjectsFromTo(long start, long end) {
-		List<FileObject> toReturn = new Vector<FileObject>(1);
-		if (files.size() > 1) {
-			for (int i = 0; i < files.size(); i++) {
-				FileObject fo = files.get(i);
-				if ((fo.getStartTimeStamp() <= start && fo.getTimestampForLatestValue() >= start)
-						|| (fo.getStartTimeStamp() <= end && fo.getTimestampForLatestValue() >= end)
-						|| (fo.getStartTimeStamp() >= start && fo.getTimestampForLatestValue() <= end)) {
-					// needed files.
-					toReturn.add(fo);
-				}
-			}
-		}
-		else if (files.size() == 1) {
-			FileObject fo = files.get(0);
-			if (fo.getStartTimeStamp() <= end && fo.getTimestampForLatestValue() >= start) {
-				// contains
-				// this
-				// TS
+		final List<FileObject> files = this.files;
+		final List<FileObject> toReturn = new ArrayList<>(1);
+		final int last = indexOfLastFileStartingAtOrBefore(files, end);
+		for (int i = Math.max(indexOfLastFileStartingAtOrBefore(files, start), 0); i <= last; i++) {
+			final FileObject fo = files.get(i);
+			if (fo.getTimestampForLatestValue() >= start) {
 				toReturn.add(fo);
 			}
 		}
@@ -281,12 +324,320 @@ public final class FileObjectList {
 	 * 
 	 * @throws IOException
 	 */
-	public void flush() throws IOException {
+	public synchronized void flush() throws IOException {
+		spillLateValues();
 		for (FileObject f : files) {
 			f.flush();
 		}
 	}
 	
+	/**
+	 * Buffer a value older than the latest value of the current file. It is written to the
+	 * side file on the next {@link #flush()}, and merged into the data files by 
+	 * {@link #mergeLateValues()}.
+	 * @param value
+	 * @param timestamp
+	 * @param flag
+	 */
+	synchronized void addLateValue(final double value, final long timestamp, final byte flag) {
+		final SampledValue sv = new SampledValue(DoubleValues.of(value), timestamp, Quality.getQuality(flag));
+		if (lateValues.putIfAbsent(timestamp, sv) == null)
+			unspilled.add(sv);
+	}
+	
+	synchronized boolean hasLateValues() {
+		return !lateValues.isEmpty();
+	}
+	
+	/**
+	 * Late values are only merged into the data files with exclusive access to the list; readers 
+	 * combine them with the data read from the files, see {@link #merge(List, List)}.
+	 * @param start
+	 * @param end
+	 * @return
+	 * 		the buffered late values between start and end (both inclusive), sorted chronologically
+	 */
+	synchronized List<SampledValue> getLateValues(final long start, final long end) {
+		if (lateValues.isEmpty() || start > end)
+			return Collections.emptyList();
+		final List<SampledValue> values = new ArrayList<>();
+		for (SampledValue sv : lateValues.subMap(start, true, end, true).values()) {
+			if (!Double.isNaN(sv.getValue().getDoubleValue()))
+				values.add(sv);
+		}
+		return values;
+	}
+	
+	/**
+	 * @param timestamp
+	 * @return
+	 * 		the buffered late value for the timestamp, or null
+	 */
+	synchronized SampledValue getLateValue(final long timestamp) {
+		final SampledValue sv = lateValues.get(timestamp);
+		return sv != null && !Double.isNaN(sv.getValue().getDoubleValue()) ? sv : null;
+	}
+	
+	/**
+	 * @param timestamp
+	 * @return
+	 * 		the earliest buffered late value at or after the timestamp, or null
+	 */
+	SampledValue getNextLateValue(final long timestamp) {
+		final List<SampledValue> values = getLateValues(timestamp, Long.MAX_VALUE);
+		return values.isEmpty() ? null : values.get(0);
+	}
+	
+	/**
+	 * @param timestamp
+	 * @return
+	 * 		the latest buffered late value at or before the timestamp, or null
+	 */
+	SampledValue getPreviousLateValue(final long timestamp) {
+		final List<SampledValue> values = getLateValues(Long.MIN_VALUE, timestamp);
+		return values.isEmpty() ? null : values.get(values.size() - 1);
+	}
+	
+	/**
+	 * @param start
+	 * @param end
+	 * @return
+	 * 		the number of buffered late values between start and end (both inclusive), which
+	 * 		are not contained in the data files
+	 * @throws IOException
+	 */
+	int getLateValueCount(final long start, final long end) throws IOException {
+		int cnt = 0;
+		for (SampledValue sv : getLateValues(start, end)) {
+			final FileObject file = getFileObjectForTimestamp(sv.getTimestamp());
+			if (file == null || file.read(sv.getTimestamp()) == null)
+				cnt++;
+		}
+		return cnt;
+	}
+	
+	/**
+	 * Combines values read from the data files with late values, both sorted chronologically. 
+	 * As in {@link #mergeLateValues()}, values from the data files take precedence.
+	 * @param values
+	 * @param late
+	 * @return
+	 */
+	static List<SampledValue> merge(final List<SampledValue> values, final List<SampledValue> late) {
+		if (late.isEmpty())
+			return values;
+		final List<SampledValue> merged = new ArrayList<>(values.size() + late.size());
+		int i = 0;
+		int j = 0;
+		while (i < values.size() || j < late.size()) {
+			if (j >= late.size() || (i < values.size() && values.get(i).getTimestamp() <= late.get(j).getTimestamp())) {
+				final SampledValue sv = values.get(i++);
+				while (j < late.size() && late.get(j).getTimestamp() == sv.getTimestamp())
+					j++;
+				merged.add(sv);
+			} else {
+				merged.add(late.get(j++));
+			}
+		}
+		return merged;
+	}
+	
+	Path getLateValuesFile() {
+		return new File(foldername, LATE_VALUES_FILE).toPath();
+	}
+	
+	private void loadLateValues() throws IOException {
+		final Path file = getLateValuesFile();
+		if (!Files.isRegularFile(file))
+			return;
+		final ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(file));
+		while (bb.remaining() >= LATE_VALUE_SIZE) {
+			final long t = bb.getLong();
+			final double value = bb.getDouble();
+			final byte flag = bb.get();
+			lateValues.putIfAbsent(t, new SampledValue(DoubleValues.of(value), t, Quality.getQuality(flag)));
+		}
+		// a record truncated by a crash during the last spill
+		if (bb.hasRemaining()) {
+			try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(bb.position());
+			}
+		}
+	}
+	
+	// requires the monitor
+	private void spillLateValues() throws IOException {
+		if (unspilled.isEmpty() || !new File(foldername).isDirectory())
+			return;
+		final Path file = getLateValuesFile();
+		final boolean created = !Files.exists(file);
+		try (final FileOutputStream fos = new FileOutputStream(file.toFile(), true);
+				final DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+			for (SampledValue sv : unspilled) {
+				dos.writeLong(sv.getTimestamp());
+				dos.writeDouble(sv.getValue().getDoubleValue());
+				dos.writeByte(sv.getQuality().getQuality());
+			}
+			dos.flush();
+			// late values are not contained in the data files, they must be durable also without write ahead log
+			fos.getChannel().force(false);
+		}
+		if (created)
+			FileUtils.syncDirectory(file.getParent());
+		unspilled.clear();
+	}
+	
+	/**
+	 * Merge the buffered late values into the data files. Every late value is assigned to the
+	 * last file starting at or before its timestamp, or to the first file, if it is older than all files; 
+	 * affected files are rewritten in chronological order. Requires exclusive access to the list, 
+	 * i.e. either the folder write lock, or the folder read lock plus exclusive use granted by the
+	 * {@link FileHandlePool} (eviction, {@link FileHandlePool#runExclusive(String, FileHandlePool.ListTask)}). 
+	 * Readers never call this, see {@link #getLateValues(long, long)}.
+	 * @return
+	 * 		true if data files have been rewritten
+	 * @throws IOException
+	 */
+	synchronized boolean mergeLateValues() throws IOException {
+		if (lateValues.isEmpty() || files.isEmpty())
+			return false;
+		for (int i = files.size() - 1; i >= 0; i--) {
+			final NavigableMap<Long, SampledValue> target = i == 0 ? lateValues : 
+				lateValues.tailMap(files.get(i).getStartTimeStamp(), true);
+			if (target.isEmpty())
+				continue;
+			rewrite(files.get(i), target.values());
+			target.clear();
+		}
+		unspilled.clear();
+		Files.deleteIfExists(getLateValuesFile());
+		reLoadFolder(cache, encodedId);
+		return true;
+	}
+	
+	/*
+	 * Writes the merged data to a temporary file, which then replaces the original one. 
+	 * If a late value is older than the file, the new file's start time is adapted, but the file 
+	 * keeps its name, so that it is replaced atomically; the start time is read from the header. 
+	 * For fixed interval files, late values which would require more than 
+	 * ConstantIntervalFileObject#MAX_PADDING_BYTES of NaN padding before the file are written
+	 * to new files, like values after a long gap. These are written first, so that a crash 
+	 * leaves behind no overlapping files.
+	 */
+	private void rewrite(final FileObject file, final Collection<SampledValue> late) throws IOException {
+		file.close();
+		final List<SampledValue> existing = file.readFullyInternal();
+		file.close(); // releases the mapping
+		final List<SampledValue> lateList = new ArrayList<>(late);
+		int first = 0;
+		if (file instanceof ConstantIntervalFileObject) {
+			final String prefix = file.dataFile.getName().substring(0, 1);
+			final long fileStart = file.getStartTimeStamp();
+			for (int i = 0; i < lateList.size() && lateList.get(i).getTimestamp() < fileStart; i++) {
+				final long next = i + 1 < lateList.size() ? Math.min(lateList.get(i + 1).getTimestamp(), fileStart) : fileStart;
+				if (ConstantIntervalFileObject.requiresNewFile(lateList.get(i).getTimestamp(), next, file.storagePeriod)) {
+					final long start = lateList.get(first).getTimestamp();
+					final File target = new File(foldername, prefix + start + SlotsDb.FILE_EXTENSION);
+					writeMerged(target, start, file.storagePeriod, Collections.<SampledValue> emptyList(), lateList.subList(first, i + 1));
+					first = i + 1;
+				}
+			}
+		}
+		final List<SampledValue> remaining = lateList.subList(first, lateList.size());
+		final long start = remaining.isEmpty() ? file.getStartTimeStamp() : Math.min(file.getStartTimeStamp(), remaining.get(0).getTimestamp());
+		BlockSummaries.deleteSummaryFiles(file);
+		writeMerged(file.dataFile, start, file.storagePeriod, existing, remaining);
+	}
+	
+	/*
+	 * Writes the values to a temporary file, which is synced to disk and then moved to the target.
+	 * Existing values take precedence over late values with the same timestamp.
+	 */
+	private void writeMerged(final File target, final long start, final long storagePeriod, 
+			final List<SampledValue> existing, final Collection<SampledValue> late) throws IOException {
+		final File temp = new File(foldername, target.getName() + TEMP_SUFFIX);
+		Files.deleteIfExists(temp.toPath());
+		final FileObject merged = FileObject.getFileObject(temp, cache.getCache(encodedId, temp.getName()));
+		try {
+			merged.createFileAndHeader(start, storagePeriod);
+			final Iterator<SampledValue> lateIt = late.iterator();
+			SampledValue nextLate = lateIt.hasNext() ? lateIt.next() : null;
+			int idx = 0;
+			while (idx < existing.size() || nextLate != null) {
+				final SampledValue sv;
+				if (nextLate == null || (idx < existing.size() && existing.get(idx).getTimestamp() <= nextLate.getTimestamp())) {
+					sv = existing.get(idx++);
+					// existing values take precedence
+					while (nextLate != null && nextLate.getTimestamp() == sv.getTimestamp())
+						nextLate = lateIt.hasNext() ? lateIt.next() : null;
+				} else {
+					sv = nextLate;
+					nextLate = lateIt.hasNext() ? lateIt.next() : null;
+				}
+				merged.append(sv.getValue().getDoubleValue(), sv.getTimestamp(), (byte) sv.getQuality().getQuality());
+			}
+		} finally {
+			merged.close();
+		}
+		BlockSummaries.deleteSummaryFiles(merged);
+		// a crash must not leave behind an incomplete target file
+		FileUtils.sync(temp.toPath());
+		final Path folder = temp.toPath().getParent();
+		FileUtils.syncDirectory(folder);
+		try {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		FileUtils.syncDirectory(folder);
+		cache.getCache(encodedId, target.getName()).invalidate();
+		cache.invalidateBlocks(target);
+	}
+	
+	/**
+	 * @return
+	 * 		false if the list has been evicted
+	 */
+	boolean pin() {
+		while (true) {
+			final int current = pins.get();
+			if (current < 0)
+				return false;
+			if (pins.compareAndSet(current, current + 1))
+				return true;
+		}
+	}
+	
+	void unpin() {
+		pins.decrementAndGet();
+	}
+	
+	boolean isPinned() {
+		return pins.get() != 0;
+	}
+	
+	/**
+	 * @return
+	 * 		true if the list was not pinned, and may be closed
+	 */
+	boolean markEvicted() {
+		return pins.compareAndSet(0, -1);
+	}
+	
+	/**
+	 * Make a list pinnable again, after it has been marked evicted for exclusive access
+	 */
+	void unmarkEvicted() {
+		pins.set(0);
+	}
+	
+	/**
+	 * Mark a list that has been closed outside the pool as unusable; requires the folder write lock
+	 */
+	void markClosed() {
+		pins.set(-1);
+	}
+	
 	@Override
 	public String toString() {
 		return "FileObjectList: " + foldername;
@@ -15,6 +15,7 @@
  */
 package org.smartrplace.logging.fendodb.impl;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.URLDecoder;
@@ -22,21 +23,21 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.time.DateTimeException;
-import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Timer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -50,6 +51,8 @@ import org.ogema.recordeddata.DataRecorderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+import org.smartrplace.logging.fendodb.impl.InfoTask.Compactor;
 import org.smartrplace.logging.fendodb.impl.InfoTask.DeleteJob;
 import org.smartrplace.logging.fendodb.impl.InfoTask.Flusher;
 import org.smartrplace.logging.fendodb.impl.InfoTask.SizeWatcher;
@@ -57,35 +60,60 @@ import org.smartrplace.logging.fendodb.impl.InfoTask.SizeWatcher;
 public final class FileObjectProxy {
 
 	private static final int FLEXIBLE_STORING_PERIOD = -1;
+	/*
+	 * Interval in ms for merging buffered late values into the data files.
+	 */
+	private static final long LATE_VALUES_MERGE_PERIOD = 60 * 1000;
 
 	final static Logger logger = LoggerFactory.getLogger(FileObjectProxy.class);
 	
 	/**
-	 * For creation and deletion (write lock), resp. parsing (read lock), of folders (i.e. days)
+	 * Held (shared) by all reads and writes, see {@link #lockShared()}, and exclusively by operations 
+	 * on the database as a whole, such as copying, deletion of data, or reloading folders. 
 	 */
 	final ReadWriteLock folderLock = new ReentrantReadWriteLock();
+	/*
+	 * Number of time series locks; a power of 2
+	 */
+	private static final int SERIES_LOCK_STRIPES = 256;
+	/*
+	 * Striped locks for appending to a time series, including the creation of folders and files.
+	 * Acquired after the folder read lock; a thread never holds more than one of them.
+	 */
+	private final Lock[] seriesLocks = new Lock[SERIES_LOCK_STRIPES];
+	// guards currentDay
+	private final Object partitionLock = new Object();
 	
 //	private final File rootNode;
 	final Path rootNode;
 	final String rootNodeString;
-	// remove values only when folder write lock is held.
-	// read lock is sufficient for adding values
+	// values are added and evicted by the handle pool, cleared when the folder write lock is held
 	final ConcurrentMap<String, FileObjectList> openFilesHM;
+	private final FileHandlePool handles;
+	// resolved append state per time series; see appendFast
+	private final ConcurrentMap<String, SeriesHandle> seriesHandles = new ConcurrentHashMap<>();
 	// concurrent map
 //	private final ConcurrentMap<String, String> encodedLabels = new ConcurrentHashMap<>();
 	final Timer timer;
-	// synchronized using folderLock
-	List<Path> days;
-	// synchronized using folderLock
+	// replaced when the folder write lock is held; lookups and additions do not require further locking
+	PartitionCatalog catalog;
+	// synchronized using partitionLock
 	private long currentDay = Long.MAX_VALUE;
+	// set when the folder write lock is held
+	private volatile boolean closed;
 	// can be null, if data is written to disk immediately
 	private final Flusher flusher;
+	// null if disabled
+	final WriteAheadLog wal;
 	private final DeleteJob deleteJob;
 	private final SizeWatcher sizeWatcher;
+	// null if there is no timer
+	private final Compactor compactor;
 	private final FrameworkClock clock;
 	final TemporalUnit unit;
 	private final boolean readOnlyMode;
 	final boolean useCompatibilityMode;
+	private final boolean useCompression;
 	
 	/*
 	 * Flush Period in Seconds. if flush_period == 0 -> write directly to disk.
@@ -96,7 +124,7 @@ public final class FileObjectProxy {
 	private final long dataExpirationCheckInterval;
 	private final boolean readFolders;
 	
-	private final SlotsDbCache cache = new SlotsDbCache();
+	private final SlotsDbCache cache;
 
 	/**
 	 * Creates an instance of a FileObjectProxy<br>
@@ -107,12 +135,28 @@ public final class FileObjectProxy {
 	 * @throws IOException
 	 */
 	public FileObjectProxy(Path rootNodePath, FrameworkClock clock, FendoDbConfiguration config) throws IOException {
+		this(rootNodePath, clock, config, null);
+	}
+	
+	/**
+	 * Creates an instance of a FileObjectProxy<br>
+	 * @param rootNodePath
+	 * @param clock
+	 * 		may be null, in which case system time is used
+	 * @param config
+	 * @param blockCache
+	 * 		cache for decoded blocks of compressed files, shared between databases; may be null
+	 * @throws IOException
+	 */
+	public FileObjectProxy(Path rootNodePath, FrameworkClock clock, FendoDbConfiguration config, BlockCache blockCache) throws IOException {
 		this.useCompatibilityMode = config.useCompatibilityMode();
+		this.useCompression = config.useCompression();
 		this.unit = useCompatibilityMode ? ChronoUnit.DAYS : config.getFolderCreationTimeUnit();
 		this.readOnlyMode = config.isReadOnlyMode();
 		this.readFolders = config.isReadFolders();
+		this.cache = new SlotsDbCache(config.getValueCacheSize() * 1024L * 1024, blockCache);
 		this.clock = clock;
-		if (config.getFlushPeriod() > 0 || config.getDataLifetimeInDays() > 0 || config.getMaxDatabaseSize() > 0 || config.getReloadDaysInterval() > 0)
+		if (config.getFlushPeriod() > 0 || config.useWriteAheadLog() || config.getDataLifetimeInDays() > 0 || config.getMaxDatabaseSize() > 0 || config.getReloadDaysInterval() > 0)
 			timer = new Timer();
 		else
 			timer = null;
@@ -124,9 +168,13 @@ public final class FileObjectProxy {
 		rootNode = rootNodePath;
 		rootNodeString = rootNodePath.toString();
 		openFilesHM = new ConcurrentHashMap<>();
-		days = loadDays(rootNodePath, useCompatibilityMode);
+		for (int i = 0; i < SERIES_LOCK_STRIPES; i++) {
+			seriesLocks[i] = new ReentrantLock();
+		}
+		catalog = PartitionCatalog.open(rootNodePath, useCompatibilityMode, !readOnlyMode);
 		// FIXME if opened in read only mode, no tasks are needed
-		final long flushPeriod = config.getFlushPeriod();
+		this.wal = config.useWriteAheadLog() ? new WriteAheadLog(rootNodePath) : null;
+		final long flushPeriod = config.getFlushPeriod() > 0 || wal == null ? config.getFlushPeriod() : WriteAheadLog.DEFAULT_CHECKPOINT_PERIOD;
 		if (flushPeriod > 0) {
 			final long flush_period;
 			if (flushPeriod < 1000)
@@ -169,6 +217,36 @@ public final class FileObjectProxy {
 		final int maxOpen = config.getMaxOpenFolders();
 		max_open_files = maxOpen >= 8 ? maxOpen : 8;
 		logger.info("Maximum open Files for Database changed to: " + max_open_files);
+		handles = new FileHandlePool(openFilesHM, max_open_files, list -> {
+			mergeLateValues(list);
+			list.closeAllFiles();
+		});
+		compactor = timer != null && !readOnlyMode ? createScheduledCompactor() : null;
+		if (wal != null)
+			replayWriteAheadLog();
+	}
+	
+	/*
+	 * Records are appended without logging them again; the data files are synced once by the final checkpoint. 
+	 * Records at or before the last value stored for the series are skipped if the value is present, 
+	 * so that records which made it to the data files do not turn into late values.
+	 */
+	private void replayWriteAheadLog() throws IOException {
+		final Map<String, Long> lastStored = new HashMap<>();
+		final int cnt = wal.replay((label, value, timestamp, flag, configuration) -> {
+			Long last = lastStored.get(label);
+			if (last == null) {
+				final SampledValue latest = readPreviousValue(label, Long.MAX_VALUE, configuration);
+				last = latest != null ? latest.getTimestamp() : Long.MIN_VALUE;
+				lastStored.put(label, last);
+			}
+			if (getRoundedTimestamp(timestamp, configuration) <= last && read(label, timestamp, configuration) != null)
+				return;
+			appendValueInternal(label, value, timestamp, flag, configuration);
+		});
+		if (cnt > 0)
+			logger.info("Replayed {} entries from the write ahead log", cnt);
+		wal.checkpoint(openFilesHM.values());
 	}
 	
 	public void close() {
@@ -178,16 +256,27 @@ public final class FileObjectProxy {
 			deleteJob.stopTask();
 		if (sizeWatcher != null)
 			sizeWatcher.stopTask();
+		if (compactor != null)
+			compactor.stopTask();
 		if (timer != null)
 			timer.cancel();
 		folderLock.writeLock().lock();
 		try {
+			closed = true;
 			clearOpenFilesHashMap();
 		} catch (IOException e) {
 			logger.warn("Closing log files failed",e);
 		} finally {
+			catalog.close();
 			folderLock.writeLock().unlock();
 		}
+		if (wal != null) {
+			try {
+				wal.close();
+			} catch (IOException e) {
+				logger.warn("Closing the write ahead log failed",e);
+			}
+		}
 //		encodedLabels.clear();
 			
 	}
@@ -215,27 +304,46 @@ public final class FileObjectProxy {
 	final List<Path> reloadDays() throws IOException {
 		cache.clearCache();
 		clearOpenFilesHashMap();
-		final List<Path> oldDays = this.days;
+		final List<Path> oldDays = this.catalog.getFolders();
 		final int oldSize = oldDays.size();
-		this.days = loadDays(rootNode, useCompatibilityMode);
+		this.catalog.close();
+		this.catalog = PartitionCatalog.load(rootNode, useCompatibilityMode, !readOnlyMode);
+		final List<Path> days = catalog.getFolders();
 		final List<Path> newDays = days.stream()
 			.filter(d -> !oldDays.contains(d))
 			.collect(Collectors.toList());
 		if (readFolders) {
 			final int newSize = days.size();
-			checkEncodings(Math.min(newSize, newSize-oldSize+1));
+			// series folders may have been renamed
+			if (checkEncodings(days, Math.min(newSize, newSize-oldSize+1))) {
+				this.catalog.close();
+				this.catalog = PartitionCatalog.load(rootNode, useCompatibilityMode, !readOnlyMode);
+			}
 		}
 		return newDays;
 	}
 	
-	private final void checkEncodings(int lastXDays) throws IOException {
-		for (int i = 0; i < lastXDays; i++) {
-			final Path day = days.get(days.size()-i-1);
+	/**
+	 * @return
+	 * 		true if any folders have been renamed
+	 */
+	private final boolean checkEncodings(final List<Path> days, int lastXDays) throws IOException {
+		if (lastXDays <= 0)
+			return false;
+		boolean renamed = false;
+		final List<List<Path>> candidates = ParallelTasks.map(days.subList(days.size() - lastXDays, days.size()), day -> {
 			try (final Stream<Path> stream = Files.list(day)) {
-				final List<Path> wrongEncodings = stream.filter(Files::isDirectory)
+				return stream.filter(Files::isDirectory)
 					.filter(fl -> fl.getFileName().toString().contains("%252F"))
 					.collect(Collectors.toList());
+			}
+		});
+		// moves are executed sequentially, latest day first
+		for (int i = candidates.size()-1; i >= 0; i--) {
+			final List<Path> wrongEncodings = candidates.get(i);
+			try {
 				if (!wrongEncodings.isEmpty()) {
+					renamed = true;
 					clearOpenFilesHashMap();
 					wrongEncodings.forEach(fl -> {
 						try {
@@ -243,6 +351,8 @@ public final class FileObjectProxy {
 							if (Files.isDirectory(target))
 								FileUtils.deleteDirectory(target.toFile());
 							Files.move(fl, target, StandardCopyOption.REPLACE_EXISTING);
+							cache.invalidateBlocks(fl.toFile());
+							cache.invalidateBlocks(target.toFile());
 						} catch (IOException e) {
 							throw new UncheckedIOException(e);
 						}
@@ -252,64 +362,8 @@ public final class FileObjectProxy {
 				throw e.getCause();
 			}
 		}
+		return renamed;
 	}
-	
-	/*
-	 * loads a sorted list of all days in SLOTSDB. Necessary for search- and delete jobs.
-	 */
-	private final static List<Path> loadDays(final Path rootNode, final boolean useCompatibilityMode) throws IOException {
-		try (final Stream<Path> stream = Files.list(rootNode)) {
-			return stream
-					.filter(f -> Files.isDirectory(f))
-					.filter(f -> isDayFolder(f, useCompatibilityMode))
-					.sorted(!useCompatibilityMode ? daysComparator : daysComparatorCompat)
-					.collect(Collectors.toList());
-		}
-	}
-	
-	private final static boolean isDayFolder(final Path file, final boolean useCompatibilityMode) {
-		try {
-			if (!useCompatibilityMode) 
-				Long.parseLong(file.getFileName().toString());
-			else
-				LocalDate.from(TimeUtils.formatter.parse(file.getFileName().toString()));
-			return true;
-		} catch (Exception e) {
-			return false;
-		}
-	}
-	
-	private final static Comparator<Path> daysComparator = new Comparator<Path>() {
-		
-		@Override
-		public int compare(final Path o1, final Path o2) {
-			if (o1.equals(o2))
-				return 0;
-			try {
-				return Long.compare(Long.parseLong(o1.getFileName().toString()), Long.parseLong(o2.getFileName().toString()));
-			} catch (NumberFormatException e) {
-				return 0;
-			}
-		}
-		
-	};
-	
-	private final static Comparator<Path> daysComparatorCompat = new Comparator<Path>() {
-		
-		@Override
-		public int compare(final Path o1, final Path o2) {
-			if (o1.equals(o2))
-				return 0;
-			try {
-				final LocalDate date1 = LocalDate.from(TimeUtils.formatter.parse(o1.getFileName().toString()));
-				final LocalDate date2 = LocalDate.from(TimeUtils.formatter.parse(o2.getFileName().toString()));
-				return date1.compareTo(date2);
-			} catch (DateTimeException e) {
-				return 0;
-			}
-		}
-		
-	};
 
 	/**
 	 * Creates a Thread, that causes Data Streams to be flushed every x-seconds.<br>
@@ -334,6 +388,12 @@ public final class FileObjectProxy {
 		timer.schedule(zw, FendoDbConfiguration.INITIAL_DELAY, dataExpirationCheckInterval);
 		return zw;
 	}
+	
+	private Compactor createScheduledCompactor() {
+		final Compactor c = new Compactor(this);
+		timer.schedule(c, LATE_VALUES_MERGE_PERIOD, LATE_VALUES_MERGE_PERIOD);
+		return c;
+	}
 
 	/**
 	 * Appends a new Value to Slots Database.
@@ -346,140 +406,393 @@ public final class FileObjectProxy {
 	 * @throws IOException
 	 */
 	public void appendValue(String label, double value, long timestamp, byte state, RecordedDataConfiguration configuration) throws IOException {
-		appendValue(label, value, timestamp, state, configuration, false);
+		if (wal == null) {
+			appendValueInternal(label, value, timestamp, state, configuration);
+			return;
+		}
+		final Lock lock = wal.getAppendLock();
+		lock.lock();
+		try {
+			wal.append(label, value, timestamp, state, configuration);
+			appendValueInternal(label, value, timestamp, state, configuration);
+		} finally {
+			lock.unlock();
+		}
 	}
 
-	private void appendValue(final String label, final double value, final long timestamp, final byte state,
-			final RecordedDataConfiguration configuration, boolean hasWriteLock) throws IOException {
-
-		long storingPeriod;
-		if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
-			// fixed interval
-			storingPeriod = configuration.getFixedInterval();
+	/**
+	 * Appends a batch of values to a single time series. Equivalent to calling 
+	 * {@link #appendValue(String, double, long, byte, RecordedDataConfiguration)} for every value, 
+	 * but the folder and file are resolved only once per folder, the folder lock is acquired 
+	 * once per folder, and in direct write mode the file is flushed once per folder.
+	 * Works best with chronologically sorted values.
+	 * 
+	 * @param label
+	 * @param values
+	 * @param configuration
+	 * @throws IOException
+	 */
+	public void appendValues(String label, List<SampledValue> values, RecordedDataConfiguration configuration) throws IOException {
+		if (values.isEmpty())
+			return;
+		if (wal == null) {
+			appendValuesInternal(label, values, configuration);
+			return;
 		}
-		else {
-			/* flexible interval */
-			storingPeriod = FLEXIBLE_STORING_PERIOD;
+		final Lock lock = wal.getAppendLock();
+		lock.lock();
+		try {
+			wal.append(label, values, configuration);
+			appendValuesInternal(label, values, configuration);
+		} finally {
+			lock.unlock();
 		}
-
-		FileObject toStoreIn = null;
-		final long strDate = TimeUtils.getCurrentStart(timestamp, unit);
-		
-		final boolean requiresNewFolder;
-		if (!hasWriteLock) 
-			folderLock.readLock().lock();
+	}
+	
+	private void appendValuesInternal(final String label, final List<SampledValue> values, 
+			final RecordedDataConfiguration configuration) throws IOException {
+		final long storingPeriod = configuration.getStorageType().equals(StorageType.FIXED_INTERVAL) ? 
+				configuration.getFixedInterval() : FLEXIBLE_STORING_PERIOD;
+		final int size = values.size();
+		int idx = 0;
+		while (idx < size) {
+			final long folderStart = TimeUtils.getCurrentStart(values.get(idx).getTimestamp(), unit);
+			final long folderEnd = TimeUtils.getNextStart(folderStart, unit);
+			int end = idx + 1;
+			while (end < size) {
+				final long t = values.get(end).getTimestamp();
+				if (t < folderStart || t >= folderEnd)
+					break;
+				end++;
+			}
+			while (idx < end) {
+				final int appended = appendToCurrentFile(label, values, idx, end, folderStart, storingPeriod, configuration);
+				if (appended > 0) {
+					idx += appended;
+					continue;
+				}
+				// a new folder or file is required
+				final SampledValue sv = values.get(idx++);
+				appendValueInternal(label, sv.getValue().getDoubleValue(), sv.getTimestamp(), (byte) sv.getQuality().getQuality(), configuration);
+			}
+		}
+	}
+	
+	/**
+	 * Appends the values with index from (inclusive) to to (exclusive), all of which belong to the 
+	 * same folder, to the current file of the folder. 
+	 * @return
+	 * 		the number of values appended; less than to - from if a new file is required for 
+	 * 		the value at from + return value, 0 if the folder is not open yet.
+	 * @throws IOException
+	 */
+	private int appendToCurrentFile(final String label, final List<SampledValue> values, final int from, final int to, 
+			final long folderStart, final long storingPeriod, final RecordedDataConfiguration configuration) throws IOException {
+		lockShared();
+		final Lock seriesLock = getSeriesLock(label);
+		seriesLock.lock();
 		try {
-			requiresNewFolder = !openFilesHM.containsKey(label + strDate)|| openFilesHM.get(label + strDate).size() == 0;
-			// in this case we need to abort the current operation and start again, this time holding the write lock
-			if (requiresNewFolder && !hasWriteLock) {
-				hasWriteLock = true; // required to avoid releasing the read lock twice (see finally block)
-				folderLock.readLock().unlock();
-				folderLock.writeLock().lock();
-				try {
-					appendValue(label, value, timestamp, state, configuration, true);
-				} finally {
-					folderLock.writeLock().unlock();
+			final SeriesHandle handle = seriesHandles.get(label);
+			final FileObjectList list = handle != null && handle.list != null && handle.partitionStart == folderStart 
+					&& handles.pin(handle.list) ? handle.list : handles.get(label + folderStart);
+			if (list == null || list.size() == 0)
+				return 0;
+			final FileObject file = list.getCurrentFileObject();
+			if (file.getStoringPeriod() != storingPeriod && file.getStoringPeriod() != 0)
+				return 0;
+			boolean written = false;
+			boolean late = false;
+			int i = from;
+			for (; i < to; i++) {
+				final SampledValue sv = values.get(i);
+				final double value = sv.getValue().getDoubleValue();
+				final long timestamp = getRoundedTimestamp(sv.getTimestamp(), configuration);
+				final byte state = (byte) sv.getQuality().getQuality();
+				if (timestamp < file.getStartTimeStamp() || timestamp < file.getTimestampForLatestValueInternal()) {
+					list.addLateValue(value, timestamp, state);
+					late = true;
+				}
+				else if (requiresNewFile(file, timestamp)) {
+					break;
+				}
+				else {
+					file.append(value, timestamp, state);
+					written = true;
 				}
-				return;
 			}
+			if (written) {
+				if (wal != null)
+					wal.fileModified(file.dataFile.toPath());
+				if (flusher == null)
+					file.flush();
+			}
+			if (late) {
+				if (wal != null)
+					wal.fileModified(list.getLateValuesFile());
+				if (flusher == null)
+					list.flush();
+			}
+			return i - from;
+		} finally {
+			seriesLock.unlock();
+			unlockShared();
+		}
+	}
 
-			/*
-			 * If there is no FileObjectList for this folder, a new one will be created. (This will be the first value
-			 * stored for this day) Eventually existing FileObjectLists from the day before will be flushed and closed. Also
-			 * the Hashtable size will be monitored, to not have too many opened Filestreams.
-			 */
-			if (requiresNewFolder) {
-				newDayStarted(strDate);
-				//controlHashtableSize(); is cleared anyway
-				final FileObjectList first = getFileObjectList(strDate, label);
+	private void appendValueInternal(final String label, final double value, final long timestamp, final byte state,
+			final RecordedDataConfiguration configuration) throws IOException {
+		lockShared();
+		final Lock seriesLock = getSeriesLock(label);
+		seriesLock.lock();
+		try {
+			final SeriesHandle handle = getSeriesHandle(label, configuration);
+			if (!appendFast(handle, value, timestamp, state))
+				appendSlow(handle, label, value, timestamp, state, configuration);
+		} finally {
+			seriesLock.unlock();
+			unlockShared();
+		}
+	}
 	
-				/*
-				 * If FileObjectList for this label does not contain any FileObjects yet, a new one will be created. Data
-				 * will be stored and List reloaded for next Value to store.
-				 */
-				if (first.size() == 0) {
+	/*
+	 * Requires the series lock
+	 */
+	private SeriesHandle getSeriesHandle(final String label, final RecordedDataConfiguration configuration) {
+		SeriesHandle handle = seriesHandles.get(label);
+		if (handle == null)
+			handle = seriesHandles.computeIfAbsent(label, l -> new SeriesHandle());
+		if (handle.configuration != configuration) {
+			final boolean fixedInterval = configuration.getStorageType().equals(StorageType.FIXED_INTERVAL);
+			handle.storingPeriod = fixedInterval ? configuration.getFixedInterval() : FLEXIBLE_STORING_PERIOD;
+			handle.roundingInterval = fixedInterval ? configuration.getFixedInterval() : 0;
+			handle.configuration = configuration;
+		}
+		return handle;
+	}
 	
-					if (configuration.getStorageType().equals(StorageType.FIXED_INTERVAL)) {
-						// fixed interval
-						toStoreIn = new ConstantIntervalFileObject(rootNodeString + "/" + getDayFolderName(strDate) + "/" + label + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(label, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else {
-						/* flexible interval */
-						toStoreIn = new FlexibleIntervalFileObject(rootNodeString + "/" + getDayFolderName(strDate) + "/" + label + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(label, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
+	/*
+	 * The common case: a value in the partition of the previous one, which neither is late
+	 * nor requires a new file. Does not allocate any objects. Requires the folder read lock 
+	 * and the series lock.
+	 * @return
+	 * 		false if the value must be appended by appendSlow
+	 */
+	private boolean appendFast(final SeriesHandle handle, final double value, final long timestamp, final byte state) throws IOException {
+		final FileObjectList list = handle.list;
+		if (list == null || timestamp < handle.partitionStart || timestamp >= handle.partitionEnd || !handles.pin(list) 
+				|| list.size() == 0)
+			return false;
+		final FileObject file = list.getCurrentFileObject();
+		if (file.getStoringPeriod() != handle.storingPeriod && file.getStoringPeriod() != 0)
+			return false;
+		final long rounded = handle.roundingInterval > 0 ? getRoundedTimestamp(timestamp, handle.roundingInterval) : timestamp;
+		if (rounded < file.getStartTimeStamp() || rounded < file.getTimestampForLatestValueInternal() || requiresNewFile(file, rounded))
+			return false;
+		file.append(value, rounded, state);
+		if (wal != null)
+			wal.fileModified(file.dataFile.toPath());
+		if (flusher == null)
+			file.flush();
+		return true;
+	}
 	
-					long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-					toStoreIn.createFileAndHeader(roundedTimestamp, storingPeriod);
-					toStoreIn.append(value, roundedTimestamp, state);
-					
-					toStoreIn.close(); /* close() also calls flush(). */
-					
-					first.reLoadFolder(cache, label);
-					return;
-				}
-			}
+	/*
+	 * Requires the series lock
+	 */
+	private void setCurrentList(final SeriesHandle handle, final FileObjectList list, final long partitionStart) {
+		// values for past partitions do not move the handle away from the live partition
+		if (handle.list != null && partitionStart < handle.partitionStart)
+			return;
+		if (handle.list != list || handle.partitionStart != partitionStart) {
+			handle.list = list;
+			handle.partitionStart = partitionStart;
+			handle.partitionEnd = TimeUtils.getNextStart(partitionStart, unit);
+		}
+	}
 	
+	/*
+	 * Requires the folder read lock and the series lock
+	 */
+	private void appendSlow(final SeriesHandle handle, final String label, final double value, final long timestamp, 
+			final byte state, final RecordedDataConfiguration configuration) throws IOException {
+		final long storingPeriod = handle.storingPeriod;
+		FileObject toStoreIn = null;
+		final long strDate = TimeUtils.getCurrentStart(timestamp, unit);
+		FileObjectList listToStoreIn = handles.get(label + strDate);
+		final boolean requiresNewFolder = listToStoreIn == null || listToStoreIn.size() == 0;
+
+		/*
+		 * If there is no FileObjectList for this folder, a new one will be created. (This will be the first value
+		 * stored for this day) Eventually existing FileObjectLists from the day before will be flushed and closed. Also
+		 * the Hashtable size will be monitored, to not have too many opened Filestreams.
+		 */
+		if (requiresNewFolder) {
+			newDayStarted(strDate);
+			final FileObjectList first = getFileObjectList(strDate, label);
+
 			/*
-			 * There is a FileObjectList for this day.
+			 * If FileObjectList for this label does not contain any FileObjects yet, a new one will be created. Data
+			 * will be stored and List reloaded for next Value to store.
 			 */
-			final FileObjectList listToStoreIn = openFilesHM.get(label + strDate);
-			if (listToStoreIn.size() > 0) {
-				toStoreIn = listToStoreIn.getCurrentFileObject();
-	
-				/*
-				 * If StartTimeStamp is newer then the Timestamp of the value to store, this value can't be stored.
-				 */
+			if (first.size() == 0) {
+
+				toStoreIn = createFileObject(label, strDate, timestamp, configuration.getStorageType().equals(StorageType.FIXED_INTERVAL));
+
 				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-				if (toStoreIn.getStartTimeStamp() > roundedTimestamp) {
-					return;
-				}
+				toStoreIn.createFileAndHeader(roundedTimestamp, storingPeriod);
+				catalog.addSeries(label, strDate);
+				toStoreIn.append(value, roundedTimestamp, state);
+				
+				toStoreIn.close(); /* close() also calls flush(). */
+				if (wal != null)
+					wal.fileModified(toStoreIn.dataFile.toPath());
+				
+				first.reLoadFolder(cache, label);
+				setCurrentList(handle, first, strDate);
+				return;
 			}
-	
-			if (toStoreIn == null) {
-				throw new IllegalStateException("could not find log file"); // FIXME
+			listToStoreIn = first;
+		}
+		setCurrentList(handle, listToStoreIn, strDate);
+
+		/*
+		 * There is a FileObjectList for this day.
+		 */
+		if (listToStoreIn.size() > 0) {
+			toStoreIn = listToStoreIn.getCurrentFileObject();
+
+			/*
+			 * If StartTimeStamp is newer then the Timestamp of the value to store, this value can't be stored.
+			 */
+			long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
+			if (toStoreIn.getStartTimeStamp() > roundedTimestamp) {
+				addLateValue(listToStoreIn, value, roundedTimestamp, state);
+				return;
 			}
-	
+		}
+
+		if (toStoreIn == null) {
+			throw new IllegalStateException("could not find log file"); // FIXME
+		}
+
+		/*
+		 * The storing Period may have changed. In this case, a new FileObject must be created.
+		 */
+		if (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0) {
+			toStoreIn = listToStoreIn.getCurrentFileObject();
+			long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
 			/*
-			 * The storing Period may have changed. In this case, a new FileObject must be created.
+			 * Values older than the latest one are buffered, and merged into the file later on.
 			 */
-			if (toStoreIn.getStoringPeriod() == storingPeriod || toStoreIn.getStoringPeriod() == 0) {
-				toStoreIn = listToStoreIn.getCurrentFileObject();
-				long roundedTimestamp = getRoundedTimestamp(timestamp, configuration);
-				toStoreIn.append(value, roundedTimestamp, state);
-				if (flusher == null) {
-					toStoreIn.flush();
-				}
-				else {
-					return;
-				}
+			if (roundedTimestamp < toStoreIn.getTimestampForLatestValueInternal()) {
+				addLateValue(listToStoreIn, value, roundedTimestamp, state);
+				return;
+			}
+			/*
+			 * Long gaps in a fixed interval file are not padded, the next value goes to a new file. 
+			 */
+			if (requiresNewFile(toStoreIn, roundedTimestamp)) {
+				appendToNewFile(listToStoreIn, label, strDate, value, roundedTimestamp, state, storingPeriod);
+				return;
+			}
+			toStoreIn.append(value, roundedTimestamp, state);
+			if (wal != null)
+				wal.fileModified(toStoreIn.dataFile.toPath());
+			if (flusher == null) {
+				toStoreIn.flush();
 			}
 			else {
-				/*
-				 * Interval changed -> create new File (if there are no newer values for this day, or file)
-				 */
-				if (toStoreIn.getTimestampForLatestValue() < timestamp) {
-					if (storingPeriod != FLEXIBLE_STORING_PERIOD) { /* constant intervall */
-						toStoreIn = new ConstantIntervalFileObject(rootNodeString + "/" + getDayFolderName(strDate) + "/" + label + "/c"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(label, "c" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					else { /* flexible intervall */
-						toStoreIn = new FlexibleIntervalFileObject(rootNodeString + "/" + getDayFolderName(strDate) + "/" + label + "/f"
-								+ timestamp + SlotsDb.FILE_EXTENSION, cache.getCache(label, "f" + timestamp  + SlotsDb.FILE_EXTENSION));
-					}
-					toStoreIn.createFileAndHeader(timestamp, storingPeriod);
-					toStoreIn.append(value, timestamp, state);
-					if (flusher == null) {
-						toStoreIn.flush();
-					}
-					listToStoreIn.reLoadFolder(cache, label);
-				}
+				return;
+			}
+		}
+		else {
+			/*
+			 * Interval changed -> create new File (if there are no newer values for this day, or file)
+			 */
+			if (toStoreIn.getTimestampForLatestValue() < timestamp) {
+				appendToNewFile(listToStoreIn, label, strDate, value, timestamp, state, storingPeriod);
+			}
+			else {
+				addLateValue(listToStoreIn, value, getRoundedTimestamp(timestamp, configuration), state);
+			}
+		}
+	}
+
+	private void appendToNewFile(final FileObjectList list, final String label, final long strDate, final double value, 
+			final long timestamp, final byte state, final long storingPeriod) throws IOException {
+		// no more values are appended to the current file; write out buffered values
+		list.getCurrentFileObject().close();
+		final FileObject file = createFileObject(label, strDate, timestamp, storingPeriod != FLEXIBLE_STORING_PERIOD);
+		file.createFileAndHeader(timestamp, storingPeriod);
+		file.append(value, timestamp, state);
+		if (wal != null)
+			wal.fileModified(file.dataFile.toPath());
+		if (flusher == null) {
+			file.flush();
+		}
+		// the other files need not be reloaded
+		list.addFileObject(file);
+	}
+	
+	private static boolean requiresNewFile(final FileObject file, final long timestamp) {
+		return file instanceof ConstantIntervalFileObject && ((ConstantIntervalFileObject) file).requiresNewFile(timestamp);
+	}
+
+	private void addLateValue(final FileObjectList list, final double value, final long timestamp, final byte state) throws IOException {
+		list.addLateValue(value, timestamp, state);
+		if (wal != null)
+			wal.fileModified(list.getLateValuesFile());
+		if (flusher == null)
+			list.flush();
+	}
+	
+	/**
+	 * Merges the buffered late values of the list into its data files. Requires exclusive access 
+	 * to the time series, see {@link FileObjectList#mergeLateValues()}. In read only mode, late values 
+	 * are left to the next writing instance.
+	 * @param list
+	 * 		may be null
+	 * @return
+	 * 		the list passed
+	 * @throws IOException
+	 */
+	private FileObjectList mergeLateValues(final FileObjectList list) throws IOException {
+		if (list == null || readOnlyMode || !list.hasLateValues())
+			return list;
+		if (list.mergeLateValues() && wal != null) {
+			for (FileObject file : list.getAllFileObjects()) {
+				wal.fileModified(file.dataFile.toPath());
 			}
-		} finally {
-			if (!hasWriteLock)
-				folderLock.readLock().unlock();
 		}
+		return list;
+	}
+	
+	/**
+	 * Requires folder read lock, via {@link #lockShared()}
+	 * @throws IOException
+	 */
+	void mergeLateValues() throws IOException {
+		for (String id : openFilesHM.keySet()) {
+			// lists in use are skipped; they are merged on a subsequent run, or on eviction
+			handles.runExclusive(id, this::mergeLateValues);
+		}
+	}
+
+	/**
+	 * Creates the file object for a new file; the file itself is created by
+	 * {@link FileObject#createFileAndHeader(long, long)}.
+	 * @param label
+	 * @param strDate
+	 * @param timestamp
+	 * @param fixedInterval
+	 * @return
+	 * @throws IOException
+	 */
+	private FileObject createFileObject(final String label, final long strDate, final long timestamp, final boolean fixedInterval) throws IOException {
+		final String prefix = useCompression ? "z" : fixedInterval ? "c" : "f";
+		final String filename = prefix + timestamp + SlotsDb.FILE_EXTENSION;
+		final File file = new File(rootNodeString + "/" + getDayFolderName(strDate) + "/" + label + "/" + filename);
+		return FileObject.getFileObject(file, cache.getCache(label, filename));
 	}
 
 	/**
@@ -546,7 +859,7 @@ public final class FileObjectProxy {
 		//			if(days.isEmpty()) return null;
 		FileObjectList folder;
 		SampledValue result = null;
-		folderLock.readLock().lock();
+		lockShared();
 		try {
 			 folder = getNextFolder(label, timestamp, true);
 		
@@ -575,15 +888,19 @@ public final class FileObjectProxy {
 			//FileObject toReadFrom = openFilesHM.get(label + strDate).getFileObjectForTimestamp(timestamp);
 			
 			if (toReadFrom != null) {
-				timestamp = Math.max(timestamp,toReadFrom.getStartTimeStamp());
-				result = toReadFrom.read(timestamp);
+				final long from = Math.max(timestamp,toReadFrom.getStartTimeStamp());
+				result = toReadFrom.read(from);
 				if (result == null) {
-					result = toReadFrom.readNextValue(timestamp); // null if no value for timestamp
+					result = toReadFrom.readNextValue(from); // null if no value for timestamp
 			}
 			// is available
 			}
+			// late values are older than the latest value of the folder, hence folders skipped above do not contain any
+			final SampledValue late = folder.getNextLateValue(timestamp);
+			if (late != null && (result == null || late.getTimestamp() < result.getTimestamp()))
+				result = late;
 		} finally {
-			folderLock.readLock().unlock();
+			unlockShared();
 		}
 		// this can happen if rounding takes place
 		if (result != null && result.getTimestamp() < t) {
@@ -605,7 +922,7 @@ public final class FileObjectProxy {
 		//long timestamp = t;
 		final List<FileObjectList> days;
 		SampledValue result= null;
-		folderLock.readLock().lock();
+		lockShared();
 		try {
 			days = getFoldersForIntervalSorted(label, Long.MIN_VALUE, timestamp);
 		
@@ -617,8 +934,6 @@ public final class FileObjectProxy {
 				if (!folList.isEmpty())
 					break;
 			}
-			if (folList == null || folList.isEmpty())
-				return null;
 			FileObject toReadFrom = null;
 			long maxTime = Long.MIN_VALUE;
 			for(FileObject toReadFrom2: folList) {
@@ -628,15 +943,25 @@ public final class FileObjectProxy {
 				}
 			}
 			if (toReadFrom != null) {
-				timestamp = Math.min(timestamp,toReadFrom.getTimestampForLatestValue());
-				result = toReadFrom.read(timestamp);
+				final long from = Math.min(timestamp,toReadFrom.getTimestampForLatestValue());
+				result = toReadFrom.read(from);
 				if (result == null) { 
-					result = toReadFrom.readPreviousValue(timestamp); // null if no value for timestamp
+					result = toReadFrom.readPreviousValue(from); // null if no value for timestamp
 				}
 				// is available
 			}
+			// late values may precede the first file of a folder
+			for (int i = days.size() - 1; i >= 0; i--) {
+				final FileObjectList day = days.get(i);
+				final SampledValue late = day.getPreviousLateValue(timestamp);
+				if (late != null && (result == null || late.getTimestamp() > result.getTimestamp()))
+					result = late;
+				final Long dayStart = getPartitionStart(day);
+				if (result != null && (dayStart == null || result.getTimestamp() >= dayStart))
+					break;
+			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlockShared();
 		}
 		// this can happen if rounding takes place
 		if (result != null && result.getTimestamp() > t) {
@@ -646,7 +971,7 @@ public final class FileObjectProxy {
 			timestamp = timestamp- delta;
 			if (timestamp >= t)
 				timestamp =timestamp- delta;
-			return readNextValue(label, timestamp, configuration);
+			return readPreviousValue(label, timestamp, configuration);
 		}
 		return result;
 
@@ -665,64 +990,29 @@ public final class FileObjectProxy {
 //			FileObjectList fol = new FileObjectList(rootNodeString + "/" + strDate + "/" + label);
 //			openFilesHM.put(label + strDate, fol);
 //		}
-		final FileObject toReadFrom;
-		folderLock.readLock().lock();
+		lockShared();
 		try {
 			final FileObjectList fol = getFileObjectList(TimeUtils.getCurrentStart(timestamp, unit), label);
 			if (fol == null)
 				return null;
-			toReadFrom = fol.getFileObjectForTimestamp(timestamp);
-			if (toReadFrom != null) {
-				return toReadFrom.read(timestamp); // null if no value for timestamp
-				// is available
-			}
+			final FileObject toReadFrom = fol.getFileObjectForTimestamp(timestamp);
+			final SampledValue value = toReadFrom != null ? toReadFrom.read(timestamp) : null; // null if no value for timestamp
+			return value != null ? value : fol.getLateValue(timestamp);
 		} finally {
-			folderLock.readLock().unlock();
+			unlockShared();
 		}
-		return null;
 	}
 	
-	private final Comparator<Path> getParentDirComparator() {
-		return useCompatibilityMode ? parentDirComparatorCompat : parentDirComparator;
-	}
-	
-	private final static Comparator<Path> parentDirComparator = new Comparator<Path>() {
-
-		@Override
-		public int compare(final Path o1, final Path o2) {
-			try {
-				return Long.compare(Long.parseLong(o1.getParent().getFileName().toString()), Long.parseLong(o2.getParent().getFileName().toString()));
-			} catch (NumberFormatException e) {
-				return 0;
-			}
-		}
-	};
-	
-	private final static Comparator<Path> parentDirComparatorCompat = new Comparator<Path>() {
-
-		@Override
-		public int compare(final Path o1, final Path o2) {
-			try {
-				final long t1 = TimeUtils.parseCompatibilityFolderName(o1.getParent().getFileName().toString());
-				final long t2 = TimeUtils.parseCompatibilityFolderName(o2.getParent().getFileName().toString());
-				return Long.compare(t1, t2);
-			} catch (DateTimeException e) {
-				return 0;
-			}
-		}
-	};
-	
 	// requires folder read lock 
 	private List<FileObjectList> getFoldersForIntervalSorted(final String label, final long start, final long end) throws IOException {
 		final long foldersStart = start == Long.MIN_VALUE ? start : TimeUtils.getCurrentStart(start, unit);
-		return days.stream()
-			.filter(day -> isFolderBetweenStartAndEnd(day, foldersStart, end, useCompatibilityMode))
-			.map(day -> day.resolve(label))
-			.filter(subfolder -> Files.isDirectory(subfolder))
-			.sorted(getParentDirComparator())
-			.map(subfolder -> getFileObjectList(subfolder.getParent(), label))
-			.filter(fol -> fol != null)
-			.collect(Collectors.toList());
+		final List<FileObjectList> folders = new ArrayList<>();
+		for (long day : catalog.getPartitions(label, foldersStart, end)) {
+			final FileObjectList folder = getFileObjectList(day, label);
+			if (folder != null)
+				folders.add(folder);
+		}
+		return folders;
 		
 		/*
 		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
@@ -767,16 +1057,10 @@ public final class FileObjectProxy {
 	// label must be encoded already
 	final FileObjectList getNextFolder(final String label, final long start, final boolean inclusive) throws IOException {
 		final long actualStart = inclusive ? TimeUtils.getCurrentStart(start, unit) : start;
-		final Optional<Path> opt = days.stream()
-			.filter(day -> isFolderBetweenStartAndEnd(day, actualStart, Long.MAX_VALUE, useCompatibilityMode))
-			.map(day -> day.resolve(label))
-			.filter(subfolder -> Files.isDirectory(subfolder))
-			.sorted(getParentDirComparator())
-			.findFirst();
-		if (!opt.isPresent())
+		final Long day = catalog.getNextPartition(label, actualStart);
+		if (day == null)
 			return null;
-		final Path folder = opt.get();
-		return getFileObjectList(folder.getParent(), label);
+		return getFileObjectList(day, label);
 		
 		/*
 		 * Check for Folders matching criteria: Folder contains data between start & end timestamp. Folder contains
@@ -810,17 +1094,10 @@ public final class FileObjectProxy {
 	// requires folder read lock 
 	// label must be encoded
 	FileObjectList getNextFolder(final String label, FileObjectList folder, final boolean inclusive) throws IOException {
-		final String parentFolderName = Paths.get(folder.getFolderName()).getParent().getFileName().toString();
-		final long t = !useCompatibilityMode ? Long.parseLong(parentFolderName) : 
-				TimeUtils.parseCompatibilityFolderName(parentFolderName);
-		try {
-			return getNextFolder(label, t + (inclusive ? 0 : 1), inclusive);
-		} catch (IOException e) {
-			throw e;
-		} catch (Exception e) {
-			logger.error("Failed to parse folder list {}", folder, e);
+		final Long t = getPartitionStart(folder);
+		if (t == null)
 			return null;
-		}
+		return getNextFolder(label, t + (inclusive ? 0 : 1), inclusive);
 //		String currentDate = folder.getFolderName();
 //		int lastIdx = currentDate.lastIndexOf('/');
 //		if (lastIdx < 0)
@@ -862,13 +1139,14 @@ public final class FileObjectProxy {
 	}
 	
 	static List<SampledValue> readFolder(final FileObjectList folder) throws IOException {
+		final List<SampledValue> late = folder.getLateValues(Long.MIN_VALUE, Long.MAX_VALUE);
 		if (folder.size() == 1)
-			return folder.getAllFileObjects().get(0).readFully();
+			return FileObjectList.merge(folder.getAllFileObjects().get(0).readFully(), late);
 		final List<SampledValue> values = new ArrayList<>();
 		for (FileObject fo : folder.getAllFileObjects()) {
 			values.addAll(fo.readFully());
 		}
-		return values;
+		return FileObjectList.merge(values, late);
 	}
 	
 	/*
@@ -899,63 +1177,24 @@ public final class FileObjectProxy {
 		}
 		// label = URLEncoder.encode(label,Charset.defaultCharset().toString());
 		// //encodes label to supported String for Filenames.
-		final long strStartDate = TimeUtils.getCurrentStart(start, unit);
-		final long strEndDate =  TimeUtils.getCurrentStart(end, unit);
-		
-		List<FileObject> toRead = new ArrayList<>();
-
-		folderLock.readLock().lock();
-		if (logger.isTraceEnabled())
-			logger.trace("Found startDate:"+strStartDate+" endDate:"+strEndDate);
+		final List<FileObject> toRead;
+		final List<SampledValue> late = new ArrayList<>();
+		lockShared();
 		try {
-			if (strStartDate != strEndDate) {
-				logger.trace("Reading Multiple Days. Scanning for Folders.");
-				final List<FileObjectList> days = getFoldersForIntervalSorted(label, start, end);
-				/*
-				 * Create a list with all file-objects that must be read for this reading request.
-				 */
-				if (days.size() == 0) {
-					return toReturn;
-				}
-				else if (days.size() == 1) {
-					toRead.addAll(days.get(0).getFileObjectsFromTo(start, end));
-				}
-				else { // days.size()>1
-					toRead.addAll(days.get(0).getFileObjectsStartingAt(start));
-					for (int i = 1; i < days.size() - 1; i++) {
-						toRead.addAll(days.get(i).getAllFileObjects());
-					}
-					toRead.addAll(days.get(days.size() - 1).getFileObjectsUntil(end));
-				}
-				toRead.removeAll(Collections.singleton(null));
-			}
-			else { // Start == End Folder -> only 1 FileObjectList must be read.
-				if (logger.isTraceEnabled())
-					logger.trace("Before getFileObjectList for "+label);
-				final FileObjectList fol = getFileObjectList(strStartDate, label);
-				if (logger.isTraceEnabled())
-					logger.trace("FileObjectListSize:"+fol.size());
-				if (fol.size() > 0)
-					toRead.addAll(fol.getFileObjectsFromTo(start, end));
-			}
-			if (logger.isTraceEnabled())
-				logger.trace("Found " + toRead.size() + " " + SlotsDb.FILE_EXTENSION + " files to read from.");
-
+			toRead = getFileObjects(label, start, end, late);
 			/*
 			 * Read all FileObjects: first (2nd,3rd,4th....n-1) last first and last will be read separately, to not exceed
-			 * timestamp range.
+			 * timestamp range. Files are not closed here, this is left to the handle pool; the last one may
+			 * be the current file of the writer.
 			 */
 			if (toRead != null) {
 				if (toRead.size() > 1) {
 					toReturn.addAll(toRead.get(0).read(start, toRead.get(0).getTimestampForLatestValue()));
-					toRead.get(0).close();
 					for (int i = 1; i < toRead.size() - 1; i++) {
 						toReturn.addAll(toRead.get(i).readFully());
-						toRead.get(i).close();
 					}
 					toReturn.addAll(toRead.get(toRead.size() - 1).read(toRead.get(toRead.size() - 1).getStartTimeStamp(),
 							end));
-					toRead.get(toRead.size() - 1).close();
 	
 					/*
 					 * Some Values might be null -> remove
@@ -969,78 +1208,223 @@ public final class FileObjectProxy {
 				}
 			}
 		} finally {
-			folderLock.readLock().unlock();
+			unlockShared();
 		}
 		if (logger.isTraceEnabled())
 			logger.trace("Selected " + SlotsDb.FILE_EXTENSION + " files contain " + toReturn.size() + " Values.");
-		return toReturn;
+		return FileObjectList.merge(toReturn, late);
 	}
 
 	/**
-	 * Parses a Timestamp in Milliseconds from a String in yyyyMMdd Format <br>
-	 * e.g.: 25.Sept.2011: 20110925 <br>
-	 * would return: 1316901600000 ms. equal to (25.09.2011 - 00:00:00) <br>
-	 * 
-	 * @param name
-	 *            in "yyyyMMdd" Format -> in ms format
+	 * Requires the folder read lock.
+	 * @param label
 	 * @param start
 	 * @param end
+	 * @param late
+	 * 		the buffered late values between start and end are added to this list, sorted chronologically; 
+	 * 		they must be merged with the data read from the files
 	 * @return
+	 * 		the files containing data between start and end, sorted chronologically
 	 * @throws IOException
 	 */
-	private static final boolean isFolderBetweenStartAndEnd(final Path name, final long start, final long end, final boolean useCompatibilityMode) {
-		final long folderStart;
-		final String folderName = name.getFileName().toString();
+	private List<FileObject> getFileObjects(final String label, final long start, final long end, 
+			final List<SampledValue> late) throws IOException {
+		final long strStartDate = TimeUtils.getCurrentStart(start, unit);
+		final long strEndDate =  TimeUtils.getCurrentStart(end, unit);
+		final List<FileObject> toRead = new ArrayList<>();
+		if (logger.isTraceEnabled())
+			logger.trace("Found startDate:"+strStartDate+" endDate:"+strEndDate);
+		if (strStartDate != strEndDate) {
+			logger.trace("Reading Multiple Days. Scanning for Folders.");
+			final List<FileObjectList> days = getFoldersForIntervalSorted(label, start, end);
+			/*
+			 * Create a list with all file-objects that must be read for this reading request.
+			 */
+			for (FileObjectList day : days) {
+				late.addAll(day.getLateValues(start, end));
+			}
+			if (days.size() == 0) {
+				return toRead;
+			}
+			else if (days.size() == 1) {
+				toRead.addAll(days.get(0).getFileObjectsFromTo(start, end));
+			}
+			else { // days.size()>1
+				toRead.addAll(days.get(0).getFileObjectsStartingAt(start));
+				for (int i = 1; i < days.size() - 1; i++) {
+					toRead.addAll(days.get(i).getAllFileObjects());
+				}
+				toRead.addAll(days.get(days.size() - 1).getFileObjectsUntil(end));
+			}
+			toRead.removeAll(Collections.singleton(null));
+		}
+		else { // Start == End Folder -> only 1 FileObjectList must be read.
+			if (logger.isTraceEnabled())
+				logger.trace("Before getFileObjectList for "+label);
+			final FileObjectList fol = getFileObjectList(strStartDate, label);
+			if (fol == null)
+				return toRead;
+			if (logger.isTraceEnabled())
+				logger.trace("FileObjectListSize:"+fol.size());
+			late.addAll(fol.getLateValues(start, end));
+			if (fol.size() > 0)
+				toRead.addAll(fol.getFileObjectsFromTo(start, end));
+		}
+		if (logger.isTraceEnabled())
+			logger.trace("Found " + toRead.size() + " " + SlotsDb.FILE_EXTENSION + " files to read from.");
+		return toRead;
+	}
+	
+	/**
+	 * Like {@link #read(String, long, long, RecordedDataConfiguration)}, but passes the data points to a visitor,
+	 * which may accept precomputed summaries instead of the individual data points.
+	 * @param label
+	 * @param start
+	 * @param end
+	 * @param configuration
+	 * @param visitor
+	 * @throws IOException
+	 */
+	void read(final String label, long start, long end, final RecordedDataConfiguration configuration, 
+			final BlockSummaryVisitor visitor) throws IOException {
+		if (configuration != null && configuration.getStorageType() == StorageType.FIXED_INTERVAL) {
+			start = getRoundedTimestamp(start, configuration);
+			end = getRoundedTimestamp(end, configuration);
+		}
+		if (start > end)
+			return;
+		lockShared();
 		try {
-			folderStart = !useCompatibilityMode ? Long.parseLong(folderName) : TimeUtils.parseCompatibilityFolderName(folderName);
-		} catch (NumberFormatException | DateTimeException e) {
-			logger.error("Unable to parse Timestamp from folder {}",name,e);
-			return false;
+			final List<SampledValue> late = new ArrayList<>();
+			final List<FileObject> toRead = getFileObjects(label, start, end, late);
+			if (late.isEmpty()) {
+				for (FileObject file : toRead) {
+					file.read(start, end, visitor);
+				}
+				return;
+			}
+			// the block summaries do not account for late values, pass the individual data points instead
+			final List<SampledValue> values = new ArrayList<>();
+			for (FileObject file : toRead) {
+				values.addAll(file.read(start, end));
+			}
+			for (SampledValue sv : FileObjectList.merge(values, late)) {
+				visitor.visit(sv.getTimestamp(), sv.getValue().getDoubleValue(), sv.getQuality());
+			}
+		} finally {
+			unlockShared();
 		}
-		return start <= folderStart && folderStart <= end;
-			
-//		return start <= folderStart + 86399999 && folderStart <= end;
-//		final SimpleDateFormat sdf = getDateFormat();
-//		try {
-//			sdf.parse(name);
-//		} catch (ParseException e) {
-//			logger.error("Unable to parse Timestamp from: " + name + " folder. " + e.getMessage());
-//		}
-//		if (start <= sdf.getCalendar().getTimeInMillis() + 86399999 && sdf.getCalendar().getTimeInMillis() <= end) { // if
-//			// start
-//			// <=
-//			// folder.lastTSofDay
-//			// &&
-//			// folder.firstTSofDay
-//			// <=
-//			// end
-//			return true;
-//		}
-//		return false;
 	}
 	
-	private final FileObjectList getFileObjectList(final Path dayFolder, final String label) {
+	/**
+	 * Fill the chunk with the data points between start and end (both inclusive), until it is full. 
+	 * In contrast to {@link #read(String, long, long, RecordedDataConfiguration)}, the boundaries are 
+	 * not rounded for fixed interval time series, so that a subsequent call starting at the last 
+	 * timestamp + 1 continues exactly where this one stopped.
+	 * @param label
+	 * @param start
+	 * @param end
+	 * @param chunk
+	 * @throws IOException
+	 */
+	void readChunk(final String label, final long start, final long end, final TimeSeriesChunk chunk) throws IOException {
+		chunk.clear();
+		if (start > end)
+			return;
+		lockShared();
 		try {
-			final long dayStr = !useCompatibilityMode ? Long.parseLong(dayFolder.getFileName().toString()) : 
-				TimeUtils.parseCompatibilityFolderName(dayFolder.getFileName().toString());
-			return getFileObjectList(dayStr, label);
-		} catch (NumberFormatException | NullPointerException e) {
-			logger.error("Invalid folder passed: {}",dayFolder, e);
-			return null;
+			final List<SampledValue> late = new ArrayList<>();
+			final List<FileObject> toRead = getFileObjects(label, start, end, late);
+			for (FileObject file : toRead) {
+				if (chunk.isFull())
+					break;
+				file.readChunk(start, end, chunk);
+			}
+			if (!late.isEmpty())
+				addLateValues(chunk, late, chunk.isFull() ? chunk.getLastTimestamp() : end);
+		} finally {
+			unlockShared();
+		}
+	}
+	
+	/*
+	 * Inserts the late values up to limit into the chunk, which contains the data points read from the files. 
+	 * If the chunk overflows, the latest data points are dropped; they are returned by the subsequent call.
+	 */
+	private static void addLateValues(final TimeSeriesChunk chunk, final List<SampledValue> late, final long limit) {
+		final int size = chunk.size();
+		final long[] timestamps = Arrays.copyOf(chunk.getTimestamps(), size);
+		final double[] values = Arrays.copyOf(chunk.getValues(), size);
+		final byte[] qualities = Arrays.copyOf(chunk.getQualityFlags(), size);
+		chunk.clear();
+		int i = 0;
+		int j = 0;
+		while (!chunk.isFull()) {
+			final SampledValue next = j < late.size() && late.get(j).getTimestamp() <= limit ? late.get(j) : null;
+			if (i < size && (next == null || timestamps[i] <= next.getTimestamp())) {
+				if (next != null && next.getTimestamp() == timestamps[i]) // data files take precedence
+					j++;
+				chunk.add(timestamps[i], values[i], qualities[i]);
+				i++;
+			} else if (next != null) {
+				chunk.add(next.getTimestamp(), next.getValue().getDoubleValue(), (byte) next.getQuality().getQuality());
+				j++;
+			} else {
+				break;
+			}
 		}
 	}
 
+	/*
+	 * Guarded by the series lock. The list may have been evicted meanwhile, 
+	 * hence it must be pinned via FileHandlePool#pin before use.
+	 */
+	private static final class SeriesHandle {
+		
+		FileObjectList list;
+		long partitionStart;
+		// exclusive
+		long partitionEnd;
+		// identity of the configuration the parameters below are derived from
+		RecordedDataConfiguration configuration;
+		long storingPeriod;
+		// 0 for flexible interval time series
+		long roundingInterval;
+		
+	}
+	
+	private Lock getSeriesLock(final String label) {
+		final int h = label.hashCode();
+		return seriesLocks[(h ^ (h >>> 16)) & (SERIES_LOCK_STRIPES - 1)];
+	}
+	
 	/**
-	 * Requires folder read lock to be held
+	 * Acquires the folder read lock, and opens a scope of the handle pool; all folders
+	 * obtained until the matching {@link #unlockShared()} remain open.
+	 */
+	void lockShared() {
+		folderLock.readLock().lock();
+		handles.enterScope();
+	}
+	
+	void unlockShared() {
+		try {
+			handles.exitScope();
+		} finally {
+			folderLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Requires folder read lock to be held, via {@link #lockShared()}, or the folder write lock
 	 * @param day
 	 * @param label
 	 * @return
 	 */
 	private final FileObjectList getFileObjectList(final long day, final String label) {
 		final String id = label + day;
-		return openFilesHM.computeIfAbsent(id, key -> {
+		return handles.acquire(id, key -> {
 			try {
-				controlHashtableSize();
 				return new FileObjectList(rootNodeString + "/" + getDayFolderName(day) + "/" + label, cache, label, useCompatibilityMode);
 			} catch (IOException e) {
 				logger.error("Failed to construct FileObjectList",e);
@@ -1057,21 +1441,77 @@ public final class FileObjectProxy {
 	 */
 
 	/** 
-	 * requires folder write lock
+	 * requires folder read lock
 	 */
 	private void newDayStarted(final long strDate) throws IOException {
-//		if (openFilesHM.containsKey(label + strDate)) {
-		if (strDate != currentDay) {
-			currentDay = strDate;
+		// usually the folder has been created in advance already, see preparePartition
+		catalog.addPartitionIfAbsent(strDate, rootNode.resolve(getDayFolderName(strDate)));
+		synchronized (partitionLock) {
 			/*
-			 * Value for new day has been registered! Close and flush all connections! Empty Hashtable!
+			 * Late value for a past day; the files of the current day remain open.
 			 */
-		
-			clearOpenFilesHashMap();
-			logger.info("Started logging to a new Day. <{}> Folder has been closed and flushed completely.",getDayFolderName(strDate));
-			Files.createDirectories(rootNode.resolve(getDayFolderName(strDate)));
-			/* reload days */
-			reloadDays();
+			if (strDate <= currentDay && currentDay != Long.MAX_VALUE) 
+				return;
+			currentDay = strDate;
+		}
+		/*
+		 * Value for new day has been registered. Time series switch to the new folder one by one, on their 
+		 * next value; the files of older days are closed in the background. Cached values remain valid.
+		 */
+		logger.info("Started logging to a new Day. <{}> Older folders are closed in the background.",getDayFolderName(strDate));
+		ParallelTasks.execute(() -> closePartitionsBefore(strDate));
+		final long next = TimeUtils.getNextStart(strDate, unit);
+		final long now = getTime();
+		if (now >= strDate && now < next) // live data, rather than an import
+			ParallelTasks.execute(() -> preparePartition(next));
+	}
+	
+	/*
+	 * Closes the unused files of all folders older than the passed partition
+	 */
+	private void closePartitionsBefore(final long start) {
+		lockShared();
+		try {
+			if (closed)
+				return;
+			handles.closeIf(list -> {
+				final Long partition = getPartitionStart(list);
+				return partition != null && partition < start;
+			});
+		} finally {
+			unlockShared();
+		}
+	}
+	
+	/*
+	 * Creates the folder for the next partition in advance, so that the switch
+	 * to the new partition does not have to wait for it
+	 */
+	private void preparePartition(final long start) {
+		lockShared();
+		try {
+			if (!closed)
+				catalog.addPartitionIfAbsent(start, rootNode.resolve(getDayFolderName(start)));
+		} catch (IOException e) {
+			logger.warn("Failed to create the folder for partition {}", getDayFolderName(start), e);
+		} finally {
+			unlockShared();
+		}
+	}
+	
+	/**
+	 * @param list
+	 * @return
+	 * 		the start time of the partition containing the folder, or null if the folder name cannot be parsed
+	 */
+	private Long getPartitionStart(final FileObjectList list) {
+		final String parentFolderName = Paths.get(list.getFolderName()).getParent().getFileName().toString();
+		try {
+			return !useCompatibilityMode ? Long.parseLong(parentFolderName) : 
+				TimeUtils.parseCompatibilityFolderName(parentFolderName);
+		} catch (RuntimeException e) {
+			logger.error("Failed to parse folder list {}", list, e);
+			return null;
 		}
 	}
 	
@@ -1081,69 +1521,39 @@ public final class FileObjectProxy {
 	void clearOpenFilesHashMap() throws IOException {
 		Iterator<FileObjectList> itr = openFilesHM.values().iterator();
 		while (itr.hasNext()) { // kick out everything
-			itr.next().closeAllFiles();
+			final FileObjectList list = itr.next();
+			mergeLateValues(list);
+			list.closeAllFiles();
+			list.markClosed();
 		}
 		openFilesHM.clear();
+		seriesHandles.clear();
 	}
 	
+	SlotsDbCache getCache() {
+		return cache;
+	}
+
 	void clearCache() {
 		cache.clearCache();
 	}
 	
 	public int size(String label, long start, long end) throws DataRecorderException, IOException {
 		int size = 0;
-		folderLock.readLock().lock();
+		lockShared();
 		try {
 			List<FileObjectList> folders = getFoldersForIntervalSorted(label, start, end);
 			for (FileObjectList folder: folders) {
 				for (FileObject file: folder.getAllFileObjects()) {
 					size += file.getDataSetCount(start, end);
 				}
+				size += folder.getLateValueCount(start, end);
 			}
 			return size;
 		} catch (IOException e) {
 			throw new DataRecorderException("",e);
 		} finally {
-			folderLock.readLock().unlock();
-		}
-	}
-	
-	private void controlHashtableSize() {
-		/*
-		 * hm.size() doesn't really represent the number of open files, because it contains FileObjectLists, which may
-		 * contain 1 ore more FileObjects. In most cases, there is only 1 File in a List. There will be a second File if
-		 * storage Intervall is reconfigured. Continuous reconfiguring of measurement points may lead to a
-		 * "Too many open files" Exception. In this case SlotsDb.MAX_OPEN_FOLDERS should be decreased...
-		 */
-		if (openFilesHM.size() < max_open_files)
-			return;
-		// execute in new thread to avoid deadlock due to read lock being held
-		ForkJoinPool.commonPool().submit(() -> {
-			folderLock.writeLock().lock();
-			try {
-				if (openFilesHM.size() < max_open_files) // double checked locking, simply to avoid running this too often
-					return;
-				controlHashtableSizeInternal();
-			} catch (IOException e) {
-				logger.error("Failed to close file?", e);
-			} finally {
-				folderLock.writeLock().unlock();
-			}
-		});
-	}
-	
-
-	/** 
-	 * requires folder write lock 
-	 */
-	private void controlHashtableSizeInternal() throws IOException {
-		logger.debug("More then {} DataStreams are opened. Flushing and closing some to not exceed OS-Limit.", max_open_files);
-		Iterator<FileObjectList> itr = openFilesHM.values().iterator();
-		for (int i = 0; i < (openFilesHM.size() / 4); i++) { 
-			// randomly kick out some of the FileObjectLists.
-			// -> the needed ones will be reinitialized, no problem here.
-			itr.next().closeAllFiles();
-			itr.remove();
+			unlockShared();
 		}
 	}
 	
@@ -1152,7 +1562,11 @@ public final class FileObjectProxy {
 	}
 	
 	int openFolders() {
-		return openFilesHM.size();
+		return handles.size();
+	}
+	
+	FileHandlePool getHandlePool() {
+		return handles;
 	}
 	
 }
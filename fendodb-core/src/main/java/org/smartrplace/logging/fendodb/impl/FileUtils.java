@@ -3,8 +3,14 @@ package org.smartrplace.logging.fendodb.impl;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
@@ -14,9 +20,91 @@ import org.slf4j.LoggerFactory;
 public class FileUtils {
 	
 	private static final String TEMP_FILE_SUFFIX = ".tmp";
+	/*
+	 * Releases a mapped buffer, null if not supported by the JVM. Java 9+: Unsafe#invokeCleaner; 
+	 * Java 8: DirectBuffer#cleaner().clean(). Accessed via reflection, so the bundle does not import sun.*
+	 */
+	private static final Unmapper UNMAPPER = createUnmapper();
 	
 	private FileUtils() {}
 	
+	/**
+	 * Force the content of a file to disk
+	 * @param file
+	 * @return
+	 * 		false if the file does not exist (any more)
+	 * @throws IOException
+	 */
+	static boolean sync(final Path file) throws IOException {
+		try (final FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			ch.force(true);
+			return true;
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Force the entries of a directory to disk, so that created, renamed or deleted files persist. 
+	 * Not supported on all platforms, in which case this does nothing.
+	 * @param directory
+	 */
+	static void syncDirectory(final Path directory) {
+		try (final FileChannel ch = FileChannel.open(directory, StandardOpenOption.READ)) {
+			ch.force(true);
+		} catch (IOException ignore) {}
+	}
+	
+	/**
+	 * Release the mapping immediately, instead of waiting for the buffer to be garbage collected. 
+	 * The buffer must not be accessed any more afterwards; the caller must ensure that no other 
+	 * thread is still using it. Falls back to garbage collection if unmapping is not supported.
+	 * @param buffer
+	 */
+	static void unmap(final MappedByteBuffer buffer) {
+		if (UNMAPPER == null || buffer == null)
+			return;
+		try {
+			UNMAPPER.unmap(buffer);
+		} catch (Exception e) {
+			LoggerFactory.getLogger(FileUtils.class).debug("Failed to release a mapped buffer", e);
+		}
+	}
+	
+	@FunctionalInterface
+	private static interface Unmapper {
+		
+		void unmap(ByteBuffer buffer) throws Exception;
+		
+	}
+	
+	private static Unmapper createUnmapper() {
+		try {
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			final Object unsafe = field.get(null);
+			return buffer -> invokeCleaner.invoke(unsafe, buffer);
+		} catch (NoSuchMethodException e) { // Java 8
+		} catch (Exception | LinkageError e) {
+			LoggerFactory.getLogger(FileUtils.class).debug("Unmapping buffers not supported", e);
+			return null;
+		}
+		try {
+			final Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			final Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				final Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null)
+					cleanMethod.invoke(cleaner);
+			};
+		} catch (Exception | LinkageError e) {
+			LoggerFactory.getLogger(FileUtils.class).debug("Unmapping buffers not supported", e);
+			return null;
+		}
+	}
+	
 	/**
 	 * Attempt to store an object in the specified file. First, a backup file is written, then an attempt is
 	 * made to copy the latter atomically to the actual target file
@@ -42,6 +130,26 @@ public class FileUtils {
 		return targetFile;
 	}
 	
+	/**
+	 * Like {@link #writeJavaBytes(Path, String, Object)}, for raw data.
+	 * @param directory must exist as a directory
+	 * @param filename
+	 * @param bytes
+	 * @throws IOException
+	 */
+	public static Path writeBytes(Path directory, String filename, byte[] bytes) throws IOException {
+		final Path tempFile = directory.resolve(getTempFileName(filename));
+		final Path targetFile = directory.resolve(filename);
+		Files.write(tempFile, bytes, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			Files.move(tempFile, targetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			LoggerFactory.getLogger(FileUtils.class).warn("The atomic move operation failed for {}", tempFile, e);  
+			Files.move(tempFile, targetFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+		return targetFile;
+	}
+	
 	/**
 	 * Attempt to read object from the specified file in the specified directory, falling back to 
 	 * a backup file if the read fails.
@@ -16,19 +16,19 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 import org.smartrplace.logging.fendodb.impl.SlotsDbCache.RecordedDataCache;
 
 public class FlexibleIntervalFileObject extends FileObject {
@@ -38,12 +38,33 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	protected FlexibleIntervalFileObject(File file, RecordedDataCache cache) throws IOException {
 		super(file, cache);
-		lastTimestamp = startTimeStamp;
+		lastTimestamp = readLastTimestamp();
 	}
 
 	protected FlexibleIntervalFileObject(String fileName, RecordedDataCache cache) throws IOException {
 		super(fileName, cache);
-		lastTimestamp = startTimeStamp;
+		lastTimestamp = readLastTimestamp();
+	}
+	
+	/**
+	 * Reads the timestamp of the last data set, a single 8 byte read at position length - 17.
+	 * @return
+	 * 		the last timestamp, or the start time stamp if the file does not contain any data yet
+	 * @throws IOException
+	 */
+	private long readLastTimestamp() throws IOException {
+		final int dataSetCount = getDataSetCountInternal();
+		if (dataSetCount <= 0)
+			return startTimeStamp;
+		final ByteBuffer bb = ByteBuffer.allocate(Long.BYTES);
+		try (final FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+			final long position = headerend + (dataSetCount - 1) * (long) getDataSetSize();
+			while (bb.hasRemaining()) {
+				if (channel.read(bb, position + bb.position()) < 0)
+					throw new EOFException("Unexpected end of file " + dataFile.getPath());
+			}
+		}
+		return bb.getLong(0);
 	}
 
 	@Override
@@ -57,146 +78,112 @@ public class FlexibleIntervalFileObject extends FileObject {
 
 	@Override
 	public void append(double value, long timestamp, byte flag) throws IOException {
-		// long writePosition = length;
-		if (!canWrite) {
-			enableOutput();
-		}
-
 		if (timestamp > lastTimestamp) {
-			dos.writeLong(timestamp);
-			dos.writeDouble(value);
-			dos.writeByte(flag);
+			appendRow(timestamp, value, flag);
 			lastTimestamp = timestamp;
 			length += 17;
+			summarize(value, timestamp, flag);
 		}
 
 	}
 
+	@Override
+	protected void writeRow(DataOutputStream out, long timestamp, double value, byte flag) throws IOException {
+		out.writeLong(timestamp);
+		out.writeDouble(value);
+		out.writeByte(flag);
+	}
+
 	@Override
 	protected long getTimestampForLatestValueInternal() {
-		// FIXME: this won't work ... if read(String, long, long) is invoked a new
-		// FileObject is created and lastTimestamp is set to startTimeStamp ...
-		// return lastTimestamp;
+		return lastTimestamp;
+	}
 
-		// this is only a quickfix so that it works... @author of this class: if there
-		// is a better solution pls fix this... otherwise delete all comments in here
-		// and lets stick to this solution for now:
-		int dataSetCount = getDataSetCountInternal();
-		if (dataSetCount > 1) {
-			try {
-				enableInput();
-				fis.getChannel().position(headerend);
-				byte[] b = new byte[(int) (length - headerend)];
-				dis.read(b, 0, b.length);
-				ByteBuffer bb = ByteBuffer.wrap(b);
-				// set position to last entries timestamp (Long, Double and Byte size in bits
-				// so divide through Byte.SIZE to get size in bytes)
-				((Buffer) bb).position((dataSetCount - 1) * getDataSetSize());
-				long l = bb.getLong();
-				return l;
-			} catch (IOException | NullPointerException e) {
-				logger.error(e.getMessage(), e);
-				// FIXME return negative value to signalize error? for now simply
-				// return startTimeStamp ...
-			}
+	/**
+	 * Number of complete data sets contained in the buffer; the buffer may be shorter than
+	 * length if the file has been truncated externally.
+	 */
+	private static int getDataSetCount(final ByteBuffer bb) {
+		return (int) (Math.max(bb.limit() - headerend, 0) / getDataSetSize());
+	}
+
+	/**
+	 * Binary search over the timestamp column. Timestamps are strictly increasing.
+	 * @param bb
+	 * @param countOfDataSets
+	 * @param timestamp
+	 * @param inclusive
+	 * @return
+	 * 		the index of the first data set with timestamp &gt;= the requested timestamp, if inclusive is true,
+	 * 		or with timestamp &gt; the requested timestamp, if inclusive is false, respectively. If no 
+	 * 		such data set exists, countOfDataSets is returned.
+	 */
+	private static int search(final ByteBuffer bb, final int countOfDataSets, final long timestamp, final boolean inclusive) {
+		int low = 0;
+		int high = countOfDataSets;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final long t = bb.getLong(getPosition(mid));
+			if (t < timestamp || (!inclusive && t == timestamp))
+				low = mid + 1;
+			else
+				high = mid;
 		}
-		return startTimeStamp;
+		return low;
+	}
+	
+	private static int getPosition(final int idx) {
+		return (int) headerend + idx * getDataSetSize();
+	}
+	
+	private static SampledValue getValue(final ByteBuffer bb, final int pos) {
+		return new SampledValue(DoubleValues.of(bb.getDouble(pos + 8)), bb.getLong(pos), Quality.getQuality(bb.get(pos + 16)));
 	}
 
 	@Override
 	protected List<SampledValue> readInternal(long start, long end) throws IOException {
-
-//		List<SampledValue> toReturn = new Vector<SampledValue>();
-		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCount());
-		enableInput();
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-
-		for (int i = 0; i < getDataSetCountInternal(); i++) {
-			long timestamp = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d)) {
-				if (timestamp >= start && timestamp <= end) {
-					toReturn.add(new SampledValue(DoubleValues.of(d), timestamp, s));
-				}
-
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		final int first = search(bb, countOfDataSets, start, true);
+		final int last = search(bb, countOfDataSets, end, false);
+		final List<SampledValue> toReturn = new ArrayList<>(Math.max(last - first, 0));
+		for (int i = first; i < last; i++) {
+			final int pos = getPosition(i);
+			if (!Double.isNaN(bb.getDouble(pos + 8))) {
+				toReturn.add(getValue(bb, pos));
 			}
 		}
-
-		// TODO iterate through file and extract the required values.
 		return toReturn;
 	}
 
 	@Override
-	protected List<SampledValue> readFullyInternal() throws IOException {
-//		List<SampledValue> toReturn = new Vector<SampledValue>();
-		final List<SampledValue> toReturn = new ArrayList<>(getDataSetCountInternal());
-		enableInput();
-		long startpos = headerend;
-
-		try {
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		try {
-			dis.read(b, 0, b.length);
-		} catch(IOException e) {
-			return Collections.emptyList();
-		}
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((length - headerend) / getDataSetSize());
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-
-			if (!Double.isNaN(d)) {
-				toReturn.add(new SampledValue(DoubleValues.of(d), timestamp, s));
-			}
-		}
-		} catch(ClosedChannelException e) {
-			logger.warn("   !! CHANNEL_CLOSED_EXCEPTION for "+dataFile.getPath());
-			return toReturn;
+	protected int readChunkInternal(long start, long end, TimeSeriesChunk chunk) throws IOException {
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		final int size = chunk.size();
+		for (int i = search(bb, countOfDataSets, start, true); i < countOfDataSets && !chunk.isFull(); i++) {
+			final int pos = getPosition(i);
+			final long t = bb.getLong(pos);
+			if (t > end)
+				break;
+			final double d = bb.getDouble(pos + 8);
+			if (!Double.isNaN(d))
+				chunk.add(t, d, bb.get(pos + 16));
 		}
-		return toReturn;
+		return chunk.size() - size;
 	}
 
 	@Override
-	public SampledValue read(long timestamp) throws IOException {
-		// TODO Search the special value
-		enableInput();
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((length - headerend) / 17);
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (timestamp < timestamp2) {
-				return null;
-			}
-			if (!Double.isNaN(d) && timestamp == timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
-			}
-		}
-		return null;
+	protected SampledValue readInternal(long timestamp) throws IOException {
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		final int idx = search(bb, countOfDataSets, timestamp, true);
+		if (idx >= countOfDataSets)
+			return null;
+		final int pos = getPosition(idx);
+		if (bb.getLong(pos) != timestamp || Double.isNaN(bb.getDouble(pos + 8)))
+			return null;
+		return getValue(bb, pos);
 	}
 
 	@Override
@@ -205,72 +192,32 @@ public class FlexibleIntervalFileObject extends FileObject {
 	}
 
 	@Override
-	public SampledValue readNextValue(long timestamp) throws IOException {
-		enableInput();
-		long startpos = headerend;
-
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
-		int countOfDataSets = (int) ((length - headerend) / getDataSetSize());
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp <= timestamp2) {
-				return new SampledValue(DoubleValues.of(d), timestamp2, s);
-			}
+	protected SampledValue readNextValueInternal(long timestamp) throws IOException {
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		for (int i = search(bb, countOfDataSets, timestamp, true); i < countOfDataSets; i++) {
+			final int pos = getPosition(i);
+			if (!Double.isNaN(bb.getDouble(pos + 8)))
+				return getValue(bb, pos);
 		}
 		return null;
 	}
 
 	@Override
-	public SampledValue readPreviousValue(long timestamp) throws IOException {
-		enableInput();
-		long startpos = headerend;
-
-		/*
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		((Buffer) bb).rewind();
-		*/
-		try {
-		final MappedByteBuffer bb = fis.getChannel().map(FileChannel.MapMode.READ_ONLY, startpos, length - headerend);
-		int countOfDataSets = (int) ((length - headerend) / getDataSetSize());
-		long tcand = Long.MIN_VALUE;
-		double dcand = Double.NaN;
-		Quality qcand = null;
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			Quality s = Quality.getQuality(bb.get());
-			if (!Double.isNaN(d) && timestamp >= timestamp2) {
-				tcand = timestamp2;
-				dcand = d;
-				qcand = s;
-//				candidate = new SampledValue(DoubleValues.of(d), timestamp2, s);
-			}
-			else if (timestamp < timestamp2)
-				break;
+	protected SampledValue readPreviousValueInternal(long timestamp) throws IOException {
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		for (int i = search(bb, countOfDataSets, timestamp, false) - 1; i >= 0; i--) {
+			final int pos = getPosition(i);
+			if (!Double.isNaN(bb.getDouble(pos + 8)))
+				return getValue(bb, pos);
 		}
-		if (!Double.isNaN(dcand))
-			return new SampledValue(DoubleValues.of(dcand), tcand, qcand);
 		return null;
-		} catch (ClosedChannelException e) {
-			logger.warn("   !! CHANNEL_CLOSED_EXCEPTION(2) for "+dataFile.getPath());
-			return null;
-		}
 	}
 
 	@Override
 	protected int getDataSetCountInternal() {
-		return (int) ((length - headerend) / getDataSetSize());
+		return (int) (Math.max(getReadableLength() - headerend, 0) / getDataSetSize());
 	}
 
 	@Override
@@ -280,28 +227,15 @@ public class FlexibleIntervalFileObject extends FileObject {
 			return getDataSetCountInternal();
 		else if (start > fileEnd || end < startTimeStamp)
 			return 0;
-		enableInput();
-		long startpos = headerend;
-		fis.getChannel().position(startpos);
-		byte[] b = new byte[(int) (length - headerend)];
-		dis.read(b, 0, b.length);
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		// casting is a hack to avoid incompatibility when building this on Java 9 and run on Java 8
-		// ByteBuffer#rewind used to return a Buffer in Jdk8, but from Java 9 on returns a ByteBuffer
-		((Buffer) bb).rewind();
+		final ByteBuffer bb = getReadBuffer();
+		final int countOfDataSets = getDataSetCount(bb);
+		final int first = search(bb, countOfDataSets, start, true);
+		final int last = search(bb, countOfDataSets, end, false);
 		int cnt = 0;
-		int countOfDataSets = getDataSetCountInternal();
-		for (int i = 0; i < countOfDataSets; i++) {
-			long timestamp2 = bb.getLong();
-			double d = bb.getDouble();
-			if (timestamp2 > end)
-				return cnt;
-			if (!Double.isNaN(d) && timestamp2 >= start) {
+		for (int i = first; i < last; i++) {
+			if (!Double.isNaN(bb.getDouble(getPosition(i) + 8)))
 				cnt++;
-			}
-			bb.get();
 		}
-		
 		return cnt;
 	}
 
@@ -499,6 +499,25 @@ class GogoCommands {
 		}
 	}
 
+	@Descriptor("Print hit, miss and eviction counts of the values cache")
+	public void getFendoDbCacheStats(
+			@Descriptor("Database path, relative to rundir or absolute")
+			final String path) throws IOException {
+		try (final CloseableDataRecorder instance = factory.getExistingInstance(Paths.get(path))) {
+			if (instance == null) {
+				System.out.println("Not found");
+				return;
+			}
+			final SlotsDbCache cache = getImplementation(instance).getProxy().getCache();
+			System.out.println(cache.getStats() + ", size: " + (cache.getMemorySize() / 1024) + " kB, budget: " 
+					+ instance.getConfiguration().getValueCacheSize() + " MB");
+			final BlockCache blockCache = factory instanceof SlotsDbFactoryImpl ? ((SlotsDbFactoryImpl) factory).blockCache : null;
+			if (blockCache != null)
+				System.out.println(blockCache);
+			System.out.println(getImplementation(instance).getProxy().getHandlePool());
+		}
+	}
+
 	private final SlotsDb getImplementation(final CloseableDataRecorder recorder) {
 		if (recorder instanceof SlotsDbProxy)
 			return ((SlotsDbProxy) recorder).master;
@@ -19,6 +19,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
@@ -124,6 +125,11 @@ abstract class InfoTask extends TimerTask {
 		
 		@Override
 		void runInternal() throws IOException {
+			if (proxy.wal != null) {
+				proxy.wal.checkpoint(proxy.openFilesHM.values());
+				logger.trace("Write ahead log checkpoint for {} folders.",proxy.openFilesHM.size());
+				return;
+			}
 			Iterator<FileObjectList> itr = proxy.openFilesHM.values().iterator();
 			while (itr.hasNext()) {
 				itr.next().flush();
@@ -134,6 +140,29 @@ abstract class InfoTask extends TimerTask {
 	}
 	
 	// FIXME take into account unit!
+	/**
+	 * Merges the buffered late values of the open folders into the data files.
+	 */
+	static class Compactor extends InfoTask {
+		
+		Compactor(FileObjectProxy proxy) {
+			super(proxy, false, false, LogLevel.TRACE);
+		}
+		
+		@Override
+		void runInternal() throws IOException {
+			// unlike for requiresFolderLock = true, the open files are not cleared, and 
+			// other time series can be read and written meanwhile
+			proxy.lockShared();
+			try {
+				proxy.mergeLateValues();
+			} finally {
+				proxy.unlockShared();
+			}
+		}
+		
+	}
+	
 	static class DeleteJob extends InfoTask {
 		
 		DeleteJob(FileObjectProxy proxy) {
@@ -166,7 +195,7 @@ abstract class InfoTask extends TimerTask {
 		
 		final void deleteFolders(final long limit, final boolean olderOrNewer) throws IOException {
 			proxy.reloadDays();
-			final Iterator<Path> iterator = proxy.days.iterator();
+			final Iterator<Path> iterator = proxy.catalog.getFolders().iterator();
 			while (iterator.hasNext()) {
 				final Path curElement = iterator.next();
 				logger.trace("Deleting log data... checking: {}", curElement);
@@ -178,6 +207,7 @@ abstract class InfoTask extends TimerTask {
 						logger.info("Folder: {} is " + (olderOrNewer ? "older" : "newer") 
 								+ " than limit. Will be deleted.");
 						deleteRecursiveFolder(curElement);
+						proxy.getCache().invalidateBlocks(curElement.toFile());
 						if (Files.exists(curElement)) 
 							logger.warn("Folder still exists after deletion attempt: {}", curElement);
 					}
@@ -205,10 +235,10 @@ abstract class InfoTask extends TimerTask {
 		@Override
 		void runInternal() throws IOException {
 			long size = getDiskUsage(proxy.rootNode);
-			while ((size / 1000000 > proxy.limit_size) && (proxy.days.size() >= 2)) { // avoid deleting current folder
+			while ((size / 1000000 > proxy.limit_size) && (proxy.catalog.size() >= 2)) { // avoid deleting current folder
 				if (logger.isInfoEnabled()) {
 					logger.info("Exceeded Maximum Database Size: " + proxy.limit_size + " MB. Current size: " + (size / 1000000)
-							+ " MB. Deleting: " + proxy.days.get(0));
+							+ " MB. Deleting: " + proxy.catalog.getFirstPartition().getValue());
 				}
 				deleteOldestFolder();
 				size = getDiskUsage(proxy.rootNode);
@@ -216,8 +246,10 @@ abstract class InfoTask extends TimerTask {
 		}
 
 		private void deleteOldestFolder() throws IOException {
-			deleteRecursiveFolder(proxy.days.get(0));
-			proxy.days.remove(0);
+			final Map.Entry<Long, Path> oldest = proxy.catalog.getFirstPartition();
+			deleteRecursiveFolder(oldest.getValue());
+			proxy.getCache().invalidateBlocks(oldest.getValue().toFile());
+			proxy.catalog.removePartition(oldest.getKey());
 			proxy.clearOpenFilesHashMap();
 		}
 
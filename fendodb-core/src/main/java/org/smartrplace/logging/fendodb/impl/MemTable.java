@@ -0,0 +1,187 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.util.Arrays;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+
+/**
+ * The rows appended to a data file but not yet written to disk, held in primitive columns. 
+ * Timestamps are strictly increasing and larger than all timestamps on disk. NaN rows are kept, 
+ * since they occupy a row in the file, but they are not returned by the read methods.<br>
+ * Only the owning {@link FileObject} appends rows, guarded by its monitor; readers work on 
+ * a {@link #snapshot()}, which remains valid when further rows are appended.
+ */
+final class MemTable {
+	
+	private static final int INITIAL_CAPACITY = 16;
+	private long[] timestamps;
+	private double[] values;
+	private byte[] flags;
+	private int size;
+	
+	MemTable() {
+		this(new long[INITIAL_CAPACITY], new double[INITIAL_CAPACITY], new byte[INITIAL_CAPACITY], 0);
+	}
+	
+	private MemTable(long[] timestamps, double[] values, byte[] flags, int size) {
+		this.timestamps = timestamps;
+		this.values = values;
+		this.flags = flags;
+		this.size = size;
+	}
+	
+	void add(final long timestamp, final double value, final byte flag) {
+		if (size == timestamps.length) {
+			final int capacity = 2 * size;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			values = Arrays.copyOf(values, capacity);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		timestamps[size] = timestamp;
+		values[size] = value;
+		flags[size] = flag;
+		size++;
+	}
+	
+	/**
+	 * @return
+	 * 		a read-only view of the rows appended so far. Rows are only ever added beyond the 
+	 * 		size of the view, so it need not be copied.
+	 */
+	MemTable snapshot() {
+		return new MemTable(timestamps, values, flags, size);
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	long getTimestamp(final int idx) {
+		return timestamps[idx];
+	}
+	
+	double getValue(final int idx) {
+		return values[idx];
+	}
+	
+	byte getFlag(final int idx) {
+		return flags[idx];
+	}
+	
+	/**
+	 * Requires a non-empty table
+	 */
+	long getFirstTimestamp() {
+		return timestamps[0];
+	}
+	
+	/**
+	 * Requires a non-empty table
+	 */
+	long getLastTimestamp() {
+		return timestamps[size - 1];
+	}
+	
+	/**
+	 * Append the non-NaN rows between start and end (both inclusive) to the chunk, until it is full.
+	 * @return
+	 * 		the number of data points added
+	 */
+	int readChunk(final long start, final long end, final TimeSeriesChunk chunk) {
+		final int sz = chunk.size();
+		for (int i = search(start, true); i < size && timestamps[i] <= end && !chunk.isFull(); i++) {
+			if (!Double.isNaN(values[i]))
+				chunk.add(timestamps[i], values[i], flags[i]);
+		}
+		return chunk.size() - sz;
+	}
+	
+	/**
+	 * @return
+	 * 		the number of non-NaN rows between start and end (both inclusive)
+	 */
+	int count(final long start, final long end) {
+		int cnt = 0;
+		for (int i = search(start, true); i < size && timestamps[i] <= end; i++) {
+			if (!Double.isNaN(values[i]))
+				cnt++;
+		}
+		return cnt;
+	}
+	
+	SampledValue read(final long timestamp) {
+		final int idx = search(timestamp, true);
+		if (idx >= size || timestamps[idx] != timestamp || Double.isNaN(values[idx]))
+			return null;
+		return getSampledValue(idx);
+	}
+	
+	/**
+	 * @return
+	 * 		the first non-NaN data point at or after the passed timestamp, or null
+	 */
+	SampledValue readNextValue(final long timestamp) {
+		for (int i = search(timestamp, true); i < size; i++) {
+			if (!Double.isNaN(values[i]))
+				return getSampledValue(i);
+		}
+		return null;
+	}
+	
+	/**
+	 * @return
+	 * 		the last non-NaN data point at or before the passed timestamp, or null
+	 */
+	SampledValue readPreviousValue(final long timestamp) {
+		for (int i = search(timestamp, false) - 1; i >= 0; i--) {
+			if (!Double.isNaN(values[i]))
+				return getSampledValue(i);
+		}
+		return null;
+	}
+	
+	private SampledValue getSampledValue(final int idx) {
+		return new SampledValue(DoubleValues.of(values[idx]), timestamps[idx], Quality.getQuality(flags[idx]));
+	}
+	
+	/**
+	 * @return
+	 * 		the index of the first row with timestamp &gt;= the passed timestamp, if inclusive is true,
+	 * 		or &gt; the passed timestamp, otherwise; size if there is no such row
+	 */
+	private int search(final long timestamp, final boolean inclusive) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final long t = timestamps[mid];
+			if (t < timestamp || (!inclusive && t == timestamp))
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+}
@@ -0,0 +1,366 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+
+/**
+ * Append-only log of the time series configurations and tags of a database. Changes are appended
+ * per time series; the log is replaced by a checkpoint, i.e. a snapshot of all time series, 
+ * when it has grown considerably larger than the snapshot would be, or when an append failed.<br>
+ * File format: int magic, int version, followed by records: byte type, string id, and for 
+ * {@link #CONFIG} a byte storage type (-1 for none) and a long fixed interval, for {@link #TAGS} 
+ * an int number of tags, each with a string key, an int number of values and the string values.
+ * Strings are stored as int length followed by the UTF-8 bytes.<br>
+ * An invalid or truncated record terminates the log; all records before it are retained. A damaged 
+ * log is moved aside to {@link #CORRUPT_FILE} before a new checkpoint is written, it is never overwritten.
+ */
+final class MetadataStore implements AutoCloseable {
+	
+	static final String METADATA_FILE = "metadata.log";
+	static final String CORRUPT_FILE = METADATA_FILE + ".corrupt";
+	private static final int MAGIC = 0x46444d44;
+	private static final int VERSION = 1;
+	private static final byte CONFIG = 1;
+	private static final byte TAGS = 2;
+	private static final byte REMOVED = 3;
+	private static final int MIN_RECORDS_FOR_CHECKPOINT = 1024;
+	private static final StorageType[] STORAGE_TYPES = StorageType.values();
+
+	private final Path file;
+	// all fields guarded by this
+	private final Set<String> ids = new HashSet<>();
+	private DataOutputStream out;
+	private int records;
+	private boolean checkpointRequired;
+	// true if the file has been read, possibly up to a damaged record, or a checkpoint has been written
+	private boolean loaded;
+	// true if the file has not been read completely, and has not been moved aside yet
+	private boolean damaged;
+	// upper bound for lengths and sizes decoded from the file
+	private long maxLength;
+	
+	private MetadataStore(final Path file) {
+		this.file = file;
+	}
+	
+	/**
+	 * Read the metadata file, if it exists.
+	 * @param dbFolder
+	 * @param configurations
+	 * 		target map for the persisted configurations
+	 * @param tags
+	 * 		target map for the persisted tags
+	 * @return
+	 * 		the store; if the file does not exist or its header could not be read, {@link #exists()} returns false. 
+	 * 		If it has been read only partially, {@link #isCheckpointDue()} returns true.
+	 */
+	static MetadataStore open(final Path dbFolder, final Map<String, RecordedDataConfiguration> configurations,
+			final Map<String, Map<String, List<String>>> tags) {
+		final MetadataStore store = new MetadataStore(dbFolder.resolve(METADATA_FILE));
+		if (!Files.isRegularFile(store.file))
+			return store;
+		boolean clean = false;
+		try {
+			clean = store.read(configurations, tags);
+		} catch (IOException | RuntimeException e) {
+			FileObjectProxy.logger.error("Failed to read the metadata file {}", store.file, e);
+		}
+		if (clean) {
+			try {
+				store.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(store.file, StandardOpenOption.APPEND)));
+			} catch (IOException e) {
+				store.appendFailed(e);
+			}
+		} else {
+			// keep the damaged file; appends are suspended until the next checkpoint
+			store.checkpointRequired = true;
+			store.damaged = true;
+			store.moveAside();
+		}
+		return store;
+	}
+	
+	/*
+	 * Records are applied once they have been read completely. 
+	 * @return
+	 * 		false if the log ends with an invalid or incomplete record
+	 * @throws IOException
+	 * 		if the header is invalid, or the file cannot be read
+	 */
+	private boolean read(final Map<String, RecordedDataConfiguration> configurations,
+			final Map<String, Map<String, List<String>>> tags) throws IOException {
+		maxLength = Files.size(file);
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a metadata file: " + file);
+			final int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported metadata version " + version);
+			loaded = true;
+			while (true) {
+				final int type = in.read();
+				if (type < 0)
+					return true;
+				try {
+					final String id = readString(in);
+					switch (type) {
+					case CONFIG:
+						configurations.put(id, readConfiguration(in));
+						ids.add(id);
+						break;
+					case TAGS:
+						tags.put(id, readTags(in));
+						break;
+					case REMOVED:
+						configurations.remove(id);
+						tags.remove(id);
+						ids.remove(id);
+						break;
+					default:
+						throw new IOException("Invalid record type " + type);
+					}
+				} catch (IOException e) {
+					FileObjectProxy.logger.warn("Metadata file {} ends with an invalid or incomplete record after {} records, ignoring the remainder", 
+							file, records, e);
+					return false;
+				}
+				records++;
+			}
+		}
+	}
+	
+	// requires the lock, or exclusive access to the store
+	private boolean moveAside() {
+		final Path target = file.resolveSibling(CORRUPT_FILE);
+		try {
+			Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+			FileObjectProxy.logger.warn("Damaged metadata file moved to {}", target);
+			damaged = false;
+			return true;
+		} catch (IOException e) {
+			FileObjectProxy.logger.error("Failed to move the damaged metadata file {}", file, e);
+			return false;
+		}
+	}
+	
+	/**
+	 * @return
+	 * 		false if no metadata file has been read, or the store has not been initialized 
+	 * 		by {@link #checkpoint(Map, Map)} yet
+	 */
+	synchronized boolean exists() {
+		return loaded;
+	}
+	
+	/**
+	 * @return
+	 * 		true if the log should be replaced by a checkpoint
+	 */
+	synchronized boolean isCheckpointDue() {
+		return checkpointRequired || out == null || records > MIN_RECORDS_FOR_CHECKPOINT + 4 * ids.size();
+	}
+	
+	synchronized void putConfiguration(final String id, final RecordedDataConfiguration configuration) {
+		if (out == null)
+			return;
+		try {
+			writeConfiguration(out, id, configuration);
+			out.flush();
+			ids.add(id);
+			records++;
+		} catch (IOException e) {
+			appendFailed(e);
+		}
+	}
+	
+	synchronized void putTags(final String id, final Map<String, List<String>> tags) {
+		if (out == null)
+			return;
+		try {
+			writeTags(out, id, tags);
+			out.flush();
+			records++;
+		} catch (IOException e) {
+			appendFailed(e);
+		}
+	}
+	
+	synchronized void remove(final String id) {
+		if (out == null)
+			return;
+		try {
+			out.writeByte(REMOVED);
+			writeString(out, id);
+			out.flush();
+			ids.remove(id);
+			records++;
+		} catch (IOException e) {
+			appendFailed(e);
+		}
+	}
+	
+	private void appendFailed(final IOException e) {
+		FileObjectProxy.logger.warn("Failed to append to the metadata file {}, a checkpoint will be written", file, e);
+		checkpointRequired = true;
+	}
+	
+	/**
+	 * Replace the log by a snapshot of all time series.
+	 * @param configurations
+	 * @param tags
+	 * @throws IOException
+	 */
+	synchronized void checkpoint(final Map<String, RecordedDataConfiguration> configurations, 
+			final Map<String, Map<String, List<String>>> tags) throws IOException {
+		close();
+		if (damaged && !moveAside()) // never replace a file which could not be read
+			throw new IOException("Damaged metadata file " + file + " could not be moved aside");
+		final Path temp = file.resolveSibling(METADATA_FILE + ".tmp");
+		int cnt = 0;
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			for (Map.Entry<String, RecordedDataConfiguration> entry : configurations.entrySet()) {
+				writeConfiguration(out, entry.getKey(), entry.getValue());
+				cnt++;
+			}
+			for (Map.Entry<String, Map<String, List<String>>> entry : tags.entrySet()) {
+				if (entry.getValue().isEmpty() || !configurations.containsKey(entry.getKey()))
+					continue;
+				writeTags(out, entry.getKey(), entry.getValue());
+				cnt++;
+			}
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		ids.clear();
+		ids.addAll(configurations.keySet());
+		records = cnt;
+		checkpointRequired = false;
+		loaded = true;
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+	}
+	
+	@Override
+	public synchronized void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			FileObjectProxy.logger.warn("Failed to close the metadata file {}", file, e);
+		}
+		out = null;
+	}
+	
+	private static void writeConfiguration(final DataOutputStream out, final String id, final RecordedDataConfiguration configuration) throws IOException {
+		out.writeByte(CONFIG);
+		writeString(out, id);
+		final StorageType type = configuration != null ? configuration.getStorageType() : null;
+		out.writeByte(type != null ? type.ordinal() : -1);
+		out.writeLong(configuration != null ? configuration.getFixedInterval() : 0);
+	}
+	
+	private static RecordedDataConfiguration readConfiguration(final DataInputStream in) throws IOException {
+		final int type = in.readByte();
+		final long interval = in.readLong();
+		if (type >= STORAGE_TYPES.length)
+			throw new IOException("Invalid storage type " + type);
+		final RecordedDataConfiguration configuration = new RecordedDataConfiguration();
+		if (type >= 0)
+			configuration.setStorageType(STORAGE_TYPES[type]);
+		configuration.setFixedInterval(interval);
+		return configuration;
+	}
+	
+	private static void writeTags(final DataOutputStream out, final String id, final Map<String, ? extends Collection<String>> tags) throws IOException {
+		out.writeByte(TAGS);
+		writeString(out, id);
+		out.writeInt(tags.size());
+		for (Map.Entry<String, ? extends Collection<String>> entry : tags.entrySet()) {
+			writeString(out, entry.getKey());
+			out.writeInt(entry.getValue().size());
+			for (String value : entry.getValue()) {
+				writeString(out, value);
+			}
+		}
+	}
+	
+	private Map<String, List<String>> readTags(final DataInputStream in) throws IOException {
+		final int size = readSize(in);
+		final Map<String, List<String>> tags = new HashMap<>(Math.max(4, Math.min(size, 64) * 2));
+		for (int i = 0; i < size; i++) {
+			final String key = readString(in);
+			final int nrValues = readSize(in);
+			final List<String> values = new ArrayList<>(Math.min(nrValues, 16));
+			for (int j = 0; j < nrValues; j++) {
+				values.add(readString(in));
+			}
+			tags.put(key, values);
+		}
+		return tags;
+	}
+	
+	/*
+	 * Every element takes at least 4 bytes, so the size of the file bounds the number of elements
+	 */
+	private int readSize(final DataInputStream in) throws IOException {
+		final int size = in.readInt();
+		if (size < 0 || size > maxLength / 4)
+			throw new IOException("Invalid size " + size);
+		return size;
+	}
+	
+	private static void writeString(final DataOutputStream out, final String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private String readString(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > maxLength)
+			throw new IOException("Invalid string length " + length);
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+}
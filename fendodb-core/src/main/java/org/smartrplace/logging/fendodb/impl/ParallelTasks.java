@@ -0,0 +1,145 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Bounded pool for the folder walks and file header reads required when a database is opened, 
+ * and for background maintenance, such as closing the files of past partitions. 
+ * Results are returned in the order of the input, and if tasks fail, the exception of the first 
+ * failed task in input order is thrown, independently of the scheduling. Tasks are executed 
+ * with the access control context of the caller.
+ */
+final class ParallelTasks {
+	
+	/**
+	 * Maximum number of threads used for startup tasks
+	 */
+	static final int MAX_PARALLELISM = 8;
+	private static final int PARALLELISM = Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM);
+	private static volatile ForkJoinPool pool;
+	
+	private ParallelTasks() {}
+	
+	@FunctionalInterface
+	interface IOFunction<T, R> {
+		
+		R apply(T t) throws IOException;
+		
+	}
+	
+	private static ForkJoinPool getPool() {
+		ForkJoinPool pool = ParallelTasks.pool;
+		if (pool == null) {
+			synchronized (ParallelTasks.class) {
+				pool = ParallelTasks.pool;
+				if (pool == null) {
+					pool = AccessController.doPrivileged((PrivilegedAction<ForkJoinPool>) () -> new ForkJoinPool(PARALLELISM));
+					ParallelTasks.pool = pool;
+				}
+			}
+		}
+		return pool;
+	}
+	
+	/**
+	 * Execute a task in the background. Exceptions are logged.
+	 * @param task
+	 */
+	static void execute(final Runnable task) {
+		final AccessControlContext context = AccessController.getContext();
+		getPool().execute(() -> {
+			try {
+				AccessController.doPrivileged((PrivilegedAction<Void>) () -> {
+					task.run();
+					return null;
+				}, context);
+			} catch (RuntimeException e) {
+				FileObjectProxy.logger.error("Background task failed", e);
+			}
+		});
+	}
+	
+	/**
+	 * Apply the function to all items; returns once all tasks have finished.
+	 * @param items
+	 * @param function
+	 * @return
+	 * 		the results, in the order of the items
+	 * @throws IOException
+	 * 		the exception thrown by the first failed item, in the order of the items
+	 */
+	static <T, R> List<R> map(final Collection<T> items, final IOFunction<? super T, ? extends R> function) throws IOException {
+		final List<R> results = new ArrayList<>(items.size());
+		if (items.size() < 2 || PARALLELISM < 2) {
+			for (T item : items) {
+				results.add(function.apply(item));
+			}
+			return results;
+		}
+		final AccessControlContext context = AccessController.getContext();
+		final ForkJoinPool pool = getPool();
+		final List<ForkJoinTask<R>> tasks = new ArrayList<>(items.size());
+		for (T item : items) {
+			tasks.add(pool.submit(() -> AccessController.doPrivileged((PrivilegedExceptionAction<R>) () -> function.apply(item), context)));
+		}
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (ForkJoinTask<R> task : tasks) {
+			while (true) {
+				try {
+					final R result = task.get();
+					if (failure == null)
+						results.add(result);
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause() instanceof PrivilegedActionException ? e.getCause().getCause() : e.getCause();
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure instanceof IOException)
+			throw (IOException) failure;
+		if (failure instanceof UncheckedIOException)
+			throw ((UncheckedIOException) failure).getCause();
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		if (failure instanceof Error)
+			throw (Error) failure;
+		if (failure != null)
+			throw new IOException(failure);
+		return results;
+	}
+	
+}
@@ -0,0 +1,411 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the partition folders (days, or other time units) of a database, and of the 
+ * time series contained in each partition, so that queries need not list and stat the folders. 
+ * Loaded from disk initially and by {@link FileObjectProxy#reloadDays()}, and kept up to date 
+ * when folders are created or deleted.<br>
+ * Partitions are added and removed with the folder write lock held; series may be added with 
+ * the read lock only, hence the concurrent collections.
+ * <br>
+ * The catalog is persisted in a manifest file in the database folder, so that the partition folders need 
+ * not be listed when the database is opened. The manifest starts with a snapshot of the catalog, and 
+ * changes are appended as they happen. It is considered stale, and replaced by a full scan, if the 
+ * partition folders or their modification times do not match.<br>
+ * Manifest format: int magic, int version, boolean compatibility mode, followed by records: byte type, 
+ * long partition start, and for the types {@link #PARTITION} and {@link #SERIES} the folder name
+ * (partition or series) and the last modified time of the partition folder.
+ */
+final class PartitionCatalog implements AutoCloseable {
+	
+	static final String MANIFEST_FILE = "partitions.manifest";
+	private static final int MAGIC = 0x46444d46;
+	private static final int VERSION = 1;
+	private static final byte PARTITION = 1;
+	private static final byte SERIES = 2;
+	private static final byte REMOVED = 3;
+	
+	private final boolean useCompatibilityMode;
+	// partition start time -> last modified time of the folder, as of the latest manifest record
+	private final Map<Long, Long> modificationTimes = new ConcurrentHashMap<>();
+	// null if the catalog is not persisted; guarded by this
+	private DataOutputStream manifest;
+	// partition start time -> folder
+	private final NavigableMap<Long, Path> partitions = new ConcurrentSkipListMap<>();
+	// encoded label -> start times of the partitions containing a folder for the series
+	private final ConcurrentMap<String, NavigableSet<Long>> series = new ConcurrentHashMap<>();
+	
+	private PartitionCatalog(boolean useCompatibilityMode) {
+		this.useCompatibilityMode = useCompatibilityMode;
+	}
+	
+	/**
+	 * Read the manifest, if it is up to date, or scan the database folder otherwise.
+	 * @param rootNode
+	 * @param useCompatibilityMode
+	 * @param persistent
+	 * 		write the manifest? If false, an existing manifest is still used.
+	 * @return
+	 * @throws IOException
+	 */
+	static PartitionCatalog open(final Path rootNode, final boolean useCompatibilityMode, final boolean persistent) throws IOException {
+		final Path file = rootNode.resolve(MANIFEST_FILE);
+		if (Files.isRegularFile(file)) {
+			try {
+				final PartitionCatalog catalog = readManifest(file, useCompatibilityMode);
+				if (catalog != null && catalog.isUpToDate(rootNode)) {
+					if (persistent)
+						catalog.manifest = new DataOutputStream(new BufferedOutputStream(
+								Files.newOutputStream(file, StandardOpenOption.APPEND)));
+					return catalog;
+				}
+			} catch (IOException | RuntimeException e) {
+				FileObjectProxy.logger.warn("Failed to read the partition manifest {}, scanning the database folder", file, e);
+			}
+		}
+		return load(rootNode, useCompatibilityMode, persistent);
+	}
+	
+	/**
+	 * Scan the database folder, and write a new manifest, if persistent is true.
+	 * @param rootNode
+	 * @param useCompatibilityMode
+	 * @param persistent
+	 * @return
+	 * @throws IOException
+	 */
+	static PartitionCatalog load(final Path rootNode, final boolean useCompatibilityMode, final boolean persistent) throws IOException {
+		final PartitionCatalog catalog = scan(rootNode, useCompatibilityMode);
+		if (persistent) {
+			try {
+				catalog.writeManifest(rootNode.resolve(MANIFEST_FILE));
+			} catch (IOException e) {
+				FileObjectProxy.logger.warn("Failed to write the partition manifest", e);
+				Files.deleteIfExists(rootNode.resolve(MANIFEST_FILE));
+			}
+		}
+		return catalog;
+	}
+	
+	private static PartitionCatalog scan(final Path rootNode, final boolean useCompatibilityMode) throws IOException {
+		final PartitionCatalog catalog = new PartitionCatalog(useCompatibilityMode);
+		try (final Stream<Path> stream = Files.list(rootNode)) {
+			stream.filter(Files::isDirectory).forEach(folder -> {
+				final Long start = catalog.parseStart(folder);
+				if (start != null)
+					catalog.partitions.put(start, folder);
+			});
+		}
+		final List<Map.Entry<Long, Path>> partitions = new ArrayList<>(catalog.partitions.entrySet());
+		final List<List<String>> labels = ParallelTasks.map(partitions, partition -> {
+			catalog.modificationTimes.put(partition.getKey(), getLastModified(partition.getValue()));
+			try (final Stream<Path> stream = Files.list(partition.getValue())) {
+				return stream.filter(Files::isDirectory).map(folder -> folder.getFileName().toString()).collect(Collectors.toList());
+			}
+		});
+		for (int i = 0; i < partitions.size(); i++) {
+			final long start = partitions.get(i).getKey();
+			labels.get(i).forEach(label -> catalog.addSeries(label, start));
+		}
+		return catalog;
+	}
+	
+	private static long getLastModified(final Path folder) throws IOException {
+		return Files.getLastModifiedTime(folder).toMillis();
+	}
+	
+	/**
+	 * @return
+	 * 		null if the manifest has been written for a different folder format
+	 */
+	private static PartitionCatalog readManifest(final Path file, final boolean useCompatibilityMode) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readBoolean() != useCompatibilityMode)
+				return null;
+			final PartitionCatalog catalog = new PartitionCatalog(useCompatibilityMode);
+			final Path rootNode = file.getParent();
+			while (true) {
+				final int type = in.read();
+				if (type < 0)
+					break;
+				final long start = in.readLong();
+				switch (type) {
+				case PARTITION:
+					catalog.partitions.put(start, rootNode.resolve(in.readUTF()));
+					catalog.modificationTimes.put(start, in.readLong());
+					break;
+				case SERIES:
+					catalog.addSeries(in.readUTF(), start);
+					catalog.modificationTimes.put(start, in.readLong());
+					break;
+				case REMOVED:
+					catalog.removePartition(start);
+					break;
+				default:
+					throw new IOException("Invalid record type " + type);
+				}
+			}
+			return catalog;
+		}
+	}
+	
+	/**
+	 * Requires a single listing of the database folder, and one stat per partition folder.
+	 */
+	private boolean isUpToDate(final Path rootNode) throws IOException {
+		final Set<Long> starts = new HashSet<>();
+		try (final Stream<Path> stream = Files.list(rootNode)) {
+			final Iterator<Path> it = stream.filter(Files::isDirectory).iterator();
+			while (it.hasNext()) {
+				final Path folder = it.next();
+				final Long start = parseStart(folder);
+				if (start == null)
+					continue;
+				final Long lastModified = modificationTimes.get(start);
+				if (!folder.equals(partitions.get(start)) || lastModified == null || lastModified != getLastModified(folder))
+					return false;
+				starts.add(start);
+			}
+		}
+		return starts.size() == partitions.size();
+	}
+	
+	private void writeManifest(final Path file) throws IOException {
+		final Path temp = file.resolveSibling(MANIFEST_FILE + ".tmp");
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeBoolean(useCompatibilityMode);
+			for (Map.Entry<Long, Path> partition : partitions.entrySet()) {
+				writePartition(out, partition.getKey(), partition.getValue().getFileName().toString(), modificationTimes.get(partition.getKey()));
+			}
+			for (Map.Entry<String, NavigableSet<Long>> entry : series.entrySet()) {
+				for (Long start : entry.getValue()) {
+					writeSeries(out, start, entry.getKey(), modificationTimes.get(start));
+				}
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		manifest = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.APPEND)));
+	}
+	
+	private static void writePartition(final DataOutputStream out, final long start, final String folderName, final long lastModified) throws IOException {
+		out.writeByte(PARTITION);
+		out.writeLong(start);
+		out.writeUTF(folderName);
+		out.writeLong(lastModified);
+	}
+	
+	private static void writeSeries(final DataOutputStream out, final long start, final String label, final long lastModified) throws IOException {
+		out.writeByte(SERIES);
+		out.writeLong(start);
+		out.writeUTF(label);
+		out.writeLong(lastModified);
+	}
+	
+	/**
+	 * Append a record to the manifest, if it is persisted. If this fails, the manifest is deleted, so that the 
+	 * database folder will be scanned on the next start.
+	 */
+	private synchronized void log(final byte type, final long start, final String name, final Path partitionFolder) {
+		if (manifest == null)
+			return;
+		try {
+			if (type == REMOVED) {
+				manifest.writeByte(REMOVED);
+				manifest.writeLong(start);
+			} else {
+				final long lastModified = getLastModified(partitionFolder);
+				modificationTimes.put(start, lastModified);
+				if (type == PARTITION)
+					writePartition(manifest, start, name, lastModified);
+				else
+					writeSeries(manifest, start, name, lastModified);
+			}
+			manifest.flush();
+		} catch (IOException e) {
+			FileObjectProxy.logger.warn("Failed to update the partition manifest, it will be recreated on the next start", e);
+			final Path file = partitionFolder != null ? partitionFolder.resolveSibling(MANIFEST_FILE) : null;
+			close();
+			if (file != null) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException ignore) {}
+			}
+		}
+	}
+	
+	@Override
+	public synchronized void close() {
+		if (manifest == null)
+			return;
+		try {
+			manifest.close();
+		} catch (IOException e) {
+			FileObjectProxy.logger.warn("Failed to close the partition manifest", e);
+		}
+		manifest = null;
+	}
+	
+	/**
+	 * @param folder
+	 * @return
+	 * 		the start time of the partition, or null if the folder is not a partition folder
+	 */
+	private Long parseStart(final Path folder) {
+		final String name = folder.getFileName().toString();
+		try {
+			return !useCompatibilityMode ? Long.parseLong(name) : TimeUtils.parseCompatibilityFolderName(name);
+		} catch (NumberFormatException | DateTimeException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return
+	 * 		the partition folders, sorted chronologically
+	 */
+	List<Path> getFolders() {
+		return new ArrayList<>(partitions.values());
+	}
+	
+	int size() {
+		return partitions.size();
+	}
+	
+	/**
+	 * @return
+	 * 		the oldest partition, or null
+	 */
+	Map.Entry<Long, Path> getFirstPartition() {
+		return partitions.firstEntry();
+	}
+	
+	boolean containsPartition(final long start) {
+		return partitions.containsKey(start);
+	}
+	
+	/**
+	 * Create the folder and add the partition, unless it exists already. Requires the folder read lock.
+	 * @param start
+	 * @param folder
+	 * @return
+	 * 		true if the partition has been added
+	 * @throws IOException
+	 */
+	synchronized boolean addPartitionIfAbsent(final long start, final Path folder) throws IOException {
+		if (partitions.containsKey(start))
+			return false;
+		Files.createDirectories(folder);
+		addPartition(start, folder);
+		return true;
+	}
+	
+	/**
+	 * Requires the folder write lock
+	 * @param start
+	 * @param folder
+	 */
+	void addPartition(final long start, final Path folder) {
+		partitions.put(start, folder);
+		log(PARTITION, start, folder.getFileName().toString(), folder);
+	}
+	
+	/**
+	 * Requires the folder write lock
+	 * @param start
+	 */
+	void removePartition(final long start) {
+		final Path folder = partitions.remove(start);
+		modificationTimes.remove(start);
+		for (NavigableSet<Long> starts : series.values()) {
+			starts.remove(start);
+		}
+		if (folder != null)
+			log(REMOVED, start, null, folder);
+	}
+	
+	/**
+	 * Register the folder for a time series in a partition, after it has been created.
+	 * @param label
+	 * 		encoded label
+	 * @param start
+	 */
+	void addSeries(final String label, final long start) {
+		if (series.computeIfAbsent(label, l -> new ConcurrentSkipListSet<>()).add(start)) {
+			final Path folder = partitions.get(start);
+			if (folder != null)
+				log(SERIES, start, label, folder);
+		}
+	}
+	
+	/**
+	 * @param label
+	 * 		encoded label
+	 * @param start
+	 * @param end
+	 * @return
+	 * 		the start times of the partitions between start and end (both inclusive) which contain
+	 * 		the time series, in ascending order
+	 */
+	NavigableSet<Long> getPartitions(final String label, final long start, final long end) {
+		final NavigableSet<Long> starts = series.get(label);
+		if (starts == null || start > end)
+			return Collections.emptyNavigableSet();
+		return starts.subSet(start, true, end, true);
+	}
+	
+	/**
+	 * @param label
+	 * 		encoded label
+	 * @param start
+	 * @return
+	 * 		the start time of the first partition at or after start which contains the time series, or null
+	 */
+	Long getNextPartition(final String label, final long start) {
+		final NavigableSet<Long> starts = series.get(label);
+		return starts == null ? null : starts.ceiling(start);
+	}
+	
+}
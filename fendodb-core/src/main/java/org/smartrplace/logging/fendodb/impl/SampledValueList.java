@@ -0,0 +1,149 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+import org.ogema.core.channelmanager.measurements.DoubleValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+
+/**
+ * Read-only list of data points, backed by primitive columns. The {@link SampledValue} objects 
+ * are only created on access, and sub lists are index windows on the same columns. 
+ * Used for the values cache, which would otherwise keep a {@link SampledValue} per data point alive.
+ */
+final class SampledValueList extends AbstractList<SampledValue> implements RandomAccess {
+	
+	private final long[] timestamps;
+	private final double[] values;
+	private final byte[] qualities;
+	private final int from;
+	private final int to;
+	
+	private SampledValueList(long[] timestamps, double[] values, byte[] qualities, int from, int to) {
+		this.timestamps = timestamps;
+		this.values = values;
+		this.qualities = qualities;
+		this.from = from;
+		this.to = to;
+	}
+	
+	/**
+	 * Takes over the content of the chunk; the chunk must not be used afterwards.
+	 * @param chunk
+	 * @return
+	 */
+	static SampledValueList of(final TimeSeriesChunk chunk) {
+		final int size = chunk.size();
+		if (size == chunk.capacity()) 
+			return new SampledValueList(chunk.getTimestamps(), chunk.getValues(), chunk.getQualityFlags(), 0, size);
+		return new SampledValueList(Arrays.copyOf(chunk.getTimestamps(), size), Arrays.copyOf(chunk.getValues(), size),
+				Arrays.copyOf(chunk.getQualityFlags(), size), 0, size);
+	}
+	
+	@Override
+	public SampledValue get(int index) {
+		final int idx = getPosition(index);
+		return new SampledValue(new DoubleValue(values[idx]), timestamps[idx], Quality.getQuality(qualities[idx]));
+	}
+	
+	/**
+	 * @return
+	 * 		approximate heap size of the backing columns in bytes, which may be shared with other views
+	 */
+	int getMemorySize() {
+		// array headers and the list object itself are estimated at 16 bytes each
+		return timestamps.length * (Long.BYTES + Double.BYTES + Byte.BYTES) + 4 * 16;
+	}
+	
+	long getTimestamp(int index) {
+		return timestamps[getPosition(index)];
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+	
+	@Override
+	public SampledValueList subList(int fromIndex, int toIndex) {
+		if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex)
+			throw new IndexOutOfBoundsException("From " + fromIndex + ", to " + toIndex + ", size " + size());
+		return new SampledValueList(timestamps, values, qualities, from + fromIndex, from + toIndex);
+	}
+	
+	/**
+	 * @param start
+	 * 		inclusive
+	 * @param end
+	 * 		inclusive
+	 * @return
+	 * 		a view of the data points between start and end
+	 */
+	SampledValueList between(long start, long end) {
+		final int first = search(start, true);
+		final int last = Math.max(first, search(end, false));
+		return new SampledValueList(timestamps, values, qualities, first, last);
+	}
+	
+	/**
+	 * Append the data points between start and end (both inclusive) to the chunk, until it is full.
+	 * @param start
+	 * @param end
+	 * @param chunk
+	 * @return
+	 * 		the number of data points added
+	 */
+	int readChunk(long start, long end, TimeSeriesChunk chunk) {
+		final int size = chunk.size();
+		for (int i = search(start, true); i < to && timestamps[i] <= end; i++) {
+			if (!chunk.add(timestamps[i], values[i], qualities[i]))
+				break;
+		}
+		return chunk.size() - size;
+	}
+	
+	/**
+	 * @return
+	 * 		the position of the first data point with timestamp &gt;= the requested timestamp, if inclusive is true,
+	 * 		or with timestamp &gt; the requested timestamp, if inclusive is false, respectively; to if no such
+	 * 		data point exists.
+	 */
+	private int search(final long timestamp, final boolean inclusive) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			final long t = timestamps[mid];
+			if (t < timestamp || (!inclusive && t == timestamp))
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+	
+	private int getPosition(final int index) {
+		if (index < 0 || index >= to - from)
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + size());
+		return from + index;
+	}
+
+}
@@ -90,17 +90,23 @@ public class SlotsDb implements CloseableDataRecorder {
 	public static final String DB_TEST_ROOT_FOLDER = "testdata/";
 	private static final ScheduledExecutorService persistenceScheduler = Executors.newSingleThreadScheduledExecutor();
 
+	// legacy file, replaced by MetadataStore#METADATA_FILE
 	static final String STORAGE_PERSISTENCE_FILE = "slotsDbStorageIDs.ser";
 	static final String CONFIG_PERSISTENCE_FILE = "config.ser";
+	// legacy file, replaced by MetadataStore#METADATA_FILE
 	static final String TAGS_PERSISTENCE_FILE = "tags.ser";
 	static final String LOCK_FILE = "slots.lock";
 
 	// stores database configuration
 	private final Path persistentConfig;
-	// stores recorded data configurations
+	// legacy file for recorded data configurations, only read
 	private final Path slotsDbStoragePath;
-	// stores tags
+	// legacy file for tags, only read
 	private final Path tagsPath;
+	// stores recorded data configurations and tags
+	private final MetadataStore metadata;
+	// ids of time series whose tags have changed since they were persisted last
+	private final Set<String> changedTags = ConcurrentHashMap.newKeySet();
 	// obtain a lock on this file, and release it only when closing the database
 	private final RandomAccessFile lockFile;
 	private final FileLock lock;
@@ -111,7 +117,7 @@ public class SlotsDb implements CloseableDataRecorder {
 	private final Path path;
 	private final SlotsDbFactoryImpl factory;
 	private final FendoDbConfiguration config;
-	private final DelayedTask tagsPersistence;
+	private final DelayedTask metadataPersistence;
 	private final AtomicBoolean closed = new AtomicBoolean(false);
 	final ReferenceCounter proxyCount;
 	private final InfoTask reloadDaysTask;
@@ -156,15 +162,24 @@ public class SlotsDb implements CloseableDataRecorder {
 			SlotsDb.this.close();
 			return null;
 		});
+		MetadataStore metadata = null;
 		try {
-			boolean parseFolders = Files.exists(dbBaseFolder) && (!Files.exists(slotsDbStoragePath) ||
+			final Map<String, RecordedDataConfiguration> persistedConfigs = new HashMap<>();
+			Map<String,Map<String, List<String>>> tags = new HashMap<>();
+			metadata = MetadataStore.open(dbBaseFolder, persistedConfigs, tags);
+			this.metadata = metadata;
+			final boolean legacyMetadata = !metadata.exists() && Files.exists(slotsDbStoragePath);
+			boolean parseFolders = Files.exists(dbBaseFolder) && ((!metadata.exists() && !legacyMetadata) ||
 					(configuration != null && configuration.isReadFolders()));
 			this.clock = clock;
 			this.path = dbBaseFolder;
 			this.factory = factory;
 			this.secure = (factory != null ? factory.isSecure : System.getSecurityManager() != null);
-			slotsDbStorages = readPersistedSlotsDbStorages(parseFolders);
-			final Map<String,Map<String, List<String>>> tags = readTags(tagsPath);
+			if (legacyMetadata) {
+				readLegacyConfigurations(persistedConfigs);
+				tags = readTags(tagsPath);
+			}
+			slotsDbStorages = createSlotsDbStorages(persistedConfigs, parseFolders);
 			// TODO store also a kind of inverse index on tags?
 			if (tags != null) {
 				tags.entrySet().forEach(entry -> {
@@ -187,16 +202,20 @@ public class SlotsDb implements CloseableDataRecorder {
 				newConfigs.entrySet().forEach(entry -> slotsDbStorages.put(entry.getKey(), new SlotsDbStorage(entry.getKey(), entry.getValue(), this)));
 				parseFolders = !newConfigs.isEmpty();
 			}
-			this.proxy = new FileObjectProxy(dbBaseFolder, clock, config);
+			this.proxy = new FileObjectProxy(dbBaseFolder, clock, config, factory != null ? factory.blockCache : null);
 			persistConfig(persistentConfig, config);
-			if (parseFolders)
+			if (parseFolders || metadata.isCheckpointDue())
 				persistSlotsDbStorages();
+			if (legacyMetadata && metadata.exists()) {
+				Files.deleteIfExists(slotsDbStoragePath);
+				Files.deleteIfExists(tagsPath);
+			}
 			final long tagsFlush = config.getFlushPeriod() > 0 ? config.getFlushPeriod() : 5000;
-			this.tagsPersistence = new DelayedTask(new Runnable() {
+			this.metadataPersistence = new DelayedTask(new Runnable() {
 
 				@Override
 				public void run() {
-					persistTags();
+					persistMetadata();
 				}
 			}, tagsFlush, persistenceScheduler);
 			if (config.getReloadDaysInterval() > 0) {
@@ -208,6 +227,8 @@ public class SlotsDb implements CloseableDataRecorder {
 				factory.triggerListener(this, factory.ownListener, true);
 			}
 		} catch (Throwable e) {
+			if (metadata != null)
+				metadata.close();
 			try {
 				lock.release();
 			} catch (Exception ignore) {}
@@ -281,6 +302,9 @@ public class SlotsDb implements CloseableDataRecorder {
 		final long reloadDaysFolderIntv = passedConfiguration != null ? passedConfiguration.getReloadDaysInterval()
 				: persistedConfiguration != null ? persistedConfiguration.getReloadDaysInterval() 
 				: 0;
+		// the cache budget depends on the host, not on the database
+		final int valueCacheSize = passedConfiguration != null ? passedConfiguration.getValueCacheSize() 
+				: FendoDbConfigurationBuilder.getInstance().build().getValueCacheSize();
 		final FendoDbConfiguration baseConfig = persistedConfiguration != null ? persistedConfiguration : passedConfiguration; // may be null!
 		final FendoDbConfigurationBuilder builder =
 				FendoDbConfigurationBuilder.getInstance(baseConfig); // null arg ok
@@ -289,7 +313,8 @@ public class SlotsDb implements CloseableDataRecorder {
 			.setUseCompatibilityMode(compatMode)
 			.setTemporalUnit(unit)
 			.setParseFoldersOnInit(parseFolderOnInit)
-			.setReloadDaysInterval(reloadDaysFolderIntv);
+			.setReloadDaysInterval(reloadDaysFolderIntv)
+			.setValueCacheSize(valueCacheSize);
 		if (readOnlyMode && (persistedConfiguration == null || persistedConfiguration.isReadOnlyMode())) {
 			builder.setFlushPeriod(0)
 				.setDataLifetimeInDays(0)
@@ -301,7 +326,9 @@ public class SlotsDb implements CloseableDataRecorder {
 				.setDataLifetimeInDays(passedConfiguration.getDataLifetimeInDays())
 				.setDataExpirationCheckInterval(passedConfiguration.getDataExpirationCheckInterval())
 				.setMaxOpenFolders(passedConfiguration.getMaxOpenFolders())
-				.setMaxDatabaseSize(passedConfiguration.getMaxDatabaseSize());
+				.setMaxDatabaseSize(passedConfiguration.getMaxDatabaseSize())
+				.setUseCompression(passedConfiguration.useCompression())
+				.setUseWriteAheadLog(passedConfiguration.useWriteAheadLog());
 		}
 		return builder.build();
 	}
@@ -463,7 +490,7 @@ public class SlotsDb implements CloseableDataRecorder {
 					@SuppressWarnings({ "unchecked", "rawtypes" })
 					final Map<String, Collection<String>> props = (Map) timeseries.getProperties();
 					if (!props.isEmpty())
-						storage.setProperties(props, false);
+						storage.setProperties(props, true);
 				} catch (DataRecorderException e) {
 					throw new RuntimeException(e);
 				}
@@ -489,21 +516,22 @@ public class SlotsDb implements CloseableDataRecorder {
 	}
 
 	void closePrivileged(final boolean updatePending, final boolean fromFinalizer) {
-		final Future<?> future = tagsPersistence.close();
+		final Future<?> future = metadataPersistence.close();
 		try {
 			future.get(2, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
 		} catch (ExecutionException e) {
-			FileObjectProxy.logger.warn("Tags persistence failed",e.getCause());
+			FileObjectProxy.logger.warn("Metadata persistence failed",e.getCause());
 		} catch (TimeoutException e) {
-			FileObjectProxy.logger.warn("Tags persistence did not finish " + e);
+			FileObjectProxy.logger.warn("Metadata persistence did not finish " + e);
 		}
-		// must be set after tagsPersistence is executed, otherwise the latter is bound to fail
+		// must be set after metadataPersistence is executed, otherwise the latter is bound to fail
 		if (closed.getAndSet(true))
 			return;
 		FileObjectProxy.logger.info("Closing FendoDB {}",path);
 		proxy.close();
+		metadata.close();
 		synchronized (slotsDbStorages) {
 			slotsDbStorages.clear();
 		}
@@ -533,6 +561,16 @@ public class SlotsDb implements CloseableDataRecorder {
 		return proxy;
 	}
 
+	/**
+	 * @param dbPath
+	 * @return
+	 * 		true if the folder contains persisted time series configurations
+	 */
+	static boolean hasPersistedStorages(final Path dbPath) {
+		return Files.isRegularFile(dbPath.resolve(MetadataStore.METADATA_FILE)) 
+				|| Files.isRegularFile(dbPath.resolve(STORAGE_PERSISTENCE_FILE));
+	}
+
 	static FendoDbConfiguration readConfigForDbBasePath(final Path dbPath) throws IOException {
 		return readConfig(dbPath.resolve(CONFIG_PERSISTENCE_FILE));
 	}
@@ -573,39 +611,59 @@ public class SlotsDb implements CloseableDataRecorder {
 	}
 
 	/**
-	 * Persist the all SlotsDbStorage objects
+	 * Persist all SlotsDbStorage objects, including their tags, by writing a metadata checkpoint. 
+	 * Does not require the slotsDbStorages lock.
 	 */
 	void persistSlotsDbStorages() {
 		checkActiveStatus();
-		final Map<String, RecordedDataConfiguration> configurations = new HashMap<String, RecordedDataConfiguration>();
-		synchronized (slotsDbStorages) {
-			for (Iterator<String> iterator = slotsDbStorages.keySet().iterator(); iterator.hasNext();) {
-				String id = iterator.next();
-				configurations.put(id, slotsDbStorages.get(id).getConfiguration());
+		final Map<String, RecordedDataConfiguration> configurations = new HashMap<>(slotsDbStorages.size() * 2);
+		final Map<String, Map<String, List<String>>> tags = new HashMap<>();
+		// the metadata lock must be held while the snapshot is taken, so that no concurrent update is lost
+		synchronized (metadata) {
+			changedTags.clear();
+			for (SlotsDbStorage storage : slotsDbStorages.values()) {
+				configurations.put(storage.getPath(), storage.getConfiguration());
+				final Map<String, List<String>> props = storage.getProperties();
+				if (!props.isEmpty())
+					tags.put(storage.getPath(), props);
 			}
 			try {
-				org.smartrplace.logging.fendodb.impl.FileUtils.writeJavaBytes(slotsDbStoragePath.getParent(), slotsDbStoragePath.getFileName().toString(), configurations);
+				metadata.checkpoint(configurations, tags);
 			} catch (IOException e) {
-				FileObjectProxy.logger.warn("Failed to persist FendoDb storage ids");
+				FileObjectProxy.logger.warn("Failed to persist FendoDb storage ids", e);
 			}
 		}
 	}
+	
+	/**
+	 * Append the configuration of a single time series to the metadata log.
+	 * @param storage
+	 */
+	void persistConfiguration(final SlotsDbStorage storage) {
+		checkActiveStatus();
+		metadata.putConfiguration(storage.getPath(), storage.getConfiguration());
+		if (metadata.isCheckpointDue())
+			metadataPersistence.schedule();
+	}
 
-	private void persistTags() {
+	private void persistMetadata() {
 		checkActiveStatus();
-		synchronized (slotsDbStorages) {
-			final Map<String, Map<String, List<String>>> tags = slotsDbStorages.entrySet().stream()
-				.collect(Collectors.toMap(entry -> entry.getKey(), entry -> entry.getValue().getProperties()));
-			try {
-				org.smartrplace.logging.fendodb.impl.FileUtils.writeJavaBytes(tagsPath.getParent(), tagsPath.getFileName().toString(), tags);
-			} catch (IOException e) {
-				FileObjectProxy.logger.warn("Failed to persist tags at {}", tagsPath, e);
-			}
+		if (metadata.isCheckpointDue()) {
+			persistSlotsDbStorages();
+			return;
+		}
+		for (Iterator<String> it = changedTags.iterator(); it.hasNext();) {
+			final String id = it.next();
+			it.remove();
+			final SlotsDbStorage storage = slotsDbStorages.get(id);
+			if (storage != null)
+				metadata.putTags(id, storage.getProperties());
 		}
 	}
 
-	void triggerTagsPersistence() {
-		tagsPersistence.schedule();
+	void triggerTagsPersistence(final String id) {
+		changedTags.add(id);
+		metadataPersistence.schedule();
 	}
 
 	@Override
@@ -637,23 +695,24 @@ public class SlotsDb implements CloseableDataRecorder {
 //	}
 
 	/**
-	 * Read back previously persisted SlotsDbStorage objects
-	 * @throws IOException
+	 * Read back SlotsDbStorage configurations persisted by previous versions
 	 */
-	@SuppressWarnings("unchecked")
-	private final Map<String, SlotsDbStorage> readPersistedSlotsDbStorages(final boolean addFolders) throws IOException {
-
-//		final File configFile = new File(slotsDbStoragePath);
-		final Map<String, RecordedDataConfiguration> configurations = new HashMap<>();
-		if (Files.exists(slotsDbStoragePath)) {
-			try {
-				final Map<? extends String, ? extends RecordedDataConfiguration> configs 
-					= org.smartrplace.logging.fendodb.impl.FileUtils.readJavaBytes(slotsDbStoragePath.getParent(), slotsDbStoragePath.getFileName().toString());
-				configurations.putAll(configs);
-			} catch (Exception e) {
-				FileObjectProxy.logger.error("Failed to read persisted FendoDb storages {}", slotsDbStoragePath, e);
-			}
+	private final void readLegacyConfigurations(final Map<String, RecordedDataConfiguration> configurations) {
+		try {
+			final Map<? extends String, ? extends RecordedDataConfiguration> configs 
+				= org.smartrplace.logging.fendodb.impl.FileUtils.readJavaBytes(slotsDbStoragePath.getParent(), slotsDbStoragePath.getFileName().toString());
+			configurations.putAll(configs);
+		} catch (Exception e) {
+			FileObjectProxy.logger.error("Failed to read persisted FendoDb storages {}", slotsDbStoragePath, e);
 		}
+	}
+
+	/**
+	 * Create the SlotsDbStorage objects for the persisted configurations
+	 * @throws IOException
+	 */
+	private final Map<String, SlotsDbStorage> createSlotsDbStorages(final Map<String, RecordedDataConfiguration> configurations, 
+			final boolean addFolders) throws IOException {
 		if (addFolders && path != null) {
 			final Map<String, RecordedDataConfiguration> parsedConfigs = parseFolders(configurations.keySet());
 			configurations.putAll(parsedConfigs);
@@ -668,33 +727,40 @@ public class SlotsDb implements CloseableDataRecorder {
 	
 	private final Map<String, RecordedDataConfiguration> parseFolders(final Collection<String> existingConfigs) throws IOException {
 		final Map<String, RecordedDataConfiguration> configs = new HashMap<>();
+		final List<Path> folders;
 		try (final Stream<Path> stream = Files.list(path)) {
-			stream.filter(path -> Files.isDirectory(path)).forEach(folder -> {
-				try (final Stream<Path> inner = Files.list(folder)) {
-					inner.forEach(path -> {
-						String filename;
-						try {
-							filename = URLDecoder.decode(path.getFileName().toString(), "UTF-8");
-							if (filename.contains("%2F")) {
-								final Path target = path.getParent().resolve(filename);
-								if (Files.isDirectory(target))
-									FileUtils.deleteDirectory(target.toFile());
-								Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
-								filename = URLDecoder.decode(filename, "UTF-8");
-							}
-						} catch (IOException e) {
-							FileObjectProxy.logger.warn("Reading SlotsDb directory {} failed", path,e);
-							return;
-						}
-						if (!existingConfigs.contains(filename)) {
-							configs.put(filename, newConfig()); // default config
-						}
-					});
+			folders = stream.filter(path -> Files.isDirectory(path)).collect(Collectors.toList());
+		}
+		// folders are listed in parallel, repairs and config creation happen sequentially in folder order
+		final List<List<Path>> contents = ParallelTasks.map(folders, folder -> {
+			try (final Stream<Path> inner = Files.list(folder)) {
+				return inner.collect(Collectors.toList());
+			} catch (IOException e) {
+				FileObjectProxy.logger.warn("Reading SlotsDb folder failed",e);
+				return Collections.<Path> emptyList();
+			}
+		});
+		contents.forEach(folderContent -> {
+			folderContent.forEach(path -> {
+				String filename;
+				try {
+					filename = URLDecoder.decode(path.getFileName().toString(), "UTF-8");
+					if (filename.contains("%2F")) {
+						final Path target = path.getParent().resolve(filename);
+						if (Files.isDirectory(target))
+							FileUtils.deleteDirectory(target.toFile());
+						Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+						filename = URLDecoder.decode(filename, "UTF-8");
+					}
 				} catch (IOException e) {
-					FileObjectProxy.logger.warn("Reading SlotsDb folder failed",e);
+					FileObjectProxy.logger.warn("Reading SlotsDb directory {} failed", path,e);
+					return;
+				}
+				if (!existingConfigs.contains(filename)) {
+					configs.put(filename, newConfig()); // default config
 				}
 			});
-		}
+		});
 		return configs;
 	}
 
@@ -709,8 +775,9 @@ public class SlotsDb implements CloseableDataRecorder {
 			}
 			storage = new SlotsDbStorage(id, configuration, this);
 			slotsDbStorages.put(id, storage);
+			// appended while holding the lock, so that the log order matches the order of creation and deletion
+			persistConfiguration(storage);
 		}
-		persistSlotsDbStorages();
 		triggerListeners(storage);
 		return storage;
 	}
@@ -744,8 +811,9 @@ public class SlotsDb implements CloseableDataRecorder {
 			if (slotsDbStorages.remove(id) == null) {
 				return false;
 			}
+			changedTags.remove(id);
+			metadata.remove(id);
 		}
-		persistSlotsDbStorages();
 		return true;
 	}
 
@@ -894,10 +962,13 @@ public class SlotsDb implements CloseableDataRecorder {
 									}
 								})
 								.filter(path -> !slotsDbStorages.containsKey(path))
-								.forEach(path -> slotsDbStorages.put(path, new SlotsDbStorage(path, newConfig(), this)));
+								.forEach(path -> {
+									final SlotsDbStorage storage = new SlotsDbStorage(path, newConfig(), this);
+									slotsDbStorages.put(path, storage);
+									persistConfiguration(storage);
+								});
 						}
 					}
-					persistSlotsDbStorages();
 				}
 			} finally {
 				proxy.folderLock.writeLock().unlock();
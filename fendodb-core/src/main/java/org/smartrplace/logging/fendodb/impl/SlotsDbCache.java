@@ -15,30 +15,77 @@
  */
 package org.smartrplace.logging.fendodb.impl;
 
-import java.util.List;
-
-import org.ogema.core.channelmanager.measurements.SampledValue;
+import java.io.File;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 
+/**
+ * Values cache of a database, bounded by the memory used by the cached values 
+ * (see {@link SampledValueList#getMemorySize()}). Least recently used entries are evicted first.
+ * The copies of the data on disk that readers of files open for writing use 
+ * (see {@link FileObject#getReadBuffer()}) are held in the same cache and count against the same budget.
+ */
 class SlotsDbCache {
+	
+	private static final long MAX_READ_COPY_SIZE = 4 * 1024 * 1024;
 
 	/*
-	 *Map< encoded recorded data id + "/" + filename -> values>
+	 * Map< (encoded recorded data id, filename) -> values>, or for read copies
+	 * Map< (encoded recorded data id, filename) -> FileObject.ReadCopy>
+	 */
+	private final Cache<Key, Object> valueCache;
+	private final long maxBytes;
+	// may be null
+	private final BlockCache blockCache;
+	
+	/**
+	 * @param maxBytes
+	 * 		memory budget; 0 disables the cache
+	 */
+	SlotsDbCache(final long maxBytes) {
+		this(maxBytes, null);
+	}
+	
+	/**
+	 * @param maxBytes
+	 * 		memory budget; 0 disables the cache
+	 * @param blockCache
+	 * 		shared cache for decoded blocks of compressed files; may be null
 	 */
-	private final Cache<String, List<SampledValue>> valueCache = CacheBuilder.newBuilder().softValues().build();
+	SlotsDbCache(final long maxBytes, final BlockCache blockCache) {
+		this.blockCache = blockCache;
+		this.maxBytes = maxBytes;
+		// a single segment, so that the budget applies to the cache as a whole; reads do not lock anyway
+		this.valueCache = CacheBuilder.newBuilder()
+				.concurrencyLevel(1)
+				.maximumWeight(maxBytes)
+				.weigher((Key key, Object value) -> getMemorySize(value))
+				.recordStats()
+				.build();
+	}
+
+	private static int getMemorySize(final Object value) {
+		return value instanceof SampledValueList ? ((SampledValueList) value).getMemorySize() 
+				: ((FileObject.ReadCopy) value).getMemorySize();
+	}
 
-	private final void cache(final String accessToken, final List<SampledValue> values) {
-		valueCache.put(accessToken, values);
+	private final void cache(final Key key, final Object value) {
+		valueCache.put(key, value);
 	}
 
-	private final void invalidate(final String accessToken) {
-		valueCache.invalidate(accessToken);
+	private final void invalidate(final Key key) {
+		valueCache.invalidate(key);
 	}
 
-	private final List<SampledValue> getCache(final String accessToken) {
-		return valueCache.getIfPresent(accessToken);
+	private final SampledValueList getCache(final Key key) {
+		return (SampledValueList) valueCache.getIfPresent(key);
+	}
+	
+	// does not count as a hit or miss
+	private final FileObject.ReadCopy getReadCopy(final Key key) {
+		return (FileObject.ReadCopy) valueCache.asMap().get(key);
 	}
 
 	final RecordedDataCache getCache(String encodedRecordedData, String filename) {
@@ -48,21 +95,88 @@ class SlotsDbCache {
 	void clearCache() {
 		valueCache.invalidateAll();
 	}
+	
+	/**
+	 * Remove the decoded blocks of a data file, or of all files in a folder, from the block cache. 
+	 * Must be called when files are rewritten or deleted.
+	 * @param fileOrFolder
+	 */
+	void invalidateBlocks(final File fileOrFolder) {
+		if (blockCache != null)
+			blockCache.invalidate(fileOrFolder.getAbsolutePath());
+	}
+	
+	/**
+	 * @return
+	 * 		hit, miss and eviction counts since the database has been opened
+	 */
+	CacheStats getStats() {
+		return valueCache.stats();
+	}
+	
+	/**
+	 * @return
+	 * 		the memory used by the cached values and read copies, in bytes; approximate
+	 */
+	long getMemorySize() {
+		long size = 0;
+		for (Object value : valueCache.asMap().values()) {
+			size += getMemorySize(value);
+		}
+		return size;
+	}
+	
+	private static final class Key {
+		
+		private final String recordedDataId;
+		private final String file;
+		private final boolean readCopy;
+		private final int hashCode;
+		
+		Key(String recordedDataId, String file, boolean readCopy) {
+			this.recordedDataId = recordedDataId;
+			this.file = file;
+			this.readCopy = readCopy;
+			this.hashCode = 2 * (31 * recordedDataId.hashCode() + file.hashCode()) + (readCopy ? 1 : 0);
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return hashCode == other.hashCode && readCopy == other.readCopy && file.equals(other.file) 
+					&& recordedDataId.equals(other.recordedDataId);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		@Override
+		public String toString() {
+			return recordedDataId + "/" + file + (readCopy ? " (copy)" : "");
+		}
+		
+	}
 
 	/**
 	 * One instance per FileObject
 	 */
 	final class RecordedDataCache {
 
-		private final String key;
+		private final Key key;
+		private final Key readCopyKey;
 
 		private RecordedDataCache(String recordedDataId, String file) {
-			assert !recordedDataId.contains("/") : "Illegal character \"/\" in recorded data id " + recordedDataId;
-			assert !file.contains("/") : "Illegal character \"/\" in filename " + file;
-			this.key = recordedDataId + "/" + file;
+			this.key = new Key(recordedDataId, file, false);
+			this.readCopyKey = new Key(recordedDataId, file, true);
 		}
 
-		void cache(List<SampledValue> values) {
+		void cache(SampledValueList values) {
 			SlotsDbCache.this.cache(key, values);
 		}
 
@@ -70,9 +184,42 @@ class SlotsDbCache {
 			SlotsDbCache.this.invalidate(key);
 		}
 
-		List<SampledValue> getCache() {
+		SampledValueList getCache() {
 			return SlotsDbCache.this.getCache(key);
 		}
+		
+		/**
+		 * Must be called again whenever the memory size of the copy has changed.
+		 * @param copy
+		 */
+		void cacheReadCopy(FileObject.ReadCopy copy) {
+			SlotsDbCache.this.cache(readCopyKey, copy);
+		}
+		
+		void invalidateReadCopy() {
+			SlotsDbCache.this.invalidate(readCopyKey);
+		}
+		
+		FileObject.ReadCopy getReadCopy() {
+			return SlotsDbCache.this.getReadCopy(readCopyKey);
+		}
+		
+		/**
+		 * @return
+		 * 		the size of the largest file that readers may copy to memory, in bytes; larger files are mapped. 
+		 * 		A single copy must not evict most of the cached values.
+		 */
+		long getMaxReadCopySize() {
+			return Math.min(MAX_READ_COPY_SIZE, maxBytes / 8);
+		}
+		
+		/**
+		 * @return
+		 * 		the shared block cache, or null
+		 */
+		BlockCache getBlockCache() {
+			return blockCache;
+		}
 
 	}
 
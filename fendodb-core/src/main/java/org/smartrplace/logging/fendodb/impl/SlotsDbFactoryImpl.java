@@ -113,6 +113,8 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 	ComponentServiceObjects<ResourceDB> resourceDb;
 	// only relevant if security is active and resourceDb is available. Otherwise set to null.
 	Path ogemaHistoryDb;
+	// shared by all database instances; null if disabled
+	volatile BlockCache blockCache;
 
 	// ctx is null in tests... must be able to deal with this case
 	@SuppressWarnings("unchecked")
@@ -131,6 +133,9 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 				ogemaDb0 = "data/slotsdb";
 			this.ogemaHistoryDb = normalize(BASE.resolve(ogemaDb0));
 		}
+		final long blockCacheSize = getBlockCacheSize(ctx);
+		if (blockCacheSize > 0)
+			this.blockCache = new BlockCache(blockCacheSize * 1024 * 1024);
 		final Hashtable<String, Object> props = new Hashtable<String, Object>();
 		props.put("osgi.command.scope", "fendodb");
 		props.put("osgi.command.function", new String[] {
@@ -148,6 +153,7 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 			"getReferenceCount",
 			"getFendoDbs",
 			"getFendoDbConfig",
+			"getFendoDbCacheStats",
 			"getFendoDbTimeSeries",
 			"isFendoDbActive",
 			"openFendoDb",
@@ -173,7 +179,7 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 					knownInstances.stream()
 						.map(path -> Paths.get(path))
 						.filter(path -> Files.isDirectory(path))
-						.filter(path -> Files.isRegularFile(path.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE)))
+						.filter(path -> SlotsDb.hasPersistedStorages(path))
 						.forEach(path -> closedInstances.add(path));
 				}
 			} catch (IOException | ClassNotFoundException e) {
@@ -242,6 +248,36 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 		this.selfFuture.cancel(true);
 		this.persistence = null;
 		this.persistenceTask = null;
+		final BlockCache blockCache = this.blockCache;
+		this.blockCache = null;
+		if (blockCache != null)
+			blockCache.clear();
+	}
+	
+	/**
+	 * Size of the off-heap cache for decoded blocks of compressed files, in MB, 
+	 * shared by all databases. 0 (default) disables the cache.
+	 * @param ctx
+	 * 		may be null
+	 * @return
+	 */
+	private static long getBlockCacheSize(final BundleContext ctx) {
+		final String prop = "org.smartrplace.logging.fendo.offheap_cache_size";
+		final String value = AccessController.doPrivileged(new PrivilegedAction<String>() {
+
+			@Override
+			public String run() {
+				return ctx != null ? ctx.getProperty(prop) : System.getProperty(prop);
+			}
+		});
+		if (value == null)
+			return 0;
+		try {
+			return Math.max(0, Long.parseLong(value.trim()));
+		} catch (NumberFormatException e) {
+			LoggerFactory.getLogger(SlotsDbFactoryImpl.class).warn("Invalid block cache size {}",value);
+			return 0;
+		}
 	}
 
 	private final void triggerPersistence() {
@@ -486,7 +522,7 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 		if (db != null)
 			return db;
 		if (closedInstances.contains(baseFolder) ||
-				Files.isRegularFile(baseFolder.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE))) {
+				SlotsDb.hasPersistedStorages(baseFolder)) {
 			final CloseableDataRecorder rec = getInstance(baseFolder);
 			if (rec == null)
 				return null;
@@ -507,7 +543,7 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 		if (db != null)
 			return db.getProxyDb();
 		if (closedInstances.contains(baseFolder) ||
-				Files.isRegularFile(baseFolder.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE)))
+				SlotsDb.hasPersistedStorages(baseFolder))
 			return getInstance(baseFolder);
 		return null;
 	}
@@ -520,7 +556,7 @@ public class SlotsDbFactoryImpl implements FendoDbFactory {
 				return true;
 			if (pendingInstances.containsKey(path))
 				return true;
-			if (Files.isRegularFile(path.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE))
+			if (SlotsDb.hasPersistedStorages(path)
 					|| Files.isRegularFile(path.resolve(SlotsDb.CONFIG_PERSISTENCE_FILE)))
 				return true;
 		}
@@ -106,16 +106,22 @@ class SlotsDbIterator implements Iterator<SampledValue> {
 				public Void run() throws Exception {
 					final FileObjectList newfolder;
 					final List<SampledValue> values;
+					final FileObjectProxy proxy = recorder.getProxy();
 					lock.readLock().lock();
 					try {
-						if (folder == null)
-							newfolder = recorder.getProxy().getNextFolder(label, start, true);
-						else
-							newfolder = recorder.getProxy().getNextFolder(label, folder, false);
-						if (newfolder != null)
-							values = FileObjectProxy.readFolder(newfolder);
-						else
-							values = null;
+						proxy.lockShared();
+						try {
+							if (folder == null)
+								newfolder = proxy.getNextFolder(label, start, true);
+							else
+								newfolder = proxy.getNextFolder(label, folder, false);
+							if (newfolder != null)
+								values = FileObjectProxy.readFolder(newfolder);
+							else
+								values = null;
+						} finally {
+							proxy.unlockShared();
+						}
 					} finally {
 						lock.readLock().unlock();
 					}
@@ -46,8 +46,10 @@ import org.ogema.recordeddata.DataRecorderException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 import org.smartrplace.logging.fendodb.impl.reduction.Reduction;
 import org.smartrplace.logging.fendodb.impl.reduction.ReductionFactory;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 
 class SlotsDbStorage implements FendoTimeSeries {
 
@@ -203,11 +205,7 @@ class SlotsDbStorage implements FendoTimeSeries {
 					lock.writeLock().lock();
 					try {
 						if (configuration != null) {
-
-							for (SampledValue value : values) {
-								recorder.getProxy().appendValue(idEncoded, value.getValue().getDoubleValue(), value.getTimestamp(),
-										(byte) value.getQuality().getQuality(), configuration);
-							}
+							recorder.getProxy().appendValues(idEncoded, values, configuration);
 						}
 					} catch (IOException e) {
 						logger.error("", e);
@@ -360,6 +358,23 @@ class SlotsDbStorage implements FendoTimeSeries {
 								// Compromise: When the requested time period covers multiple days and therefore
 								// multiple log files, then a
 								// separate read data processing is performed for each file.
+								if (!mode.equals(ReductionMode.NONE) && intervalSize > 0) {
+									// intervals fully covering a block of data points use the precomputed block summaries
+									final IntervalSummaries summaries = new IntervalSummaries(startTime, endTimeMinusOne, intervalSize);
+									lock.readLock().lock();
+									try {
+										recorder.getProxy().read(idEncoded, startTime, endTimeMinusOne, configuration, summaries);
+									} catch (IOException e) {
+										logger.error("", e);
+										return returnValues;
+									} finally {
+										lock.readLock().unlock();
+									}
+									if (summaries.isEmpty()) 
+										return returnValues;
+									final List<Interval> intervals = generateIntervals(startTime, endTimeMinusOne, intervalSize);
+									return generateReducedData(intervals, summaries, mode);
+								}
 								final List<SampledValue> loggedValues;
 								lock.readLock().lock();
 								try {
@@ -376,12 +391,7 @@ class SlotsDbStorage implements FendoTimeSeries {
 								}
 
 								// FIXME very inefficient! Better do this immediately in getLoggedValues!
-								if (mode.equals(ReductionMode.NONE)) {
-									return removeQualityBad(loggedValues);
-								}
-
-								List<Interval> intervals = generateIntervals(startTime, endTimeMinusOne, intervalSize);
-								returnValues = generateReducedData(intervals, loggedValues.iterator(), mode);
+								return removeQualityBad(loggedValues);
 
 							}
 
@@ -424,103 +434,82 @@ class SlotsDbStorage implements FendoTimeSeries {
 		return intervals;
 	}
 
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, List<SampledValue> loggedValues, ReductionMode mode) {
-
-		List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		List<SampledValue> reducedValues;
-
-		ReductionFactory reductionFactory = new ReductionFactory();
-		Reduction reduction = reductionFactory.getReduction(mode);
-
-		int index = 0; // used to move forwards in the loggedValues list
-		int maxIndex = loggedValues.size() - 1;
-		SampledValue loggedValue = loggedValues.get(index);
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-
-		while (it.hasNext()) {
-
-			interval = it.next();
-
-			while (timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-
-				if (index < maxIndex) {
-					index++;
-					loggedValue = loggedValues.get(index);
-					timestamp = loggedValue.getTimestamp();
-				}
-				else {
-					// complete loggedValues list is processed
-					break;
-				}
-			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-
+	private static List<SampledValue> generateReducedData(final List<Interval> intervals, final IntervalSummaries summaries, final ReductionMode mode) {
+		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
+		final Reduction reduction = new ReductionFactory().getReduction(mode);
+		for (int i = 0; i < intervals.size(); i++) {
+			returnValues.addAll(reduction.performReduction(summaries.get(i), intervals.get(i).getStart()));
 		}
-
-		// debug_printIntervals(intervals);
-
 		return returnValues;
 	}
 	
-	// ignores bad quality values
-	private static List<SampledValue> generateReducedData(List<Interval> intervals, Iterator<SampledValue> loggedValues, ReductionMode mode) {
-
-		final List<SampledValue> returnValues = new ArrayList<SampledValue>();
-		if (!loggedValues.hasNext())
-			return returnValues;
-		List<SampledValue> reducedValues;
-
-		final ReductionFactory reductionFactory = new ReductionFactory();
-		final Reduction reduction = reductionFactory.getReduction(mode);
-
+	/**
+	 * Collects the data points per interval, using the block summaries for blocks
+	 * that lie within a single interval.
+	 */
+	private static class IntervalSummaries implements BlockSummaryVisitor {
 		
-		SampledValue loggedValue = loggedValues.next();
-		long timestamp = loggedValue.getTimestamp();
-
-		Iterator<Interval> it = intervals.iterator();
-		Interval interval;
-		boolean done = false;
-		while (it.hasNext()) {
-
-			interval = it.next();
-			
-			while (   timestamp >= interval.getStart() && timestamp <= interval.getEnd()) {
-
-				if (loggedValue.getQuality() == Quality.GOOD)
-					interval.add(loggedValue);
-				if (!loggedValues.hasNext()) {
-					done = true;
-					break;
-				}
-				loggedValue = loggedValues.next();
-				timestamp = loggedValue.getTimestamp();
-				
+		private static final ValueSummary EMPTY = new ValueSummary();
+		private final long start;
+		private final long end;
+		private final long intervalSize;
+		private final ValueSummary[] summaries;
+		private boolean empty = true;
+		
+		IntervalSummaries(long start, long end, long intervalSize) {
+			this.start = start;
+			this.end = end;
+			this.intervalSize = intervalSize;
+			this.summaries = new ValueSummary[(int) ((end - start) / intervalSize) + 1];
+		}
+		
+		// returns -1 if t is outside the requested period
+		private int getIndex(final long t) {
+			if (t < start || t > end)
+				return -1;
+			return (int) Math.min((t - start) / intervalSize, summaries.length - 1);
+		}
+		
+		private ValueSummary getOrCreate(final int idx) {
+			ValueSummary summary = summaries[idx];
+			if (summary == null) {
+				summary = new ValueSummary();
+				summaries[idx] = summary;
 			}
-
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
-			if (done) 
-				break;
+			return summary;
 		}
-		while (it.hasNext()) {
-			interval = it.next();
-			reducedValues = reduction.performReduction(interval.getValues(), interval.getStart());
-			returnValues.addAll(reducedValues);
+		
+		@Override
+		public boolean useSummary(BlockSummary summary) {
+			final int idx = getIndex(summary.getFirstTimestamp());
+			return idx >= 0 && idx == getIndex(summary.getLastTimestamp());
 		}
-
-		// debug_printIntervals(intervals);
-
-		return returnValues;
+		
+		@Override
+		public void visit(BlockSummary summary) {
+			getOrCreate(getIndex(summary.getFirstTimestamp())).add(summary);
+			empty = false;
+		}
+		
+		@Override
+		public void visit(long timestamp, double value, Quality quality) {
+			final int idx = getIndex(timestamp);
+			if (idx < 0)
+				return;
+			getOrCreate(idx).add(timestamp, value, quality == Quality.GOOD);
+			empty = false;
+		}
+		
+		boolean isEmpty() {
+			return empty;
+		}
+		
+		BlockSummary get(final int idx) {
+			final ValueSummary summary = summaries[idx];
+			return summary != null ? summary : EMPTY;
+		}
+		
 	}
-
 	
 	@SuppressWarnings("unused")
 	private static void debug_printIntervals(List<Interval> intervals) {
@@ -591,7 +580,7 @@ class SlotsDbStorage implements FendoTimeSeries {
 			lock.writeLock().unlock();
 		}
 		try {
-			// must not hold lock here, because recorder#persistStorages retrieves lock in SlotsDb class
+			// must not hold lock here, because recorder#persistConfiguration retrieves the metadata lock in SlotsDb class
 			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
 	
 				@Override
@@ -599,7 +588,7 @@ class SlotsDbStorage implements FendoTimeSeries {
 	
 					// -----------
 	
-					recorder.persistSlotsDbStorages();
+					recorder.persistConfiguration(SlotsDbStorage.this);
 	
 					// -----------
 	
@@ -734,6 +723,61 @@ class SlotsDbStorage implements FendoTimeSeries {
 		}
 	}
 
+	/**
+	 * Pass all data points between startTime and endTime (inclusive) to the visitor, 
+	 * using the precomputed block summaries where the visitor accepts them.
+	 * @param startTime
+	 * @param endTime
+	 * @param visitor
+	 */
+	void read(final long startTime, final long endTime, final BlockSummaryVisitor visitor) {
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+
+				@Override
+				public Void run() throws Exception {
+					lock.readLock().lock();
+					try {
+						recorder.getProxy().read(idEncoded, startTime, endTime, null, visitor);
+					} finally {
+						lock.readLock().unlock();
+					}
+					return null;
+				}
+
+			});
+
+		} catch (PrivilegedActionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public TimeSeriesChunk readChunk(final long startTime, final long endTime, final TimeSeriesChunk chunk) {
+		Objects.requireNonNull(chunk);
+		try {
+			return AccessController.doPrivileged(new PrivilegedExceptionAction<TimeSeriesChunk>() {
+
+				@Override
+				public TimeSeriesChunk run() throws Exception {
+					lock.readLock().lock();
+					try {
+						recorder.getProxy().readChunk(idEncoded, startTime, endTime - 1, chunk);
+					} catch (IOException e) {
+						logger.error("", e);
+					} finally {
+						lock.readLock().unlock();
+					}
+					return chunk;
+				}
+
+			});
+		} catch (PrivilegedActionException e) {
+			logger.error("", e);
+			return chunk;
+		}
+	}
+
 	@Override
 	public Iterator<SampledValue> iterator() {
 		return new SlotsDbIterator(idEncoded, recorder, lock);
@@ -753,7 +797,7 @@ class SlotsDbStorage implements FendoTimeSeries {
 	}
 
 	private final void triggerTagsPersistence() {
-		recorder.triggerTagsPersistence();
+		recorder.triggerTagsPersistence(id);
 	}
 	
 	@Override
@@ -27,6 +27,7 @@ import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.recordeddata.DataRecorderException;
 import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 
 /**
  * Replaces DynamicProxy approach in SlotsDbStorage,
@@ -51,6 +52,10 @@ class SlotsDbStorageProxy implements FendoTimeSeries {
 		counter.referenceRemoved();
 	}
 	
+	FendoTimeSeries getMaster() {
+		return master;
+	}
+	
 	@Override
 	public void insertValue(SampledValue value) throws DataRecorderException {
 		checkWriteAccess();
@@ -115,6 +120,11 @@ class SlotsDbStorageProxy implements FendoTimeSeries {
 		return master.getValues(startTime, endTime);
 	}
 
+	@Override
+	public TimeSeriesChunk readChunk(long startTime, long endTime, TimeSeriesChunk chunk) {
+		return master.readChunk(startTime, endTime, chunk);
+	}
+
 	@Override
 	public InterpolationMode getInterpolationMode() {
 		return master.getInterpolationMode();
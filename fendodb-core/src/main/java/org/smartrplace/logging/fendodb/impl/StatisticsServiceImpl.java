@@ -23,6 +23,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.core.timeseries.ReadOnlyTimeSeries;
@@ -31,6 +32,9 @@ import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
 import org.osgi.service.component.annotations.ReferencePolicy;
 import org.slf4j.LoggerFactory;
+import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 import org.smartrplace.logging.fendodb.stats.Statistics;
 import org.smartrplace.logging.fendodb.stats.StatisticsConfiguration;
 import org.smartrplace.logging.fendodb.stats.StatisticsProvider;
@@ -110,16 +114,64 @@ public class StatisticsServiceImpl implements StatisticsService {
 		final StatisticsConfiguration cfg = new ConfigImpl(timeSeries.getInterpolationMode());
 		final List<Statistics<?>> stats = 
 				providers.stream().map(provider -> provider.newStatistics(cfg)).collect(Collectors.toList());
-		final Iterator<SampledValue> it = timeSeries.iterator(start, end);
-		while (it.hasNext()) {
-			final SampledValue sv = it.next();
-			stats.forEach(stat -> stat.step(sv));
+		final SlotsDbStorage storage = getStorage(timeSeries);
+		if (storage != null && stats.stream().allMatch(Statistics::supportsSummaries)) {
+			storage.read(start, end, new BlockSummaryVisitor() {
+				
+				@Override
+				public boolean useSummary(BlockSummary summary) {
+					return true;
+				}
+				
+				@Override
+				public void visit(BlockSummary summary) {
+					stats.forEach(stat -> stat.step(summary));
+				}
+				
+				@Override
+				public void visit(long timestamp, double value, Quality quality) {
+					for (Statistics<?> stat : stats) {
+						stat.step(timestamp, value, quality);
+					}
+				}
+				
+			});
+		} else if (timeSeries instanceof FendoTimeSeries) {
+			final FendoTimeSeries fendo = (FendoTimeSeries) timeSeries;
+			final TimeSeriesChunk chunk = new TimeSeriesChunk();
+			long t = start;
+			do {
+				fendo.readChunk(t, end == Long.MAX_VALUE ? end : end + 1, chunk); // end is inclusive here
+				final int size = chunk.size();
+				final long[] timestamps = chunk.getTimestamps();
+				final double[] values = chunk.getValues();
+				final byte[] qualities = chunk.getQualityFlags();
+				for (Statistics<?> stat : stats) {
+					for (int i = 0; i < size; i++) {
+						stat.step(timestamps[i], values[i], Quality.getQuality(qualities[i]));
+					}
+				}
+				if (chunk.isFull())
+					t = chunk.getLastTimestamp() + 1;
+			} while (chunk.isFull());
+		} else {
+			final Iterator<SampledValue> it = timeSeries.iterator(start, end);
+			while (it.hasNext()) {
+				final SampledValue sv = it.next();
+				stats.forEach(stat -> stat.step(sv));
+			}
 		}
 		return stats.stream()
 			.map(stat -> stat.finish(end))
 			.collect(Collectors.toList());
 	}
 	
+	private static SlotsDbStorage getStorage(ReadOnlyTimeSeries timeSeries) {
+		if (timeSeries instanceof SlotsDbStorageProxy)
+			timeSeries = ((SlotsDbStorageProxy) timeSeries).getMaster();
+		return timeSeries instanceof SlotsDbStorage ? (SlotsDbStorage) timeSeries : null;
+	}
+	
 	@Override
 	public Map<String, ?> evaluateByIds(ReadOnlyTimeSeries timeSeries, List<String> providersIds) {
 		final boolean empty = timeSeries.isEmpty();
@@ -33,8 +33,22 @@ class TimeUtils {
 	// always work in utc time... simplifies things!
 	final static ZoneId zone = ZoneId.of("Z");
 	final static DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+	private final static long ONE_DAY = 24 * 60 * 60 * 1000L;
+	private final static long ONE_WEEK = 7 * ONE_DAY;
+	// 1970-01-01 was a Thursday, so weeks (starting on Monday) are shifted by three days against the epoch
+	private final static long WEEK_OFFSET = 3 * ONE_DAY;
 
 	static final long getCurrentStart(final long timestamp, final TemporalUnit unit) {
+		final long duration = getFixedDuration(unit);
+		if (duration > 0) {
+			// pure arithmetic, this is called for every appended value
+			long mod = Math.floorMod(timestamp, duration);
+			if (unit == ChronoUnit.WEEKS)
+				mod = Math.floorMod(mod + WEEK_OFFSET, duration);
+			if (timestamp < Long.MIN_VALUE + mod) // start not representable
+				return timestamp + (duration - mod);
+			return timestamp - mod;
+		}
 		try {
 			return getCurrentStart(Instant.ofEpochMilli(timestamp), unit).toEpochMilli();
 		} catch (ArithmeticException e) {
@@ -43,6 +57,53 @@ class TimeUtils {
 		}
 	}
 
+	/**
+	 * @param currentStart
+	 * 		a folder start time, as returned by {@link #getCurrentStart(long, TemporalUnit)}
+	 * @param unit
+	 * @return
+	 * 		the start time of the subsequent folder, or Long.MAX_VALUE
+	 */
+	static final long getNextStart(final long currentStart, final TemporalUnit unit) {
+		final long duration = getFixedDuration(unit);
+		if (duration > 0)
+			return currentStart > Long.MAX_VALUE - duration ? Long.MAX_VALUE : currentStart + duration;
+		try {
+			return ZonedDateTime.ofInstant(Instant.ofEpochMilli(currentStart), zone).plus(1, unit).toInstant().toEpochMilli();
+		} catch (ArithmeticException | DateTimeException e) {
+			return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @param unit
+	 * @return
+	 * 		the length of a folder in milliseconds, if it does not depend on the calendar (which
+	 * 		is the case for all units up to weeks, in UTC), or 0 otherwise
+	 */
+	private static long getFixedDuration(final TemporalUnit unit) {
+		if (unit == ChronoUnit.DAYS)
+			return ONE_DAY;
+		if (unit == ChronoUnit.WEEKS)
+			return ONE_WEEK;
+		if (unit.isDateBased() || !(unit instanceof ChronoUnit))
+			return 0;
+		switch ((ChronoUnit) unit) {
+		case HALF_DAYS:
+			return ONE_DAY / 2;
+		case HOURS:
+			return 60 * 60 * 1000L;
+		case MINUTES:
+			return 60 * 1000L;
+		case SECONDS:
+			return 1000L;
+		case MILLIS:
+			return 1L;
+		default:
+			return 0;
+		}
+	}
+
 	static final Instant getCurrentStart(final Instant instant0, final TemporalUnit unit) {
 		if (unit.isDateBased()) {
 			final ZonedDateTime zdt = ZonedDateTime.ofInstant(instant0, zone).truncatedTo(ChronoUnit.DAYS);
@@ -0,0 +1,147 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
+
+/**
+ * Mutable implementation of {@link BlockSummary}; data points and other summaries
+ * must be added in chronological order. Not thread-safe.
+ */
+class ValueSummary implements BlockSummary {
+
+	private int count;
+	private int goodCount;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double sum;
+	private long minTimestamp = Long.MIN_VALUE;
+	private long maxTimestamp = Long.MIN_VALUE;
+	private long firstTimestamp = Long.MIN_VALUE;
+	private long lastTimestamp = Long.MIN_VALUE;
+	
+	ValueSummary() {}
+	
+	ValueSummary(int count, int goodCount, double min, double max, double sum, 
+			long minTimestamp, long maxTimestamp, long firstTimestamp, long lastTimestamp) {
+		this.count = count;
+		this.goodCount = goodCount;
+		this.min = min;
+		this.max = max;
+		this.sum = sum;
+		this.minTimestamp = minTimestamp;
+		this.maxTimestamp = maxTimestamp;
+		this.firstTimestamp = firstTimestamp;
+		this.lastTimestamp = lastTimestamp;
+	}
+	
+	void add(final SampledValue sv) {
+		add(sv.getTimestamp(), sv.getValue().getDoubleValue(), sv.getQuality() == Quality.GOOD);
+	}
+	
+	void add(final long timestamp, final double value, final boolean good) {
+		if (count++ == 0)
+			firstTimestamp = timestamp;
+		lastTimestamp = timestamp;
+		if (!good)
+			return;
+		goodCount++;
+		sum += value;
+		if (value < min) {
+			min = value;
+			minTimestamp = timestamp;
+		}
+		if (value > max) {
+			max = value;
+			maxTimestamp = timestamp;
+		}
+	}
+	
+	void add(final BlockSummary summary) {
+		if (summary.getCount() == 0)
+			return;
+		if (count == 0)
+			firstTimestamp = summary.getFirstTimestamp();
+		count += summary.getCount();
+		lastTimestamp = summary.getLastTimestamp();
+		if (summary.getGoodCount() == 0)
+			return;
+		goodCount += summary.getGoodCount();
+		sum += summary.getSum();
+		if (summary.getMin() < min) {
+			min = summary.getMin();
+			minTimestamp = summary.getMinTimestamp();
+		}
+		if (summary.getMax() > max) {
+			max = summary.getMax();
+			maxTimestamp = summary.getMaxTimestamp();
+		}
+	}
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public int getGoodCount() {
+		return goodCount;
+	}
+
+	@Override
+	public double getMin() {
+		return min;
+	}
+
+	@Override
+	public double getMax() {
+		return max;
+	}
+
+	@Override
+	public double getSum() {
+		return sum;
+	}
+
+	@Override
+	public long getMinTimestamp() {
+		return minTimestamp;
+	}
+
+	@Override
+	public long getMaxTimestamp() {
+		return maxTimestamp;
+	}
+
+	@Override
+	public long getFirstTimestamp() {
+		return firstTimestamp;
+	}
+
+	@Override
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+	
+	@Override
+	public String toString() {
+		return "ValueSummary[count=" + count + ", good=" + goodCount + ", min=" + min + ", max=" + max 
+				+ ", sum=" + sum + ", first=" + firstTimestamp + ", last=" + lastTimestamp + "]";
+	}
+	
+}
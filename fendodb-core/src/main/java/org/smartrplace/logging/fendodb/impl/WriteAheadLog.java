@@ -0,0 +1,296 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+
+/**
+ * Sequential log of all data points appended to the database, shared by all time series. 
+ * An append returns only after the log has been synced to disk; appends arriving while a sync 
+ * is in progress are written and synced together by the next thread (group commit).
+ * The log is reset by {@link #checkpoint(Collection)}, after the data files have been flushed 
+ * and synced, and replayed when the database is opened.
+ * <br>
+ * Record format: int length of payload, payload (label, timestamp, value, quality, fixed interval or 0), 
+ * int CRC32 of payload.
+ */
+class WriteAheadLog implements AutoCloseable {
+	
+	static final String FILE_NAME = "slots.wal";
+	/**
+	 * Checkpoint period if no flush period is configured
+	 */
+	static final long DEFAULT_CHECKPOINT_PERIOD = 10000;
+	
+	private final Path file;
+	private final FileChannel channel;
+	/*
+	 * Held (shared) by appenders from logging a value until it has been passed to the data file,
+	 * exclusively by checkpoints. 
+	 */
+	private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+	/*
+	 * Held by the thread writing and syncing a batch of records
+	 */
+	private final Object syncLock = new Object();
+	// guarded by this
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+	private final DataOutputStream pendingOut = new DataOutputStream(pending);
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(64);
+	private final DataOutputStream recordOut = new DataOutputStream(record);
+	private final CRC32 crc = new CRC32();
+	private long appended;
+	// guarded by syncLock
+	private long durable;
+	private long failedUpTo;
+	/*
+	 * Data files modified since the last checkpoint 
+	 */
+	private final Set<Path> modifiedFiles = ConcurrentHashMap.newKeySet();
+	
+	WriteAheadLog(final Path rootNode) throws IOException {
+		this.file = rootNode.resolve(FILE_NAME);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+	
+	interface RecordConsumer {
+		
+		void append(String label, double value, long timestamp, byte flag, RecordedDataConfiguration configuration) throws IOException;
+		
+	}
+	
+	/**
+	 * Lock to be held from {@link #append(String, double, long, byte, RecordedDataConfiguration)} until
+	 * the value has been passed to the data file. 
+	 * @return
+	 */
+	Lock getAppendLock() {
+		return checkpointLock.readLock();
+	}
+	
+	/**
+	 * Log a data point; returns once the record is synced to disk. The caller must hold the {@link #getAppendLock() append lock}.
+	 * @param label
+	 * @param value
+	 * @param timestamp
+	 * @param flag
+	 * @param configuration
+	 * @throws IOException
+	 */
+	void append(final String label, final double value, final long timestamp, final byte flag, 
+			final RecordedDataConfiguration configuration) throws IOException {
+		final long fixedInterval = configuration.getStorageType() == StorageType.FIXED_INTERVAL ? configuration.getFixedInterval() : 0;
+		final long seq;
+		synchronized (this) {
+			seq = log(label, value, timestamp, flag, fixedInterval);
+		}
+		awaitDurable(seq);
+	}
+	
+	/**
+	 * Log a batch of data points for a single time series; returns once all records are synced to disk. 
+	 * The caller must hold the {@link #getAppendLock() append lock}.
+	 * @param label
+	 * @param values
+	 * @param configuration
+	 * @throws IOException
+	 */
+	void append(final String label, final List<SampledValue> values, final RecordedDataConfiguration configuration) throws IOException {
+		if (values.isEmpty())
+			return;
+		final long fixedInterval = configuration.getStorageType() == StorageType.FIXED_INTERVAL ? configuration.getFixedInterval() : 0;
+		long seq = 0;
+		synchronized (this) {
+			for (SampledValue sv : values) {
+				seq = log(label, sv.getValue().getDoubleValue(), sv.getTimestamp(), (byte) sv.getQuality().getQuality(), fixedInterval);
+			}
+		}
+		awaitDurable(seq);
+	}
+	
+	// requires the monitor
+	private long log(final String label, final double value, final long timestamp, final byte flag, 
+			final long fixedInterval) throws IOException {
+		record.reset();
+		recordOut.writeUTF(label);
+		recordOut.writeLong(timestamp);
+		recordOut.writeDouble(value);
+		recordOut.writeByte(flag);
+		recordOut.writeLong(fixedInterval);
+		crc.reset();
+		crc.update(record.toByteArray(), 0, record.size());
+		pendingOut.writeInt(record.size());
+		record.writeTo(pendingOut);
+		pendingOut.writeInt((int) crc.getValue());
+		return ++appended;
+	}
+	
+	private void awaitDurable(final long seq) throws IOException {
+		synchronized (syncLock) {
+			if (durable >= seq)
+				return;
+			if (failedUpTo >= seq)
+				throw new IOException("Write ahead log could not be written");
+			final byte[] batch;
+			final long upTo;
+			synchronized (this) {
+				batch = pending.toByteArray();
+				pending.reset();
+				upTo = appended;
+			}
+			try {
+				final ByteBuffer bb = ByteBuffer.wrap(batch);
+				final long position = channel.size();
+				while (bb.hasRemaining()) {
+					channel.write(bb, position + bb.position());
+				}
+				channel.force(false);
+			} catch (IOException e) {
+				failedUpTo = upTo;
+				throw e;
+			}
+			durable = upTo;
+		}
+	}
+	
+	/**
+	 * Register a data file that has been written to since the last checkpoint
+	 * @param dataFile
+	 */
+	void fileModified(final Path dataFile) {
+		modifiedFiles.add(dataFile);
+	}
+	
+	/**
+	 * Pass all logged records to the consumer, in the order they were appended. A truncated or 
+	 * corrupt record, left over from a crash during the append, terminates the log.
+	 * @param consumer
+	 * @return
+	 * 		the number of records
+	 * @throws IOException
+	 */
+	int replay(final RecordConsumer consumer) throws IOException {
+		final long size = channel.size();
+		if (size == 0)
+			return 0;
+		final ByteBuffer bb = ByteBuffer.allocate((int) size);
+		while (bb.hasRemaining()) {
+			if (channel.read(bb, bb.position()) < 0)
+				break;
+		}
+		bb.flip();
+		final RecordedDataConfiguration flexible = new RecordedDataConfiguration();
+		flexible.setStorageType(StorageType.ON_VALUE_CHANGED);
+		int cnt = 0;
+		while (bb.remaining() >= Integer.BYTES) {
+			final int length = bb.getInt();
+			if (length <= 0 || length > bb.remaining() - Integer.BYTES)
+				break;
+			crc.reset();
+			crc.update(bb.array(), bb.position(), length);
+			if ((int) crc.getValue() != bb.getInt(bb.position() + length))
+				break;
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bb.array(), bb.position(), length));
+			final String label = in.readUTF();
+			final long timestamp = in.readLong();
+			final double value = in.readDouble();
+			final byte flag = in.readByte();
+			final long fixedInterval = in.readLong();
+			bb.position(bb.position() + length + Integer.BYTES);
+			final RecordedDataConfiguration configuration;
+			if (fixedInterval > 0) {
+				configuration = new RecordedDataConfiguration();
+				configuration.setStorageType(StorageType.FIXED_INTERVAL);
+				configuration.setFixedInterval(fixedInterval);
+			} else {
+				configuration = flexible;
+			}
+			consumer.append(label, value, timestamp, flag, configuration);
+			cnt++;
+		}
+		if (bb.hasRemaining())
+			FileObjectProxy.logger.warn("Incomplete record at the end of the write ahead log {}, {} bytes ignored", file, bb.remaining());
+		return cnt;
+	}
+	
+	/**
+	 * Flush the open data files, sync all modified data files to disk, and reset the log.
+	 * @param openFiles
+	 * @throws IOException
+	 */
+	void checkpoint(final Collection<FileObjectList> openFiles) throws IOException {
+		checkpointLock.writeLock().lock();
+		try {
+			for (FileObjectList list : openFiles) {
+				list.flush();
+			}
+			final Set<Path> folders = new HashSet<>();
+			final Iterator<Path> it = modifiedFiles.iterator();
+			while (it.hasNext()) {
+				final Path dataFile = it.next();
+				it.remove();
+				if (FileUtils.sync(dataFile))
+					folders.add(dataFile.getParent());
+			}
+			// new files must be persisted in their folders as well
+			for (Path folder : folders) {
+				FileUtils.syncDirectory(folder);
+			}
+			synchronized (syncLock) {
+				channel.truncate(0);
+				channel.force(true);
+			}
+		} finally {
+			checkpointLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Callers must have flushed and closed all data files; the log is reset after syncing them. 
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			checkpoint(Collections.emptyList());
+		} finally {
+			channel.close();
+		}
+	}
+	
+}
@@ -31,11 +31,13 @@
 package org.smartrplace.logging.fendodb.impl.reduction;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.smartrplace.logging.fendodb.impl.DoubleValues;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 
 public class MaximumReduction implements Reduction {
 
@@ -59,5 +61,13 @@ public class MaximumReduction implements Reduction {
 
 		return toReturn;
 	}
+	
+	@Override
+	public List<SampledValue> performReduction(BlockSummary intervalSummary, long timestamp) {
+		if (intervalSummary.getGoodCount() == 0) {
+			return Collections.singletonList(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD));
+		}
+		return Collections.singletonList(new SampledValue(DoubleValues.of(intervalSummary.getMax()), timestamp, Quality.GOOD));
+	}
 
 }
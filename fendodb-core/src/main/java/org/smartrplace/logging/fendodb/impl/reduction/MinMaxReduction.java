@@ -36,6 +36,7 @@ import java.util.List;
 import org.ogema.core.channelmanager.measurements.Quality;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.smartrplace.logging.fendodb.impl.DoubleValues;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 
 public class MinMaxReduction implements Reduction {
 
@@ -67,5 +68,19 @@ public class MinMaxReduction implements Reduction {
 
 		return toReturn;
 	}
+	
+	@Override
+	public List<SampledValue> performReduction(BlockSummary intervalSummary, long timestamp) {
+		final List<SampledValue> toReturn = new ArrayList<SampledValue>(2);
+		if (intervalSummary.getGoodCount() == 0) {
+			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for minimum
+			toReturn.add(new SampledValue(DoubleValues.of(0.f), timestamp, Quality.BAD)); // for maximum
+		}
+		else {
+			toReturn.add(new SampledValue(DoubleValues.of(intervalSummary.getMin()), timestamp, Quality.GOOD));
+			toReturn.add(new SampledValue(DoubleValues.of(intervalSummary.getMax()), timestamp, Quality.GOOD));
+		}
+		return toReturn;
+	}
 
 }
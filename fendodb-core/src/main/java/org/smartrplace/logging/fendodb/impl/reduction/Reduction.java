@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.smartrplace.logging.fendodb.stats.BlockSummary;
 
 public interface Reduction {
 
@@ -66,5 +67,16 @@ public interface Reduction {
 		}
 		return performReduction(oldValues, timestamp).iterator();
 	}
+	
+	/**
+	 * Performs the reduction based on the summary of the interval, instead of the individual values.
+	 * @param intervalSummary
+	 * 		summary of all values in the interval; only good quality values contribute to the result
+	 * @param timestamp
+	 * 		of the resulting value
+	 * @return
+	 * 		same as {@link #performReduction(List, long)}
+	 */
+	List<SampledValue> performReduction(BlockSummary intervalSummary, long timestamp);
 
 }
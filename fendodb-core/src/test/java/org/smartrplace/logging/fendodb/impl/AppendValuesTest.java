@@ -290,4 +290,60 @@ public class AppendValuesTest extends SlotsDbTest {
 		));
 	}
 
+	/*
+	 * The bulk insert path must yield the same data as inserting one value at a time, also for batches
+	 * spanning several folders and containing late values or duplicates.
+	 */
+	private static void bulkInsertEqualsSingleInserts(final StorageType storageType, final boolean flushImmediately) throws DataRecorderException, IOException {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+			.setFlushPeriod(flushImmediately ? 0 : FLUSH_PERIOD)
+			.build();
+		final long delta = 3600 * 1000;
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			values.add(new SampledValue(new FloatValue(i), i * delta, Quality.GOOD));
+		}
+		values.add(new SampledValue(new FloatValue(-1), 50 * delta + delta / 2, Quality.GOOD));
+		values.add(new SampledValue(new FloatValue(-2), 70 * delta, Quality.BAD));
+		for (int i = 100; i < 150; i++) {
+			values.add(new SampledValue(new FloatValue(i), i * delta, Quality.GOOD));
+		}
+		try (final SlotsDb instance = new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(storageType);
+			if (storageType == StorageType.FIXED_INTERVAL)
+				cfg.setFixedInterval(delta);
+			final RecordedDataStorage bulk = instance.createRecordedDataStorage("bulk", cfg);
+			final RecordedDataStorage single = instance.createRecordedDataStorage("single", cfg);
+			bulk.insertValues(values.subList(0, 30));
+			bulk.insertValues(values.subList(30, values.size()));
+			for (SampledValue sv : values) {
+				single.insertValue(sv);
+			}
+			final List<SampledValue> expected = single.getValues(Long.MIN_VALUE);
+			final List<SampledValue> actual = bulk.getValues(Long.MIN_VALUE);
+			Assert.assertEquals("Unexpected number of data points in recorded data.", expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i++) {
+				Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+				Assert.assertEquals(expected.get(i).getValue().getFloatValue(), actual.get(i).getValue().getFloatValue(), 0.001F);
+				Assert.assertEquals(expected.get(i).getQuality(), actual.get(i).getQuality());
+			}
+		}
+	}
+	
+	@Test
+	public void bulkInsertEqualsSingleInserts0() throws DataRecorderException, IOException {
+		bulkInsertEqualsSingleInserts(StorageType.ON_VALUE_UPDATE, true);
+	}
+	
+	@Test
+	public void bulkInsertEqualsSingleInserts1() throws DataRecorderException, IOException {
+		bulkInsertEqualsSingleInserts(StorageType.FIXED_INTERVAL, true);
+	}
+	
+	@Test
+	public void bulkInsertEqualsSingleInserts2() throws DataRecorderException, IOException {
+		bulkInsertEqualsSingleInserts(StorageType.ON_VALUE_UPDATE, false);
+	}
+
 }
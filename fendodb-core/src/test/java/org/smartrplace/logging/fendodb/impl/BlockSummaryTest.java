@@ -0,0 +1,243 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
+import org.ogema.core.timeseries.InterpolationMode;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+import org.smartrplace.logging.fendodb.stats.Statistics;
+import org.smartrplace.logging.fendodb.stats.samples.BasicProviders;
+
+public class BlockSummaryTest extends SlotsDbTest {
+	
+	private static final List<String> STATISTICS = Arrays.asList("cnt", "min", "max", "minT", "maxT");
+
+	private static SlotsDb createDb(final boolean useCompression) {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setUseCompression(useCompression)
+				.build();
+		try {
+			return new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static List<SampledValue> createRandomValues(final long start, final int nr, final long delta, final long seed) {
+		final Random random = new Random(seed);
+		final List<SampledValue> values = new ArrayList<>(nr);
+		long t = start;
+		for (int i = 0; i < nr; i++) {
+			t += delta + random.nextInt((int) delta);
+			final Quality q = random.nextInt(20) == 0 ? Quality.BAD : Quality.GOOD;
+			values.add(new SampledValue(new FloatValue(random.nextFloat() * 100 - 50), t, q));
+		}
+		return values;
+	}
+
+	private static List<Path> getSummaryFiles() throws IOException {
+		try (final Stream<Path> stream = Files.walk(testPath)) {
+			return stream.filter(p -> p.getFileName().toString().endsWith(BlockSummaries.FILE_EXTENSION))
+				.collect(Collectors.toList());
+		}
+	}
+	
+	private static SampledValue reduce(final List<SampledValue> values, final long start, final long end, final boolean minOrMax) {
+		final List<SampledValue> good = values.stream()
+			.filter(sv -> sv.getTimestamp() >= start && sv.getTimestamp() <= end && sv.getQuality() == Quality.GOOD)
+			.collect(Collectors.toList());
+		if (good.isEmpty())
+			return new SampledValue(new FloatValue(0), start, Quality.BAD);
+		final double result = minOrMax ? 
+				good.stream().mapToDouble(sv -> sv.getValue().getDoubleValue()).min().getAsDouble() :
+				good.stream().mapToDouble(sv -> sv.getValue().getDoubleValue()).average().getAsDouble();
+		return new SampledValue(new FloatValue((float) result), start, Quality.GOOD);
+	}
+	
+	private static void assertReductionsCorrect(final RecordedDataStorage storage, final List<SampledValue> values, 
+			final long start, final long end, final long interval) {
+		final List<SampledValue> min = storage.getValues(start, end, interval, ReductionMode.MINIMUM_VALUE);
+		final List<SampledValue> avg = storage.getValues(start, end, interval, ReductionMode.AVERAGE);
+		Assert.assertEquals(min.size(), avg.size());
+		Assert.assertEquals((end - start - 1) / interval + 1, min.size());
+		for (int i = 0; i < min.size(); i++) {
+			final long s = start + i * interval;
+			final long e = Math.min(s + interval - 1, end - 1);
+			final SampledValue expectedMin = reduce(values, s, e, true);
+			final SampledValue expectedAvg = reduce(values, s, e, false);
+			Assert.assertEquals(s, min.get(i).getTimestamp());
+			Assert.assertEquals(expectedMin.getQuality(), min.get(i).getQuality());
+			Assert.assertEquals(expectedMin.getValue().getFloatValue(), min.get(i).getValue().getFloatValue(), 0.0001F);
+			Assert.assertEquals(expectedAvg.getQuality(), avg.get(i).getQuality());
+			Assert.assertEquals(expectedAvg.getValue().getFloatValue(), avg.get(i).getValue().getFloatValue(), 0.001F);
+		}
+	}
+	
+	private static void assertStatisticsCorrect(final RecordedDataStorage storage, final List<SampledValue> values, 
+			final long start, final long end) {
+		final Map<String, ?> results = new StatisticsServiceImpl().evaluateByIds(storage, STATISTICS, start, end);
+		for (String id : STATISTICS) {
+			final Statistics<?> stat = BasicProviders.getBasicProviders().get(id).newStatistics(() -> InterpolationMode.NONE);
+			values.stream()
+				.filter(sv -> sv.getTimestamp() >= start && sv.getTimestamp() <= end)
+				.forEach(stat::step);
+			Assert.assertEquals("Unexpected result for statistics " + id, stat.finish(end), results.get(id));
+		}
+	}
+	
+	private void testSummaries(final boolean useCompression, final StorageType type) throws DataRecorderException, IOException {
+		final String id = "test";
+		final List<SampledValue> values = createRandomValues(0, 10000, 20000, 17);
+		final long end = values.get(values.size() - 1).getTimestamp() + 1;
+		try (final SlotsDb db = createDb(useCompression)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(type);
+			final RecordedDataStorage storage = db.createRecordedDataStorage(id, cfg);
+			storage.insertValues(values);
+			assertReductionsCorrect(storage, values, 0, end, ONE_DAY);
+		}
+		Assert.assertFalse("Block summaries missing", getSummaryFiles().isEmpty());
+		try (final SlotsDb db = createDb(useCompression)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			assertReductionsCorrect(storage, values, 0, end, ONE_DAY);
+			assertReductionsCorrect(storage, values, 3 * 3600 * 1000, end, 6 * 3600 * 1000);
+			assertReductionsCorrect(storage, values, 12345, end - 56789, 1000 * 1000);
+			assertStatisticsCorrect(storage, values, 0, end);
+			assertStatisticsCorrect(storage, values, values.get(1111).getTimestamp() - 1, values.get(7777).getTimestamp() + 1);
+		}
+	}
+	
+	@Test
+	public void blockSummariesWorkForFlexibleInterval() throws DataRecorderException, IOException {
+		testSummaries(false, StorageType.ON_VALUE_CHANGED);
+	}
+	
+	@Test
+	public void blockSummariesWorkForCompressedFiles() throws DataRecorderException, IOException {
+		testSummaries(true, StorageType.ON_VALUE_CHANGED);
+	}
+	
+	@Test
+	public void invalidBlockSummariesAreRecreated() throws DataRecorderException, IOException {
+		final String id = "test";
+		final List<SampledValue> values = createRandomValues(0, 5000, 20000, 23);
+		final long end = values.get(values.size() - 1).getTimestamp() + 1;
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_CHANGED);
+			db.createRecordedDataStorage(id, cfg).insertValues(values);
+		}
+		final List<Path> summaryFiles = getSummaryFiles();
+		Assert.assertFalse("Block summaries missing", summaryFiles.isEmpty());
+		for (Path p : summaryFiles) {
+			Files.write(p, new byte[] {1, 2, 3, 4, 5});
+		}
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			assertReductionsCorrect(storage, values, 0, end, 6 * 3600 * 1000);
+			assertStatisticsCorrect(storage, values, 0, end);
+		}
+		for (Path p : summaryFiles) {
+			Assert.assertTrue("Block summaries have not been recreated", Files.size(p) > 5);
+		}
+	}
+
+	@Test
+	public void rollupTiersWork() throws DataRecorderException, IOException {
+		final String id = "test";
+		// ~ 12h of data at 1.5s
+		final List<SampledValue> values = createRandomValues(0, 30000, 1000, 29);
+		final long end = values.get(values.size() - 1).getTimestamp() + 1;
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_CHANGED);
+			db.createRecordedDataStorage(id, cfg).insertValues(values);
+		}
+		final List<Path> summaryFiles = getSummaryFiles();
+		for (long resolution : BlockSummaries.RESOLUTIONS) {
+			final String suffix = "." + resolution + BlockSummaries.FILE_EXTENSION;
+			Assert.assertTrue("Rollup tier missing for resolution " + resolution,
+					summaryFiles.stream().anyMatch(p -> p.getFileName().toString().endsWith(suffix)));
+		}
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			assertReductionsCorrect(storage, values, 0, end, 3600 * 1000);
+			assertReductionsCorrect(storage, values, 15 * 60 * 1000, end, 30 * 60 * 1000);
+			assertReductionsCorrect(storage, values, 7 * 60 * 1000, end - 12345, 60 * 1000);
+			assertReductionsCorrect(storage, values, 1234, end, 5 * 60 * 1000 + 17);
+			assertStatisticsCorrect(storage, values, values.get(2222).getTimestamp() + 1, values.get(22222).getTimestamp() - 1);
+		}
+	}
+
+	/*
+	 * Tiers that would summarize only few data points per entry are not created
+	 */
+	@Test
+	public void rollupTiersFinerThanSamplingIntervalAreSkipped() throws DataRecorderException, IOException {
+		final String id = "test";
+		final long interval = 60 * 1000;
+		final Random random = new Random(31);
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			values.add(new SampledValue(new FloatValue(random.nextFloat() * 100 - 50), i * interval, Quality.GOOD));
+		}
+		final long end = values.get(values.size() - 1).getTimestamp() + 1;
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.FIXED_INTERVAL);
+			cfg.setFixedInterval(interval);
+			db.createRecordedDataStorage(id, cfg).insertValues(values);
+		}
+		final List<Path> summaryFiles = getSummaryFiles();
+		for (long resolution : BlockSummaries.RESOLUTIONS) {
+			final String suffix = "." + resolution + BlockSummaries.FILE_EXTENSION;
+			Assert.assertEquals("Unexpected rollup tier for resolution " + resolution, 
+					resolution >= BlockSummaries.MIN_POINTS_PER_SUMMARY * interval,
+					summaryFiles.stream().anyMatch(p -> p.getFileName().toString().endsWith(suffix)));
+		}
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			assertReductionsCorrect(storage, values, 0, end, 3600 * 1000);
+			assertReductionsCorrect(storage, values, 7 * 60 * 1000, end - 12345, 2 * 60 * 1000);
+			assertStatisticsCorrect(storage, values, 0, end);
+		}
+	}
+
+
+}
@@ -0,0 +1,151 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+import org.smartrplace.logging.fendodb.stats.Statistics;
+import org.smartrplace.logging.fendodb.stats.samples.BasicProviders;
+
+public class ChunkReadTest extends SlotsDbTest {
+	
+	// gapCnt does not support summaries, hence all of them are evaluated on the chunks
+	private static final List<String> STATISTICS = Arrays.asList("avg", "cnt", "max", "minT", "gapCnt1h");
+	private static final long DELTA = 60000;
+
+	private static SlotsDb createDb(final boolean useCompression) {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setUseCompression(useCompression)
+				.build();
+		try {
+			return new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// ~ 4 days of data, with some gaps for the fixed interval case
+	private static List<SampledValue> createValues(final boolean fixedInterval, final long seed) {
+		final Random random = new Random(seed);
+		final List<SampledValue> values = new ArrayList<>();
+		long t = 0;
+		for (int i = 0; i < 6000; i++) {
+			t += fixedInterval ? DELTA * (random.nextInt(10) == 0 ? 3 : 1) : DELTA + random.nextInt((int) DELTA);
+			final Quality q = random.nextInt(20) == 0 ? Quality.BAD : Quality.GOOD;
+			values.add(new SampledValue(new FloatValue(random.nextFloat() * 100 - 50), t, q));
+		}
+		return values;
+	}
+	
+	private static List<SampledValue> readChunked(final FendoTimeSeries timeSeries, final long start, final long end, final int capacity) {
+		final TimeSeriesChunk chunk = new TimeSeriesChunk(capacity);
+		final List<SampledValue> values = new ArrayList<>();
+		long t = start;
+		do {
+			Assert.assertSame(chunk, timeSeries.readChunk(t, end, chunk));
+			for (int i = 0; i < chunk.size(); i++) {
+				values.add(new SampledValue(new FloatValue((float) chunk.getValue(i)), chunk.getTimestamp(i), chunk.getQuality(i)));
+			}
+			if (chunk.isFull())
+				t = chunk.getLastTimestamp() + 1;
+		} while (chunk.isFull());
+		return values;
+	}
+	
+	private static void assertEqual(final List<SampledValue> expected, final List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of data points", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final SampledValue e = expected.get(i);
+			final SampledValue a = actual.get(i);
+			Assert.assertEquals(e.getTimestamp(), a.getTimestamp());
+			Assert.assertEquals(e.getQuality(), a.getQuality());
+			Assert.assertEquals(e.getValue().getFloatValue(), a.getValue().getFloatValue(), 0);
+		}
+	}
+	
+	private static void assertStatisticsCorrect(final FendoTimeSeries storage, final List<SampledValue> values, 
+			final long start, final long end) {
+		final Map<String, ?> results = new StatisticsServiceImpl().evaluateByIds(storage, STATISTICS, start, end);
+		for (String id : STATISTICS) {
+			final Statistics<?> stat = BasicProviders.getBasicProviders().get(id).newStatistics(() -> storage.getInterpolationMode());
+			values.stream()
+				.filter(sv -> sv.getTimestamp() >= start && sv.getTimestamp() <= end)
+				.forEach(stat::step);
+			Assert.assertEquals("Unexpected result for statistics " + id, stat.finish(end), results.get(id));
+		}
+	}
+	
+	private void testChunks(final boolean useCompression, final StorageType type) throws DataRecorderException {
+		final String id = "test";
+		final boolean fixedInterval = type == StorageType.FIXED_INTERVAL;
+		final List<SampledValue> values = createValues(fixedInterval, 13);
+		final long end = values.get(values.size() - 1).getTimestamp() + 1;
+		try (final SlotsDb db = createDb(useCompression)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(type);
+			if (fixedInterval)
+				cfg.setFixedInterval(DELTA);
+			final FendoTimeSeries storage = db.createRecordedDataStorage(id, cfg);
+			storage.insertValues(values);
+			for (int capacity : new int[] {1, 77, TimeSeriesChunk.DEFAULT_CAPACITY}) {
+				assertEqual(values, readChunked(storage, 0, end, capacity));
+				// end is exclusive, and not rounded for fixed interval time series
+				final long start1 = values.get(1234).getTimestamp();
+				final long end1 = values.get(4321).getTimestamp();
+				assertEqual(values.subList(1234, 4321), readChunked(storage, start1, end1, capacity));
+			}
+			assertEqual(values.subList(100, 100), readChunked(storage, values.get(100).getTimestamp() + 1, 
+					values.get(100).getTimestamp() + 2, 10));
+			assertStatisticsCorrect(storage, values, 0, end);
+			assertStatisticsCorrect(storage, values, values.get(1111).getTimestamp() - 1, values.get(4444).getTimestamp() + 1);
+		}
+	}
+	
+	@Test
+	public void chunkReadWorksForFlexibleInterval() throws DataRecorderException {
+		testChunks(false, StorageType.ON_VALUE_CHANGED);
+	}
+	
+	@Test
+	public void chunkReadWorksForCompressedFiles() throws DataRecorderException {
+		testChunks(true, StorageType.ON_VALUE_CHANGED);
+	}
+	
+	@Test
+	public void chunkReadWorksForFixedInterval() throws DataRecorderException {
+		testChunks(false, StorageType.FIXED_INTERVAL);
+	}
+
+}
@@ -0,0 +1,175 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+
+public class CompressionTest extends SlotsDbTest {
+
+	private static SlotsDb createDb(final boolean useCompression) {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setUseCompression(useCompression)
+				.build();
+		try {
+			// hard config reset, so that the compression setting is applied to an existing database
+			return new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static List<SampledValue> createRandomValues(final long start, final int nr, final long avDelta, final long seed) {
+		final Random random = new Random(seed);
+		final List<SampledValue> values = new ArrayList<>(nr);
+		long t = start;
+		float value = 20;
+		for (int i = 0; i < nr; i++) {
+			// mostly regular timestamps, occasional jitter and gaps
+			final int r = random.nextInt(10);
+			t += r < 7 ? avDelta : r < 9 ? avDelta + random.nextInt(100) - 50 : avDelta * (1 + random.nextInt(1000));
+			if (random.nextInt(5) == 0)
+				value += random.nextFloat() - 0.5F;
+			final Quality q = random.nextInt(50) == 0 ? Quality.BAD : Quality.GOOD;
+			values.add(new SampledValue(new FloatValue(value), t, q));
+		}
+		return values;
+	}
+
+	private static void assertEqual(final List<SampledValue> expected, final List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of values", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			final SampledValue e = expected.get(i);
+			final SampledValue a = actual.get(i);
+			Assert.assertEquals("Unexpected timestamp", e.getTimestamp(), a.getTimestamp());
+			Assert.assertEquals("Unexpected value", e.getValue().getFloatValue(), a.getValue().getFloatValue(), 0.0001F);
+			Assert.assertEquals("Unexpected quality", e.getQuality(), a.getQuality());
+		}
+	}
+
+	private static List<Path> getFiles(final String prefix) throws IOException {
+		try (final Stream<Path> stream = Files.walk(testPath)) {
+			return stream.filter(p -> p.getFileName().toString().startsWith(prefix) && p.getFileName().toString().endsWith(SlotsDb.FILE_EXTENSION))
+				.collect(Collectors.toList());
+		}
+	}
+
+	@Test
+	public void compressedFlexibleIntervalValuesWork() throws DataRecorderException, IOException {
+		final String id = "test";
+		final List<SampledValue> values = createRandomValues(0, 5000, 1000, 7);
+		try (final SlotsDb db = createDb(true)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_CHANGED);
+			final RecordedDataStorage storage = db.createRecordedDataStorage(id, cfg);
+			storage.insertValues(values.subList(0, 3000));
+			assertEqual(values.subList(0, 3000), storage.getValues(Long.MIN_VALUE));
+		}
+		Assert.assertFalse("Compressed files missing", getFiles("z").isEmpty());
+		Assert.assertTrue("Unexpected uncompressed files", getFiles("f").isEmpty());
+		// continue writing to the incomplete block after a restart
+		try (final SlotsDb db = createDb(true)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			storage.insertValues(values.subList(3000, values.size()));
+			assertEqual(values, storage.getValues(Long.MIN_VALUE));
+			final SampledValue sv = values.get(4321);
+			Assert.assertEquals(sv.getTimestamp(), storage.getValue(sv.getTimestamp()).getTimestamp());
+			Assert.assertNull(storage.getValue(sv.getTimestamp() + 1));
+			Assert.assertEquals(values.get(4322).getTimestamp(), storage.getNextValue(sv.getTimestamp() + 1).getTimestamp());
+			Assert.assertEquals(sv.getTimestamp(), storage.getPreviousValue(values.get(4322).getTimestamp() - 1).getTimestamp());
+			final long start = values.get(1000).getTimestamp();
+			final long end = values.get(2500).getTimestamp();
+			assertEqual(values.subList(1000, 2501), storage.getValues(start, end + 1));
+		}
+		long size = 0;
+		for (Path p : getFiles("z"))
+			size += Files.size(p);
+		Assert.assertTrue("Compressed files too large: " + size + " bytes", size < values.size() * 17 / 4);
+	}
+
+	@Test
+	public void compressedFixedIntervalValuesWork() throws DataRecorderException {
+		final String id = "test";
+		final long itv = 10000;
+		final List<SampledValue> values = new ArrayList<>();
+		for (int i = 0; i < 3000; i++) {
+			if (i % 100 == 17)
+				continue; // gaps
+			values.add(new SampledValue(new FloatValue(i % 7), i * itv, Quality.GOOD));
+		}
+		try (final SlotsDb db = createDb(true)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.FIXED_INTERVAL);
+			cfg.setFixedInterval(itv);
+			final RecordedDataStorage storage = db.createRecordedDataStorage(id, cfg);
+			storage.insertValues(values);
+		}
+		try (final SlotsDb db = createDb(true)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			assertEqual(values, storage.getValues(Long.MIN_VALUE));
+			Assert.assertNull(storage.getValue(117 * itv));
+			Assert.assertEquals(118 * itv, storage.getNextValue(117 * itv).getTimestamp());
+			Assert.assertEquals(116 * itv, storage.getPreviousValue(117 * itv).getTimestamp());
+		}
+	}
+
+	@Test
+	public void compressedAndUncompressedFilesCanBeMixed() throws DataRecorderException, IOException {
+		final String id = "test";
+		final List<SampledValue> values = createRandomValues(0, 1000, 3 * 60 * 1000, 13);
+		final int split = 500;
+		try (final SlotsDb db = createDb(false)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_CHANGED);
+			final RecordedDataStorage storage = db.createRecordedDataStorage(id, cfg);
+			storage.insertValues(values.subList(0, split));
+		}
+		Assert.assertTrue("Compressed file found", getFiles("z").isEmpty());
+		final long splitDay = values.get(split).getTimestamp() / ONE_DAY;
+		final int firstOfNextDay = (int) values.stream().filter(sv -> sv.getTimestamp() / ONE_DAY <= splitDay).count();
+		try (final SlotsDb db = createDb(true)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage(id);
+			storage.insertValues(values.subList(split, values.size()));
+			assertEqual(values, storage.getValues(Long.MIN_VALUE));
+		}
+		if (firstOfNextDay < values.size())
+			Assert.assertFalse("Compressed files missing", getFiles("z").isEmpty());
+		try (final SlotsDb db = createDb(false)) {
+			assertEqual(values, db.getRecordedDataStorage(id).getValues(Long.MIN_VALUE));
+		}
+	}
+
+}
@@ -16,8 +16,15 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -116,5 +123,208 @@ public class ConfigurationTest extends FactoryTest {
 		}
 	}
 	
+	/*
+	 * Folders in use are never closed by the handle pool; the least recently used ones are
+	 */
+	@Test
+	public void pinnedFoldersAreNotEvicted() throws DataRecorderException, IOException {
+		final int maxOpenFolders = 8;
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setMaxOpenFolders(maxOpenFolders) 
+				.build();
+		try (final SlotsDb slots = new SlotsDb(testPath, null, config, null)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final long t0 = System.currentTimeMillis();
+			final List<RecordedDataStorage> timeseries = new ArrayList<RecordedDataStorage>();
+			for (int idx = 0; idx < 4 * maxOpenFolders; idx++) {
+				final RecordedDataStorage rds = slots.createRecordedDataStorage("test_" + idx, cfg);
+				timeseries.add(rds);
+				rds.insertValue(new SampledValue(new FloatValue(idx), t0, Quality.GOOD));
+			}
+			final FileObjectProxy proxy = slots.getProxy();
+			final FileHandlePool pool = proxy.getHandlePool();
+			Assert.assertTrue("Folders not evicted", pool.getEvictionCount() > 0);
+			proxy.lockShared();
+			try {
+				final FileObjectList pinned = proxy.getNextFolder("test_0", Long.MIN_VALUE, true);
+				Assert.assertNotNull(pinned);
+				final long evictions = pool.getEvictionCount();
+				for (RecordedDataStorage rds : timeseries) {
+					Assert.assertNotNull(rds.getNextValue(Long.MIN_VALUE));
+				}
+				Assert.assertTrue("Folders not evicted", pool.getEvictionCount() > evictions);
+				Assert.assertTrue("Pinned folder has been closed", proxy.openFilesHM.containsValue(pinned));
+				Assert.assertEquals(0, FileObjectProxy.readFolder(pinned).get(0).getValue().getDoubleValue(), 0.01);
+			} finally {
+				proxy.unlockShared();
+			}
+			Assert.assertTrue("Too many open folders: " + proxy.openFolders(), proxy.openFolders() <= maxOpenFolders);
+			// the most recently used folder is kept open
+			final RecordedDataStorage last = timeseries.get(timeseries.size() - 1);
+			final FileObjectList lastFolder = proxy.openFilesHM.get("test_" + (timeseries.size() - 1) 
+					+ TimeUtils.getCurrentStart(t0, proxy.unit));
+			Assert.assertNotNull(lastFolder);
+			Assert.assertNotNull(last.getNextValue(Long.MIN_VALUE));
+			Assert.assertSame(lastFolder, proxy.openFilesHM.get("test_" + (timeseries.size() - 1) 
+					+ TimeUtils.getCurrentStart(t0, proxy.unit)));
+		}
+	}
+	
+	/*
+	 * Partition lookups are served by the catalog; it is updated on folder creation and reload
+	 */
+	@Test
+	public void hourlyPartitionsAreIndexed() throws DataRecorderException, IOException {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setTemporalUnit(ChronoUnit.HOURS)
+				.build();
+		final long hour = 60 * 60 * 1000;
+		final long t0 = 100 * 24 * hour;
+		try (final SlotsDb slots = new SlotsDb(testPath, null, config, null)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final RecordedDataStorage a = slots.createRecordedDataStorage("a", cfg);
+			final RecordedDataStorage b = slots.createRecordedDataStorage("b", cfg);
+			for (int h = 0; h < 10; h++) {
+				(h % 2 == 0 ? a : b).insertValue(new SampledValue(new FloatValue(h), t0 + h * hour + 1000, Quality.GOOD));
+			}
+			final PartitionCatalog catalog = slots.getProxy().catalog;
+			Assert.assertEquals(10, catalog.size());
+			Assert.assertEquals(5, catalog.getPartitions("a", Long.MIN_VALUE, Long.MAX_VALUE).size());
+			Assert.assertEquals(Long.valueOf(t0 + 3 * hour), catalog.getNextPartition("b", t0 + 2 * hour));
+			Assert.assertEquals(5, a.getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+			Assert.assertEquals(2, b.getValues(t0 + 2 * hour, t0 + 6 * hour).size());
+			Assert.assertEquals(t0 + 5 * hour + 1000, b.getNextValue(t0 + 3 * hour + 1001).getTimestamp());
+			slots.reloadDays();
+			Assert.assertEquals(10, slots.getProxy().catalog.size());
+			Assert.assertEquals(5, slots.getProxy().catalog.getPartitions("b", Long.MIN_VALUE, Long.MAX_VALUE).size());
+			Assert.assertEquals(5, b.getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		}
+	}
+
+	/*
+	 * On a partition switch, the folders of the previous partition are closed in the background,
+	 * cached values are retained, and the next partition is prepared in advance
+	 */
+	@Test
+	public void partitionRolloverDoesNotClearOpenFolders() throws DataRecorderException, IOException, InterruptedException {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setTemporalUnit(ChronoUnit.HOURS)
+				.build();
+		final long hour = 60 * 60 * 1000;
+		final long t0 = TimeUtils.getCurrentStart(System.currentTimeMillis(), ChronoUnit.HOURS) - hour;
+		try (final SlotsDb slots = new SlotsDb(testPath, null, config, null)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final RecordedDataStorage a = slots.createRecordedDataStorage("a", cfg);
+			final RecordedDataStorage b = slots.createRecordedDataStorage("b", cfg);
+			a.insertValue(new SampledValue(new FloatValue(1), t0 + 1000, Quality.GOOD));
+			b.insertValue(new SampledValue(new FloatValue(2), t0 + 1000, Quality.GOOD));
+			Assert.assertEquals(1, b.getValues(Long.MIN_VALUE).size());
+			final FileObjectProxy proxy = slots.getProxy();
+			final long hits = proxy.getCache().getStats().hitCount();
+			// switch to the current hour
+			a.insertValue(new SampledValue(new FloatValue(3), t0 + hour + 1000, Quality.GOOD));
+			final boolean live = TimeUtils.getCurrentStart(System.currentTimeMillis(), ChronoUnit.HOURS) == t0 + hour;
+			final long deadline = System.currentTimeMillis() + 5000;
+			while (proxy.openFilesHM.containsKey("b" + t0) && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			Assert.assertFalse("Folder of the previous partition not closed", proxy.openFilesHM.containsKey("b" + t0));
+			Assert.assertTrue(proxy.openFilesHM.containsKey("a" + (t0 + hour)));
+			Assert.assertEquals(1, b.getValues(Long.MIN_VALUE).size());
+			Assert.assertTrue("Cached values have been cleared", proxy.getCache().getStats().hitCount() > hits);
+			if (live) {
+				final Path next = testPath.resolve(String.valueOf(t0 + 2 * hour));
+				while (!proxy.catalog.containsPartition(t0 + 2 * hour) && System.currentTimeMillis() < deadline) {
+					Thread.sleep(20);
+				}
+				Assert.assertTrue("Next partition not prepared", Files.isDirectory(next));
+				Assert.assertTrue(proxy.catalog.getPartitions("a", t0 + 2 * hour, Long.MAX_VALUE).isEmpty());
+			}
+			a.insertValue(new SampledValue(new FloatValue(4), t0 + 2 * hour + 1000, Quality.GOOD));
+			Assert.assertEquals(3, a.getValues(Long.MIN_VALUE).size());
+		}
+	}
+
+	/*
+	 * Partition boundaries are computed arithmetically for units of fixed length
+	 */
+	@Test
+	public void partitionBoundariesMatchCalendar() {
+		final Random random = new Random(25);
+		final TemporalUnit[] units = { ChronoUnit.MINUTES, ChronoUnit.HOURS, ChronoUnit.DAYS, ChronoUnit.WEEKS, ChronoUnit.MONTHS };
+		for (TemporalUnit unit : units) {
+			for (int i = 0; i < 1000; i++) {
+				final long t = i == 0 ? 0 : random.nextLong() >>> 21; // up to 140 years after 1970
+				final Instant start = TimeUtils.getCurrentStart(Instant.ofEpochMilli(t), unit);
+				Assert.assertEquals("Unexpected partition start for " + unit, start.toEpochMilli(), TimeUtils.getCurrentStart(t, unit));
+				Assert.assertEquals("Unexpected partition end for " + unit, ZonedDateTime.ofInstant(start, TimeUtils.zone).plus(1, unit).toInstant().toEpochMilli(),
+						TimeUtils.getNextStart(start.toEpochMilli(), unit));
+			}
+		}
+		Assert.assertEquals(Long.MAX_VALUE, TimeUtils.getNextStart(TimeUtils.getCurrentStart(Long.MAX_VALUE, ChronoUnit.DAYS), ChronoUnit.DAYS));
+	}
+	
+	/*
+	 * Appends within the partition of the previous value bypass the folder lookup; values in other partitions, 
+	 * late values and evicted folders are handled by the regular path
+	 */
+	@Test
+	public void appendsAcrossPartitionsAndEvictionsAreComplete() throws DataRecorderException, IOException {
+		final int nrSeries = 12;
+		final int maxOpenFolders = 8;
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setMaxOpenFolders(maxOpenFolders)
+				.setTemporalUnit(ChronoUnit.HOURS)
+				.build();
+		final long step = 5 * 60 * 1000;
+		final long t0 = TimeUtils.getCurrentStart(System.currentTimeMillis(), ChronoUnit.DAYS) - 7 * 24 * 60 * 60 * 1000;
+		final int nrValues = 3 * 12 + 1;
+		try (final SlotsDb slots = new SlotsDb(testPath, null, config, null)) {
+			final List<RecordedDataStorage> timeseries = new ArrayList<>();
+			for (int s = 0; s < nrSeries; s++) {
+				final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+				if (s % 2 == 0) {
+					cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+				} else {
+					cfg.setStorageType(StorageType.FIXED_INTERVAL);
+					cfg.setFixedInterval(step);
+				}
+				timeseries.add(slots.createRecordedDataStorage("series" + s, cfg));
+			}
+			for (int i = 0; i < nrValues; i++) {
+				for (int s = 0; s < nrSeries; s++) {
+					// fixed interval timestamps are rounded
+					final long t = t0 + i * step + (s % 2 == 0 ? 0 : 1000);
+					timeseries.get(s).insertValue(new SampledValue(new FloatValue(i), t, Quality.GOOD));
+				}
+				if (i % 6 == 5)
+					timeseries.get(0).insertValue(new SampledValue(new FloatValue(-i), t0 + i * step - step / 2, Quality.GOOD));
+			}
+			Assert.assertTrue("Too many open folders: " + slots.getProxy().openFolders(), slots.getProxy().openFolders() <= maxOpenFolders);
+			Assert.assertTrue(slots.getProxy().getHandlePool().getEvictionCount() > 0);
+			for (int s = 0; s < nrSeries; s++) {
+				final List<SampledValue> values = timeseries.get(s).getValues(Long.MIN_VALUE);
+				final int lateValues = s == 0 ? nrValues / 6 : 0;
+				Assert.assertEquals("Unexpected number of values in series " + s, nrValues + lateValues, values.size());
+				long last = Long.MIN_VALUE;
+				int idx = 0;
+				for (SampledValue sv : values) {
+					Assert.assertTrue(sv.getTimestamp() > last);
+					last = sv.getTimestamp();
+					if (sv.getTimestamp() % step != 0)
+						continue;
+					Assert.assertEquals(t0 + idx * step, sv.getTimestamp());
+					Assert.assertEquals(idx++, sv.getValue().getIntegerValue());
+				}
+				Assert.assertEquals(nrValues, idx);
+			}
+		}
+	}
 
 }
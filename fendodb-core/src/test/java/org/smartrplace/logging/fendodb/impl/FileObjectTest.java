@@ -16,16 +16,24 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Random;
 
+import org.junit.Assert;
 import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
 import org.smartrplace.logging.fendodb.FendoDbConfiguration;
 import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+import org.smartrplace.logging.fendodb.impl.SlotsDbCache.RecordedDataCache;
 import org.smartrplace.logging.fendodb.impl.FileObjectProxy;
 import org.smartrplace.logging.fendodb.impl.SlotsDb;
 
@@ -77,4 +85,442 @@ public class FileObjectTest extends SlotsDbTest {
 		}
 	}
 
+	/*
+	 * Point, next, previous and range lookups in a flexible interval file
+	 */
+	@Test
+	public void flexibleIntervalLookupsWork() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final FileObject fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), new SlotsDbCache(1024 * 1024).getCache("test", "f1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			// timestamps 1000, 1010, ..., 1990; value at 1500 is NaN
+			for (int i = 0; i < 100; i++) {
+				fo.append(i == 50 ? Double.NaN : i, 1000 + 10 * i, (byte) 1);
+			}
+			Assert.assertEquals(1990, fo.getTimestampForLatestValue());
+			Assert.assertEquals(10, fo.read(1100).getValue().getDoubleValue(), 0.01);
+			Assert.assertNull(fo.read(1105));
+			Assert.assertNull(fo.read(1500));
+			Assert.assertEquals(1110, fo.readNextValue(1101).getTimestamp());
+			Assert.assertEquals(1510, fo.readNextValue(1491).getTimestamp());
+			Assert.assertNull(fo.readNextValue(1991));
+			Assert.assertEquals(1100, fo.readPreviousValue(1109).getTimestamp());
+			Assert.assertEquals(1490, fo.readPreviousValue(1509).getTimestamp());
+			Assert.assertNull(fo.readPreviousValue(999));
+			final List<SampledValue> values = fo.read(1095, 1520);
+			Assert.assertEquals(42, values.size());
+			Assert.assertEquals(1100, values.get(0).getTimestamp());
+			Assert.assertEquals(1520, values.get(values.size()-1).getTimestamp());
+			Assert.assertEquals(42, fo.getDataSetCount(1095, 1520));
+			Assert.assertEquals(0, fo.getDataSetCount(1991, 3000));
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * Next and previous lookups in a fixed interval file skip the NaN padding of gaps
+	 */
+	@Test
+	public void fixedIntervalLookupsWork() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final FileObject fo = FileObject.getFileObject(path.resolve("c1000.slots").toFile(), new SlotsDbCache(1024 * 1024).getCache("test", "c1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, 10);
+			// values at 1000, 1010, ..., 1490 and 2000, 2010, ..., 2490; NaN padding in between
+			for (int i = 0; i < 50; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+			}
+			for (int i = 0; i < 50; i++) {
+				fo.append(100 + i, 2000 + 10 * i, (byte) 1);
+			}
+			Assert.assertEquals(1000, fo.readNextValue(Long.MIN_VALUE).getTimestamp());
+			Assert.assertEquals(1000, fo.readNextValue(1000).getTimestamp());
+			Assert.assertEquals(1010, fo.readNextValue(1001).getTimestamp());
+			Assert.assertEquals(2000, fo.readNextValue(1491).getTimestamp());
+			Assert.assertEquals(100, fo.readNextValue(1700).getValue().getDoubleValue(), 0.01);
+			Assert.assertNull(fo.readNextValue(2491));
+			Assert.assertNull(fo.readNextValue(Long.MAX_VALUE));
+			Assert.assertEquals(2490, fo.readPreviousValue(Long.MAX_VALUE).getTimestamp());
+			Assert.assertEquals(2000, fo.readPreviousValue(2009).getTimestamp());
+			Assert.assertEquals(1490, fo.readPreviousValue(1999).getTimestamp());
+			Assert.assertEquals(49, fo.readPreviousValue(1700).getValue().getDoubleValue(), 0.01);
+			Assert.assertEquals(1000, fo.readPreviousValue(1000).getTimestamp());
+			Assert.assertNull(fo.readPreviousValue(999));
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * The values cache holds a lazily decoded list; range reads on cached values are views of it
+	 */
+	@Test
+	public void cachedValuesAreDecodedLazily() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final FileObject fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), new SlotsDbCache(1024 * 1024).getCache("test", "f1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			for (int i = 0; i < 100; i++) {
+				fo.append(i == 50 ? Double.NaN : i, 1000 + 10 * i, i == 70 ? (byte) 0 : (byte) 1);
+			}
+			// only values written to disk are cached
+			fo.flush();
+			final List<SampledValue> all = fo.readFully();
+			Assert.assertTrue(all instanceof SampledValueList);
+			Assert.assertSame(all, fo.readFully());
+			Assert.assertEquals(99, all.size());
+			Assert.assertEquals(Quality.BAD, all.get(69).getQuality());
+			Assert.assertEquals(71, all.get(70).getValue().getDoubleValue(), 0.01);
+			final List<SampledValue> values = fo.read(1095, 1520);
+			Assert.assertTrue(values instanceof SampledValueList);
+			Assert.assertEquals(42, values.size());
+			Assert.assertEquals(1100, values.get(0).getTimestamp());
+			Assert.assertEquals(1520, values.get(values.size()-1).getTimestamp());
+			Assert.assertEquals(1510, values.subList(40, 41).get(0).getTimestamp());
+			Assert.assertEquals(42, fo.getDataSetCount(1095, 1520));
+			Assert.assertEquals(0, fo.read(1991, 3000).size());
+			Assert.assertEquals(1990, fo.getTimestampForLatestValue());
+		} finally {
+			fo.close();
+		}
+	}
+
+	@Test
+	public void flexibleIntervalLatestTimestampSurvivesReload() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		FileObject fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), cache.getCache("test", "f1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			for (int i = 0; i < 10; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+			}
+		} finally {
+			fo.close();
+		}
+		fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), cache.getCache("test", "f1000.slots"));
+		try {
+			Assert.assertEquals(1090, fo.getTimestampForLatestValue());
+			fo.append(20, 1050, (byte) 1); // out of order -> ignored
+			fo.append(10, 1100, (byte) 1);
+			Assert.assertEquals(1100, fo.getTimestampForLatestValue());
+			Assert.assertEquals(11, fo.getDataSetCount());
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * Reads interleaved with appends to a reopened file see all values, and appends
+	 * continue at the end of the existing data
+	 */
+	@Test
+	public void readsInterleavedWithAppendsWork() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		FileObject fo = FileObject.getFileObject(path.resolve("c1000.slots").toFile(), cache.getCache("test", "c1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, 10);
+			for (int i = 0; i < 10; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+			}
+		} finally {
+			fo.close();
+		}
+		fo = FileObject.getFileObject(path.resolve("c1000.slots").toFile(), cache.getCache("test", "c1000.slots"));
+		try {
+			Assert.assertEquals(10, fo.readFully().size());
+			for (int i = 10; i < 1000; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+				Assert.assertEquals(i, fo.read(1000 + 10 * i).getValue().getDoubleValue(), 0.01);
+				if (i % 100 == 0) {
+					fo.flush();
+					Assert.assertEquals(i + 1, fo.readFully().size());
+				}
+			}
+		} finally {
+			fo.close();
+		}
+		fo = FileObject.getFileObject(path.resolve("c1000.slots").toFile(), cache.getCache("test", "c1000.slots"));
+		try {
+			final List<SampledValue> values = fo.readFully();
+			Assert.assertEquals(1000, values.size());
+			for (int i = 0; i < 1000; i++) {
+				Assert.assertEquals(1000 + 10 * i, values.get(i).getTimestamp());
+				Assert.assertEquals(i, values.get(i).getValue().getDoubleValue(), 0.01);
+			}
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * Files open for writing are not mapped, their read buffer grows with the data on disk; 
+	 * files only read are mapped once, and the mapping is released on close
+	 */
+	@Test
+	public void onlyFilesNotOpenForWritingAreMapped() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final SlotsDbCache cache = new SlotsDbCache(1024 * 1024);
+		FileObject fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), cache.getCache("test", "f1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			for (int i = 0; i < 1000; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+				if (i % 100 == 99) {
+					fo.flush();
+					final ByteBuffer bb = fo.getReadBuffer();
+					Assert.assertFalse("File open for writing must not be mapped", bb instanceof MappedByteBuffer);
+					Assert.assertEquals(fo.getReadableLength(), bb.limit());
+					Assert.assertEquals(1000 + 10 * i, bb.getLong(bb.limit() - 17));
+					Assert.assertEquals(1000, bb.getLong(0));
+				}
+			}
+		} finally {
+			fo.close();
+		}
+		fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), cache.getCache("test", "f1000.slots"));
+		try {
+			final ByteBuffer bb = fo.getReadBuffer();
+			Assert.assertTrue(bb instanceof MappedByteBuffer);
+			Assert.assertSame("File mapped repeatedly", bb, fo.getReadBuffer());
+			Assert.assertEquals(1000, fo.read(1000, Long.MAX_VALUE).size());
+			fo.close();
+			Assert.assertNotSame("Mapping not released on close", bb, fo.getReadBuffer());
+			fo.append(1000, 11000, (byte) 1);
+			fo.flush();
+			Assert.assertFalse(fo.getReadBuffer() instanceof MappedByteBuffer);
+			Assert.assertEquals(1000, fo.readNextValue(11000).getValue().getDoubleValue(), 0.01);
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * The copies used to read files open for writing count against the cache budget; files too large 
+	 * for a copy are mapped
+	 */
+	@Test
+	public void readCopiesAreBoundedByCacheBudget() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final SlotsDbCache cache = new SlotsDbCache(256 * 1024);
+		final FileObject fo = FileObject.getFileObject(path.resolve("f1000.slots").toFile(), cache.getCache("test", "f1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			int i = 0;
+			for (; i < 1000; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+			}
+			fo.flush();
+			ByteBuffer bb = fo.getReadBuffer();
+			Assert.assertFalse(bb instanceof MappedByteBuffer);
+			Assert.assertTrue("Read copy not accounted", cache.getMemorySize() >= fo.getReadableLength());
+			// 32 kB may be copied at most
+			for (; i < 4000; i++) {
+				fo.append(i, 1000 + 10 * i, (byte) 1);
+			}
+			fo.flush();
+			bb = fo.getReadBuffer();
+			Assert.assertTrue("Large file open for writing must be mapped", bb instanceof MappedByteBuffer);
+			Assert.assertEquals(fo.getReadableLength(), bb.limit());
+			Assert.assertEquals(1000 + 10 * (i - 1), bb.getLong(bb.limit() - 17));
+			Assert.assertEquals(0, cache.getMemorySize());
+			Assert.assertEquals(4000, fo.readFully().size());
+		} finally {
+			fo.close();
+		}
+		Assert.assertTrue(cache.getMemorySize() <= 256 * 1024);
+	}
+
+	/*
+	 * Gaps in fixed interval files are padded with NaN rows written to disk as one block, 
+	 * which are not visible to readers
+	 */
+	@Test
+	public void fixedIntervalGapsArePadded() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final FileObject fo = FileObject.getFileObject(path.resolve("c1000.slots").toFile(), new SlotsDbCache(1024 * 1024).getCache("test", "c1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, 10);
+			fo.append(1, 1000, (byte) 1);
+			fo.append(2, 1010, (byte) 1);
+			fo.append(3, 1100, (byte) 1);
+			// the rows before the gap and the padding are on disk, the new value is held in memory
+			Assert.assertEquals(16 + 10 * 9, fo.getReadableLength());
+			Assert.assertEquals(16 + 10 * 9, fo.dataFile.length());
+			fo.flush();
+			Assert.assertEquals(16 + 11 * 9, fo.dataFile.length());
+			final List<SampledValue> values = fo.readFully();
+			Assert.assertEquals(3, values.size());
+			Assert.assertEquals(1100, values.get(2).getTimestamp());
+			Assert.assertEquals(3, values.get(2).getValue().getDoubleValue(), 0.01);
+			Assert.assertEquals(1010, fo.readPreviousValue(1099).getTimestamp());
+			Assert.assertEquals(1100, fo.readNextValue(1011).getTimestamp());
+		} finally {
+			fo.close();
+		}
+	}
+
+	/*
+	 * Values not yet flushed are served from memory, merged with the values on disk, 
+	 * without invalidating the cached values
+	 */
+	@Test
+	public void memTableIsMergedWithStoredValues() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		for (String name : new String[] {"f1000.slots", "c1000.slots"}) {
+			final RecordedDataCache cache = new SlotsDbCache(1024 * 1024).getCache("test", name);
+			final FileObject fo = FileObject.getFileObject(path.resolve(name).toFile(), cache);
+			try {
+				fo.createFileAndHeader(1000, name.startsWith("c") ? 10 : -1);
+				for (int i = 0; i < 50; i++) {
+					fo.append(i, 1000 + 10 * i, (byte) 1);
+				}
+				fo.flush();
+				final List<SampledValue> stored = fo.readFully();
+				Assert.assertEquals(50, stored.size());
+				final long fileLength = fo.dataFile.length();
+				for (int i = 50; i < 100; i++) {
+					fo.append(i, 1000 + 10 * i, (byte) 1);
+				}
+				Assert.assertEquals(fileLength, fo.dataFile.length());
+				Assert.assertEquals(100, fo.readFully().size());
+				final List<SampledValue> values = fo.read(1400, 1600);
+				Assert.assertEquals(21, values.size());
+				Assert.assertEquals(1400, values.get(0).getTimestamp());
+				Assert.assertEquals(1600, values.get(values.size() - 1).getTimestamp());
+				// fixed interval files count slots, excluding the end
+				Assert.assertEquals(name.startsWith("c") ? 20 : 21, fo.getDataSetCount(1400, 1600));
+				Assert.assertEquals(1990, fo.getTimestampForLatestValue());
+				Assert.assertEquals(60, fo.read(1600).getValue().getDoubleValue(), 0.01);
+				Assert.assertEquals(1500, fo.readNextValue(1491).getTimestamp());
+				Assert.assertEquals(1490, fo.readPreviousValue(1499).getTimestamp());
+				Assert.assertEquals(1500, fo.readPreviousValue(1509).getTimestamp());
+				final TimeSeriesChunk chunk = new TimeSeriesChunk(100);
+				Assert.assertEquals(30, fo.readChunk(1300, 1590, chunk));
+				Assert.assertEquals(1590, chunk.getLastTimestamp());
+				Assert.assertSame(stored, cache.getCache());
+				fo.flush();
+				Assert.assertNull(cache.getCache());
+				Assert.assertTrue(fo.dataFile.length() > fileLength);
+				Assert.assertEquals(100, fo.readFully().size());
+				Assert.assertEquals(21, fo.read(1400, 1600).size());
+			} finally {
+				fo.close();
+			}
+		}
+	}
+
+	/*
+	 * The values cache evicts the least recently used values when the memory budget is exceeded
+	 */
+	@Test
+	public void valueCacheIsBoundedByMemorySize() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final int nrValues = 2000;
+		final SlotsDbCache cache = new SlotsDbCache(100 * 1024);
+		final FileObject[] files = new FileObject[4];
+		final RecordedDataCache[] caches = new RecordedDataCache[files.length];
+		try {
+			for (int f = 0; f < files.length; f++) {
+				final String name = "f" + (1000 + f) + ".slots";
+				caches[f] = cache.getCache("test", name);
+				files[f] = FileObject.getFileObject(path.resolve(name).toFile(), caches[f]);
+				files[f].createFileAndHeader(1000 + f, -1);
+				for (int i = 0; i < nrValues; i++) {
+					files[f].append(i, 1000 + f + 10 * i, (byte) 1);
+				}
+				files[f].flush();
+			}
+			for (int f = 0; f < 3; f++) {
+				Assert.assertEquals(nrValues, files[f].readFully().size());
+			}
+			Assert.assertEquals(0, cache.getStats().evictionCount());
+			final long hits = cache.getStats().hitCount();
+			final List<SampledValue> values0 = files[0].readFully();
+			Assert.assertSame(values0, files[0].readFully());
+			Assert.assertEquals(hits + 2, cache.getStats().hitCount());
+			files[3].readFully();
+			Assert.assertEquals(1, cache.getStats().evictionCount());
+			Assert.assertTrue(cache.getMemorySize() <= 100 * 1024);
+			// file 1 has been used least recently
+			Assert.assertNull(caches[1].getCache());
+			Assert.assertNotNull(caches[0].getCache());
+			Assert.assertNotNull(caches[2].getCache());
+			Assert.assertNotNull(caches[3].getCache());
+		} finally {
+			for (FileObject fo : files) {
+				if (fo != null)
+					fo.close();
+			}
+		}
+	}
+
+	/*
+	 * Sealed blocks of compressed files are decoded once into the shared block cache; reads 
+	 * return the same values with and without the cache, and the cache respects its budget
+	 */
+	@Test
+	public void compressedBlocksAreServedFromBlockCache() throws IOException {
+		final Path path = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Files.createDirectories(path);
+		final int nrValues = 5 * CompressedFileObject.MAX_BLOCK_SIZE;
+		final BlockCache blockCache = new BlockCache(2 * BlockCache.SLOT_SIZE);
+		final FileObject fo = FileObject.getFileObject(path.resolve("z1000.slots").toFile(), 
+				new SlotsDbCache(0, blockCache).getCache("test", "z1000.slots"));
+		try {
+			fo.createFileAndHeader(1000, -1);
+			for (int i = 0; i < nrValues; i++) {
+				fo.append(i % 100, 1000 + 10 * i, (byte) 1);
+			}
+			fo.flush();
+			for (int k = 0; k < 2; k++) {
+				final List<SampledValue> values = fo.readFully();
+				Assert.assertEquals(nrValues, values.size());
+				for (int i = 0; i < nrValues; i++) {
+					Assert.assertEquals(1000 + 10 * i, values.get(i).getTimestamp());
+					Assert.assertEquals(i % 100, values.get(i).getValue().getDoubleValue(), 0.01);
+				}
+			}
+			Assert.assertEquals(2, blockCache.size());
+			Assert.assertTrue("Blocks not evicted", blockCache.getEvictionCount() > 0);
+			final long hits = blockCache.getHitCount();
+			// the most recently read sealed block is still cached
+			final long t = 1000 + 10 * (4 * CompressedFileObject.MAX_BLOCK_SIZE - 1);
+			Assert.assertEquals(t, fo.read(t).getTimestamp());
+			Assert.assertEquals(hits + 1, blockCache.getHitCount());
+			Assert.assertEquals(t + 10, fo.readNextValue(t + 1).getTimestamp());
+			Assert.assertEquals(t, fo.readPreviousValue(t).getTimestamp());
+		} finally {
+			fo.close();
+		}
+		// cached blocks outlive the file object
+		final SlotsDbCache cache = new SlotsDbCache(0, blockCache);
+		final FileObject reopened = FileObject.getFileObject(path.resolve("z1000.slots").toFile(), cache.getCache("test", "z1000.slots"));
+		try {
+			final long hits = blockCache.getHitCount();
+			final long t = 1000 + 10 * (4 * CompressedFileObject.MAX_BLOCK_SIZE - 1);
+			Assert.assertEquals(t, reopened.read(t).getTimestamp());
+			Assert.assertEquals("Block not served from the cache after reopening the file", hits + 1, blockCache.getHitCount());
+		} finally {
+			reopened.close();
+		}
+		Assert.assertEquals(2, blockCache.size());
+		cache.invalidateBlocks(path.toFile());
+		Assert.assertEquals("Blocks not invalidated", 0, blockCache.size());
+		blockCache.clear();
+	}
+
 }
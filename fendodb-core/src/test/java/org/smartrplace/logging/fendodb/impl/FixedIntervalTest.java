@@ -18,10 +18,15 @@ package org.smartrplace.logging.fendodb.impl;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -197,4 +202,82 @@ public class FixedIntervalTest extends DbTest {
 
 	}
 
+	/**
+	 * Long gaps are not padded with NaN values, a new file is started instead
+	 */
+	@Test
+	public void longGapsStartNewFile() throws DataRecorderException, IOException {
+		final String storageName = "gapTest";
+		final long interval = 1000;
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setFixedInterval(interval);
+		conf.setStorageType(StorageType.FIXED_INTERVAL);
+		final RecordedDataStorage rds = sdb.createRecordedDataStorage(storageName, conf);
+		final long t0 = 1439856000000L; // start of a day
+		final long gapStart = t0 + 100 * interval;
+		final long gapEnd = t0 + 10000 * interval;
+		for (long t = t0; t < gapStart; t += interval) {
+			rds.insertValue(new SampledValue(new FloatValue(1), t, Quality.GOOD));
+		}
+		rds.insertValue(new SampledValue(new FloatValue(2), gapStart + 10 * interval, Quality.GOOD)); // short gap
+		rds.insertValue(new SampledValue(new FloatValue(3), gapEnd, Quality.GOOD)); // long gap
+		rds.insertValue(new SampledValue(new FloatValue(4), gapEnd + interval, Quality.GOOD));
+		final List<File> files;
+		try (final Stream<Path> stream = Files.walk(testPath)) {
+			files = stream.map(Path::toFile)
+					.filter(f -> f.getName().startsWith("c") && f.getName().endsWith(SlotsDb.FILE_EXTENSION))
+					.collect(Collectors.toList());
+		}
+		assertEquals("Unexpected number of files", 2, files.size());
+		for (File f : files) {
+			assertTrue("Gap has been padded", f.length() < 2 * ConstantIntervalFileObject.MAX_PADDING_BYTES);
+		}
+		final List<SampledValue> values = rds.getValues(t0, gapEnd + 2 * interval);
+		assertEquals(103, values.size());
+		assertEquals(gapStart + 10 * interval, values.get(100).getTimestamp());
+		assertEquals(gapEnd, values.get(101).getTimestamp());
+		assertEquals(gapEnd, rds.getNextValue(gapStart + 20 * interval).getTimestamp());
+		assertEquals(gapStart + 10 * interval, rds.getPreviousValue(gapEnd - interval).getTimestamp());
+		assertEquals(3, rds.getValue(gapEnd).getValue().getFloatValue(), 0);
+		assertTrue(rds.getValues(gapStart + 20 * interval, gapEnd - 10 * interval).isEmpty());
+		sdb.deleteRecordedDataStorage(storageName);
+	}
+	
+	/**
+	 * A day split into many files by long gaps; the files are looked up by their start time
+	 */
+	@Test
+	public void manyGapsPerDayWork() throws DataRecorderException, IOException {
+		final String storageName = "manyGapsTest";
+		final long interval = 1000;
+		final long gap = 1000 * interval; // requires a new file
+		final int nrFiles = 80;
+		final RecordedDataConfiguration conf = new RecordedDataConfiguration();
+		conf.setFixedInterval(interval);
+		conf.setStorageType(StorageType.FIXED_INTERVAL);
+		final RecordedDataStorage rds = sdb.createRecordedDataStorage(storageName, conf);
+		final long t0 = 1439856000000L; // start of a day
+		for (int i = 0; i < nrFiles; i++) {
+			rds.insertValue(new SampledValue(new FloatValue(i), t0 + i * gap, Quality.GOOD));
+			rds.insertValue(new SampledValue(new FloatValue(i), t0 + i * gap + interval, Quality.GOOD));
+		}
+		final long cnt;
+		try (final Stream<Path> stream = Files.walk(testPath)) {
+			cnt = stream.filter(f -> f.getFileName().toString().startsWith("c") && f.toString().endsWith(SlotsDb.FILE_EXTENSION)).count();
+		}
+		assertEquals("Unexpected number of files", nrFiles, cnt);
+		final List<SampledValue> values = rds.getValues(t0, t0 + nrFiles * gap);
+		assertEquals(2 * nrFiles, values.size());
+		for (int i = 0; i < nrFiles; i++) {
+			final long t = t0 + i * gap;
+			assertEquals(t, values.get(2 * i).getTimestamp());
+			assertEquals(i, rds.getValue(t + interval).getValue().getFloatValue(), 0);
+			assertEquals(t, rds.getNextValue(t - gap / 2).getTimestamp());
+			if (i > 0)
+				assertEquals(t - gap + interval, rds.getPreviousValue(t - interval).getTimestamp());
+			assertEquals(2, rds.getValues(t - gap / 2, t + gap / 2).size());
+		}
+		sdb.deleteRecordedDataStorage(storageName);
+	}
+
 }
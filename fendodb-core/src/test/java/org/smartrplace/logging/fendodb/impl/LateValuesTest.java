@@ -0,0 +1,248 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
+
+public class LateValuesTest extends SlotsDbTest {
+	
+	private static final long DELTA = ONE_DAY / 10;
+
+	private static SlotsDb createDb(final boolean useCompression, final long flushPeriod) {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(flushPeriod)
+				.setUseCompression(useCompression)
+				.build();
+		try {
+			return new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static RecordedDataStorage createStorage(final SlotsDb db, final String id, final StorageType type) throws DataRecorderException {
+		final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+		cfg.setStorageType(type);
+		if (type == StorageType.FIXED_INTERVAL)
+			cfg.setFixedInterval(DELTA);
+		return db.createRecordedDataStorage(id, cfg);
+	}
+	
+	private static SampledValue createValue(final int i) {
+		return new SampledValue(new FloatValue(i), i * DELTA, Quality.GOOD);
+	}
+	
+	private static void assertValuesEqual(final List<SampledValue> expected, final List<SampledValue> actual) {
+		Assert.assertEquals("Unexpected number of values", expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals("Unexpected timestamp", expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			Assert.assertEquals("Unexpected value", expected.get(i).getValue().getFloatValue(), actual.get(i).getValue().getFloatValue(), 0.001F);
+		}
+	}
+	
+	/*
+	 * Inserts the values with odd index in [10, 50) first, then the even ones, plus
+	 * the odd ones in [0, 10) and a duplicate with a different value, all of them late.
+	 */
+	private static void lateValuesAreMerged(final boolean useCompression, final StorageType type, final long flushPeriod) 
+			throws DataRecorderException, IOException {
+		final List<SampledValue> expected = new ArrayList<>();
+		try (final SlotsDb db = createDb(useCompression, flushPeriod)) {
+			final RecordedDataStorage storage = createStorage(db, "test", type);
+			for (int i = 11; i < 50; i += 2) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+			for (int i = 48; i >= 0; i -= 2) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+			for (int i = 1; i < 10; i += 2) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+			storage.insertValue(new SampledValue(new FloatValue(-1), 20 * DELTA, Quality.GOOD));
+			Collections.sort(expected, (v1, v2) -> Long.compare(v1.getTimestamp(), v2.getTimestamp()));
+			assertValuesEqual(expected, storage.getValues(Long.MIN_VALUE));
+			assertValuesEqual(expected.subList(5, 25), storage.getValues(5 * DELTA, 24 * DELTA + 1));
+			Assert.assertEquals(expected.get(3).getTimestamp(), storage.getNextValue(2 * DELTA + 1).getTimestamp());
+			Assert.assertEquals(expected.get(2).getTimestamp(), storage.getPreviousValue(3 * DELTA - 1).getTimestamp());
+		}
+		try (final SlotsDb db = createDb(useCompression, flushPeriod)) {
+			assertValuesEqual(expected, db.getRecordedDataStorage("test").getValues(Long.MIN_VALUE));
+		}
+	}
+	
+	@Test
+	public void lateValuesAreMergedFlexible() throws DataRecorderException, IOException {
+		lateValuesAreMerged(false, StorageType.ON_VALUE_CHANGED, 0);
+	}
+	
+	@Test
+	public void lateValuesAreMergedFixedInterval() throws DataRecorderException, IOException {
+		lateValuesAreMerged(false, StorageType.FIXED_INTERVAL, 0);
+	}
+	
+	@Test
+	public void lateValuesAreMergedCompressed() throws DataRecorderException, IOException {
+		lateValuesAreMerged(true, StorageType.ON_VALUE_CHANGED, 0);
+	}
+	
+	@Test
+	public void bufferedLateValuesAreMerged() throws DataRecorderException, IOException {
+		lateValuesAreMerged(false, StorageType.ON_VALUE_CHANGED, 1000000);
+	}
+	
+	@Test
+	public void lateValuesSurviveRestart() throws DataRecorderException, IOException {
+		final List<SampledValue> expected = new ArrayList<>();
+		try (final SlotsDb db = createDb(false, 0)) {
+			final RecordedDataStorage storage = createStorage(db, "test", StorageType.ON_VALUE_CHANGED);
+			for (int i = 20; i < 30; i++) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+			for (int i = 15; i < 20; i++) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+		}
+		Collections.sort(expected, (v1, v2) -> Long.compare(v1.getTimestamp(), v2.getTimestamp()));
+		try (final SlotsDb db = createDb(false, 0)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage("test");
+			Assert.assertEquals(expected.size(), storage.size());
+			assertValuesEqual(expected, storage.getValues(Long.MIN_VALUE));
+		}
+	}
+	
+	/*
+	 * Late values long before the start of a fixed interval file are not padded, they are stored in new files
+	 */
+	@Test
+	public void lateValuesBeforeLongGapsStartNewFile() throws DataRecorderException, IOException {
+		final long interval = 1000;
+		final long t0 = 1439856000000L; // start of a day
+		final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+		cfg.setStorageType(StorageType.FIXED_INTERVAL);
+		cfg.setFixedInterval(interval);
+		final List<SampledValue> expected = new ArrayList<>();
+		try (final SlotsDb db = createDb(false, 0)) {
+			final RecordedDataStorage storage = db.createRecordedDataStorage("test", cfg);
+			for (int i = 0; i < 10; i++) {
+				expected.add(new SampledValue(new FloatValue(i), t0 + 20000 * interval + i * interval, Quality.GOOD));
+			}
+			storage.insertValues(expected);
+			// late values: one with a long gap to the next one, two with a short gap to the file
+			for (long t : new long[] {t0, t0 + 19000 * interval, t0 + 19990 * interval}) {
+				final SampledValue sv = new SampledValue(new FloatValue(-1), t, Quality.GOOD);
+				storage.insertValue(sv);
+				expected.add(sv);
+			}
+		}
+		Collections.sort(expected, (v1, v2) -> Long.compare(v1.getTimestamp(), v2.getTimestamp()));
+		final List<File> files;
+		try (final Stream<Path> stream = Files.walk(testPath)) {
+			files = stream.map(Path::toFile)
+					.filter(f -> f.getName().startsWith("c") && f.getName().endsWith(SlotsDb.FILE_EXTENSION))
+					.collect(Collectors.toList());
+		}
+		Assert.assertEquals("Unexpected number of files", 3, files.size());
+		for (File f : files) {
+			Assert.assertTrue("Gap has been padded", f.length() < 2 * ConstantIntervalFileObject.MAX_PADDING_BYTES);
+		}
+		try (final SlotsDb db = createDb(false, 0)) {
+			final RecordedDataStorage storage = db.getRecordedDataStorage("test");
+			assertValuesEqual(expected, storage.getValues(Long.MIN_VALUE));
+			Assert.assertEquals(t0 + 19000 * interval, storage.getNextValue(t0 + 1).getTimestamp());
+		}
+	}
+	
+	/*
+	 * Readers combine the buffered late values with the data read from the files; 
+	 * the files are only rewritten with exclusive access to the folder
+	 */
+	@Test
+	public void lateValuesAreNotMergedOnRead() throws DataRecorderException, IOException {
+		final List<SampledValue> expected = new ArrayList<>();
+		try (final SlotsDb db = createDb(false, 0)) {
+			final FendoTimeSeries storage = (FendoTimeSeries) createStorage(db, "test", StorageType.ON_VALUE_CHANGED);
+			for (int i : new int[] {5, 6, 7, 8, 9, 11, 13, 15, 17, 19, 1, 3, 12, 14}) {
+				storage.insertValue(createValue(i));
+				expected.add(createValue(i));
+			}
+			storage.insertValue(new SampledValue(new FloatValue(-1), 15 * DELTA, Quality.GOOD));
+			Collections.sort(expected, (v1, v2) -> Long.compare(v1.getTimestamp(), v2.getTimestamp()));
+			assertValuesEqual(expected, storage.getValues(Long.MIN_VALUE));
+			assertValuesEqual(expected.subList(1, 9), storage.getValues(3 * DELTA, 12 * DELTA + 1));
+			Assert.assertEquals(expected.size(), storage.size());
+			Assert.assertEquals(12 * DELTA, storage.getValue(12 * DELTA).getTimestamp());
+			Assert.assertEquals(15, storage.getValue(15 * DELTA).getValue().getIntegerValue());
+			Assert.assertEquals(3 * DELTA, storage.getNextValue(2 * DELTA + 1).getTimestamp());
+			Assert.assertEquals(12 * DELTA, storage.getNextValue(11 * DELTA + 1).getTimestamp());
+			Assert.assertEquals(3 * DELTA, storage.getPreviousValue(4 * DELTA).getTimestamp());
+			Assert.assertEquals(14 * DELTA, storage.getPreviousValue(15 * DELTA - 1).getTimestamp());
+			final List<SampledValue> iterated = new ArrayList<>();
+			final Iterator<SampledValue> it = storage.iterator();
+			while (it.hasNext()) {
+				iterated.add(it.next());
+			}
+			assertValuesEqual(expected, iterated);
+			final TimeSeriesChunk chunk = new TimeSeriesChunk(3);
+			final List<SampledValue> chunked = new ArrayList<>();
+			long t = Long.MIN_VALUE;
+			do {
+				storage.readChunk(t, Long.MAX_VALUE, chunk);
+				for (int i = 0; i < chunk.size(); i++) {
+					chunked.add(new SampledValue(new FloatValue((float) chunk.getValue(i)), chunk.getTimestamp(i), chunk.getQuality(i)));
+				}
+				if (chunk.isFull())
+					t = chunk.getLastTimestamp() + 1;
+			} while (chunk.isFull());
+			assertValuesEqual(expected, chunked);
+			// the folder of the first day may be closed in the background meanwhile, which merges its late values
+			Assert.assertTrue("Late values have been merged by a reader", 
+					db.getProxy().openFilesHM.values().stream().anyMatch(FileObjectList::hasLateValues));
+		}
+		try (final SlotsDb db = createDb(false, 0)) {
+			assertValuesEqual(expected, db.getRecordedDataStorage("test").getValues(Long.MIN_VALUE));
+		}
+	}
+	
+}
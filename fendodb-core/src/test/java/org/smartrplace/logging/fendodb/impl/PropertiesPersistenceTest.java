@@ -18,7 +18,12 @@ package org.smartrplace.logging.fendodb.impl;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
@@ -124,4 +129,105 @@ public class PropertiesPersistenceTest extends FactoryTest {
 		}
 	}
 
+	@Test
+	public void metadataLogWorks() throws Exception {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+			.setFlushPeriod(1000)
+			.build();
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath, config)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final FendoTimeSeries a = slots.createRecordedDataStorage("a", cfg);
+			final FendoTimeSeries b = slots.createRecordedDataStorage("b", cfg);
+			a.setProperty("tag", "a0");
+			b.setProperty("tag", "b0");
+			Assert.assertTrue(slots.deleteRecordedDataStorage("b"));
+			final RecordedDataConfiguration cfg2 = new RecordedDataConfiguration();
+			cfg2.setStorageType(StorageType.FIXED_INTERVAL);
+			cfg2.setFixedInterval(10000);
+			a.setConfiguration(cfg2);
+			a.addProperty("tag", "a1");
+		}
+		Assert.assertTrue(Files.isRegularFile(testPath.resolve(MetadataStore.METADATA_FILE)));
+		Assert.assertFalse(Files.exists(testPath.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE)));
+		restartFactory();
+		// an incomplete record at the end of the log is ignored
+		Files.write(testPath.resolve(MetadataStore.METADATA_FILE), new byte[] {2, 0, 0}, StandardOpenOption.APPEND);
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertEquals(Collections.singletonList("a"), slots.getAllRecordedDataStorageIDs());
+			final FendoTimeSeries a = slots.getRecordedDataStorage("a");
+			Assert.assertEquals(StorageType.FIXED_INTERVAL, a.getConfiguration().getStorageType());
+			Assert.assertEquals(10000, a.getConfiguration().getFixedInterval());
+			Assert.assertEquals(Arrays.asList("a0", "a1"), a.getProperties("tag"));
+			slots.createRecordedDataStorage("c", a.getConfiguration()).setProperty("tag", "c0");
+		}
+		restartFactory();
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertEquals(2, slots.getAllRecordedDataStorageIDs().size());
+			Assert.assertEquals("c0", slots.getRecordedDataStorage("c").getFirstProperty("tag"));
+		}
+	}
+	
+	/*
+	 * Records before a damaged one are retained, and the damaged log is kept
+	 */
+	@Test
+	public void damagedMetadataLogIsMovedAside() throws Exception {
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			slots.createRecordedDataStorage("a", cfg).setProperty("tag", "a0");
+			slots.createRecordedDataStorage("b", cfg).setProperty("tag", "b0");
+		}
+		restartFactory();
+		final Path log = testPath.resolve(MetadataStore.METADATA_FILE);
+		final Path corrupt = testPath.resolve(MetadataStore.CORRUPT_FILE);
+		// a config record with an absurd id length
+		Files.write(log, new byte[] {1, 0x7f, -1, -1, -1, 0, 0, 0}, StandardOpenOption.APPEND);
+		final byte[] damaged = Files.readAllBytes(log);
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertEquals(2, slots.getAllRecordedDataStorageIDs().size());
+			Assert.assertEquals("b0", slots.getRecordedDataStorage("b").getFirstProperty("tag"));
+		}
+		Assert.assertArrayEquals("Damaged metadata file not preserved", damaged, Files.readAllBytes(corrupt));
+		restartFactory();
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertEquals(2, slots.getAllRecordedDataStorageIDs().size());
+			Assert.assertEquals("a0", slots.getRecordedDataStorage("a").getFirstProperty("tag"));
+		}
+		restartFactory();
+		final byte[] garbage = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9};
+		Files.write(log, garbage);
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertNotNull(slots);
+		}
+		Assert.assertArrayEquals("Unreadable metadata file not preserved", garbage, Files.readAllBytes(corrupt));
+	}
+	
+	@Test
+	public void legacyMetadataIsMigrated() throws Exception {
+		final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+		cfg.setStorageType(StorageType.ON_VALUE_CHANGED);
+		final HashMap<String, RecordedDataConfiguration> configs = new HashMap<>();
+		configs.put("legacy", cfg);
+		final HashMap<String, Map<String, List<String>>> tags = new HashMap<>();
+		tags.put("legacy", Collections.singletonMap("tag", Collections.singletonList("value")));
+		Files.createDirectories(testPath);
+		org.smartrplace.logging.fendodb.impl.FileUtils.writeJavaBytes(testPath, SlotsDb.STORAGE_PERSISTENCE_FILE, configs);
+		org.smartrplace.logging.fendodb.impl.FileUtils.writeJavaBytes(testPath, SlotsDb.TAGS_PERSISTENCE_FILE, tags);
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			final FendoTimeSeries ts = slots.getRecordedDataStorage("legacy");
+			Assert.assertNotNull(ts);
+			Assert.assertEquals(StorageType.ON_VALUE_CHANGED, ts.getConfiguration().getStorageType());
+			Assert.assertEquals("value", ts.getFirstProperty("tag"));
+		}
+		Assert.assertTrue(Files.isRegularFile(testPath.resolve(MetadataStore.METADATA_FILE)));
+		Assert.assertFalse(Files.exists(testPath.resolve(SlotsDb.STORAGE_PERSISTENCE_FILE)));
+		Assert.assertFalse(Files.exists(testPath.resolve(SlotsDb.TAGS_PERSISTENCE_FILE)));
+		restartFactory();
+		try (final CloseableDataRecorder slots = factory.getInstance(testPath)) {
+			Assert.assertEquals("value", slots.getRecordedDataStorage("legacy").getFirstProperty("tag"));
+		}
+	}
+
 }
@@ -16,6 +16,8 @@
 package org.smartrplace.logging.fendodb.impl;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalUnit;
@@ -236,4 +238,93 @@ public class RestartDbTest extends SlotsDbTest {
 //	}
 //	
 	
+	/*
+	 * The partition catalog is restored from the manifest, and rebuilt by a scan if the manifest is stale
+	 */
+	@Test
+	public void partitionManifestSurvivesRestart() throws DataRecorderException, IOException {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setTemporalUnit(ChronoUnit.HOURS)
+				.build();
+		final long hour = 60 * 60 * 1000;
+		final long t0 = 100 * 24 * hour;
+		try (final SlotsDb db = createDb(config)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final RecordedDataStorage a = db.createRecordedDataStorage("a", cfg);
+			final RecordedDataStorage b = db.createRecordedDataStorage("b", cfg);
+			for (int h = 0; h < 6; h++) {
+				a.insertValue(new SampledValue(new FloatValue(h), t0 + h * hour, Quality.GOOD));
+				if (h % 3 == 0)
+					b.insertValue(new SampledValue(new FloatValue(h), t0 + h * hour, Quality.GOOD));
+			}
+		}
+		final Path root = Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER);
+		Assert.assertTrue(Files.isRegularFile(root.resolve(PartitionCatalog.MANIFEST_FILE)));
+		try (final SlotsDb db = createDb(config)) {
+			final PartitionCatalog catalog = db.getProxy().catalog;
+			Assert.assertEquals(6, catalog.size());
+			Assert.assertEquals(6, catalog.getPartitions("a", Long.MIN_VALUE, Long.MAX_VALUE).size());
+			Assert.assertEquals(2, catalog.getPartitions("b", Long.MIN_VALUE, Long.MAX_VALUE).size());
+			Assert.assertEquals(2, db.getRecordedDataStorage("b").getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+			// a new partition is appended to the manifest
+			db.getRecordedDataStorage("b").insertValue(new SampledValue(new FloatValue(7), t0 + 7 * hour, Quality.GOOD));
+		}
+		try (final SlotsDb db = createDb(config)) {
+			Assert.assertEquals(7, db.getProxy().catalog.size());
+			Assert.assertEquals(3, db.getRecordedDataStorage("b").getValues(Long.MIN_VALUE, Long.MAX_VALUE).size());
+		}
+		// series folder created externally -> stale manifest
+		final Path external = root.resolve(String.valueOf(t0 + 8 * hour)).resolve("b");
+		Files.createDirectories(external);
+		Files.copy(root.resolve(String.valueOf(t0 + 7 * hour)).resolve("b").toFile().listFiles()[0].toPath(), 
+				external.resolve("c" + (t0 + 8 * hour) + SlotsDb.FILE_EXTENSION));
+		try (final SlotsDb db = createDb(config)) {
+			Assert.assertEquals(8, db.getProxy().catalog.size());
+			Assert.assertEquals(Long.valueOf(t0 + 8 * hour), db.getProxy().catalog.getNextPartition("b", t0 + 8 * hour));
+		}
+	}
+	
+	/*
+	 * Partitions and series folders are scanned in parallel on startup if there is no manifest
+	 */
+	@Test
+	public void parallelScanWithoutManifestWorks() throws DataRecorderException, IOException {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(0)
+				.setTemporalUnit(ChronoUnit.HOURS)
+				.build();
+		final long hour = 60 * 60 * 1000;
+		final long t0 = 100 * 24 * hour;
+		final int nrSeries = 20;
+		final int nrHours = 5;
+		try (final SlotsDb db = createDb(config)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			for (int s = 0; s < nrSeries; s++) {
+				final RecordedDataStorage storage = db.createRecordedDataStorage("s" + s, cfg);
+				for (int h = 0; h < nrHours; h++) {
+					storage.insertValue(new SampledValue(new FloatValue(s * h), t0 + h * hour, Quality.GOOD));
+					storage.insertValue(new SampledValue(new FloatValue(s * h + 1), t0 + h * hour + 1000, Quality.GOOD));
+				}
+			}
+		}
+		Files.delete(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER).resolve(PartitionCatalog.MANIFEST_FILE));
+		try (final SlotsDb db = createDb(config)) {
+			Assert.assertEquals(nrSeries, db.getAllRecordedDataStorageIDs().size());
+			Assert.assertEquals(nrHours, db.getProxy().catalog.size());
+			for (int s = 0; s < nrSeries; s++) {
+				Assert.assertEquals(nrHours, db.getProxy().catalog.getPartitions("s" + s, Long.MIN_VALUE, Long.MAX_VALUE).size());
+				final List<SampledValue> values = db.getRecordedDataStorage("s" + s).getValues(Long.MIN_VALUE);
+				Assert.assertEquals(2 * nrHours, values.size());
+				long last = Long.MIN_VALUE;
+				for (SampledValue sv : values) {
+					Assert.assertTrue("Values not sorted", sv.getTimestamp() > last);
+					last = sv.getTimestamp();
+				}
+			}
+		}
+	}
+	
 }
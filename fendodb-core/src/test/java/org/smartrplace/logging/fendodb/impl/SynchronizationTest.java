@@ -330,4 +330,84 @@ public class SynchronizationTest extends FactoryTest {
 	}
 
 
+	/*
+	 * Many time series are written concurrently across partition boundaries, with more folders 
+	 * than may be kept open, while they are read and late values are merged
+	 */
+	@Test
+	public void concurrentIngestAcrossPartitionsWorks() throws Throwable {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+			.setFlushPeriod(0)
+			.setTemporalUnit(ChronoUnit.HOURS)
+			.setMaxOpenFolders(16)
+			.build();
+		final int nrThreads = 8;
+		final int seriesPerThread = 8;
+		final int valuesPerSeries = 200;
+		final long hour = 60 * 60 * 1000;
+		final long delta = 5 * hour / valuesPerSeries;
+		try (final SlotsDb slots = new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null)) {
+			final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+			cfg.setStorageType(StorageType.ON_VALUE_UPDATE);
+			final List<RecordedDataStorage> storages = new ArrayList<>();
+			for (int i = 0; i < nrThreads * seriesPerThread; i++) {
+				storages.add(slots.createRecordedDataStorage("series_" + i, cfg));
+			}
+			final ExecutorService exec = Executors.newFixedThreadPool(nrThreads + 1);
+			try {
+				final CountDownLatch start = new CountDownLatch(1);
+				final AtomicBoolean done = new AtomicBoolean(false);
+				final List<Future<?>> writers = new ArrayList<>();
+				for (int t = 0; t < nrThreads; t++) {
+					final List<RecordedDataStorage> own = storages.subList(t * seriesPerThread, (t + 1) * seriesPerThread);
+					writers.add(exec.submit((Callable<Void>) () -> {
+						start.await();
+						for (int v = 0; v < valuesPerSeries; v++) {
+							for (RecordedDataStorage rds : own) {
+								rds.insertValue(new SampledValue(new FloatValue(v), v * delta, Quality.GOOD));
+							}
+						}
+						// late values
+						for (RecordedDataStorage rds : own) {
+							rds.insertValue(new SampledValue(new FloatValue(-1), delta / 2, Quality.GOOD));
+						}
+						return null;
+					}));
+				}
+				final Future<?> reader = exec.submit((Callable<Void>) () -> {
+					start.await();
+					while (!done.get()) {
+						for (RecordedDataStorage rds : storages) {
+							final List<SampledValue> values = rds.getValues(Long.MIN_VALUE);
+							for (int i = 1; i < values.size(); i++) {
+								Assert.assertTrue(values.get(i).getTimestamp() > values.get(i - 1).getTimestamp());
+							}
+						}
+					}
+					return null;
+				});
+				start.countDown();
+				try {
+					for (Future<?> writer : writers) {
+						writer.get(30, TimeUnit.SECONDS);
+					}
+				} finally {
+					done.set(true);
+				}
+				reader.get(30, TimeUnit.SECONDS);
+			} catch (ExecutionException e) {
+				throw e.getCause();
+			} finally {
+				exec.shutdownNow();
+			}
+			Assert.assertTrue("Too many open folders: " + slots.getProxy().openFolders(), slots.getProxy().openFolders() <= 16);
+			for (RecordedDataStorage rds : storages) {
+				final List<SampledValue> values = rds.getValues(Long.MIN_VALUE);
+				Assert.assertEquals(valuesPerSeries + 1, values.size());
+				Assert.assertEquals(-1, values.get(1).getValue().getFloatValue(), 0.01);
+				Assert.assertEquals(valuesPerSeries - 1, values.get(values.size() - 1).getValue().getFloatValue(), 0.01);
+			}
+		}
+	}
+
 }
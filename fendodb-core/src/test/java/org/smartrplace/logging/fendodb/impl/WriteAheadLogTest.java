@@ -0,0 +1,183 @@
+/**
+ * ﻿Copyright 2018 Smartrplace UG
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.smartrplace.logging.fendodb.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogema.core.channelmanager.measurements.FloatValue;
+import org.ogema.core.channelmanager.measurements.Quality;
+import org.ogema.core.channelmanager.measurements.SampledValue;
+import org.ogema.core.recordeddata.RecordedDataConfiguration;
+import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.recordeddata.DataRecorderException;
+import org.ogema.recordeddata.RecordedDataStorage;
+import org.smartrplace.logging.fendodb.FendoDbConfiguration;
+import org.smartrplace.logging.fendodb.FendoDbConfigurationBuilder;
+
+public class WriteAheadLogTest extends SlotsDbTest {
+	
+	private static final Path walFile = testPath.resolve(WriteAheadLog.FILE_NAME);
+
+	private static SlotsDb createDb() {
+		final FendoDbConfiguration config = FendoDbConfigurationBuilder.getInstance()
+				.setFlushPeriod(1000000)
+				.setUseWriteAheadLog(true)
+				.build();
+		try {
+			return new SlotsDb(Paths.get(SlotsDb.DB_TEST_ROOT_FOLDER), null, config, null, true);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static List<SampledValue> createValues(final long start, final int nr, final long delta) {
+		final List<SampledValue> values = new ArrayList<>(nr);
+		for (int i = 0; i < nr; i++) {
+			values.add(new SampledValue(new FloatValue(i), start + i * delta, Quality.GOOD));
+		}
+		return values;
+	}
+	
+	private static void assertValuesEqual(final List<SampledValue> expected, final List<SampledValue> actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+			Assert.assertEquals(expected.get(i).getValue().getFloatValue(), actual.get(i).getValue().getFloatValue(), 0.001F);
+			Assert.assertEquals(expected.get(i).getQuality(), actual.get(i).getQuality());
+		}
+	}
+	
+	private static RecordedDataStorage createStorage(final SlotsDb db, final String id, final StorageType type) throws DataRecorderException {
+		final RecordedDataConfiguration cfg = new RecordedDataConfiguration();
+		cfg.setStorageType(type);
+		if (type == StorageType.FIXED_INTERVAL)
+			cfg.setFixedInterval(ONE_DAY / 10);
+		return db.createRecordedDataStorage(id, cfg);
+	}
+	
+	private static void deleteDataFolders() throws IOException {
+		final List<Path> days;
+		try (final Stream<Path> stream = Files.list(testPath)) {
+			days = stream.filter(Files::isDirectory).collect(Collectors.toList());
+		}
+		Assert.assertFalse("Data folders missing", days.isEmpty());
+		days.forEach(day -> deleteTree(day.toFile()));
+	}
+	
+	@Test
+	public void writeAheadLogIsResetOnClose() throws DataRecorderException, IOException {
+		final List<SampledValue> values = createValues(0, 25, ONE_DAY / 10);
+		try (final SlotsDb db = createDb()) {
+			createStorage(db, "test", StorageType.ON_VALUE_CHANGED).insertValues(values);
+			Assert.assertTrue("Write ahead log is empty", Files.size(walFile) > 0);
+		}
+		Assert.assertEquals(0, Files.size(walFile));
+		try (final SlotsDb db = createDb()) {
+			assertValuesEqual(values, db.getRecordedDataStorage("test").getValues(Long.MIN_VALUE));
+		}
+	}
+	
+	@Test
+	public void writeAheadLogIsReplayed() throws DataRecorderException, IOException {
+		final List<SampledValue> flexible = createValues(0, 25, ONE_DAY / 10);
+		final List<SampledValue> fixed = createValues(ONE_DAY / 10, 17, ONE_DAY / 10);
+		final byte[] log;
+		try (final SlotsDb db = createDb()) {
+			createStorage(db, "flexible", StorageType.ON_VALUE_CHANGED).insertValues(flexible);
+			createStorage(db, "fixed", StorageType.FIXED_INTERVAL).insertValues(fixed);
+			log = Files.readAllBytes(walFile);
+		}
+		// simulate the loss of all data that has not been synced yet
+		deleteDataFolders();
+		// ... plus a partially written entry
+		final byte[] corrupt = new byte[log.length + 7];
+		System.arraycopy(log, 0, corrupt, 0, log.length);
+		Files.write(walFile, corrupt);
+		try (final SlotsDb db = createDb()) {
+			assertValuesEqual(flexible, db.getRecordedDataStorage("flexible").getValues(Long.MIN_VALUE));
+			assertValuesEqual(fixed, db.getRecordedDataStorage("fixed").getValues(Long.MIN_VALUE));
+			Assert.assertEquals(0, Files.size(walFile));
+		}
+	}
+	
+	/*
+	 * Records which have been written to the data files already do not become late values
+	 */
+	@Test
+	public void replayingStoredRecordsHasNoEffect() throws DataRecorderException, IOException {
+		final List<SampledValue> flexible = createValues(0, 25, ONE_DAY / 10);
+		final List<SampledValue> fixed = createValues(ONE_DAY / 10, 17, ONE_DAY / 10);
+		final byte[] log;
+		try (final SlotsDb db = createDb()) {
+			createStorage(db, "flexible", StorageType.ON_VALUE_CHANGED).insertValues(flexible);
+			createStorage(db, "fixed", StorageType.FIXED_INTERVAL).insertValues(fixed);
+			log = Files.readAllBytes(walFile);
+		}
+		// the data has been synced, but the log has not been reset
+		Files.write(walFile, log);
+		try (final SlotsDb db = createDb()) {
+			assertValuesEqual(flexible, db.getRecordedDataStorage("flexible").getValues(Long.MIN_VALUE));
+			assertValuesEqual(fixed, db.getRecordedDataStorage("fixed").getValues(Long.MIN_VALUE));
+			Assert.assertEquals(0, Files.size(walFile));
+			try (final Stream<Path> stream = Files.walk(testPath)) {
+				Assert.assertFalse("Replayed records stored as late values", 
+						stream.anyMatch(p -> p.getFileName().toString().equals(FileObjectList.LATE_VALUES_FILE)));
+			}
+		}
+	}
+	
+	@Test
+	public void concurrentAppendsWork() throws Exception {
+		final int nrSeries = 4;
+		final List<SampledValue> values = createValues(0, 200, 60 * 1000);
+		final ExecutorService exec = Executors.newFixedThreadPool(nrSeries);
+		try (final SlotsDb db = createDb()) {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < nrSeries; i++) {
+				final RecordedDataStorage storage = createStorage(db, "test" + i, StorageType.ON_VALUE_CHANGED);
+				futures.add(exec.submit(() -> {
+					for (SampledValue sv : values) {
+						storage.insertValue(sv);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+		} finally {
+			exec.shutdownNow();
+		}
+		try (final SlotsDb db = createDb()) {
+			for (int i = 0; i < nrSeries; i++) {
+				assertValuesEqual(values, db.getRecordedDataStorage("test" + i).getValues(Long.MIN_VALUE));
+			}
+		}
+	}
+
+}
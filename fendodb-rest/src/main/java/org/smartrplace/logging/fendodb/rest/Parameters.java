@@ -25,6 +25,7 @@ class Parameters {
     final static String PARAM_START = "start"; // date(-time) or long
     final static String PARAM_END = "end"; // date(-time) or long
     final static String PARAM_INTERVAL = "interval"; // long; interval in ms
+    final static String PARAM_REDUCTION = "reduction"; // reduction mode for the interval, such as AVERAGE or MIN_MAX_VALUE; default: linear interpolation
     final static String PARAM_MAX = "max"; // integer; max nr 
     final static String PARAM_INDENT = "indent"; // integer; set to negative value to disable pretty-printing
     final static String PARAM_DT_FORMATTER = "datetimeformat"; // format pattern
@@ -48,6 +48,7 @@ import org.ogema.core.administration.FrameworkClock;
 import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.recordeddata.RecordedDataConfiguration;
 import org.ogema.core.recordeddata.RecordedDataConfiguration.StorageType;
+import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.recordeddata.DataRecorderException;
 import org.ogema.tools.timeseries.iterator.api.MultiTimeSeriesIterator;
@@ -729,6 +730,14 @@ public class RecordedDataServlet extends HttpServlet {
         	resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Interval " + samplingIntervalStr + " is not a valid number");
         	return;
         }
+        final String reductionStr = req.getParameter(Parameters.PARAM_REDUCTION);
+        final ReductionMode reduction;
+        try {
+        	reduction = reductionStr == null ? null : ReductionMode.valueOf(reductionStr.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+        	resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Reduction mode " + reductionStr + " is not valid");
+        	return;
+        }
         final String maxValuesStr = req.getParameter(Parameters.PARAM_MAX);
         final int maxValues;
         try {
@@ -742,6 +751,7 @@ public class RecordedDataServlet extends HttpServlet {
         		.setFormat(format)
         		.setFormatter(formatter)
         		.setSamplingInterval(samplingInterval)
+        		.setReductionMode(reduction)
         		.setMaxNrValues(maxValues);
         final String indent = req.getParameter(Parameters.PARAM_INDENT);
         if (indent != null) {
@@ -45,6 +45,7 @@ import org.ogema.core.channelmanager.measurements.SampledValue;
 import org.ogema.core.channelmanager.measurements.Value;
 import org.ogema.core.model.schedule.Schedule;
 import org.ogema.core.recordeddata.RecordedData;
+import org.ogema.core.recordeddata.ReductionMode;
 import org.ogema.core.timeseries.InterpolationMode;
 import org.ogema.core.timeseries.ReadOnlyTimeSeries;
 import org.ogema.tools.timeseries.iterator.api.DataPoint;
@@ -53,6 +54,7 @@ import org.ogema.tools.timeseries.iterator.api.MultiTimeSeriesIteratorBuilder;
 import org.ogema.tools.timeseries.iterator.api.SampledValueDataPoint;
 import org.smartrplace.logging.fendodb.tools.config.SerializationConfiguration;
 import org.smartrplace.logging.fendodb.FendoTimeSeries;
+import org.smartrplace.logging.fendodb.TimeSeriesChunk;
 import org.smartrplace.logging.fendodb.tools.config.FendodbSerializationFormat;
 
 class SerializerImpl {
@@ -95,10 +97,7 @@ class SerializerImpl {
 		final Iterator<SampledValue> it;
 		if (samplingInterval != null) {
 			start = getAlignedIntervalStartTime(timeSeries, start, samplingInterval, timeZone);
-			it = new WrappedIterator(MultiTimeSeriesIteratorBuilder.newBuilder(Collections.singletonList(it0))
-					.setGlobalInterpolationMode(InterpolationMode.LINEAR)
-					.setStepSize(start, samplingInterval)
-					.build());
+			it = downsample(timeSeries, it0, start, end, samplingInterval, config.reductionMode());
 		} else {
 			it = it0;
 		}
@@ -146,12 +145,17 @@ class SerializerImpl {
 			printEnd(writer, xmlOrJson, separator, linebreak);
 			return 0;
 		}
+		if (samplingInterval == null && timeSeries instanceof FendoTimeSeries) {
+			final int cnt = writeChunked((FendoTimeSeries) timeSeries, start, end, maxValue, (idx, t, value, quality) -> {
+				if (idx > 0 && !xmlOrJson)
+					writer.write(',');
+				append(writer, serialize(t, "Double", (float) value, quality, formatter, timeZone, xmlOrJson, separator, linebreak));
+			});
+			printEnd(writer, xmlOrJson, separator, linebreak);
+			return cnt;
+		}
 		if (it.hasNext()) {
-			final StringBuilder sb = serialize(it.next(), formatter, timeZone, xmlOrJson, separator, linebreak);
-			final int length = sb.length();
-			final char[] buf = new char[length];
-			sb.getChars(0, length, buf, 0);
-			writer.write(buf);
+			append(writer, serialize(it.next(), formatter, timeZone, xmlOrJson, separator, linebreak));
 		}
 		int cnt = 1;
 		while (it.hasNext()) {
@@ -161,16 +165,62 @@ class SerializerImpl {
 			}
 			if (!xmlOrJson)
 				writer.write(',');
-			final StringBuilder sb = serialize(it.next(), formatter, timeZone, xmlOrJson, separator, linebreak);
-			final int length = sb.length();
-			final char[] buf = new char[length];
-			sb.getChars(0, length, buf, 0);
-			writer.write(buf);
+			append(writer, serialize(it.next(), formatter, timeZone, xmlOrJson, separator, linebreak));
 		}
 		printEnd(writer, xmlOrJson, separator, linebreak);
 		return cnt;
 	}
 	
+	private static void append(final Writer writer, final StringBuilder sb) throws IOException {
+		final int length = sb.length();
+		final char[] buf = new char[length];
+		sb.getChars(0, length, buf, 0);
+		writer.write(buf);
+	}
+	
+	@FunctionalInterface
+	private static interface ChunkConsumer {
+		
+		void accept(int idx, long timestamp, double value, Quality quality) throws IOException;
+		
+	}
+	
+	/**
+	 * Pass the raw data points to the consumer, reading them in columnar chunks instead of 
+	 * creating a {@link SampledValue} per point.
+	 * @param timeSeries
+	 * @param start
+	 * @param end
+	 * 		inclusive
+	 * @param maxNr
+	 * @param consumer
+	 * @return
+	 * 		the number of data points passed to the consumer
+	 * @throws IOException
+	 */
+	private static int writeChunked(final FendoTimeSeries timeSeries, final long start, final long end, final int maxNr, 
+			final ChunkConsumer consumer) throws IOException {
+		final TimeSeriesChunk chunk = new TimeSeriesChunk();
+		final long endExclusive = end == Long.MAX_VALUE ? end : end + 1;
+		long t = start;
+		int cnt = 0;
+		do {
+			timeSeries.readChunk(t, endExclusive, chunk);
+			final int size = chunk.size();
+			final long[] timestamps = chunk.getTimestamps();
+			final double[] values = chunk.getValues();
+			final byte[] qualities = chunk.getQualityFlags();
+			for (int i = 0; i < size; i++) {
+				if (cnt >= maxNr)
+					return cnt;
+				consumer.accept(cnt++, timestamps[i], values[i], Quality.getQuality(qualities[i]));
+			}
+			if (chunk.isFull())
+				t = chunk.getLastTimestamp() + 1;
+		} while (chunk.isFull());
+		return cnt;
+	}
+	
 	static int write(final List<FendoTimeSeries> timeSeries, final SerializationConfiguration config, final CSVPrinter printer) throws IOException {
 		if (timeSeries == null || timeSeries.isEmpty())
 			return 0;
@@ -325,10 +375,18 @@ class SerializerImpl {
 	
 	private static final StringBuilder serialize(final SampledValue sv, final DateTimeFormatter formatter, 
 			final ZoneId timeZone, final boolean xmlOrJson, final char[] separator, final char[] linebreak) {
-		final Object time = formatTimestamp(sv.getTimestamp(), formatter, timeZone);
 		final Value val = sv.getValue();
-		final StringBuilder sb = new StringBuilder();
 		final String type = val.getClass().getSimpleName().replace("Value", "");
+		final Object value = val instanceof BooleanValue ? val.getBooleanValue() :
+				val instanceof IntegerValue || val instanceof LongValue ? val.getLongValue() :
+				val.getFloatValue();
+		return serialize(sv.getTimestamp(), type, value, sv.getQuality(), formatter, timeZone, xmlOrJson, separator, linebreak);
+	}
+	
+	private static final StringBuilder serialize(final long timestamp, final String type, final Object value, final Quality quality, 
+			final DateTimeFormatter formatter, final ZoneId timeZone, final boolean xmlOrJson, final char[] separator, final char[] linebreak) {
+		final Object time = formatTimestamp(timestamp, formatter, timeZone);
+		final StringBuilder sb = new StringBuilder();
 		if (xmlOrJson) {
 			// format
 		    //<entry xsi:type="og:SampledFloat">
@@ -341,13 +399,9 @@ class SerializerImpl {
 				.append(linebreak).append(separator).append(separator)
 					.append("<time>").append(time).append("</time>")
 				.append(linebreak).append(separator).append(separator)
-				.append("<quality>").append(sv.getQuality().toString()).append("</quality>")
+				.append("<quality>").append(quality.toString()).append("</quality>")
 				.append(linebreak).append(separator).append(separator)				
-				.append("<value>")
-				.append(val instanceof BooleanValue ? val.getBooleanValue() :
-						val instanceof IntegerValue || val instanceof LongValue ? val.getLongValue() :
-						val.getFloatValue())
-				.append("</value>")
+				.append("<value>").append(value).append("</value>")
 				.append(linebreak).append(separator).append("</entry>");
 		} else {
 			// format
@@ -371,11 +425,9 @@ class SerializerImpl {
 				sb.append('\"');
 			sb.append(',')
 				.append(linebreak).append(separator).append(separator)
-				.append("\"quality\":\"").append(sv.getQuality().toString()).append('\"').append(',')
+				.append("\"quality\":\"").append(quality.toString()).append('\"').append(',')
 				.append(linebreak).append(separator).append(separator)				
-				.append("\"value\":").append(val instanceof BooleanValue ? val.getBooleanValue() :
-						val instanceof IntegerValue || val instanceof LongValue ? val.getLongValue() :
-						val.getFloatValue())
+				.append("\"value\":").append(value)
 				.append(linebreak).append(separator);
 			sb.append('}');
 			
@@ -393,14 +445,17 @@ class SerializerImpl {
 		final Iterator<SampledValue> it;
 		if (samplingInterval != null) {
 			start = getAlignedIntervalStartTime(timeSeries, start, samplingInterval, timeZone);
-			it = new WrappedIterator(MultiTimeSeriesIteratorBuilder.newBuilder(Collections.singletonList(it0))
-					.setGlobalInterpolationMode(InterpolationMode.LINEAR)
-					.setStepSize(start, samplingInterval)
-					.build());
+			it = downsample(timeSeries, it0, start, end, samplingInterval, config.reductionMode());
 		} else {
 			it = it0;
 		}
 		final int maxNr = config.getMaxNrValues();
+		if (samplingInterval == null && timeSeries instanceof FendoTimeSeries) {
+			return writeChunked((FendoTimeSeries) timeSeries, start, end, maxNr, (idx, t, value, quality) -> {
+				final Object time = formatter == null ? t : formatter.format(LocalDateTime.ofInstant(Instant.ofEpochMilli(t), timeZone));
+				printer.printRecord(time, (float) value);
+			});
+		}
 		int cnt = 0;
 		while (it.hasNext()) {
 			if (cnt++ >= maxNr) {
@@ -414,6 +469,29 @@ class SerializerImpl {
 		return cnt;
 	}
 	
+	/**
+	 * Downsample the values to the sampling interval, by linear interpolation, or by aggregating all 
+	 * values per interval if a reduction mode is set. For a {@link RecordedData} the latter
+	 * is served from the precomputed rollup tiers of the database.
+	 */
+	private static Iterator<SampledValue> downsample(final ReadOnlyTimeSeries timeSeries, final Iterator<SampledValue> it0,
+			final long start, final long end, final long samplingInterval, final ReductionMode mode) {
+		if (mode == null || mode == ReductionMode.NONE || !(timeSeries instanceof RecordedData)) {
+			return new WrappedIterator(MultiTimeSeriesIteratorBuilder.newBuilder(Collections.singletonList(it0))
+					.setGlobalInterpolationMode(InterpolationMode.LINEAR)
+					.setStepSize(start, samplingInterval)
+					.build());
+		}
+		// restrict the intervals to the range covered by data
+		final SampledValue first = timeSeries.getNextValue(start);
+		final SampledValue last = timeSeries.getPreviousValue(end);
+		if (first == null || last == null || first.getTimestamp() > last.getTimestamp())
+			return Collections.emptyIterator();
+		final long start0 = start < first.getTimestamp() - samplingInterval ? first.getTimestamp() : start;
+		final long end0 = Math.min(end, last.getTimestamp() + 1); // end is exclusive for getValues
+		return ((RecordedData) timeSeries).getValues(start0, end0, samplingInterval, mode).iterator();
+	}
+	
 	private final static long getAlignedIntervalStartTime(ReadOnlyTimeSeries timeSeries, long startTime, long samplingInterval, final ZoneId timeZone) {
 		final Instant t0;
 		if (timeSeries != null) {
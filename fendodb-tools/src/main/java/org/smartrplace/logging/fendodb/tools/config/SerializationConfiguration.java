@@ -18,6 +18,8 @@ package org.smartrplace.logging.fendodb.tools.config;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
+import org.ogema.core.recordeddata.ReductionMode;
+
 /*
  *  TODO 
  *   - skip/handle bad qualities?
@@ -65,6 +67,14 @@ public interface SerializationConfiguration {
 	 * @return
 	 */
 	Long samplingInterval();
+	
+	/**
+	 * Only relevant if {@link #samplingInterval()} is non-null. If null or {@link ReductionMode#NONE},
+	 * values are interpolated linearly at the sampling points, otherwise the values within each interval
+	 * are aggregated according to the reduction mode.
+	 * @return
+	 */
+	ReductionMode reductionMode();
 
 	/**
 	 * Get the maximum nr of entries to be printed per timeseries.
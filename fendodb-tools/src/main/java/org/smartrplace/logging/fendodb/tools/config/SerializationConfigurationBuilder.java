@@ -19,6 +19,8 @@ import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
 
+import org.ogema.core.recordeddata.ReductionMode;
+
 public class SerializationConfigurationBuilder {
 
 	private boolean prettyPrint = true;
@@ -29,6 +31,7 @@ public class SerializationConfigurationBuilder {
 	private DateTimeFormatter formatter = null;
 	private ZoneId timeZone = ZoneId.of("Z"); // default: UTC
 	private Long samplingInterval;
+	private ReductionMode reductionMode;
 	private int maxNrValues = 10000000;
 	private FendodbSerializationFormat format = FendodbSerializationFormat.CSV;
 
@@ -53,6 +56,7 @@ public class SerializationConfigurationBuilder {
 			builder.setInterval(configToCopy.getStartTime(), configToCopy.getEndTime());
 			builder.setFormatter(configToCopy.getFormatter(), configToCopy.getTimeZone());
 			builder.setSamplingInterval(configToCopy.samplingInterval());
+			builder.setReductionMode(configToCopy.reductionMode());
 			builder.setFormat(configToCopy.getFormat());
 			builder.setMaxNrValues(configToCopy.getMaxNrValues());
 		}
@@ -88,6 +92,7 @@ public class SerializationConfigurationBuilder {
 				formatter,
 				timeZone,
 				samplingInterval,
+				reductionMode,
 				maxNrValues,
 				prettyPrint,
 				indentation);
@@ -193,4 +198,16 @@ public class SerializationConfigurationBuilder {
 		return this;
 	}
 
+	/**
+	 * Aggregate the values within each sampling interval, instead of interpolating them at the 
+	 * sampling points. Only relevant if a {@link #setSamplingInterval(Long) sampling interval} is set.
+	 * Default is null, i.e. linear interpolation.
+	 * @param reductionMode
+	 * @return
+	 */
+	public SerializationConfigurationBuilder setReductionMode(ReductionMode reductionMode) {
+		this.reductionMode = reductionMode;
+		return this;
+	}
+
 }
@@ -18,6 +18,8 @@ package org.smartrplace.logging.fendodb.tools.config;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
+import org.ogema.core.recordeddata.ReductionMode;
+
 class SerializationConfigurationImpl implements SerializationConfiguration {
 
 	private final boolean prettyPrint;
@@ -29,10 +31,11 @@ class SerializationConfigurationImpl implements SerializationConfiguration {
 	private final DateTimeFormatter formatter;
 	private final ZoneId timeZone;
 	private final Long samplingInterval;
+	private final ReductionMode reductionMode;
 	private final FendodbSerializationFormat format;
 	
 	SerializationConfigurationImpl(FendodbSerializationFormat format, char delimiter, long startTime, long endTime, 
-			DateTimeFormatter formatter, ZoneId timeZone, Long samplingInterval, int maxNrValues,
+			DateTimeFormatter formatter, ZoneId timeZone, Long samplingInterval, ReductionMode reductionMode, int maxNrValues,
 			boolean prettyPrint, int indentation) {
 		this.format = format;
 		this.delimiter = delimiter; 
@@ -41,6 +44,7 @@ class SerializationConfigurationImpl implements SerializationConfiguration {
 		this.formatter = formatter;
 		this.timeZone = timeZone;
 		this.samplingInterval = samplingInterval;
+		this.reductionMode = reductionMode;
 		this.maxNrValues = maxNrValues;
 		this.prettyPrint = prettyPrint;
 		this.indentation = indentation;
@@ -82,6 +86,11 @@ class SerializationConfigurationImpl implements SerializationConfiguration {
 		return samplingInterval;
 	}
 
+	@Override
+	public ReductionMode reductionMode() {
+		return reductionMode;
+	}
+
 	@Override
 	public int getMaxNrValues() {
 		return maxNrValues;